@@ -0,0 +1,52 @@
+package com.needs.api.needsapi;
+
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Chooses the threads Tomcat serves requests on
+ * <p>
+ * By default requests run on Tomcat's fixed pool of platform threads, which caps
+ * the number served at once at {@code server.tomcat.threads.max} however long
+ * they spend waiting on the disk. With {@code spring.threads.virtual.enabled=true}
+ * every request gets a virtual thread of its own instead, if the JVM has them;
+ * otherwise a warning is logged and the platform pool is kept. The DAOs guard
+ * their data with {@link java.util.concurrent.locks.ReentrantLock locks} rather
+ * than monitors, so a request waiting for one does not pin its carrier thread.
+ *
+ * @author Team Swiss Pandas
+ */
+@Configuration
+public class RequestExecutorConfig {
+    private static final Logger LOG = Logger.getLogger(RequestExecutorConfig.class.getName());
+
+    /**
+     * Hands Tomcat a virtual thread per task executor when virtual threads are enabled
+     *
+     * @param virtual true to serve each request on a virtual thread if the JVM supports it
+     *
+     * @return The customizer, which leaves the platform pool in place if virtual
+     * threads are disabled or unsupported
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> requestExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtual) {
+        return protocolHandler -> {
+            if (!virtual)
+                return;
+
+            ExecutorService executor = VirtualThreads.newPerTaskExecutor();
+            if (executor == null) {
+                LOG.warning("Virtual threads are not supported by this JVM, serving requests on the platform thread pool");
+                return;
+            }
+            protocolHandler.setExecutor(executor);
+            LOG.info("Serving requests on virtual threads");
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.needs.api.needsapi;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates executors that run every task on a virtual thread of its own, on JVMs
+ * that have them
+ * <p>
+ * The application is built for Java 17, which has no virtual threads, so the
+ * executor is looked up by reflection. On a JVM without them, or where they are
+ * still a preview feature that was not enabled, callers get null and keep their
+ * platform threads.
+ *
+ * @author Team Swiss Pandas
+ */
+public final class VirtualThreads {
+    private static final Logger LOG = Logger.getLogger(VirtualThreads.class.getName());
+
+    private VirtualThreads() {}
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task
+     *
+     * @return The executor, or null if this JVM cannot run virtual threads
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;  // older than Java 19
+        }
+        catch (InvocationTargetException e) {
+            // Java 19 and 20 without --enable-preview
+            LOG.log(Level.FINE, "Virtual threads are not enabled: " + e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Determines if this JVM can run virtual threads
+     *
+     * @return true if {@link #newPerTaskExecutor()} returns an executor
+     */
+    public static boolean isSupported() {
+        ExecutorService executor = newPerTaskExecutor();
+        if (executor == null)
+            return false;
+        executor.shutdown();
+        return true;
+    }
+}
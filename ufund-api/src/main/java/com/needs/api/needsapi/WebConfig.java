@@ -1,4 +1,5 @@
 package com.needs.api.needsapi;
+import com.needs.api.needsapi.controller.NeedController;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
@@ -11,6 +12,8 @@ public class WebConfig implements WebMvcConfigurer {
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
-                .allowedMethods("HEAD", "GET", "PUT", "POST", "DELETE", "PATCH");
+                .allowedMethods("HEAD", "GET", "PUT", "POST", "DELETE", "PATCH")
+                .exposedHeaders("ETag",   // read by clients to send If-Match
+                                NeedController.QUANTITY_ACCEPTED);  // read by clients to credit what a fulfillment took
     }
 }
\ No newline at end of file
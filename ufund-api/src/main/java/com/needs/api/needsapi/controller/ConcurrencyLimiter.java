@@ -0,0 +1,162 @@
+package com.needs.api.needsapi.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive limit on the number of requests of one class served at once
+ * <p>
+ * The limit follows the latency of the requests let through: a short and a long
+ * moving average of their round trip time are kept, and after every request the
+ * limit is moved toward {@code limit * gradient + sqrt(limit)}, where the
+ * gradient is the long average over the short one, at most 1. While latency
+ * stays flat the square root lets the limit grow; once requests start queueing
+ * the short average rises and the limit shrinks until they stop. A request that
+ * failed with a server error cuts the limit multiplicatively instead. Requests
+ * served while far below the limit say nothing about it and leave it alone.
+ * <p>
+ * Only the counters are touched by every request, the averages and the limit are
+ * updated under this limiter's monitor once the request has been served.
+ *
+ * @author Team Swiss Pandas
+ */
+public class ConcurrencyLimiter {
+    static final double SHORT_WINDOW = 10;      // Samples the short latency average spans
+    static final double LONG_WINDOW = 600;      // Samples the long latency average spans
+    static final double TOLERANCE = 1.5;        // Latency growth tolerated before the limit shrinks
+    static final double SMOOTHING = 0.2;        // Share of each new estimate taken into the limit
+    static final double BACKOFF = 0.9;          // Limit kept after a failed request
+
+    private final String name;                  // Class of requests limited, for metrics
+    private final int minLimit;
+    private final int maxLimit;
+
+    private volatile int limit;                 // Requests let through at once
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private double estimate;                    // Unrounded limit, guarded by this limiter's monitor
+    private double shortRtt;                    // Nanoseconds, guarded by this limiter's monitor
+    private double longRtt;                     // Nanoseconds, guarded by this limiter's monitor
+
+    /**
+     * Creates a Concurrency Limiter
+     *
+     * @param name The class of requests limited, reported with the metrics
+     * @param initialLimit The limit before any request has been measured
+     * @param minLimit The limit never goes below
+     * @param maxLimit The limit never goes above
+     */
+    public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.estimate = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.limit = (int)estimate;
+    }
+
+    /**
+     * Lets a request through if fewer than the limit are being served
+     *
+     * @return The number of requests being served including this one, or -1 if
+     * it was rejected, in which case {@link #release} must not be called
+     */
+    public int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.incrementAndGet();
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Records that a request let through has been served and adapts the limit
+     *
+     * @param rttNanos How long the request took
+     * @param inFlight The number of requests served when it was let through
+     * @param failed true if it failed with a server error
+     */
+    public void release(long rttNanos, int inFlight, boolean failed) {
+        this.inFlight.decrementAndGet();
+        if (failed)
+            this.failed.incrementAndGet();
+        sample(rttNanos, inFlight, failed);
+    }
+
+    private synchronized void sample(long rttNanos, int inFlight, boolean failed) {
+        if (failed) {
+            estimate = Math.max(minLimit, estimate * BACKOFF);
+            limit = (int)estimate;
+            return;
+        }
+
+        if (longRtt == 0) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+        }
+        shortRtt += (rttNanos - shortRtt) * 2 / (SHORT_WINDOW + 1);
+        longRtt += (rttNanos - longRtt) * 2 / (LONG_WINDOW + 1);
+        // after a long stretch of high latency the long average catches up
+        // faster, so the limit does not stay low once it is gone
+        if (longRtt > shortRtt * 2)
+            longRtt *= 0.95;
+
+        if (inFlight < estimate / 2)
+            return;  // far below the limit, the latency says nothing about it
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double target = estimate * gradient + Math.sqrt(estimate);
+        estimate = estimate * (1 - SMOOTHING) + target * SMOOTHING;
+        estimate = Math.min(maxLimit, Math.max(minLimit, estimate));
+        limit = (int)estimate;
+    }
+
+    /**
+     * Retrieves the current limit
+     *
+     * @return The number of requests let through at once
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Retrieves the number of requests being served
+     *
+     * @return The number of requests let through and not yet released
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Retrieves the state of this limiter for monitoring
+     *
+     * @return The limit, requests in flight, counts of accepted, rejected and
+     * failed requests, and the latency averages in milliseconds, by name
+     */
+    public synchronized Map<String,Object> metrics() {
+        Map<String,Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("limit", limit);
+        metrics.put("minLimit", minLimit);
+        metrics.put("maxLimit", maxLimit);
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("accepted", accepted.get());
+        metrics.put("rejected", rejected.get());
+        metrics.put("failed", failed.get());
+        metrics.put("shortRttMillis", shortRtt / 1e6);
+        metrics.put("longRttMillis", longRtt / 1e6);
+        return metrics;
+    }
+}
@@ -0,0 +1,62 @@
+package com.needs.api.needsapi.controller;
+
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.needs.api.needsapi.persistence.StoreMetrics;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Handles the REST API requests for where requests and stores spend their time
+ * <p>
+ * {@literal @}RestController Spring annotation identifies this class as a REST API
+ * method handler to the Spring framework
+ *
+ * @author Team Swiss Pandas
+ */
+@RestController
+@RequestMapping("diagnostics")
+public class DiagnosticsController {
+    private static final Logger LOG = Logger.getLogger(DiagnosticsController.class.getName());
+    private SlowRequestLog slowRequestLog;
+
+    /**
+     * Creates a REST API controller to reponds to requests
+     *
+     * @param slowRequestLog The {@link SlowRequestLog slow request log} whose totals are reported
+     * <br>
+     * This dependency is injected by the Spring Framework
+     */
+    public DiagnosticsController(SlowRequestLog slowRequestLog) {
+        this.slowRequestLog = slowRequestLog;
+    }
+
+    /**
+     * Responds to the GET request for the lock and I/O times of every store
+     *
+     * @return ResponseEntity with the {@link StoreMetrics#metrics() metrics} of each
+     * store by name and HTTP status of OK
+     */
+    @GetMapping("/stores")
+    public ResponseEntity<Map<String,Map<String,Object>>> getStores() {
+        LOG.info("GET /diagnostics/stores");
+        return new ResponseEntity<Map<String,Map<String,Object>>>(StoreMetrics.all(), HttpStatus.OK);
+    }
+
+    /**
+     * Responds to the GET request for the phases of the requests to every endpoint
+     *
+     * @return ResponseEntity with the {@link SlowRequestLog#metrics() totals} of each
+     * endpoint by method and path pattern and HTTP status of OK
+     */
+    @GetMapping("/endpoints")
+    public ResponseEntity<Map<String,Map<String,Object>>> getEndpoints() {
+        LOG.info("GET /diagnostics/endpoints");
+        return new ResponseEntity<Map<String,Map<String,Object>>>(slowRequestLog.metrics(), HttpStatus.OK);
+    }
+}
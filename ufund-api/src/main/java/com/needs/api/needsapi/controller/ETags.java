@@ -0,0 +1,59 @@
+package com.needs.api.needsapi.controller;
+
+import org.springframework.http.HttpHeaders;
+
+import com.needs.api.needsapi.persistence.NeedDAO;
+
+/**
+ * Converts between entity versions and the entity tags of the {@code ETag}
+ * and {@code If-Match} headers
+ * <br>
+ * A version is sent as the strong entity tag {@code "<version>"}. An
+ * {@code If-Match} header that is missing or {@code *} matches any version, and
+ * one that is weak, a list or not a version at all matches none, so the update
+ * is refused.
+ *
+ * @author Team Swiss Pandas
+ */
+final class ETags {
+    static final long NO_MATCH = -2;    // Expected version that no entity is ever at
+
+    private ETags() {}
+
+    /**
+     * Creates the headers of a response carrying an entity
+     *
+     * @param version The version of the entity
+     *
+     * @return Headers holding the entity's {@code ETag}
+     */
+    static HttpHeaders of(long version) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"" + version + "\"");
+        return headers;
+    }
+
+    /**
+     * Parses an {@code If-Match} header into the version an update expects
+     *
+     * @param ifMatch The header value, may be null
+     *
+     * @return The expected version, {@link NeedDAO#ANY_VERSION} if any version
+     * matches, {@link #NO_MATCH} if none does
+     */
+    static long expected(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*"))
+            return NeedDAO.ANY_VERSION;
+
+        String tag = ifMatch.trim();
+        if (tag.length() < 3 || !tag.startsWith("\"") || !tag.endsWith("\""))
+            return NO_MATCH;
+        try {
+            long version = Long.parseLong(tag.substring(1, tag.length() - 1));
+            return version < 0 ? NO_MATCH : version;
+        }
+        catch (NumberFormatException e) {
+            return NO_MATCH;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.needs.api.needsapi.controller;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -25,16 +26,29 @@ import com.needs.api.needsapi.persistence.LeaderboardDAO;
 public class LeaderboardController {
     private static final Logger LOG = Logger.getLogger(LeaderboardController.class.getName());
     private LeaderboardDAO leaderboardDAO;
+    private SingleFlight singleFlight;
 
     /**
      * Creates a REST API controller to reponds to requests
      * 
      * @param leaderboardDAO The {@link LeaderboardDAO Leaderboard Data Access Object} to perform CRUD operations
-     * <br>
-     * This dependency is injected by the Spring Framework
      */
     public LeaderboardController(LeaderboardDAO leaderboardDAO) {
+        this(leaderboardDAO, SingleFlight.disabled());
+    }
+
+    /**
+     * Creates a REST API controller to reponds to requests
+     * 
+     * @param leaderboardDAO The {@link LeaderboardDAO Leaderboard Data Access Object} to perform CRUD operations
+     * @param singleFlight The {@link SingleFlight single flight} concurrent requests share the leaderboard through
+     * <br>
+     * These dependencies are injected by the Spring Framework
+     */
+    @Autowired
+    public LeaderboardController(LeaderboardDAO leaderboardDAO, SingleFlight singleFlight) {
         this.leaderboardDAO = leaderboardDAO;
+        this.singleFlight = singleFlight;
     }
 
     /**
@@ -48,7 +62,7 @@ public class LeaderboardController {
     public ResponseEntity<String[][]> getLeaderboard() {
         LOG.info("GET /leaderboard");
         try {
-            String[][] leaderboard = leaderboardDAO.getLeaderboard();
+            String[][] leaderboard = singleFlight.share("/leaderboard", leaderboardDAO::getLeaderboard);
             LOG.info("Successful leaderboard fetch, length of profiles is " + leaderboard.length);
             return new ResponseEntity<String[][]>(leaderboard,HttpStatus.OK);
         }
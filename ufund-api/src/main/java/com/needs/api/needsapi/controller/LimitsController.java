@@ -0,0 +1,48 @@
+package com.needs.api.needsapi.controller;
+
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Handles the REST API requests for the state of the request limiters
+ * <p>
+ * {@literal @}RestController Spring annotation identifies this class as a REST API
+ * method handler to the Spring framework
+ *
+ * @author Team Swiss Pandas
+ */
+@RestController
+@RequestMapping("limits")
+public class LimitsController {
+    private static final Logger LOG = Logger.getLogger(LimitsController.class.getName());
+    private LoadSheddingFilter filter;
+
+    /**
+     * Creates a REST API controller to reponds to requests
+     *
+     * @param filter The {@link LoadSheddingFilter filter} whose limiters are reported
+     * <br>
+     * This dependency is injected by the Spring Framework
+     */
+    public LimitsController(LoadSheddingFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Responds to the GET request for the state of the request limiters
+     *
+     * @return ResponseEntity with the {@link ConcurrencyLimiter#metrics metrics} of
+     * each limiter by name and HTTP status of OK
+     */
+    @GetMapping("")
+    public ResponseEntity<Map<String,Map<String,Object>>> getLimits() {
+        LOG.info("GET /limits");
+        return new ResponseEntity<Map<String,Map<String,Object>>>(filter.metrics(), HttpStatus.OK);
+    }
+}
@@ -0,0 +1,150 @@
+package com.needs.api.needsapi.controller;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sheds load in front of the REST controllers once they stop keeping up
+ * <p>
+ * Every request passes one of two {@linkplain ConcurrencyLimiter adaptive limiters}:
+ * the expensive one for writes and for reads that go over every need or profile
+ * ({@code GET /needs}, its search, {@code GET /needs/progress} and
+ * {@code GET /leaderboard}), the cheap one for every other read. A request over
+ * its limiter's limit is answered at once with 503 Service Unavailable and a
+ * {@code Retry-After} header instead of waiting for a servlet thread, so a spike
+ * of expensive requests cannot hold up cheap ones like {@code GET /needs/{id}}.
+ * CORS preflights, {@code GET /limits}, which reports the limiters, and
+ * {@code GET /diagnostics} are never limited.
+ *
+ * {@literal @}Component Spring annotation registers this filter with the servlet
+ * container ahead of the controllers
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class LoadSheddingFilter implements Filter {
+    private static final Logger LOG = Logger.getLogger(LoadSheddingFilter.class.getName());
+
+    private final boolean enabled;                  // false lets every request through
+    private final ConcurrencyLimiter expensive;     // Writes and reads of every record
+    private final ConcurrencyLimiter cheap;         // Reads of one record
+    private final String retryAfter;                // Seconds clients are told to wait
+
+    /**
+     * Creates a Load Shedding Filter
+     *
+     * @param enabled false to let every request through
+     * @param expensiveLimit Initial limit of expensive requests
+     * @param expensiveMax Greatest limit of expensive requests
+     * @param cheapLimit Initial limit of cheap requests
+     * @param cheapMax Greatest limit of cheap requests
+     * @param minLimit Smallest limit of either
+     * @param retryAfter Seconds a rejected client is told to wait
+     */
+    @Autowired
+    public LoadSheddingFilter(@Value("${limits.enabled:true}") boolean enabled,
+                              @Value("${limits.expensive.initial:16}") int expensiveLimit,
+                              @Value("${limits.expensive.max:64}") int expensiveMax,
+                              @Value("${limits.cheap.initial:64}") int cheapLimit,
+                              @Value("${limits.cheap.max:512}") int cheapMax,
+                              @Value("${limits.min:4}") int minLimit,
+                              @Value("${limits.retry.after:1}") int retryAfter) {
+        this(enabled,
+             new ConcurrencyLimiter("expensive", expensiveLimit, minLimit, expensiveMax),
+             new ConcurrencyLimiter("cheap", cheapLimit, minLimit, cheapMax),
+             retryAfter);
+    }
+
+    /**
+     * Creates a Load Shedding Filter with the given limiters
+     *
+     * @param enabled false to let every request through
+     * @param expensive The {@link ConcurrencyLimiter limiter} of expensive requests
+     * @param cheap The {@link ConcurrencyLimiter limiter} of cheap requests
+     * @param retryAfter Seconds a rejected client is told to wait
+     */
+    LoadSheddingFilter(boolean enabled, ConcurrencyLimiter expensive, ConcurrencyLimiter cheap, int retryAfter) {
+        this.enabled = enabled;
+        this.expensive = expensive;
+        this.cheap = cheap;
+        this.retryAfter = String.valueOf(Math.max(1, retryAfter));
+    }
+
+    /**
+     * Chooses the limiter a request passes
+     *
+     * @param method The HTTP method
+     * @param path The path below the context path
+     *
+     * @return The {@link ConcurrencyLimiter limiter}, or null if the request is not limited
+     */
+    ConcurrencyLimiter limiterFor(String method, String path) {
+        if (!enabled || method.equals("OPTIONS") || path.startsWith("/limits") || path.startsWith("/diagnostics"))
+            return null;
+        if (!method.equals("GET") && !method.equals("HEAD"))
+            return expensive;
+        if (path.equals("/needs") || path.equals("/needs/") || path.equals("/needs/progress")
+            || path.startsWith("/leaderboard"))
+            return expensive;
+        return cheap;
+    }
+
+    /**
+     * Lets the request through its limiter, or rejects it with 503 if over the limit
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest)request;
+        HttpServletResponse httpResponse = (HttpServletResponse)response;
+        String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+        ConcurrencyLimiter limiter = limiterFor(httpRequest.getMethod(), path);
+        if (limiter == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        int inFlight = limiter.tryAcquire();
+        if (inFlight < 0) {
+            LOG.fine("Shed " + httpRequest.getMethod() + " " + path + " over the limit of " + limiter.getLimit());
+            httpResponse.setHeader("Retry-After", retryAfter);
+            httpResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = httpResponse.getStatus() >= 500;
+        }
+        finally {
+            limiter.release(System.nanoTime() - start, inFlight, failed);
+        }
+    }
+
+    /**
+     * Retrieves the state of both limiters for monitoring
+     *
+     * @return The {@link ConcurrencyLimiter#metrics metrics} of each limiter, by name
+     */
+    public Map<String,Map<String,Object>> metrics() {
+        Map<String,Map<String,Object>> metrics = new LinkedHashMap<>();
+        metrics.put("expensive", expensive.metrics());
+        metrics.put("cheap", cheap.metrics());
+        return metrics;
+    }
+}
@@ -1,5 +1,7 @@
 package com.needs.api.needsapi.controller;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -8,16 +10,23 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.needs.api.needsapi.persistence.FulfillmentEscrow;
 import com.needs.api.needsapi.persistence.NeedDAO;
+import com.needs.api.needsapi.persistence.VersionConflictException;
 import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
 
 /**
  * Handles the REST API requests for the Need resource
@@ -33,17 +42,45 @@ import com.needs.api.needsapi.model.Need;
 @RequestMapping("needs")
 public class NeedController {
     private static final Logger LOG = Logger.getLogger(NeedController.class.getName());
+    public static final String QUANTITY_ACCEPTED = "Quantity-Accepted";  // Response header holding the quantity a fulfillment accepted
     private NeedDAO needDao;
+    private FulfillmentEscrow escrow;
+    private SingleFlight singleFlight;
+
+    /**
+     * Creates a REST API controller to reponds to requests, fulfilling needs
+     * directly through the DAO
+     * 
+     * @param needDao The {@link NeedDAO Need Data Access Object} to perform CRUD operations
+     */
+    public NeedController(NeedDAO needDao) {
+        this(needDao, FulfillmentEscrow.disabled(needDao));
+    }
+
+    /**
+     * Creates a REST API controller to reponds to requests
+     * 
+     * @param needDao The {@link NeedDAO Need Data Access Object} to perform CRUD operations
+     * @param escrow The {@link FulfillmentEscrow escrow} fulfillments of hot needs are claimed from
+     */
+    public NeedController(NeedDAO needDao, FulfillmentEscrow escrow) {
+        this(needDao, escrow, SingleFlight.disabled());
+    }
 
     /**
      * Creates a REST API controller to reponds to requests
      * 
      * @param needDao The {@link NeedDAO Need Data Access Object} to perform CRUD operations
+     * @param escrow The {@link FulfillmentEscrow escrow} fulfillments of hot needs are claimed from
+     * @param singleFlight The {@link SingleFlight single flight} concurrent searches share their result through
      * <br>
-     * This dependency is injected by the Spring Framework
+     * These dependencies are injected by the Spring Framework
      */
-    public NeedController(NeedDAO needDao) {
+    @Autowired
+    public NeedController(NeedDAO needDao, FulfillmentEscrow escrow, SingleFlight singleFlight) {
         this.needDao = needDao;
+        this.escrow = escrow;
+        this.singleFlight = singleFlight;
     }
 
     /**
@@ -51,7 +88,7 @@ public class NeedController {
      * 
      * @param id The id used to locate the {@link Need need}
      * 
-     * @return ResponseEntity with {@link Need need} object and HTTP status of OK if found<br>
+     * @return ResponseEntity with {@link Need need} object, its version as ETag and HTTP status of OK if found<br>
      * ResponseEntity with HTTP status of NOT_FOUND if not found<br>
      * ResponseEntity with HTTP status of INTERNAL_SERVER_ERROR otherwise
      */
@@ -61,7 +98,7 @@ public class NeedController {
         try {
             Need need = needDao.getNeed(id);
             if (need != null)
-                return new ResponseEntity<Need>(need,HttpStatus.OK);
+                return new ResponseEntity<Need>(need,ETags.of(need.getVersion()),HttpStatus.OK);
             else
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -130,7 +167,7 @@ public class NeedController {
         LOG.info("GET /needs/?name="+name);
 
         try {
-            Need[] need = needDao.findNeeds(name);
+            Need[] need = singleFlight.share("/needs/?name=" + name, () -> needDao.findNeeds(name));
 
             if (need == null) {
                 return new ResponseEntity<Need[]>(need,HttpStatus.NOT_FOUND);
@@ -145,6 +182,146 @@ public class NeedController {
         
     }
 
+    /**
+     * Responds to the GET request for all {@linkplain Need needs} whose name is
+     * close to the text in name despite typos, when fuzzy is true
+     *
+     * @param name The name parameter which contains the text used to find the {@link Need needs}
+     *
+     * @return ResponseEntity with array of {@link Need need} objects (may be empty),
+     * those with the fewest typos first, and HTTP status of OK<br>
+     * ResponseEntity with HTTP status of INTERNAL_SERVER_ERROR otherwise
+     * <p>
+     * Example: Find all needs with a word close to "vacines"
+     * GET http://localhost:8080/needs/?name=vacines&fuzzy=true
+     */
+    @GetMapping(value = "/", params = "fuzzy=true")
+    public ResponseEntity<Need[]> searchNeedsFuzzy(@RequestParam String name) {
+        LOG.info("GET /needs/?name="+name+"&fuzzy=true");
+
+        try {
+            Need[] need = singleFlight.share("/needs/?fuzzy=true&name=" + name, () -> needDao.findNeedsFuzzy(name));
+            return new ResponseEntity<Need[]>(need,HttpStatus.OK);
+        }
+        catch(IOException e) {
+            LOG.log(Level.SEVERE,e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Responds to the GET request for the {@linkplain Need needs} most relevant to
+     * the text in text, whose name or description mentions its words
+     *
+     * @param text The words the {@link Need needs} are ranked by
+     * @param k The most {@link Need needs} to rank, no more than {@link NeedDAO#MAX_RANKED} are
+     *
+     * @return ResponseEntity with array of up to k {@link Need need} objects (may be empty),
+     * the most relevant first with urgent ones raised, and HTTP status of OK<br>
+     * ResponseEntity with HTTP status of BAD_REQUEST if k is not positive<br>
+     * ResponseEntity with HTTP status of INTERNAL_SERVER_ERROR otherwise
+     * <p>
+     * Example: Rank the ten needs most relevant to "newborn vaccines"
+     * GET http://localhost:8080/needs/search?text=newborn%20vaccines&k=10
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Need[]> rankNeeds(@RequestParam String text,
+                                            @RequestParam(defaultValue = "10") int k) {
+        LOG.info("GET /needs/search?text=" + text + "&k=" + k);
+        if (k < 1)
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+
+        try {
+            int capped = Math.min(k, NeedDAO.MAX_RANKED);
+            Need[] needs = singleFlight.share("/needs/search?k=" + capped + "&text=" + text, () -> needDao.rankNeeds(text, capped));
+            return new ResponseEntity<Need[]>(needs,HttpStatus.OK);
+        }
+        catch(IOException e) {
+            LOG.log(Level.SEVERE,e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Responds to the GET request for the {@linkplain Need needs} meeting every
+     * criterion given, needs of any of the types and any of the urgencies given
+     *
+     * @param type The {@link NeedType types} allowed, any if none are given
+     * @param urgency The {@link UrgencyTag urgencies} allowed, any if none are given
+     * @param minPrice The lowest price allowed, if given
+     * @param maxPrice The highest price allowed, if given
+     * @param open true for needs with less fulfilled than needed, false for the others, either if not given
+     *
+     * @return ResponseEntity with array of {@link Need need} objects (may be empty) and
+     * HTTP status of OK<br>
+     * ResponseEntity with HTTP status of BAD_REQUEST if minPrice is greater than maxPrice<br>
+     * ResponseEntity with HTTP status of INTERNAL_SERVER_ERROR otherwise
+     * <p>
+     * Example: Find the open equipment and donation needs of urgent priority costing up to 50
+     * GET http://localhost:8080/needs/query?type=EQUIPMENT&type=DONATE&urgency=HIGH&maxPrice=50&open=true
+     */
+    @GetMapping("/query")
+    public ResponseEntity<Need[]> queryNeeds(@RequestParam(required = false) NeedType[] type,
+                                             @RequestParam(required = false) UrgencyTag[] urgency,
+                                             @RequestParam(required = false) Double minPrice,
+                                             @RequestParam(required = false) Double maxPrice,
+                                             @RequestParam(required = false) Boolean open) {
+        LOG.info("GET /needs/query?type=" + Arrays.toString(type) + "&urgency=" + Arrays.toString(urgency)
+                 + "&minPrice=" + minPrice + "&maxPrice=" + maxPrice + "&open=" + open);
+        double min = minPrice == null ? Double.NEGATIVE_INFINITY : minPrice;
+        double max = maxPrice == null ? Double.POSITIVE_INFINITY : maxPrice;
+        if (min > max)
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+
+        Set<NeedType> types = EnumSet.noneOf(NeedType.class);
+        if (type != null)
+            types.addAll(Arrays.asList(type));
+        Set<UrgencyTag> urgencies = EnumSet.noneOf(UrgencyTag.class);
+        if (urgency != null)
+            urgencies.addAll(Arrays.asList(urgency));
+
+        try {
+            Need[] needs = needDao.queryNeeds(types, urgencies, min, max, open);
+            return new ResponseEntity<Need[]>(needs,HttpStatus.OK);
+        }
+        catch(IOException e) {
+            LOG.log(Level.SEVERE,e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Responds to the GET request for the best {@linkplain Need needs} whose name
+     * starts with the text in prefix, as it is being typed
+     *
+     * @param prefix The text the names of the {@link Need needs} start with, case is ignored
+     * @param k The most {@link Need needs} to suggest, no more than {@link NeedDAO#MAX_SUGGESTIONS} are
+     *
+     * @return ResponseEntity with array of up to k {@link Need need} objects (may be empty),
+     * urgent ones first and then those with the most still needed, and HTTP status of OK<br>
+     * ResponseEntity with HTTP status of BAD_REQUEST if k is not positive<br>
+     * ResponseEntity with HTTP status of INTERNAL_SERVER_ERROR otherwise
+     * <p>
+     * Example: Suggest five needs starting with "ba"
+     * GET http://localhost:8080/needs/suggest?prefix=ba&k=5
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<Need[]> suggestNeeds(@RequestParam(defaultValue = "") String prefix,
+                                               @RequestParam(defaultValue = "5") int k) {
+        LOG.info("GET /needs/suggest?prefix=" + prefix + "&k=" + k);
+        if (k < 1)
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+
+        try {
+            Need[] needs = needDao.suggestNeeds(prefix, Math.min(k, NeedDAO.MAX_SUGGESTIONS));
+            return new ResponseEntity<Need[]>(needs,HttpStatus.OK);
+        }
+        catch(IOException e) {
+            LOG.log(Level.SEVERE,e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     /**
      * Creates a {@linkplain Need need} with the provided need object
      * 
@@ -176,22 +353,27 @@ public class NeedController {
      * Updates the {@linkplain Need need} with the provided {@linkplain Need need} object, if it exists
      * 
      * @param need The {@link Need need} to update
+     * @param ifMatch The ETag of the version the {@link Need need} must still be at, any version if absent
      * 
-     * @return ResponseEntity with updated {@link Need need} object and HTTP status of OK if updated<br>
+     * @return ResponseEntity with updated {@link Need need} object, its new version as ETag and HTTP status of OK if updated<br>
      * ResponseEntity with HTTP status of NOT_FOUND if not found<br>
+     * ResponseEntity with the current version as ETag and HTTP status of PRECONDITION_FAILED if it was updated since<br>
      * ResponseEntity with HTTP status of INTERNAL_SERVER_ERROR otherwise
      */
     @PutMapping("")
-    public ResponseEntity<Need> updateNeed(@RequestBody Need need) {
+    public ResponseEntity<Need> updateNeed(@RequestBody Need need, @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         LOG.info("PUT /needs " + need);
         try {
-            Need existNeed = needDao.updateNeed(need);
+            Need existNeed = escrow.updateNeed(need, ETags.expected(ifMatch));
             if (existNeed != null) {
-                return new ResponseEntity<Need>(existNeed, HttpStatus.OK);
+                return new ResponseEntity<Need>(existNeed, ETags.of(existNeed.getVersion()), HttpStatus.OK);
             }
             else
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
+        catch(VersionConflictException e) {
+            return new ResponseEntity<>(ETags.of(e.getActual()), HttpStatus.PRECONDITION_FAILED);
+        }
         catch(IOException e) {
             LOG.log(Level.SEVERE,e.getLocalizedMessage());
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -199,26 +381,33 @@ public class NeedController {
     }
 
     /**
-     * Fulfills a certain amount of quantity for a given need
+     * Fulfills a certain amount of quantity for a given need, up to the quantity
+     * still needed
+     * <br>
+     * Fulfillments of a hot need are claimed from its {@link FulfillmentEscrow escrow},
+     * and the need returned may not include them until they are materialized, so
+     * the quantity accepted is sent in the {@value #QUANTITY_ACCEPTED} header
      * @param id the needId for the need
      * @param quantity the quantity to add to the needs quantityFulfilled
-     * @return
+     * @return ResponseEntity with the updated {@link Need need} object, the quantity accepted and HTTP status of OK if any quantity was accepted<br>
+     * ResponseEntity with HTTP status of CONFLICT if the need is already fully fulfilled<br>
+     * ResponseEntity with HTTP status of NOT_FOUND if not found<br>
+     * ResponseEntity with HTTP status of INTERNAL_SERVER_ERROR otherwise
      */
     @PutMapping("/{id}/fulfill")
     public ResponseEntity<Need> fulfillQuanity(@PathVariable int id, @RequestParam int quantity){
         LOG.info("PUT /"+id+"/fulfill?quantity=" + quantity);
         try {
-            Need need = needDao.getNeed(id);
-            if(need != null){
-                int fulfilled = need.getQuantityFulfilled();
-                fulfilled += quantity;
-                need.setQuantityFulfilled(fulfilled);
-                needDao.updateNeed(need);
-                return new ResponseEntity<Need>(need, HttpStatus.OK);
-            }else{
+            int accepted = escrow.fulfill(id, quantity);
+            if(accepted < 0){
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
-            
+            if(accepted == 0 && quantity > 0){
+                return new ResponseEntity<>(HttpStatus.CONFLICT);
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(QUANTITY_ACCEPTED, String.valueOf(accepted));
+            return new ResponseEntity<Need>(needDao.getNeed(id), headers, HttpStatus.OK);
         }
         catch(IOException e) {
             LOG.log(Level.SEVERE,e.getLocalizedMessage());
@@ -234,12 +423,21 @@ public class NeedController {
     @GetMapping("/progress")
     public ResponseEntity<Integer[]> getProgress(){
         LOG.info("GET needs/progress");
-        int needed = needDao.getTotalNeeded();
-        int fulfilled = needDao.getTotalFulfilled();
-        Integer[] response = new Integer[2];
-        response[0] = needed;
-        response[1] = fulfilled;
-        return new ResponseEntity<Integer[]>(response, HttpStatus.OK);
+        try {
+            Integer[] response = singleFlight.share("/needs/progress", () -> {
+                int needed = needDao.getTotalNeeded();
+                int fulfilled = needDao.getTotalFulfilled();
+                Integer[] progress = new Integer[2];
+                progress[0] = needed;
+                progress[1] = fulfilled;
+                return progress;
+            });
+            return new ResponseEntity<Integer[]>(response, HttpStatus.OK);
+        }
+        catch(IOException e) {
+            LOG.log(Level.SEVERE,e.getLocalizedMessage());
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
     }
 
     /**
@@ -255,7 +453,7 @@ public class NeedController {
     public ResponseEntity<Need> deleteNeed(@PathVariable int id) {
         LOG.info("DELETE /needs/" + id);
         try {
-            boolean deleted = needDao.deleteNeed(id);
+            boolean deleted = escrow.deleteNeed(id);
             if (deleted)
                 return new ResponseEntity<>(HttpStatus.OK);
             else
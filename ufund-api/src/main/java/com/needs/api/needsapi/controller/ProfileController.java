@@ -7,6 +7,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -14,6 +15,7 @@ import org.springframework.web.bind.annotation.RestController;
 import com.needs.api.needsapi.model.Need;
 import com.needs.api.needsapi.model.Profile;
 import com.needs.api.needsapi.persistence.ProfileDAO;
+import com.needs.api.needsapi.persistence.VersionConflictException;
 
 
 import java.io.IOException;
@@ -52,7 +54,7 @@ public class ProfileController {
      * 
      * @param userName The username used to locate the {@link Profile user profile}
      * 
-     * @return ResponseEntity with {@link Profile user profile} object and HTTP status of OK if found<br>
+     * @return ResponseEntity with {@link Profile user profile} object, its version as ETag and HTTP status of OK if found<br>
      * ResponseEntity with HTTP status of NOT_FOUND if not found<br>
      * ResponseEntity with HTTP status of INTERNAL_SERVER_ERROR otherwise
      */
@@ -63,7 +65,7 @@ public class ProfileController {
             Profile profile = profileDao.getProfile(userName);
             if (profile != null){
                 System.out.println(profile);
-                return new ResponseEntity<Profile>(profile,HttpStatus.OK);
+                return new ResponseEntity<Profile>(profile,ETags.of(profile.getVersion()),HttpStatus.OK);
             }else{
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
@@ -79,22 +81,27 @@ public class ProfileController {
      * Updates the {@linkplain Profile user profile} with the provided {@linkplain Profile user profile} object, if it exists
      * 
      * @param profile The {@link Profile user profile} to update
+     * @param ifMatch The ETag of the version the {@link Profile user profile} must still be at, any version if absent
      * 
-     * @return ResponseEntity with updated {@link Profile user profile} object and HTTP status of OK if updated<br>
+     * @return ResponseEntity with updated {@link Profile user profile} object, its new version as ETag and HTTP status of OK if updated<br>
      * ResponseEntity with HTTP status of NOT_FOUND if not found<br>
+     * ResponseEntity with the current version as ETag and HTTP status of PRECONDITION_FAILED if it was updated since<br>
      * ResponseEntity with HTTP status of INTERNAL_SERVER_ERROR otherwise
      */
     @PutMapping("")
-    public ResponseEntity<Profile> updateProfile(@RequestBody Profile profile) {
+    public ResponseEntity<Profile> updateProfile(@RequestBody Profile profile, @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         LOG.info("PUT /profiles/" + profile);
         try {
-            Profile existProfile = profileDao.updateProfile(profile);
+            Profile existProfile = profileDao.updateProfile(profile, ETags.expected(ifMatch));
             if (existProfile != null) {
-                return new ResponseEntity<Profile>(existProfile, HttpStatus.OK);
+                return new ResponseEntity<Profile>(existProfile, ETags.of(existProfile.getVersion()), HttpStatus.OK);
             }
             else
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
+        catch(VersionConflictException e) {
+            return new ResponseEntity<>(ETags.of(e.getActual()), HttpStatus.PRECONDITION_FAILED);
+        }
         catch(IOException e) {
             LOG.log(Level.SEVERE,e.getLocalizedMessage());
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -163,10 +170,8 @@ public class ProfileController {
                                             @RequestParam(name = "quantity") int quantity){
         LOG.info("PUT /" + userName + "?needId="+needId+"&quantity="+quantity);
         try{
-            Profile profile = profileDao.getProfile(userName);
+            Profile profile = profileDao.addContribution(userName, needId, quantity);
             if(profile != null){
-                profile.addContribution(needId, quantity);
-                profileDao.updateProfile(profile);
                 return new ResponseEntity<>(HttpStatus.OK);
             }else{
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
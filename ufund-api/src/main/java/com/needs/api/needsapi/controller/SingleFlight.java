@@ -0,0 +1,198 @@
+package com.needs.api.needsapi.controller;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import com.needs.api.needsapi.persistence.DataVersion;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Coalesces identical read requests that arrive while one is being served
+ * <p>
+ * A read passed to {@link #share} under a key that is already being computed
+ * waits for that computation and gets its result, or its exception, instead of
+ * computing it again. Keys are the request's path and query plus two versions.
+ * The {@linkplain DataVersion data version} is bumped by the stores themselves
+ * once a change is visible, so it also moves for writes made outside of any
+ * request, like those of the escrow materializer. The request version is tracked
+ * by this class as a servlet filter: every request that is not a read bumps it
+ * once when it starts and once when it ends. A read only joins a computation
+ * started at the same versions, so no write began or finished between the two,
+ * and a read that starts after a write never gets a result computed before it.
+ * <p>
+ * A computation is forgotten as soon as it finishes, results are shared between
+ * concurrent requests only and never cached.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class, registers it as a filter and injects it into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class SingleFlight implements Filter {
+    private final boolean enabled;              // false computes every read on its own
+    private final AtomicLong version = new AtomicLong();    // Bumped when a write request starts and when it ends
+    private final Map<String,CompletableFuture<Object>> flights = new ConcurrentHashMap<>();  // Computations in progress by key and version
+    private final AtomicLong computed = new AtomicLong();   // Reads that computed their result
+    private final AtomicLong joined = new AtomicLong();     // Reads that shared another's result
+
+    /**
+     * A read whose result can be shared
+     *
+     * @param <T> The type of the result
+     */
+    @FunctionalInterface
+    public interface Computation<T> {
+        /**
+         * Computes the result of the read
+         *
+         * @return The result
+         *
+         * @throws IOException if an issue with underlying storage
+         */
+        T compute() throws IOException;
+    }
+
+    /**
+     * Creates a Single Flight
+     *
+     * @param enabled false to compute every read on its own
+     */
+    @Autowired
+    public SingleFlight(@Value("${requests.coalesce:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Creates a Single Flight that computes every read on its own, for controllers
+     * created without one
+     *
+     * @return The Single Flight
+     */
+    public static SingleFlight disabled() {
+        return new SingleFlight(false);
+    }
+
+    /**
+     * Computes a read, or shares the result of an identical one in progress
+     *
+     * @param <T> The type of the result
+     * @param key The path and query of the read
+     * @param computation Computes the result of the read
+     *
+     * @return The result, possibly the same object returned to other requests,
+     * which must not modify it
+     *
+     * @throws IOException if the computation, whichever request ran it, failed with one
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T share(String key, Computation<T> computation) throws IOException {
+        if (!enabled)
+            return computation.compute();
+
+        String flightKey = key + "@" + version.get() + "/" + DataVersion.current();
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = flights.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            joined.incrementAndGet();
+            return (T)await(existing);
+        }
+
+        computed.incrementAndGet();
+        try {
+            T result = computation.compute();
+            flight.complete(result);
+            return result;
+        }
+        catch (IOException | RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            flights.remove(flightKey, flight);
+        }
+    }
+
+    /**
+     * Waits for the result of a computation another request runs
+     */
+    private static Object await(CompletableFuture<Object> flight) throws IOException {
+        try {
+            return flight.join();
+        }
+        catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw (RuntimeException)cause;
+        }
+    }
+
+    /**
+     * Starts a write, no read started before it can be shared with one started after
+     */
+    void beginWrite() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Ends a write, no read started before it can be shared with one started after
+     */
+    void endWrite() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Bumps the data version around every request that is not a read
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        String method = ((HttpServletRequest)request).getMethod();
+        if (method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        beginWrite();
+        try {
+            chain.doFilter(request, response);
+        }
+        finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Retrieves the number of reads that computed their own result
+     *
+     * @return The number of reads computed
+     */
+    public long getComputed() {
+        return computed.get();
+    }
+
+    /**
+     * Retrieves the number of reads that shared another's result
+     *
+     * @return The number of reads joined
+     */
+    public long getJoined() {
+        return joined.get();
+    }
+}
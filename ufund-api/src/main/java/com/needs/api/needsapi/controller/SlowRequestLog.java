@@ -0,0 +1,161 @@
+package com.needs.api.needsapi.controller;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import com.needs.api.needsapi.persistence.RequestPhases;
+import com.needs.api.needsapi.persistence.RequestPhases.Phase;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Breaks every request's time down into {@linkplain RequestPhases phases} and
+ * logs the requests that took longer than a threshold
+ * <p>
+ * The phases are the time the request spent waiting for DAO locks, serializing
+ * and writing data files and waiting for write-behind flushes, and the rest,
+ * which was spent computing. Requests are grouped by endpoint, their method and
+ * the path pattern of the controller method that handled them, so
+ * {@code GET /needs/1} and {@code GET /needs/2} add up under
+ * {@code GET /needs/{id}}. The totals of each endpoint are reported by
+ * {@code GET /diagnostics/endpoints}.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class, registers it as a filter and injects it into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class SlowRequestLog implements Filter {
+    private static final Logger LOG = Logger.getLogger(SlowRequestLog.class.getName());
+
+    private final long threshold;       // Nanoseconds after which a request is logged, negative logs none
+    private final Map<String,Endpoint> endpoints = new ConcurrentHashMap<>();  // Totals by method and path pattern
+
+    /**
+     * Totals of the requests to one endpoint
+     */
+    private static final class Endpoint {
+        final LongAdder requests = new LongAdder();
+        final LongAdder slow = new LongAdder();         // Requests over the threshold
+        final LongAdder nanos = new LongAdder();        // Time of every request
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final LongAdder compute = new LongAdder();      // Time outside of the phases
+        final LongAdder[] phases = new LongAdder[Phase.values().length];
+
+        Endpoint() {
+            for (int i = 0; i < phases.length; ++i)
+                phases[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Creates a Slow Request Log
+     *
+     * @param thresholdMillis Milliseconds after which a request is logged with its
+     * phases, 0 logs every request and a negative threshold none
+     */
+    public SlowRequestLog(@Value("${requests.slow.millis:500}") long thresholdMillis) {
+        this.threshold = thresholdMillis < 0 ? -1 : thresholdMillis * 1000000;
+    }
+
+    /**
+     * Records the phases of the request, and logs them if it was slow
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!RequestPhases.begin()) {
+            chain.doFilter(request, response);  // an outer dispatch of the request is recording it
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        }
+        finally {
+            long elapsed = System.nanoTime() - start;
+            HttpServletRequest httpRequest = (HttpServletRequest)request;
+            Object pattern = httpRequest.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String endpoint = httpRequest.getMethod() + " " + (pattern != null ? pattern : "unmapped");
+            record(endpoint, elapsed, RequestPhases.end());
+        }
+    }
+
+    /**
+     * Adds a request to its endpoint's totals, and logs it if it was slow
+     *
+     * @param endpoint The request's method and path pattern
+     * @param elapsed Nanoseconds the request took
+     * @param phases Nanoseconds it spent in each {@linkplain Phase phase}
+     */
+    void record(String endpoint, long elapsed, long[] phases) {
+        long compute = elapsed;
+        for (long phase : phases)
+            compute -= phase;
+        compute = Math.max(0, compute);  // the phases are timed separately, so may round past the total
+
+        Endpoint totals = endpoints.computeIfAbsent(endpoint, key -> new Endpoint());
+        totals.requests.increment();
+        totals.nanos.add(elapsed);
+        totals.maxNanos.accumulate(elapsed);
+        totals.compute.add(compute);
+        for (int i = 0; i < phases.length; ++i)
+            totals.phases[i].add(phases[i]);
+
+        if (threshold < 0 || elapsed < threshold)
+            return;
+        totals.slow.increment();
+        LOG.warning(String.format("Slow request %s took %.1f ms: lock wait %.1f ms, compute %.1f ms, serialize %.1f ms, disk write %.1f ms, flush wait %.1f ms",
+                                  endpoint, elapsed / 1e6, phases[Phase.LOCK_WAIT.ordinal()] / 1e6, compute / 1e6,
+                                  phases[Phase.SERIALIZE.ordinal()] / 1e6, phases[Phase.DISK_WRITE.ordinal()] / 1e6,
+                                  phases[Phase.FLUSH_WAIT.ordinal()] / 1e6));
+    }
+
+    /**
+     * Retrieves the totals of every endpoint for monitoring, times in milliseconds
+     *
+     * @return The number of requests, slow requests, their time and the time of
+     * each phase, by endpoint
+     */
+    public Map<String,Map<String,Object>> metrics() {
+        Map<String,Map<String,Object>> metrics = new TreeMap<>();
+        for (Map.Entry<String,Endpoint> entry : endpoints.entrySet()) {
+            Endpoint totals = entry.getValue();
+            Map<String,Object> endpoint = new LinkedHashMap<>();
+            endpoint.put("requests", totals.requests.sum());
+            endpoint.put("slowRequests", totals.slow.sum());
+            endpoint.put("totalMillis", millis(totals.nanos.sum()));
+            endpoint.put("maxMillis", millis(totals.maxNanos.get()));
+            endpoint.put("lockWaitMillis", millis(totals.phases[Phase.LOCK_WAIT.ordinal()].sum()));
+            endpoint.put("computeMillis", millis(totals.compute.sum()));
+            endpoint.put("serializeMillis", millis(totals.phases[Phase.SERIALIZE.ordinal()].sum()));
+            endpoint.put("diskWriteMillis", millis(totals.phases[Phase.DISK_WRITE.ordinal()].sum()));
+            endpoint.put("flushWaitMillis", millis(totals.phases[Phase.FLUSH_WAIT.ordinal()].sum()));
+            metrics.put(entry.getKey(), endpoint);
+        }
+        return metrics;
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds with a microsecond resolution
+     */
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+}
@@ -10,6 +10,10 @@ import com.needs.api.needsapi.persistence.BasketFileDAO;
 
 /**
  * Represents a Funding Basket entity
+ * <br>
+ * Changes to the needs replace the map instead of modifying it, so a map returned
+ * by {@link #getNeeds()} is never changed afterwards and can be read or serialized
+ * while the basket is being changed
  * 
  * @author Team Swiss Pandas
  * @author Ryan
@@ -17,7 +21,7 @@ import com.needs.api.needsapi.persistence.BasketFileDAO;
 public class FundingBasket {
     private static final Logger LOG = Logger.getLogger(FundingBasket.class.getName());
     @JsonProperty("id") private int basketId;
-    @JsonProperty("needs") private HashMap<Integer, Integer> listOfNeeds;
+    @JsonProperty("needs") private volatile HashMap<Integer, Integer> listOfNeeds;
     @JsonProperty ("userName") private String userName;
     
     static final String STRING_FORMAT = "Need [id=%d, quantity=%d]";
@@ -67,7 +71,9 @@ public class FundingBasket {
      * does not check if need exists, this is checked by BasketController.
      */
     public void addNeed(int needId, int quantity) {
-        listOfNeeds.put(needId, quantity);
+        HashMap<Integer, Integer> needs = new HashMap<>(listOfNeeds);
+        needs.put(needId, quantity);
+        listOfNeeds = needs;
     }
 
     /**
@@ -78,8 +84,8 @@ public class FundingBasket {
      * returns quantity set
      */
     public int setQuantity(int needId, int quantity){
-        listOfNeeds.put(needId, quantity);
-        return listOfNeeds.get(needId);
+        addNeed(needId, quantity);
+        return quantity;
     }
 
     /**
@@ -89,7 +95,7 @@ public class FundingBasket {
      * does not check if need exists, this is checked by BasketController.
      */
     public void addQuantity(int needId, int quantity){
-        listOfNeeds.put(needId, listOfNeeds.get(needId) + quantity);
+        addNeed(needId, listOfNeeds.get(needId) + quantity);
     }
 
     /**
@@ -98,7 +104,9 @@ public class FundingBasket {
      */
     public boolean deleteNeed(int needId){
         if(listOfNeeds.containsKey(needId)){
-            listOfNeeds.remove(Integer.valueOf(needId));
+            HashMap<Integer, Integer> needs = new HashMap<>(listOfNeeds);
+            needs.remove(Integer.valueOf(needId));
+            listOfNeeds = needs;
             return true;
         }
         return false;
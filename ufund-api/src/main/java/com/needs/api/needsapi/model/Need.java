@@ -24,6 +24,7 @@ public class Need {
     @JsonProperty("urgencyImage") private String urgencyImage;
     @JsonProperty("description") private String description;
     @JsonProperty("image") private String image;
+    @JsonProperty("version") private long version;
   
     /**
      * Create a need with the given id and name
@@ -138,6 +139,12 @@ public class Need {
      */
     public UrgencyTag getUrgency() { return urgencyTag;}
 
+    /**
+     * Retrieves the urgency image of the need
+     * @return The urgency image of the need
+     */
+    public String getUrgencyImage() { return urgencyImage;}
+
     /**
      * Sets the description of the need - necessary for JSON object to Java object deserialization
      * @param description The description of the need
@@ -163,6 +170,19 @@ public class Need {
 
     public void setImage(String image) {this.image = image;}
 
+    /**
+     * Retrieves the version of the need, increased by every update so that
+     * conflicting updates can be detected
+     * @return The version of the need
+     */
+    public long getVersion() {return version;}
+
+    /**
+     * Sets the version of the need - necessary for JSON object to Java object deserialization
+     * @param version The version of the need
+     */
+    public void setVersion(long version) {this.version = version;}
+
     /**
      * {@inheritDoc}
      */
@@ -17,6 +17,7 @@ public class Profile {
     @JsonProperty("isPrivate") private boolean isPrivate;
     @JsonProperty("userName") private String userName;
     @JsonProperty("contributions") private HashMap<Integer,Integer> contributions;
+    @JsonProperty("version") private long version;
 
     static final String STRING_FORMAT = "Profile [firstName = %s, lastName = %s, email = %s, country = %s, isPrivate = %s]";
     
@@ -146,6 +147,22 @@ public class Profile {
         this.contributions = contributions;
     }
 
+    /**
+     * @return the version of the profile, increased by every update so that
+     * conflicting updates can be detected
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * sets the version of the profile
+     * @param version the version of the profile
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
      /**
      * {@inheritDoc}
      */
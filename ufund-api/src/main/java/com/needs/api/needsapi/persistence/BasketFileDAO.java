@@ -1,26 +1,32 @@
 package com.needs.api.needsapi.persistence;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import com.needs.api.needsapi.model.FundingBasket;
 import com.needs.api.needsapi.model.Login;
 import com.needs.api.needsapi.model.Need;
-import com.needs.api.needsapi.model.Profile;
 
 
 /**
  * Implements the functionality for JSON file-based peristance for Funding Baskets
+ * <br>
+ * Operations on a basket hold that basket's {@linkplain LockStripes stripe}, so
+ * changes to different users' baskets do not wait for each other except while
+ * the store records them
  * 
  * {@literal @}Component Spring annotation instantiates a single instance of this
  * class and injects the instance into other classes as needed
@@ -29,16 +35,16 @@ import com.needs.api.needsapi.model.Profile;
  * @author Jack Sutton
  */
 @Component
+@Profile("!jdbc")
 public class BasketFileDAO implements BasketDAO {
     private static final Logger LOG = Logger.getLogger(BasketFileDAO.class.getName());
-    Map<Integer,FundingBasket> baskets;   // Provides a local cache of the basket objects
-                                            // so that we don't need to read from the file
-                                            // each time
-    private ObjectMapper objectMapper;  // Provides conversion between FundingBasket
-                                        // objects and JSON text format written
-                                        // to the file
+    FileBackedStore<Integer,FundingBasket> baskets;   // Provides a local cache of the basket objects
+                                                        // so that we don't need to read from the file
+                                                        // each time
+    LockStripes locks = new LockStripes("basket stripes",LockStripes.DEFAULT);  // Serializes the operations on each basket
     private static int nextId;  // The next Id to assign to a new need
-    private String filename;    // Filename to read from and write to
+    private BasketRecordStore records;  // Per-basket storage used instead of the single file when enabled
+    private final UniqueIndex<Integer,FundingBasket,String> owners = new UniqueIndex<>(FundingBasket::getUsername);  // Basket id by owner username, record mode keeps its own
 
     //Need Controller to deal with getting needs inside baskets
 
@@ -50,60 +56,123 @@ public class BasketFileDAO implements BasketDAO {
      * 
      * @throws IOException when file cannot be accessed or read from
      */
-    public BasketFileDAO(@Value("${baskets.file}") String filename,ObjectMapper objectMapper, NeedDAO needDAO) throws IOException {
-        this.filename = filename;
-        this.objectMapper = objectMapper;
-        load();  // load the needs from the file
+    public BasketFileDAO(String filename,ObjectMapper objectMapper, NeedDAO needDAO) throws IOException {
+        this(filename,objectMapper,needDAO,WriteBehindFlusher.synchronous(),null);
     }
 
     /**
-     * Generates the next id for a new {@linkplain FundingBasket funding basket}
+     * Creates a Funding Basket File Data Access Object
      * 
-     * @return The next id
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param records The {@link BasketRecordStore record store} to keep baskets in instead of the file, may be null
+     * 
+     * @throws IOException when file cannot be accessed or read from
      */
-    private synchronized static int nextId() {
-        int id = nextId;
-        ++nextId;
-        return id;
+    public BasketFileDAO(String filename,ObjectMapper objectMapper, NeedDAO needDAO, WriteBehindFlusher flusher, BasketRecordStore records) throws IOException {
+        this(filename,objectMapper,needDAO,flusher,records,BinarySnapshot.disabled());
     }
 
     /**
-     * Generates an array of {@linkplain FundingBasket funding baskets}
+     * Creates a Funding Basket File Data Access Object
      * 
-     * @return  The array of {@link FundingBasket funding baskets}, may be empty
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param records The {@link BasketRecordStore record store} to keep baskets in instead of the file, may be null
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * 
+     * @throws IOException when file cannot be accessed or read from
      */
-    private FundingBasket[] getBasketArray(){
-        ArrayList<FundingBasket> basketArrayList = new ArrayList<>();
-
-        for(FundingBasket basket : baskets.values()){
-            basketArrayList.add(basket);
-        }
+    public BasketFileDAO(String filename,ObjectMapper objectMapper, NeedDAO needDAO, WriteBehindFlusher flusher, BasketRecordStore records, BinarySnapshot snapshots) throws IOException {
+        this(filename,objectMapper,needDAO,flusher,records,snapshots,JsonStreams.arrays());
+    }
 
-        FundingBasket[] basketArray = new FundingBasket[basketArrayList.size()];
-        basketArrayList.toArray(basketArray);
-        return basketArray;
+    /**
+     * Creates a Funding Basket File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param records The {@link BasketRecordStore record store} to keep baskets in instead of the file, may be null
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link FundingBasket funding basket} at a time
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public BasketFileDAO(String filename,ObjectMapper objectMapper, NeedDAO needDAO, WriteBehindFlusher flusher, BasketRecordStore records, BinarySnapshot snapshots, JsonStreams streams) throws IOException {
+        this(filename,objectMapper,needDAO,flusher,records,snapshots,streams,LsmStorage.disabled());
     }
 
+    /**
+     * Creates a Funding Basket File Data Access Object
+     * <br>
+     * Record mode takes precedence over LSM storage when both are enabled
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param records The {@link BasketRecordStore record store} to keep baskets in instead of the file, may be null
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link FundingBasket funding basket} at a time
+     * @param lsm The {@link LsmStorage LSM storage} to keep baskets in instead of the file
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public BasketFileDAO(String filename,ObjectMapper objectMapper, NeedDAO needDAO, WriteBehindFlusher flusher, BasketRecordStore records, BinarySnapshot snapshots, JsonStreams streams, LsmStorage lsm) throws IOException {
+        this(filename,objectMapper,needDAO,flusher,records,snapshots,streams,lsm,MutationBus.disabled());
+    }
 
     /**
-     * Saves the {@linkplain FundingBasket baskets} from the map into the file as an array of JSON objects
+     * Creates a Funding Basket File Data Access Object
+     * <br>
+     * Record mode takes precedence over LSM storage when both are enabled
      * 
-     * @return true if the {@link FundingBasket baskets} were written successfully
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param records The {@link BasketRecordStore record store} to keep baskets in instead of the file, may be null
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link FundingBasket funding basket} at a time
+     * @param lsm The {@link LsmStorage LSM storage} to keep baskets in instead of the file
+     * @param events The {@link MutationBus mutation bus} every change is published to
      * 
-     * @throws IOException when file cannot be accessed or written to
+     * @throws IOException when file cannot be accessed or read from
      */
-    private boolean save() throws IOException {
-        FundingBasket[] basketArray = getBasketArray();
+    @Autowired
+    public BasketFileDAO(@Value("${baskets.file}") String filename,ObjectMapper objectMapper, NeedDAO needDAO, WriteBehindFlusher flusher, BasketRecordStore records, BinarySnapshot snapshots, JsonStreams streams, LsmStorage lsm, MutationBus events) throws IOException {
+        FileBackedStore.Codec<FundingBasket> json = FileBackedStore.Codec.json(objectMapper,streams,FundingBasket.class);
+        if (records != null && records.isEnabled()) {
+            this.records = records;
+            // store() writes only the changed basket's record before putting it, holding
+            // the basket's stripe but not the store's lock, and removals delete the record
+            baskets = new FileBackedStore<>(filename,records,FundingBasket::getId,json,flusher)
+                .flushPolicy((basketId,basket) -> true);
+        }
+        else {
+            Map<Integer,FundingBasket> values = lsm.isEnabled() ? lsm.open("baskets",LsmStore.INTEGERS,FundingBasket.class) : new TreeMap<>();
+            baskets = new FileBackedStore<>(filename,values,FundingBasket::getId,
+                                            json.withSnapshots(snapshots,SnapshotCodecs.BASKETS),flusher)
+                .index(owners);
+        }
+        baskets.publishTo(events.topic(MutationEvent.Entity.BASKET));
+        load();  // load the needs from the file
+    }
 
-        // Serializes the Java Objects to JSON objects into the file
-        // writeValue will thrown an IOException if there is an issue
-        // with the file or reading from the file
-        objectMapper.writeValue(new File(filename),basketArray);
-        return true;
+    /**
+     * Generates the next id for a new {@linkplain FundingBasket funding basket}
+     * 
+     * @return The next id
+     */
+    private synchronized static int nextId() {
+        int id = nextId;
+        ++nextId;
+        return id;
     }
 
     /**
-     * Loads {@linkplain FundingBasket funding baskets} from the JSON file into the map
+     * Loads {@linkplain FundingBasket funding baskets} from the file into the store
      * <br>
      * Also sets next id to one more than the greatest id found in the file
      * 
@@ -112,18 +181,19 @@ public class BasketFileDAO implements BasketDAO {
      * @throws IOException when file cannot be accessed or read from
      */
     private boolean load() throws IOException {
-        baskets = new TreeMap<>();
+        if (records != null)
+            return loadRecords();
+
         nextId = 0;
 
-        // Deserializes the JSON objects from the file into an array of funding baskets
-        // readValue will throw an IOException if there's an issue with the file
+        // Deserializes the JSON objects from the file one funding basket at a time,
+        // or reads them from the binary snapshot if it is current
+        // load will throw an IOException if there's an issue with the file
         // or reading from the file
-        
-        FundingBasket[] basketArray = objectMapper.readValue(new File("data/baskets.json"),FundingBasket[].class);
+        baskets.load();
 
-        // Add each need to the tree map and keep track of the greatest id
-        for (FundingBasket basket : basketArray) {
-            baskets.put(basket.getId(),basket);
+        // Keep track of the greatest id
+        for (FundingBasket basket : baskets.values()) {
             if (basket.getId() > nextId)
                 nextId = basket.getId();
         }
@@ -133,18 +203,36 @@ public class BasketFileDAO implements BasketDAO {
         return true;
     }
 
+    /**
+     * Opens the {@linkplain BasketRecordStore record store} as the map of
+     * {@linkplain FundingBasket funding baskets}, importing the JSON file the
+     * first time record mode is used
+     * <br>
+     * Also sets next id to one more than the greatest id in the index
+     * 
+     * @return true if the index was read successfully
+     * 
+     * @throws IOException when the file or the index cannot be accessed or read from
+     */
+    private boolean loadRecords() throws IOException {
+        if (!records.exists()) {
+            List<FundingBasket> imported = new ArrayList<>();
+            baskets.getCodec().read(baskets.getFile(),imported::add);
+            records.importAll(imported.toArray(new FundingBasket[imported.size()]));
+        }
+        records.open();
+
+        nextId = records.maxId() + 1;
+        return true;
+    }
+
     /**
     ** {@inheritDoc}
      */
     @Override
     public HashMap<Integer, Integer> getNeeds(int basketId) {
-        synchronized(baskets) {
-            if (baskets.containsKey(basketId)){
-                return baskets.get(basketId).getNeeds();
-            }
-            else
-                return null;
-        }
+        FundingBasket basket = baskets.get(basketId);
+        return basket == null ? null : basket.getNeeds();
     }
 
     /**
@@ -152,12 +240,26 @@ public class BasketFileDAO implements BasketDAO {
      */
     @Override
     public FundingBasket getBasket(int basketId) {
-        synchronized(baskets) {
-            if (baskets.containsKey(basketId))
-                return baskets.get(basketId);
-            else
-                return null;
-        }
+        return baskets.get(basketId);
+    }
+
+    /**
+     * Hands a {@linkplain FundingBasket funding basket} changed in place back to
+     * the store, while holding the basket's stripe
+     * <br>
+     * The basket is put rather than reported as changed, because a store that
+     * keeps only some values in memory may have dropped it since it was read.
+     * In record mode its record is written before the store's lock is taken,
+     * so records of different baskets are written in parallel, and the index
+     * never names a basket whose record is not yet on disk.
+     * 
+     * @throws IOException if the change cannot be written
+     */
+    private FundingBasket store(FundingBasket basket) throws IOException {
+        if (records != null)
+            records.writeRecord(basket);
+        baskets.put(basket); // may throw an IOException
+        return basket;
     }
 
     /**
@@ -165,14 +267,24 @@ public class BasketFileDAO implements BasketDAO {
      */
     @Override
     public FundingBasket clearBasket(int basketId) throws IOException{
-        synchronized(baskets){
-            if(baskets.containsKey(basketId)){
-                baskets.get(basketId).clearNeeds();
-                save();
-                return baskets.get(basketId);
+        try {
+            ReentrantLock lock = locks.of(basketId);
+            lock.lock();
+            try {
+                FundingBasket basket = baskets.get(basketId);
+                if(basket != null){
+                    basket.clearNeeds();
+                    return store(basket);
+                }
+                else
+                    return null;
             }
-            else
-                return null;
+            finally {
+                lock.unlock();
+            }
+        }
+        finally {
+            baskets.await();
         }
     }
     
@@ -181,11 +293,19 @@ public class BasketFileDAO implements BasketDAO {
      */
     @Override
     public FundingBasket createBasket(String userName) throws IOException {
-        synchronized(baskets) {
+        try {
             FundingBasket newBasket = new FundingBasket(nextId(),userName);
-            baskets.put(newBasket.getId(),newBasket);
-            save(); // may throw an IOException
-            return newBasket;
+            ReentrantLock lock = locks.of(newBasket.getId());
+            lock.lock();
+            try {
+                return store(newBasket); // may throw an IOException
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        finally {
+            baskets.await();
         }
     }
 
@@ -194,12 +314,18 @@ public class BasketFileDAO implements BasketDAO {
      */
     @Override
     public boolean deleteBasket(int basketId) throws IOException {
-        synchronized(baskets) {
-            if(baskets.containsKey(basketId)){
-                baskets.remove(basketId);
-                return save();
+        try {
+            ReentrantLock lock = locks.of(basketId);
+            lock.lock();
+            try {
+                return baskets.remove(basketId); // may throw an IOException
+            }
+            finally {
+                lock.unlock();
             }
-            return false;
+        }
+        finally {
+            baskets.await();
         }
     }
 
@@ -214,16 +340,24 @@ public class BasketFileDAO implements BasketDAO {
      * @throws IOException if an issue with underlying storage
      */
     public FundingBasket addNeed(int basketId, int needId, int quantity) throws IOException {
-        synchronized(baskets) {
-            if(
-            baskets.containsKey(basketId)
-            ){
-                baskets.get(basketId).addNeed(needId, quantity);
-                save();
-                return baskets.get(basketId);
+        try {
+            ReentrantLock lock = locks.of(basketId);
+            lock.lock();
+            try {
+                FundingBasket basket = baskets.get(basketId);
+                if(basket != null){
+                    basket.addNeed(needId, quantity);
+                    return store(basket);
+                }
+                else
+                    return null;
             }
-            else
-                return null;
+            finally {
+                lock.unlock();
+            }
+        }
+        finally {
+            baskets.await();
         }
     }
 
@@ -231,15 +365,23 @@ public class BasketFileDAO implements BasketDAO {
     ** {@inheritDoc}
      */
     public FundingBasket setQuantity(int basketId, int needId, int quantity) throws IOException{
-        synchronized(baskets){
-            if(baskets.containsKey(basketId)){
-                if(baskets.get(basketId).getNeeds().containsKey(needId)){
-                    baskets.get(basketId).setQuantity(needId, quantity);
-                    save();
-                    return baskets.get(basketId);
+        try {
+            ReentrantLock lock = locks.of(basketId);
+            lock.lock();
+            try {
+                FundingBasket basket = baskets.get(basketId);
+                if(basket != null && basket.getNeeds().containsKey(needId)){
+                    basket.setQuantity(needId, quantity);
+                    return store(basket);
                 }
+                return null;
+            }
+            finally {
+                lock.unlock();
             }
-            return null;
+        }
+        finally {
+            baskets.await();
         }
     }
 
@@ -247,12 +389,11 @@ public class BasketFileDAO implements BasketDAO {
     ** {@inheritDoc}
      */
     public int getQuantity(int basketId, int needId){
-        synchronized(baskets){
-            if(baskets.containsKey(basketId) && baskets.get(basketId).getNeeds().get(needId) != null){
-                return baskets.get(basketId).getNeeds().get(needId);
-            }
-            return -1;
+        FundingBasket basket = baskets.get(basketId);
+        if(basket != null && basket.getNeeds().get(needId) != null){
+            return basket.getNeeds().get(needId);
         }
+        return -1;
     }
 
 
@@ -260,14 +401,23 @@ public class BasketFileDAO implements BasketDAO {
     ** {@inheritDoc}
      */
     public FundingBasket removeNeed(int basketId, int needId) throws IOException {
-        synchronized(baskets) {
-            if(
-            baskets.containsKey(basketId) &&
-            baskets.get(basketId).deleteNeed(needId)){
-                return baskets.get(basketId);
+        try {
+            ReentrantLock lock = locks.of(basketId);
+            lock.lock();
+            try {
+                FundingBasket basket = baskets.get(basketId);
+                if(basket != null && basket.deleteNeed(needId)){
+                    return store(basket);
+                }
+                else
+                    return null;
             }
-            else
-                return null;
+            finally {
+                lock.unlock();
+            }
+        }
+        finally {
+            baskets.await();
         }
     }
 
@@ -276,34 +426,47 @@ public class BasketFileDAO implements BasketDAO {
      */
     @Override
     public String getUsername(int basketId) throws IOException{
-        synchronized(baskets){
-            if(baskets.containsKey(basketId)){
-                return baskets.get(basketId).getUsername();
-            }
-            return null;
-        }
+        FundingBasket basket = baskets.get(basketId);
+        return basket == null ? null : basket.getUsername();
     }
 
     @Override
     public int getId(String username) throws IOException {
-        for(FundingBasket basket : baskets.values()){
-            if(basket.getUsername() == username){
-                return basket.getId();
-            }
+        if (records == null) {
+            // the index is kept in step under the store's lock, so it can be read without it
+            Integer basketId = owners.get(username);
+            return basketId == null ? -1 : basketId;
+        }
+
+        baskets.lock();
+        try {
+            return records.idOf(username);  // answered from the index, without reading any basket
+        }
+        finally {
+            baskets.unlock();
         }
-        return -1;
     }
 
     @Override
     public boolean setUsername(int basketId, String userName) throws IOException {
-        synchronized(baskets){
-            if(baskets.containsKey(basketId)){
-                baskets.get(basketId).setUsername(userName);
-                save();
-                return true;
-            
+        try {
+            ReentrantLock lock = locks.of(basketId);
+            lock.lock();
+            try {
+                FundingBasket basket = baskets.get(basketId);
+                if(basket != null){
+                    basket.setUsername(userName);
+                    store(basket);
+                    return true;
+                }
+                return false;
+            }
+            finally {
+                lock.unlock();
             }
-            return false;
+        }
+        finally {
+            baskets.await();
         }
     }
 }
@@ -0,0 +1,343 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.needs.api.needsapi.model.FundingBasket;
+
+/**
+ * Record-per-basket storage used by the record mode of {@link BasketFileDAO}
+ * <p>
+ * Every {@linkplain FundingBasket basket} is kept in its own file named after
+ * its id, and a small index file maps each basket id to its owner's username.
+ * Only the index is read at startup. Baskets are read from disk the first time
+ * they are accessed and kept in a least recently used cache of bounded size,
+ * so memory use and the cost of a write depend on the active users instead of
+ * every registered user.
+ * <p>
+ * The store is a {@link Map} so the DAO can use it in place of its in-memory
+ * map. It is not thread safe; the DAO only uses it while holding its lock.
+ * Changes made to a basket object are written with {@link #write(int)}, or
+ * with {@link #writeRecord(FundingBasket)} once the basket has been put back.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class BasketRecordStore extends AbstractMap<Integer,FundingBasket> {
+    static final String INDEX = "index.json";
+
+    private File directory;     // Directory holding the index and one file per basket
+    private ObjectMapper objectMapper;  // Provides conversion between FundingBasket
+                                        // objects and JSON text format written
+                                        // to the files
+    private TreeMap<Integer,String> index = new TreeMap<>();    // Basket id to owner username, always fully loaded
+    private Map<String,Integer> owners = new HashMap<>();   // Owner username to basket id
+    private LinkedHashMap<Integer,FundingBasket> cache;     // Resident baskets in least recently used order
+
+    /**
+     * Creates a Basket Record Store
+     *
+     * @param directory Directory to keep the basket records in, record mode is disabled if empty
+     * @param capacity Maximum number of baskets kept in memory
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     */
+    public BasketRecordStore(@Value("${baskets.records.dir:}") String directory,
+                             @Value("${baskets.records.cache:1000}") int capacity,
+                             ObjectMapper objectMapper) {
+        if (directory != null && !directory.isBlank())
+            this.directory = new File(directory.trim());
+        this.objectMapper = objectMapper;
+
+        final int limit = Math.max(1, capacity);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer,FundingBasket> eldest) {
+                // Every change is written through, so an evicted basket never has unsaved changes
+                return size() > limit;
+            }
+        };
+    }
+
+    /**
+     * Determines if record mode has been configured
+     *
+     * @return true if baskets should be stored one record per basket
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Determines if the store has been initialized on disk
+     *
+     * @return true if the index file exists
+     */
+    boolean exists() {
+        return new File(directory, INDEX).exists();
+    }
+
+    /**
+     * Writes every given {@linkplain FundingBasket basket} as its own record, used to
+     * migrate from the single JSON file
+     *
+     * @param baskets The {@link FundingBasket baskets} to import
+     *
+     * @throws IOException when a record or the index cannot be written
+     */
+    void importAll(FundingBasket[] baskets) throws IOException {
+        Files.createDirectories(directory.toPath());
+        for (FundingBasket basket : baskets) {
+            writeRecord(basket);
+            index.put(basket.getId(), basket.getUsername());
+        }
+        writeIndex();
+    }
+
+    /**
+     * Reads the index, leaving every basket on disk until it is accessed
+     *
+     * @throws IOException when the index cannot be read
+     */
+    void open() throws IOException {
+        Files.createDirectories(directory.toPath());
+        index = new TreeMap<>();
+        owners = new HashMap<>();
+        cache.clear();
+
+        File indexFile = new File(directory, INDEX);
+        if (indexFile.exists())
+            index.putAll(objectMapper.readValue(indexFile, new TypeReference<Map<Integer,String>>() {}));
+        for (Map.Entry<Integer,String> entry : index.entrySet())
+            owners.putIfAbsent(entry.getValue(), entry.getKey());
+    }
+
+    /**
+     * Retrieves the greatest basket id in the index
+     *
+     * @return The greatest id, or 0 if there are no baskets
+     */
+    int maxId() {
+        return index.isEmpty() ? 0 : index.lastKey();
+    }
+
+    /**
+     * Retrieves the id of the {@linkplain FundingBasket basket} owned by a user
+     * without reading any basket
+     *
+     * @param username The owner's username
+     *
+     * @return The basket id, or -1 if the user has no basket
+     */
+    int idOf(String username) {
+        Integer id = owners.get(username);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Retrieves the number of baskets currently held in memory
+     *
+     * @return The number of resident baskets
+     */
+    int resident() {
+        return cache.size();
+    }
+
+    /**
+     * Writes a changed {@linkplain FundingBasket basket} to its record, and the index
+     * if its owner changed
+     *
+     * @param basketId The id of the changed {@link FundingBasket basket}
+     *
+     * @throws IOException when the record or the index cannot be written
+     */
+    void write(int basketId) throws IOException {
+        FundingBasket basket = cache.get(basketId);
+        if (basket == null)
+            return;   // deleted, or never loaded and so never changed
+
+        writeRecord(basket);
+        String owner = index.get(basketId);
+        if (owner == null ? basket.getUsername() != null : !owner.equals(basket.getUsername())) {
+            owners.remove(owner, basketId);
+            index.put(basketId, basket.getUsername());
+            owners.put(basket.getUsername(), basketId);
+            writeIndex();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Retrieves a {@linkplain FundingBasket basket}, reading its record on first access
+     * <br>
+     * A basket whose record is missing, left by a crash between writing the index
+     * and the record, is treated as absent
+     */
+    @Override
+    public FundingBasket get(Object key) {
+        if (!index.containsKey(key))
+            return null;
+
+        FundingBasket basket = cache.get(key);
+        if (basket == null) {
+            File record = recordFile((Integer)key);
+            if (!record.exists())
+                return null;
+            try {
+                basket = objectMapper.readValue(record, FundingBasket.class);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cache.put((Integer)key, basket);
+        }
+        return basket;
+    }
+
+    /**
+     * Adds a {@linkplain FundingBasket basket} to the index and the cache
+     * <br>
+     * The record itself is written by {@link #writeRecord(FundingBasket)} before the basket
+     * is put, or by {@link #write(int)} once the DAO reports the change. The index is only
+     * rewritten if the basket is new or its owner changed
+     */
+    @Override
+    public FundingBasket put(Integer key, FundingBasket basket) {
+        boolean existed = index.containsKey(key);
+        FundingBasket previous = existed ? get(key) : null;
+        cache.put(key, basket);
+        String owner = index.put(key, basket.getUsername());
+        if (existed && Objects.equals(owner, basket.getUsername()))
+            return previous;
+
+        if (existed)
+            owners.remove(owner, key);
+        owners.put(basket.getUsername(), key);
+        try {
+            writeIndex();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return previous;
+    }
+
+    /**
+     * Removes a {@linkplain FundingBasket basket}, its record and its index entry
+     */
+    @Override
+    public FundingBasket remove(Object key) {
+        if (!index.containsKey(key))
+            return null;
+
+        FundingBasket previous = get(key);
+        cache.remove(key);
+        owners.remove(index.remove(key), key);
+        try {
+            Files.deleteIfExists(recordFile((Integer)key).toPath());
+            writeIndex();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Iterates over every {@linkplain FundingBasket basket}, reading each one that is
+     * not resident. Only needed for a full export.
+     */
+    @Override
+    public Set<Map.Entry<Integer,FundingBasket>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<Integer,FundingBasket>> iterator() {
+                Iterator<Integer> ids = index.keySet().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return ids.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<Integer,FundingBasket> next() {
+                        Integer id = ids.next();
+                        return new AbstractMap.SimpleImmutableEntry<>(id, get(id));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return index.size();
+            }
+        };
+    }
+
+    /**
+     * Retrieves the file holding a basket's record
+     */
+    private File recordFile(int basketId) {
+        return new File(directory, basketId + ".json");
+    }
+
+    /**
+     * Writes a basket's record to a temporary file and moves it into place
+     * <br>
+     * Only touches that basket's files, so it may be called without the DAO's
+     * lock as long as the same basket is never written by two threads at once
+     *
+     * @param basket The {@link FundingBasket basket} to write
+     *
+     * @throws IOException when the record cannot be written
+     */
+    void writeRecord(FundingBasket basket) throws IOException {
+        File temp = new File(directory, basket.getId() + ".json.tmp");
+        objectMapper.writeValue(temp, basket);
+        Files.move(temp.toPath(), recordFile(basket.getId()).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it into place
+     */
+    private void writeIndex() throws IOException {
+        File temp = new File(directory, INDEX + ".tmp");
+        objectMapper.writeValue(temp, index);
+        Files.move(temp.toPath(), new File(directory, INDEX).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,342 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compact binary snapshots of the data files, used to speed up cold starts
+ * <p>
+ * When enabled, each file DAO looks for a snapshot next to its JSON file
+ * (the JSON file name with {@value #EXTENSION} appended) and loads it instead of
+ * parsing the JSON. The JSON file stays the source of truth and the interchange
+ * format: a snapshot records the size and modification time of the JSON file it
+ * was taken from, and is ignored once the JSON file has been written since. After
+ * loading from JSON the DAO takes a fresh snapshot for the next start.
+ * <p>
+ * A snapshot is laid out as
+ * <ul>
+ * <li>a fixed header: magic number, schema version, entity tag, the JSON file's
+ * size and modification time, record count and a CRC32 checksum of the body</li>
+ * <li>a string table, each string stored once as a length prefixed UTF-8 value</li>
+ * <li>the records, each prefixed with its length and encoded by a {@linkplain SnapshotCodec codec}</li>
+ * </ul>
+ * A snapshot with the wrong magic number, version, entity tag or checksum is
+ * ignored and the JSON file is used instead.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class BinarySnapshot {
+    private static final Logger LOG = Logger.getLogger(BinarySnapshot.class.getName());
+
+    static final String EXTENSION = ".bin";
+    static final int MAGIC = 0x55465342;    // "UFSB"
+    static final short VERSION = 2;   // 2 added entity versions
+    static final int HEADER_SIZE = 36;
+
+    private final boolean enabled;  // Whether the DAOs read and write snapshots
+
+    /**
+     * Loads the contents of a data file from its JSON form
+     */
+    @FunctionalInterface
+    public interface JsonLoader<T> {
+        /**
+         * @param sink Receives each entity read from the JSON file
+         * @throws IOException if the JSON file cannot be read
+         */
+        void load(Consumer<? super T> sink) throws IOException;
+    }
+
+    /**
+     * Creates a Binary Snapshot
+     *
+     * @param enabled Whether the DAOs should read and write binary snapshots
+     */
+    public BinarySnapshot(@Value("${persistence.binary:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Creates a Binary Snapshot that never reads or writes snapshots, so the DAOs
+     * only use their JSON files
+     *
+     * @return A disabled Binary Snapshot
+     */
+    public static BinarySnapshot disabled() {
+        return new BinarySnapshot(false);
+    }
+
+    /**
+     * Determines if snapshots are read and written
+     *
+     * @return true if binary snapshots are enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Loads the entities of a data file, from its snapshot when there is a
+     * current one and from the JSON file otherwise
+     * <br>
+     * When snapshots are enabled and the JSON file had to be read, a new snapshot
+     * is written. Failing to write it is logged but does not fail the load.
+     *
+     * @param <T> The entity type
+     * @param json The JSON data file
+     * @param codec The {@linkplain SnapshotCodec codec} for the entity type
+     * @param sink Receives each entity, in the order they were saved
+     * @param loader Reads the JSON file
+     *
+     * @throws IOException if neither the snapshot nor the JSON file can be read
+     */
+    public <T> void load(File json, SnapshotCodec<T> codec, Consumer<? super T> sink, JsonLoader<T> loader) throws IOException {
+        if (!enabled) {
+            loader.load(sink);
+            return;
+        }
+
+        File snapshot = snapshotFile(json);
+        if (snapshot.exists()) {
+            int[] delivered = new int[1];
+            try {
+                if (read(snapshot, codec, json, value -> {
+                        ++delivered[0];
+                        sink.accept(value);
+                    }))
+                    return;
+            }
+            catch (IOException e) {
+                // Records already handed over cannot be taken back, so only fall back to JSON before the first one
+                if (delivered[0] > 0)
+                    throw e;
+                LOG.log(Level.WARNING, "Ignoring unreadable snapshot " + snapshot + ": " + e.getLocalizedMessage());
+            }
+        }
+
+        // Only references are kept, the entities themselves are the ones the sink retains
+        List<T> values = new ArrayList<>();
+        loader.load(value -> {
+            values.add(value);
+            sink.accept(value);
+        });
+        try {
+            write(snapshot, codec, values, json);
+        }
+        catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not write snapshot " + snapshot + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Retrieves the snapshot file belonging to a JSON data file
+     *
+     * @param json The JSON data file
+     *
+     * @return The snapshot file
+     */
+    public static File snapshotFile(File json) {
+        return new File(json.getPath() + EXTENSION);
+    }
+
+    /**
+     * Writes a snapshot, through a temporary file that is moved into place
+     *
+     * @param <T> The entity type
+     * @param snapshot The snapshot file
+     * @param codec The {@linkplain SnapshotCodec codec} for the entity type
+     * @param values The entities to write
+     * @param source The JSON file the entities were read from, or null if the
+     *               snapshot should stay current regardless of any JSON file
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static <T> void write(File snapshot, SnapshotCodec<T> codec, Collection<? extends T> values, File source) throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records);
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        for (T value : values) {
+            record.reset();
+            codec.write(value, strings, new DataOutputStream(record));
+            recordsOut.writeInt(record.size());
+            record.writeTo(recordsOut);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(records.size() + 64 * strings.values.size());
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        bodyOut.writeInt(strings.values.size());
+        for (String string : strings.values) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            bodyOut.writeInt(bytes.length);
+            bodyOut.write(bytes);
+        }
+        records.writeTo(bodyOut);
+        byte[] bodyBytes = body.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        boolean stamped = source != null && source.exists();
+
+        File temp = new File(snapshot.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp.toPath()))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(codec.kind());
+            out.writeLong(stamped ? source.length() : -1);
+            out.writeLong(stamped ? source.lastModified() : -1);
+            out.writeInt(values.size());
+            out.writeInt((int)crc.getValue());
+            out.writeInt(bodyBytes.length);
+            out.write(bodyBytes);
+        }
+        Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot
+     *
+     * @param <T> The entity type
+     * @param snapshot The snapshot file
+     * @param codec The {@linkplain SnapshotCodec codec} for the entity type
+     * @param source The JSON file the snapshot must be current with, or null to
+     *               read the snapshot regardless
+     *
+     * @return The entities, or null if the JSON file has changed since the snapshot was taken
+     *
+     * @throws IOException if the snapshot cannot be read, is corrupt, or was written
+     *                     by another schema version or for another entity type
+     */
+    public static <T> T[] read(File snapshot, SnapshotCodec<T> codec, File source) throws IOException {
+        List<T> values = new ArrayList<>();
+        if (!read(snapshot, codec, source, values::add))
+            return null;
+
+        @SuppressWarnings("unchecked")
+        T[] array = (T[])Array.newInstance(codec.type(), values.size());
+        return values.toArray(array);
+    }
+
+    /**
+     * Reads a snapshot, handing each entity over as soon as it is decoded
+     * <br>
+     * The header and checksum are verified before any entity is decoded
+     *
+     * @param <T> The entity type
+     * @param snapshot The snapshot file
+     * @param codec The {@linkplain SnapshotCodec codec} for the entity type
+     * @param source The JSON file the snapshot must be current with, or null to
+     *               read the snapshot regardless
+     * @param sink Receives each entity, in the order they were written
+     *
+     * @return false if the JSON file has changed since the snapshot was taken, in
+     *         which case no entity is read
+     *
+     * @throws IOException if the snapshot cannot be read, is corrupt, or was written
+     *                     by another schema version or for another entity type
+     */
+    public static <T> boolean read(File snapshot, SnapshotCodec<T> codec, File source, Consumer<? super T> sink) throws IOException {
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        if (bytes.length < HEADER_SIZE)
+            throw new IOException("Truncated snapshot header");
+
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(bytes, 0, HEADER_SIZE));
+        if (header.readInt() != MAGIC)
+            throw new IOException("Not a snapshot");
+        short version = header.readShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version " + version);
+        short kind = header.readShort();
+        if (kind != codec.kind())
+            throw new IOException("Snapshot holds entity type " + kind + ", expected " + codec.kind());
+        long sourceLength = header.readLong();
+        long sourceModified = header.readLong();
+        int count = header.readInt();
+        int checksum = header.readInt();
+        int bodyLength = header.readInt();
+
+        if (source != null && source.exists()
+                && (source.length() != sourceLength || source.lastModified() != sourceModified))
+            return false;
+
+        if (bodyLength < 0 || bodyLength != bytes.length - HEADER_SIZE)
+            throw new IOException("Truncated snapshot body");
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, bodyLength);
+        if ((int)crc.getValue() != checksum)
+            throw new IOException("Snapshot checksum mismatch");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, HEADER_SIZE, bodyLength));
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; ++i) {
+            byte[] string = new byte[in.readInt()];
+            in.readFully(string);
+            strings[i] = new String(string, StandardCharsets.UTF_8);
+        }
+
+        for (int i = 0; i < count; ++i) {
+            int length = in.readInt();
+            byte[] record = new byte[length];
+            in.readFully(record);
+            sink.accept(codec.read(new DataInputStream(new ByteArrayInputStream(record)), strings));
+        }
+        return true;
+    }
+
+    /**
+     * Strings collected while writing a snapshot, each stored once
+     */
+    public static class StringTable {
+        private final Map<String,Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        /**
+         * Retrieves the index of a string, adding it to the table if needed
+         *
+         * @param value The string, may be null
+         *
+         * @return The index of the string, or -1 for null
+         */
+        public int indexOf(String value) {
+            if (value == null)
+                return -1;
+            return indexes.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+
+        /**
+         * Retrieves the number of distinct strings in the table
+         *
+         * @return The number of strings
+         */
+        public int size() {
+            return values.size();
+        }
+    }
+}
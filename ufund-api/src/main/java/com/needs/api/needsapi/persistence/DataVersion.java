@@ -0,0 +1,42 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the changes made to the stored data, whoever makes them
+ * <p>
+ * It is bumped once a change is visible to readers: by every
+ * {@linkplain FileBackedStore store} after changing a value and its indexes, by
+ * views derived from a store once they are published, like the catalog of the
+ * {@linkplain NeedFileDAO need file DAO}, and by the {@linkplain JdbcDatabase database}
+ * after every write. Writes made outside of a request, by the
+ * {@linkplain FulfillmentEscrow escrow} materializer for one, move it as well.
+ * Readers that share results only share them between reads started at the same
+ * version.
+ * <p>
+ * There is one count for the process, like the {@linkplain StoreMetrics metrics}
+ * of the stores, so the DAOs need no reference to it.
+ *
+ * @author Team Swiss Pandas
+ */
+public final class DataVersion {
+    private static final AtomicLong VERSION = new AtomicLong();
+
+    private DataVersion() {}
+
+    /**
+     * Retrieves the current version of the data
+     *
+     * @return The number of changes made so far
+     */
+    public static long current() {
+        return VERSION.get();
+    }
+
+    /**
+     * Records a change that readers can now see
+     */
+    static void bump() {
+        VERSION.incrementAndGet();
+    }
+}
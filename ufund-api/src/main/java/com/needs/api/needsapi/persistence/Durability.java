@@ -0,0 +1,15 @@
+package com.needs.api.needsapi.persistence;
+
+/**
+ * This documents when a change made through a file DAO reaches the disk
+ *
+ * @author Team Swiss Pandas
+ */
+public enum Durability {
+    /** The file is rewritten inside the request before it returns */
+    SYNC,
+    /** The request waits for the next flush, which is shared with every change made since the last one */
+    GROUP_COMMIT,
+    /** The request returns as soon as the change is in memory and the file is rewritten later */
+    ASYNC
+}
@@ -0,0 +1,652 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Typed key-value store backed by a data file, shared by the file DAOs
+ * <p>
+ * The store keeps every value in a map keyed by a {@linkplain Function key extractor},
+ * reads and writes the file through a {@linkplain Codec codec}, keeps any number of
+ * {@linkplain Index secondary indexes} in step with the map, reports every
+ * change to a {@linkplain FlushPolicy flush policy}, and publishes it to the
+ * {@linkplain MutationBus.Topic topic} of its kind of value, if any. By default changes go to the
+ * {@link WriteBehindFlusher write-behind flusher}, which rewrites the whole file
+ * now or later depending on the durability mode.
+ * <p>
+ * The store has one {@linkplain ReentrantLock lock}. DAOs hold it across compound
+ * operations ({@code store.lock(); try {...} finally {store.unlock();}}), every
+ * mutator must be called while holding it, and {@link #await()} must be called
+ * after releasing it. It is a lock rather than the store's monitor so that a
+ * request on a virtual thread waiting for it, or writing the file while holding
+ * it, does not pin its carrier thread. The time spent waiting for it and holding
+ * it is recorded in the {@linkplain StoreMetrics metrics} named after the file.
+ * Every change bumps the {@linkplain DataVersion data version} once the value and
+ * its indexes are changed, before it is persisted.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ *
+ * @author Team Swiss Pandas
+ */
+public class FileBackedStore<K,V> {
+    private final File file;            // Data file read by load and written by save
+    private final ReentrantLock lock;   // Guards the values, the indexes and every change
+    private final Map<K,V> values;      // Every value by key, guarded by the lock
+    private final Function<? super V,? extends K> keyOf;   // Extracts the key of a value
+    private final Codec<V> codec;       // Reads and writes the data file
+    private final List<Index<K,V>> indexes = new ArrayList<>();  // Secondary indexes kept in step with the map
+    private final WriteBehindFlusher.Store written;    // Writes the whole file now or later depending on the durability mode
+    private FlushPolicy<K,V> policy;    // Decides how each change is persisted
+    private MutationBus.Topic events;   // Receives every change, written only while holding the lock, or null
+
+    /**
+     * Reads and writes the values of a data file
+     *
+     * @param <V> The value type
+     */
+    public interface Codec<V> {
+        /**
+         * Reads every value of the file
+         *
+         * @param file The data file
+         * @param sink Receives each value, in file order
+         *
+         * @throws IOException if the file cannot be read
+         */
+        void read(File file, Consumer<? super V> sink) throws IOException;
+
+        /**
+         * Writes the values to the file, replacing its contents
+         *
+         * @param file The data file
+         * @param values The values, in the order they should be written
+         *
+         * @throws IOException if the file cannot be written
+         */
+        void write(File file, Collection<? extends V> values) throws IOException;
+
+        /**
+         * Serializes the values to the complete file contents, for write-behind flushes
+         *
+         * @param values The values, in the order they should be written
+         *
+         * @return The file contents
+         *
+         * @throws IOException if a value cannot be serialized
+         */
+        byte[] encode(Collection<? extends V> values) throws IOException;
+
+        /**
+         * Creates a codec for a JSON array of values
+         *
+         * @param <V> The value type
+         * @param objectMapper Maps the values to and from JSON objects
+         * @param streams Decides whether values are streamed or read and written as whole arrays
+         * @param type The value class
+         *
+         * @return The JSON codec
+         */
+        static <V> Codec<V> json(ObjectMapper objectMapper, JsonStreams streams, Class<V> type) {
+            return new Codec<V>() {
+                @Override
+                public void read(File file, Consumer<? super V> sink) throws IOException {
+                    streams.read(objectMapper, file, type, sink);
+                }
+
+                @Override
+                public void write(File file, Collection<? extends V> values) throws IOException {
+                    streams.write(objectMapper, file, type, values);
+                }
+
+                @Override
+                public byte[] encode(Collection<? extends V> values) throws IOException {
+                    return streams.writeBytes(objectMapper, type, values);
+                }
+            };
+        }
+
+        /**
+         * Creates a codec that reads from the {@linkplain BinarySnapshot binary snapshot}
+         * of the file when it is current, and from this codec otherwise
+         *
+         * @param snapshots The {@link BinarySnapshot binary snapshots}
+         * @param snapshotCodec The {@linkplain SnapshotCodec snapshot codec} for the value type
+         *
+         * @return The snapshot backed codec, which writes through this codec
+         */
+        default Codec<V> withSnapshots(BinarySnapshot snapshots, SnapshotCodec<V> snapshotCodec) {
+            Codec<V> source = this;
+            return new Codec<V>() {
+                @Override
+                public void read(File file, Consumer<? super V> sink) throws IOException {
+                    snapshots.load(file, snapshotCodec, sink, loaded -> source.read(file, loaded));
+                }
+
+                @Override
+                public void write(File file, Collection<? extends V> values) throws IOException {
+                    source.write(file, values);
+                }
+
+                @Override
+                public byte[] encode(Collection<? extends V> values) throws IOException {
+                    return source.encode(values);
+                }
+            };
+        }
+    }
+
+    /**
+     * Secondary index over the values of a store
+     * <br>
+     * Called while the store's lock is held. A value changed in place is replaced
+     * by itself, so an index over mutable fields should remember what it filed
+     * each key under rather than read it from the value.
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     */
+    public interface Index<K,V> {
+        /**
+         * Adds a value to the index
+         *
+         * @param key The value's key
+         * @param value The value
+         */
+        void add(K key, V value);
+
+        /**
+         * Removes a value from the index
+         *
+         * @param key The value's key
+         * @param value The value as it is now
+         */
+        void remove(K key, V value);
+
+        /**
+         * Replaces the value of a key already in the index
+         * <br>
+         * Removes and adds it by default, an index can skip the work when the
+         * fields it is over did not change
+         *
+         * @param key The value's key
+         * @param previous The value replaced, the same object if it was changed in place
+         * @param value The value
+         */
+        default void replace(K key, V previous, V value) {
+            remove(key, previous);
+            add(key, value);
+        }
+
+        /**
+         * Empties the index before the store is loaded
+         */
+        void clear();
+
+        /**
+         * Refills the index with every value of the store, when it is loaded
+         * <br>
+         * Empties it and adds the values one at a time by default, an index that
+         * is costly to build can do the work in bulk or in parallel
+         *
+         * @param values The values by key, not changed while the lock is held
+         */
+        default void rebuild(Map<K,V> values) {
+            clear();
+            for (Map.Entry<K,V> entry : values.entrySet())
+                add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Decides how changes to a store are persisted
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     */
+    public interface FlushPolicy<K,V> {
+        /**
+         * Persists a change, called while the store's lock is held
+         *
+         * @param key The key of the changed value
+         * @param value The value, or null if it was removed
+         *
+         * @return true if the change was accepted
+         *
+         * @throws IOException if the change cannot be written
+         */
+        boolean changed(K key, V value) throws IOException;
+
+        /**
+         * Applies changes persisted elsewhere than the data file, after the file has
+         * been loaded and before the indexes are built
+         *
+         * @param values Every value by key, as read from the file
+         *
+         * @throws IOException if the changes cannot be read
+         */
+        default void recover(Map<K,V> values) throws IOException {}
+    }
+
+    /**
+     * A map that keeps its values on disk itself, used instead of loading the whole
+     * data file into memory
+     * <br>
+     * The data file is imported into it the first time it is opened and not read
+     * again. Putting a value only has to make it resident, the store writes it
+     * once the change is reported; removing a value deletes it from disk.
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     */
+    public interface DurableMap<K,V> extends Map<K,V> {
+        /**
+         * Opens the map, importing the values of the data file if it has never been opened before
+         *
+         * @param initial Reads the data file
+         *
+         * @throws IOException if the map or the data file cannot be read
+         */
+        void open(Importer<K,V> initial) throws IOException;
+
+        /**
+         * Writes a changed value
+         *
+         * @param key The key of the changed value
+         * @param value The value, or null if it was removed
+         *
+         * @throws IOException if the value cannot be written
+         */
+        void write(K key, V value) throws IOException;
+    }
+
+    /**
+     * Reads the values of the data file for a {@linkplain DurableMap durable map}
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     */
+    @FunctionalInterface
+    public interface Importer<K,V> {
+        /**
+         * @param sink Receives the key and value of each value read from the data file
+         * @throws IOException if the data file cannot be read
+         */
+        void load(BiConsumer<? super K,? super V> sink) throws IOException;
+    }
+
+    /**
+     * Creates a File Backed Store
+     * <br>
+     * The store starts empty, call {@link #load()} to read the file
+     *
+     * @param filename The data file, surrounding whitespace is ignored
+     * @param values The map to keep the values in, usually an empty {@link java.util.TreeMap TreeMap}.
+     *               Changes to a {@link DurableMap durable map} are written to it instead of the file
+     * @param keyOf Extracts the key of a value
+     * @param codec Reads and writes the data file
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     */
+    public FileBackedStore(String filename, Map<K,V> values, Function<? super V,? extends K> keyOf, Codec<V> codec,
+                           WriteBehindFlusher flusher) {
+        this.file = new File(filename.trim());
+        this.lock = new TimedLock(StoreMetrics.of(file.getName()));
+        this.values = values;
+        this.keyOf = keyOf;
+        this.codec = codec;
+        this.written = flusher.register(lock, file.getPath(), this::save, () -> codec.encode(values.values()));
+        if (values instanceof DurableMap) {
+            DurableMap<K,V> durable = (DurableMap<K,V>)values;
+            this.policy = (key, value) -> {
+                durable.write(key, value);
+                return true;
+            };
+        }
+        else
+            this.policy = (key, value) -> written.changed();
+    }
+
+    /**
+     * Acquires the store's lock, waiting for it if another thread holds it
+     * <br>
+     * Every call must be paired with an {@link #unlock()} in a finally block
+     */
+    public void lock() {
+        lock.lock();
+    }
+
+    /**
+     * Releases the store's lock
+     */
+    public void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * Replaces how changes are persisted, instead of rewriting the whole file
+     *
+     * @param policy The {@link FlushPolicy flush policy}
+     *
+     * @return This store
+     */
+    public FileBackedStore<K,V> flushPolicy(FlushPolicy<K,V> policy) {
+        this.policy = policy;
+        return this;
+    }
+
+    /**
+     * Publishes every change from now on, the store becomes the topic's single writer
+     *
+     * @param topic The {@link MutationBus.Topic topic}, null publishes nothing
+     *
+     * @return This store
+     */
+    public FileBackedStore<K,V> publishTo(MutationBus.Topic topic) {
+        this.events = topic;
+        if (topic != null)
+            topic.attach();
+        return this;
+    }
+
+    /**
+     * Publishes a change, called while holding the lock
+     */
+    private void publish(MutationEvent.Change change, K key, V value) {
+        if (events != null)
+            events.publish(change, key, value);
+    }
+
+    /**
+     * Adds a secondary index, filled with the values already in the store
+     *
+     * @param index The {@link Index index}
+     *
+     * @return This store
+     */
+    public FileBackedStore<K,V> index(Index<K,V> index) {
+        lock.lock();
+        try {
+            indexes.add(index);
+            index.rebuild(values);
+            return this;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the contents of the store with the values read from the file, or
+     * opens the {@linkplain DurableMap durable map} holding them
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public void load() throws IOException {
+        lock.lock();
+        try {
+            if (values instanceof DurableMap)
+                ((DurableMap<K,V>)values).open(sink -> codec.read(file, value -> sink.accept(keyOf.apply(value), value)));
+            else {
+                values.clear();
+                codec.read(file, value -> values.put(keyOf.apply(value), value));
+            }
+            policy.recover(values);
+
+            for (Index<K,V> index : indexes)
+                index.rebuild(values);
+            DataVersion.bump();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes every value to the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void save() throws IOException {
+        codec.write(file, values.values());
+    }
+
+    /**
+     * Retrieves the data file
+     *
+     * @return The file the store is loaded from and saved to
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Retrieves the codec the file is read and written with
+     *
+     * @return The {@link Codec codec}
+     */
+    public Codec<V> getCodec() {
+        return codec;
+    }
+
+    /**
+     * Retrieves a value
+     *
+     * @param key The key
+     *
+     * @return The value, or null if there is none with the key
+     */
+    public V get(K key) {
+        lock.lock();
+        try {
+            return values.get(key);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Determines if there is a value with a key
+     *
+     * @param key The key
+     *
+     * @return true if the store holds a value with the key
+     */
+    public boolean containsKey(K key) {
+        lock.lock();
+        try {
+            return values.containsKey(key);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the values in key order
+     * <br>
+     * The collection is a live, unmodifiable view, only iterate it while holding
+     * the store's lock
+     *
+     * @return The values
+     */
+    public Collection<V> values() {
+        return Collections.unmodifiableCollection(values.values());
+    }
+
+    /**
+     * Retrieves the number of values
+     *
+     * @return The number of values in the store
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return values.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces a value under the key extracted from it, and persists the change
+     *
+     * @param value The value
+     *
+     * @return The value previously stored under the key, or null
+     *
+     * @throws IOException if the change cannot be written
+     */
+    public V put(V value) throws IOException {
+        lock.lock();
+        try {
+            K key = keyOf.apply(value);
+            V previous = values.put(key, value);
+            for (Index<K,V> index : indexes) {
+                if (previous != null)
+                    index.replace(key, previous, value);
+                else
+                    index.add(key, value);
+            }
+            DataVersion.bump();
+            policy.changed(key, value);
+            publish(MutationEvent.Change.PUT, key, value);
+            return previous;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the value stored under one key and adds a value under the key
+     * extracted from it, for values whose key has changed
+     *
+     * @param key The key the value was stored under
+     * @param value The value
+     *
+     * @throws IOException if the change cannot be written
+     */
+    public void replace(K key, V value) throws IOException {
+        lock.lock();
+        try {
+            if (!key.equals(keyOf.apply(value)))
+                remove(key);
+            put(value);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a value and persists the removal
+     *
+     * @param key The key
+     *
+     * @return true if there was a value with the key and its removal was accepted
+     *
+     * @throws IOException if the change cannot be written
+     */
+    public boolean remove(K key) throws IOException {
+        lock.lock();
+        try {
+            if (!values.containsKey(key))
+                return false;
+
+            V previous = values.remove(key);
+            for (Index<K,V> index : indexes)
+                index.remove(key, previous);
+            DataVersion.bump();
+            boolean accepted = policy.changed(key, null);
+            publish(MutationEvent.Change.REMOVE, key, previous);
+            return accepted;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Persists a value that was changed in place
+     *
+     * @param key The key of the changed value
+     *
+     * @return true if there is a value with the key and the change was accepted
+     *
+     * @throws IOException if the change cannot be written
+     */
+    public boolean changed(K key) throws IOException {
+        lock.lock();
+        try {
+            V value = values.get(key);
+            if (value == null)
+                return false;
+
+            for (Index<K,V> index : indexes)
+                index.replace(key, value, value);
+            DataVersion.bump();
+            boolean accepted = policy.changed(key, value);
+            publish(MutationEvent.Change.PUT, key, value);
+            return accepted;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the values matching a filter from memory without persisting their
+     * removal, the next change writes the file without them
+     * <br>
+     * A {@linkplain DurableMap durable map} deletes them from disk right away
+     *
+     * @param filter Selects the values to drop
+     */
+    public void evictIf(Predicate<? super V> filter) {
+        lock.lock();
+        try {
+            List<Map.Entry<K,V>> evicted = new ArrayList<>();
+            for (Map.Entry<K,V> entry : values.entrySet()) {
+                if (filter.test(entry.getValue()))
+                    evicted.add(entry);
+            }
+            for (Map.Entry<K,V> entry : evicted) {
+                values.remove(entry.getKey());
+                for (Index<K,V> index : indexes)
+                    index.remove(entry.getKey(), entry.getValue());
+                publish(MutationEvent.Change.REMOVE, entry.getKey(), entry.getValue());
+            }
+            if (!evicted.isEmpty())
+                DataVersion.bump();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the changes the current thread made to reach the disk, if the
+     * durability mode requires it, see {@link WriteBehindFlusher.Store#await()}
+     * <br>
+     * Must be called after releasing the store's lock
+     *
+     * @throws IOException if a flush covering the changes failed
+     */
+    public void await() throws IOException {
+        written.await();
+    }
+}
@@ -0,0 +1,590 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.needs.api.needsapi.model.Need;
+
+/**
+ * Escrow for the fulfillment of hot {@linkplain Need needs}
+ * <p>
+ * A need fulfilled more than the threshold number of times in one interval is
+ * promoted: the quantity it still needs is split into one escrow share per
+ * stripe, and each request thread claims from its own stripe's share by
+ * compare-and-set, without a lock and without touching the need. A thread whose
+ * share runs dry takes the need's lock, gathers every stripe's share, takes
+ * what it needs and spreads the rest evenly again. As the shares only ever add
+ * up to what the need still needs, the cap is exact.
+ * <p>
+ * Each interval a materializer thread gathers every hot need's claims, writes
+ * them back with one {@link NeedDAO#fulfill NeedDAO.fulfill} call, and refills
+ * the shares from the need as stored. A hot need that had no claims in an
+ * interval is demoted again. Updates made through {@link #updateNeed} gather the
+ * shares first and split them again from the updated need, so no claim is
+ * granted from shares of a quantity needed since lowered.
+ * Claims made since the last materialization are acknowledged before they are
+ * stored, like changes in {@link Durability#ASYNC ASYNC} mode.
+ * <p>
+ * Cold needs are counted only while they are being fulfilled: a count that
+ * stayed at zero for an interval, or whose need was deleted through
+ * {@link #deleteNeed}, is retired and dropped.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class FulfillmentEscrow {
+    private static final Logger LOG = Logger.getLogger(FulfillmentEscrow.class.getName());
+    private static final int PAD = 8;   // Longs per stripe, so each stripe has a cache line of its own
+
+    private final NeedDAO needDao;      // Stores the needs and their quantity fulfilled
+    private final int threshold;        // Fulfillments of one need in an interval that promote it, 0 disables escrow
+    private final long interval;        // Milliseconds between materializations
+    private final int stripes;          // Escrow shares per hot need
+
+    private final Map<Integer,Escrow> escrows = new ConcurrentHashMap<>();  // Hot needs by id
+    private final Map<Integer,Heat> heat = new ConcurrentHashMap<>();       // Fulfillments by need id, of the needs fulfilled lately
+    private Thread materializer;        // Background thread, only started when escrow is enabled
+    private volatile boolean running;
+
+    /**
+     * Fulfillments of a cold need, counted to find hot ones
+     */
+    private static final class Heat {
+        final AtomicInteger count = new AtomicInteger();    // Fulfillments this interval
+        final AtomicInteger inFlight = new AtomicInteger(); // Fulfillments passed to the DAO right now, -1 once retired
+        volatile Thread waiter;     // A promotion waiting for the fulfillments in flight to leave
+
+        /**
+         * Counts a fulfillment in flight
+         *
+         * @return false if this count was retired, and a new one must be used
+         */
+        boolean enter() {
+            while (true) {
+                int current = inFlight.get();
+                if (current < 0)
+                    return false;
+                if (inFlight.compareAndSet(current, current + 1))
+                    return true;
+            }
+        }
+
+        /**
+         * Ends a fulfillment in flight, waking the promotion waiting for the last
+         */
+        void leave() {
+            if (inFlight.decrementAndGet() == 0) {
+                Thread waiting = waiter;
+                if (waiting != null)
+                    LockSupport.unpark(waiting);
+            }
+        }
+
+        /**
+         * Parks until no fulfillment is in flight
+         */
+        void await() {
+            waiter = Thread.currentThread();
+            try {
+                while (inFlight.get() > 0)
+                    LockSupport.park(this);
+            }
+            finally {
+                waiter = null;
+            }
+        }
+
+        /**
+         * Retires the count if no fulfillment is in flight, so it can be dropped
+         *
+         * @return true if it was retired
+         */
+        boolean retire() {
+            return inFlight.compareAndSet(0, -1);
+        }
+    }
+
+    /**
+     * Retrieves the count of a need and enters a fulfillment in flight
+     */
+    private Heat enter(int id) {
+        while (true) {
+            Heat counter = heat.computeIfAbsent(id, key -> new Heat());
+            if (counter.enter())
+                return counter;
+            heat.remove(id, counter);   // retired meanwhile, make way for a new one
+        }
+    }
+
+    /**
+     * Escrow shares of one hot need
+     * <br>
+     * Every stripe is one long holding the share still unclaimed in its high
+     * half and the quantity claimed but not yet materialized in its low half,
+     * so a claim moves quantity from one to the other in a single compare-and-set,
+     * and a gather takes both at once.
+     */
+    private final class Escrow {
+        final int id;
+        final AtomicLongArray slots = new AtomicLongArray(stripes * PAD);
+        final ReentrantLock lock = new ReentrantLock();  // Held to gather or fill the shares
+        boolean ready;              // Set once the shares are filled, guarded by this escrow's lock
+        boolean retired;            // Set once demoted, guarded by this escrow's lock
+        volatile boolean claimedSince;  // Set by claims made since the last materialization
+
+        Escrow(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Claims from one stripe's share, lock free
+         *
+         * @return The quantity claimed, 0 if the share is empty
+         */
+        int claim(int stripe, int quantity) {
+            int slot = stripe * PAD;
+            while (true) {
+                long value = slots.get(slot);
+                int share = share(value);
+                if (share == 0)
+                    return 0;
+                int taken = Math.min(share, quantity);
+                if (slots.compareAndSet(slot, value, pack(share - taken, claimed(value) + taken)))
+                    return taken;
+            }
+        }
+
+        /**
+         * Empties every stripe, must be called while holding this escrow's lock
+         *
+         * @return The unclaimed shares in the high half and the claims in the low half, summed
+         */
+        long gather() {
+            long share = 0;
+            long claimed = 0;
+            for (int stripe = 0; stripe < stripes; ++stripe) {
+                long value = slots.getAndSet(stripe * PAD, 0);
+                share += share(value);
+                claimed += claimed(value);
+            }
+            return pack((int)share, (int)claimed);
+        }
+
+        /**
+         * Spreads a quantity evenly over empty stripes and records claims not yet
+         * materialized, must be called while holding this escrow's lock
+         */
+        void fill(int share, int claimed) {
+            for (int stripe = 0; stripe < stripes; ++stripe) {
+                int portion = share / stripes + (stripe < share % stripes ? 1 : 0);
+                slots.set(stripe * PAD, pack(portion, stripe == 0 ? claimed : 0));
+            }
+        }
+    }
+
+    private static long pack(int share, int claimed) {
+        return ((long)share << 32) | (claimed & 0xFFFFFFFFL);
+    }
+
+    private static int share(long value) {
+        return (int)(value >>> 32);
+    }
+
+    private static int claimed(long value) {
+        return (int)value;
+    }
+
+    /**
+     * Creates a Fulfillment Escrow
+     *
+     * @param needDao The {@link NeedDAO need DAO} fulfillments are written to
+     * @param threshold Number of fulfillments of one need in an interval that promotes it, 0 disables escrow
+     * @param interval Milliseconds between materializations
+     * @param stripes Number of escrow shares a hot need is split into
+     */
+    @Autowired
+    public FulfillmentEscrow(NeedDAO needDao,
+                             @Value("${needs.escrow.threshold:0}") int threshold,
+                             @Value("${needs.escrow.interval:100}") long interval,
+                             @Value("${needs.escrow.stripes:16}") int stripes) {
+        this.needDao = needDao;
+        this.threshold = Math.max(0, threshold);
+        this.interval = Math.max(1, interval);
+        this.stripes = Math.max(1, stripes);
+
+        if (this.threshold > 0) {
+            running = true;
+            materializer = new Thread(this::run, "need-escrow-materializer");
+            materializer.setDaemon(true);
+            materializer.start();
+        }
+    }
+
+    /**
+     * Creates an escrow that passes every fulfillment straight to the DAO
+     *
+     * @param needDao The {@link NeedDAO need DAO} fulfillments are written to
+     *
+     * @return A disabled escrow
+     */
+    public static FulfillmentEscrow disabled(NeedDAO needDao) {
+        return new FulfillmentEscrow(needDao, 0, 1, 1);
+    }
+
+    /**
+     * Fulfills a quantity of a {@linkplain Need need}, capped at the quantity
+     * it still needs
+     *
+     * @param id The id of the {@link Need need} to fulfill
+     * @param quantity The quantity to add, nothing is added if not positive
+     *
+     * @return The quantity accepted, 0 if none was, -1 if no need has the id
+     *
+     * @throws IOException if underlying storage cannot be accessed
+     */
+    public int fulfill(int id, int quantity) throws IOException {
+        if (quantity <= 0)
+            return needDao.fulfill(id, quantity, true);
+
+        Escrow escrow = escrows.get(id);
+        if (escrow != null)
+            return claim(escrow, id, quantity);
+        return fulfillCold(id, quantity);
+    }
+
+    /**
+     * Updates a {@linkplain Need need}, splitting the shares of a hot need again
+     * from the quantity it still needs afterwards
+     *
+     * @param need The {@link Need need} to update, as for {@link NeedDAO#updateNeed(Need, long)}
+     * @param version The version the stored need must be at, or {@link NeedDAO#ANY_VERSION}
+     *
+     * @return The updated {@link Need need}, null if no need has its id
+     *
+     * @throws VersionConflictException if the stored need is at another version
+     * @throws IOException if underlying storage cannot be accessed
+     */
+    public Need updateNeed(Need need, long version) throws IOException {
+        if (threshold == 0)
+            return needDao.updateNeed(need, version);
+
+        int id = need.getId();
+        while (true) {
+            Escrow escrow = escrows.get(id);
+            if (escrow != null) {
+                escrow.lock.lock();
+                try {
+                    if (!escrow.retired)
+                        return updateHot(escrow, need, version);
+                }
+                finally {
+                    escrow.lock.unlock();
+                }
+                continue;   // demoted meanwhile, and no longer in the map
+            }
+
+            // counted in flight like a cold fulfillment, so a promotion waits
+            // for the update before reading the need
+            Heat counter = enter(id);
+            try {
+                if (!escrows.containsKey(id))
+                    return needDao.updateNeed(need, version);
+            }
+            finally {
+                counter.leave();
+            }
+        }
+    }
+
+    /**
+     * Deletes a {@linkplain Need need} and drops its count
+     * <br>
+     * A hot need's escrow is retired by the next materialization, which finds
+     * the need gone.
+     *
+     * @param id The id of the {@link Need need} to delete
+     *
+     * @return true if the need was deleted
+     *
+     * @throws IOException if underlying storage cannot be accessed
+     */
+    public boolean deleteNeed(int id) throws IOException {
+        boolean deleted = needDao.deleteNeed(id);
+        Heat counter = heat.get(id);
+        if (deleted && counter != null && counter.retire())
+            heat.remove(id, counter);
+        return deleted;
+    }
+
+    /**
+     * Updates a hot need with its shares gathered, must be called while holding
+     * its escrow's lock
+     * <br>
+     * Claimers find every share empty and wait for the lock, the claims already
+     * granted are written back under the quantity they were granted from before
+     * the update, and the shares are filled from the need as stored afterwards.
+     */
+    private Need updateHot(Escrow escrow, Need need, long version) throws IOException {
+        long gathered = escrow.gather();
+        int claimed = claimed(gathered);
+        try {
+            if (claimed > 0)
+                needDao.fulfill(escrow.id, claimed, false);
+        }
+        catch (IOException e) {
+            escrow.fill(share(gathered), claimed);  // kept for the next round
+            throw e;
+        }
+
+        try {
+            return needDao.updateNeed(need, version);
+        }
+        finally {
+            Need stored = needDao.getNeed(escrow.id);
+            if (stored == null) {
+                escrow.retired = true;
+                escrows.remove(escrow.id);
+            }
+            else
+                escrow.fill(Math.max(0, stored.getQuantityNeeded() - stored.getQuantityFulfilled()), 0);
+        }
+    }
+
+    /**
+     * Claims from a hot need's shares, from the caller's stripe if it has enough
+     * and from all of them otherwise
+     *
+     * @return The quantity claimed, with what is left passed to the DAO if the
+     * need was demoted meanwhile
+     */
+    private int claim(Escrow escrow, int id, int quantity) throws IOException {
+        int stripe = (int)Math.floorMod(Thread.currentThread().getId(), (long)stripes);  // ids outgrow an int with virtual threads
+        int claimed = escrow.claim(stripe, quantity);
+        if (claimed == quantity) {
+            escrow.claimedSince = true;
+            return claimed;
+        }
+
+        escrow.lock.lock();
+        try {
+            if (!escrow.retired) {
+                long gathered = escrow.gather();
+                int taken = Math.min(quantity - claimed, share(gathered));
+                escrow.fill(share(gathered) - taken, claimed(gathered) + taken);
+                escrow.claimedSince = true;
+                return claimed + taken;
+            }
+        }
+        finally {
+            escrow.lock.unlock();
+        }
+        // demoted meanwhile, the claim made above was materialized with the rest
+        int accepted = needDao.fulfill(id, quantity - claimed, true);
+        return claimed == 0 ? accepted : claimed + Math.max(0, accepted);
+    }
+
+    /**
+     * Fulfills a need that is not hot through the DAO, counting it toward promotion
+     */
+    private int fulfillCold(int id, int quantity) throws IOException {
+        if (threshold == 0)
+            return needDao.fulfill(id, quantity, true);
+
+        Heat counter = enter(id);
+        try {
+            Escrow escrow = escrows.get(id);
+            if (escrow != null) {
+                // promoted since the first look, the promotion waits for this to leave
+                counter.leave();
+                counter = null;
+                return claim(escrow, id, quantity);
+            }
+            counter.count.incrementAndGet();
+            return needDao.fulfill(id, quantity, true);
+        }
+        finally {
+            if (counter != null)
+                counter.leave();
+        }
+    }
+
+    /**
+     * Promotes a {@linkplain Need need} to escrow, splitting the quantity it
+     * still needs into shares
+     * <br>
+     * The escrow is published empty first, so new fulfillments wait for it, and
+     * the shares are only filled once every fulfillment already passed to the
+     * DAO has finished and the stored need is current.
+     *
+     * @param id The id of the {@link Need need}
+     *
+     * @return true if the need is hot afterwards
+     *
+     * @throws IOException if underlying storage cannot be accessed
+     */
+    boolean promote(int id) throws IOException {
+        Escrow escrow = new Escrow(id);
+        escrow.lock.lock();
+        try {
+            if (escrows.putIfAbsent(id, escrow) != null)
+                return true;
+
+            Heat counter = heat.get(id);
+            if (counter != null)
+                counter.await();
+
+            Need need = needDao.getNeed(id);
+            if (need == null) {
+                escrow.retired = true;
+                escrows.remove(id);
+                return false;
+            }
+            escrow.fill(Math.max(0, need.getQuantityNeeded() - need.getQuantityFulfilled()), 0);
+            escrow.ready = true;
+            return true;
+        }
+        finally {
+            escrow.lock.unlock();
+        }
+    }
+
+    /**
+     * Determines if a {@linkplain Need need} is hot
+     *
+     * @param id The id of the {@link Need need}
+     *
+     * @return true if its fulfillments go through escrow
+     */
+    boolean isHot(int id) {
+        return escrows.containsKey(id);
+    }
+
+    /**
+     * Determines if a {@linkplain Need need}'s fulfillments are being counted
+     *
+     * @param id The id of the {@link Need need}
+     *
+     * @return true if it was fulfilled lately
+     */
+    boolean isCounted(int id) {
+        return heat.containsKey(id);
+    }
+
+    /**
+     * Writes the claims of every hot need back to the DAO, demotes the hot needs
+     * that had no claims, and promotes the cold needs that passed the threshold
+     */
+    void materialize() {
+        for (Escrow escrow : escrows.values()) {
+            try {
+                materialize(escrow);
+            }
+            catch (IOException e) {
+                LOG.log(Level.SEVERE, "Materializing need " + escrow.id + " failed: " + e.getLocalizedMessage());
+            }
+        }
+
+        for (Map.Entry<Integer,Heat> entry : heat.entrySet()) {
+            Heat counter = entry.getValue();
+            int count = counter.count.getAndSet(0);
+            if (count == 0) {
+                if (counter.retire())
+                    heat.remove(entry.getKey(), counter);   // gone cold, or deleted
+                continue;
+            }
+            try {
+                if (count >= threshold)
+                    promote(entry.getKey());
+            }
+            catch (IOException e) {
+                LOG.log(Level.SEVERE, "Promoting need " + entry.getKey() + " failed: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes one hot need's claims back and refills its shares from the stored need
+     */
+    private void materialize(Escrow escrow) throws IOException {
+        escrow.lock.lock();
+        try {
+            if (!escrow.ready || escrow.retired)
+                return;
+
+            long gathered = escrow.gather();
+            int claimed = claimed(gathered);
+            boolean idle = !escrow.claimedSince && claimed == 0;
+            escrow.claimedSince = false;
+            try {
+                if (claimed > 0 && needDao.fulfill(escrow.id, claimed, false) < 0)
+                    idle = true;    // deleted, its claims have nowhere to go
+            }
+            catch (IOException e) {
+                escrow.fill(share(gathered), claimed);  // kept for the next round
+                throw e;
+            }
+
+            Need need = idle ? null : needDao.getNeed(escrow.id);
+            if (need == null) {
+                escrow.retired = true;
+                escrows.remove(escrow.id);
+                return;
+            }
+            escrow.fill(Math.max(0, need.getQuantityNeeded() - need.getQuantityFulfilled()), 0);
+        }
+        finally {
+            escrow.lock.unlock();
+        }
+    }
+
+    /**
+     * Main loop of the materializer thread
+     */
+    private void run() {
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            materialize();
+        }
+    }
+
+    /**
+     * Stops the materializer thread and writes every claim not yet materialized
+     */
+    @PreDestroy
+    public void close() {
+        if (materializer == null)
+            return;
+
+        running = false;
+        materializer.interrupt();
+        try {
+            materializer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        materialize();
+    }
+}
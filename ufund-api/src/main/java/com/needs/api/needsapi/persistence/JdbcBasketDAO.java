@@ -0,0 +1,312 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.needs.api.needsapi.model.FundingBasket;
+
+/**
+ * Implements the functionality for JDBC database persistence for Funding Baskets
+ * <br>
+ * Used instead of {@link BasketFileDAO} when the {@code jdbc} profile is active.
+ * Each basket is a row of the baskets table and each need in it a row of the
+ * basket_needs table. The baskets file is imported the first time the table is empty.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+@Profile("jdbc")
+public class JdbcBasketDAO implements BasketDAO {
+    private static final Logger LOG = Logger.getLogger(JdbcBasketDAO.class.getName());
+
+    static final String SELECT_USERNAME = "SELECT username FROM baskets WHERE id = ?";
+    static final String SELECT_ID = "SELECT MIN(id) FROM baskets WHERE username = ?";
+    static final String SELECT_NEEDS = "SELECT need_id, quantity FROM basket_needs WHERE basket_id = ?";
+    static final String SELECT_QUANTITY = "SELECT quantity FROM basket_needs WHERE basket_id = ? AND need_id = ?";
+    static final String INSERT = "INSERT INTO baskets (username) VALUES (?)";
+    static final String IMPORT = "INSERT INTO baskets (id, username) VALUES (?, ?)";
+    static final String UPDATE_USERNAME = "UPDATE baskets SET username = ? WHERE id = ?";
+    static final String DELETE = "DELETE FROM baskets WHERE id = ?";
+    static final String INSERT_NEED = "INSERT INTO basket_needs (basket_id, need_id, quantity) VALUES (?, ?, ?)";
+    static final String UPDATE_NEED = "UPDATE basket_needs SET quantity = ? WHERE basket_id = ? AND need_id = ?";
+    static final String DELETE_NEED = "DELETE FROM basket_needs WHERE basket_id = ? AND need_id = ?";
+    static final String CLEAR = "DELETE FROM basket_needs WHERE basket_id = ?";
+
+    private final JdbcDatabase database;    // Pooled connections to the database
+
+    /**
+     * Creates a JDBC Funding Basket Data Access Object
+     *
+     * @param filename The baskets file imported while the table is empty
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param database The {@link JdbcDatabase database} holding the baskets
+     *
+     * @throws IOException when the file or the database cannot be read
+     */
+    @Autowired
+    public JdbcBasketDAO(@Value("${baskets.file}") String filename, ObjectMapper objectMapper, JdbcDatabase database) throws IOException {
+        this.database = database;
+        importFile(new File(filename.trim()), objectMapper);
+    }
+
+    /**
+     * Imports the {@linkplain FundingBasket baskets} of the file in two batches,
+     * baskets then their needs, if the table is empty
+     */
+    private void importFile(File file, ObjectMapper objectMapper) throws IOException {
+        if (!file.exists())
+            return;
+
+        FundingBasket[] imported = objectMapper.readValue(file, FundingBasket[].class);
+        database.transaction(connection -> {
+            if (!JdbcDatabase.isEmpty(connection, "baskets"))
+                return null;
+
+            try (PreparedStatement statement = connection.prepareStatement(IMPORT)) {
+                for (FundingBasket basket : imported) {
+                    statement.setInt(1, basket.getId());
+                    statement.setString(2, basket.getUsername());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_NEED)) {
+                for (FundingBasket basket : imported)
+                    addNeeds(statement, basket.getId(), basket.getNeeds());
+                statement.executeBatch();
+            }
+            JdbcDatabase.restartIdentity(connection, "baskets");
+            LOG.info("Imported " + imported.length + " baskets from " + file);
+            return null;
+        });
+    }
+
+    /**
+     * Adds a row for every need of a basket to the batch of an {@link #INSERT_NEED} statement
+     */
+    private static void addNeeds(PreparedStatement statement, int basketId, Map<Integer,Integer> needs) throws SQLException {
+        if (needs == null)
+            return;
+        for (Map.Entry<Integer,Integer> need : needs.entrySet()) {
+            statement.setInt(1, basketId);
+            statement.setInt(2, need.getKey());
+            statement.setInt(3, need.getValue());
+            statement.addBatch();
+        }
+    }
+
+    private static FundingBasket getBasket(Connection connection, int basketId) throws SQLException {
+        FundingBasket basket;
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_USERNAME)) {
+            statement.setInt(1, basketId);
+            try (ResultSet rows = statement.executeQuery()) {
+                if (!rows.next())
+                    return null;
+                basket = new FundingBasket(basketId, rows.getString(1));
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_NEEDS)) {
+            statement.setInt(1, basketId);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next())
+                    basket.addNeed(rows.getInt(1), rows.getInt(2));
+            }
+        }
+        return basket;
+    }
+
+    private static boolean basketExists(Connection connection, int basketId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_USERNAME)) {
+            statement.setInt(1, basketId);
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next();
+            }
+        }
+    }
+
+    private static int update(Connection connection, String sql, int... values) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < values.length; ++i)
+                statement.setInt(i + 1, values[i]);
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public HashMap<Integer, Integer> getNeeds(int basketId) throws IOException {
+        FundingBasket basket = getBasket(basketId);
+        return basket == null ? null : basket.getNeeds();
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public FundingBasket getBasket(int basketId) throws IOException {
+        return database.read(connection -> getBasket(connection, basketId));
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public FundingBasket clearBasket(int basketId) throws IOException {
+        return database.transaction(connection -> {
+            if (!basketExists(connection, basketId))
+                return null;
+
+            update(connection, CLEAR, basketId);  // every need of the basket in one statement
+            return getBasket(connection, basketId);
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public FundingBasket createBasket(String userName) throws IOException {
+        return database.write(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+                statement.setString(1, userName);
+                statement.executeUpdate();
+                return new FundingBasket(JdbcDatabase.generatedId(statement), userName);
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public boolean deleteBasket(int basketId) throws IOException {
+        return database.write(connection -> update(connection, DELETE, basketId) > 0);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public FundingBasket addNeed(int basketId, int needId, int quantity) throws IOException {
+        return database.transaction(connection -> {
+            if (!basketExists(connection, basketId))
+                return null;
+
+            if (update(connection, UPDATE_NEED, quantity, basketId, needId) == 0)
+                update(connection, INSERT_NEED, basketId, needId, quantity);
+            return getBasket(connection, basketId);
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public FundingBasket setQuantity(int basketId, int needId, int quantity) throws IOException {
+        return database.transaction(connection -> {
+            if (update(connection, UPDATE_NEED, quantity, basketId, needId) == 0)
+                return null;
+            return getBasket(connection, basketId);
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public int getQuantity(int basketId, int needId) {
+        try {
+            return database.read(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(SELECT_QUANTITY)) {
+                    statement.setInt(1, basketId);
+                    statement.setInt(2, needId);
+                    try (ResultSet rows = statement.executeQuery()) {
+                        return rows.next() ? rows.getInt(1) : -1;
+                    }
+                }
+            });
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public FundingBasket removeNeed(int basketId, int needId) throws IOException {
+        return database.transaction(connection -> {
+            if (update(connection, DELETE_NEED, basketId, needId) == 0)
+                return null;
+            return getBasket(connection, basketId);
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public String getUsername(int basketId) throws IOException {
+        return database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_USERNAME)) {
+                statement.setInt(1, basketId);
+                try (ResultSet rows = statement.executeQuery()) {
+                    return rows.next() ? rows.getString(1) : null;
+                }
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public int getId(String username) throws IOException {
+        return database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_ID)) {
+                statement.setString(1, username);
+                try (ResultSet rows = statement.executeQuery()) {
+                    rows.next();
+                    int id = rows.getInt(1);
+                    return rows.wasNull() ? -1 : id;
+                }
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public boolean setUsername(int basketId, String userName) throws IOException {
+        return database.write(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_USERNAME)) {
+                statement.setString(1, userName);
+                statement.setInt(2, basketId);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+}
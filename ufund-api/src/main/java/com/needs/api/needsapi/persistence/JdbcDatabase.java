@@ -0,0 +1,299 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Database shared by the JDBC DAOs of the {@code jdbc} profile
+ * <p>
+ * Wraps the pooled {@link DataSource} configured by the {@code spring.datasource.*}
+ * properties and creates the tables on first use. Every DAO operation borrows
+ * one connection from the pool and returns it when done; operations that write
+ * more than one row run in a single transaction.
+ * <p>
+ * The DAOs prepare their statements from constant SQL strings on every call and
+ * rely on the driver to cache them per pooled connection, which H2 does through
+ * its {@code QUERY_CACHE_SIZE} setting (see application-jdbc.properties).
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+@Profile("jdbc")
+public class JdbcDatabase {
+    /**
+     * Tables in creation order, foreign keys only refer to earlier tables, then
+     * the columns added since
+     */
+    static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS needs ("
+            + "id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+            + "name VARCHAR(255) NOT NULL, "
+            + "type VARCHAR(32), "
+            + "price DOUBLE PRECISION NOT NULL, "
+            + "quantity_needed INT NOT NULL, "
+            + "quantity_fulfilled INT NOT NULL, "
+            + "urgency VARCHAR(8), "
+            + "description VARCHAR(4096), "
+            + "image VARCHAR(1024), "
+            + "version BIGINT DEFAULT 0 NOT NULL, "
+            // Case-folded name, unique so that concurrent creates cannot both insert a name.
+            // Null for a need sharing its name with an older one, as renames may leave it
+            + "name_key VARCHAR(255))",
+        "CREATE TABLE IF NOT EXISTS baskets ("
+            + "id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+            + "username VARCHAR(255))",
+        "CREATE TABLE IF NOT EXISTS basket_needs ("
+            + "basket_id INT NOT NULL REFERENCES baskets(id) ON DELETE CASCADE, "
+            + "need_id INT NOT NULL, "
+            + "quantity INT NOT NULL, "
+            + "PRIMARY KEY (basket_id, need_id))",
+        "CREATE TABLE IF NOT EXISTS logins ("
+            + "username VARCHAR(255) PRIMARY KEY, "
+            + "pass VARCHAR(255), "
+            + "basket_id INT NOT NULL)",
+        // A profile is removed with its login, like the orphans dropped by ProfileFileDAO
+        "CREATE TABLE IF NOT EXISTS profiles ("
+            + "username VARCHAR(255) PRIMARY KEY REFERENCES logins(username) ON DELETE CASCADE, "
+            + "first_name VARCHAR(255), "
+            + "last_name VARCHAR(255), "
+            + "email VARCHAR(255), "
+            + "country VARCHAR(255), "
+            + "is_private BOOLEAN NOT NULL, "
+            + "version BIGINT DEFAULT 0 NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS profile_contributions ("
+            + "username VARCHAR(255) NOT NULL REFERENCES profiles(username) ON DELETE CASCADE, "
+            + "need_id INT NOT NULL, "
+            + "quantity INT NOT NULL, "
+            + "PRIMARY KEY (username, need_id))",
+        "CREATE INDEX IF NOT EXISTS baskets_username ON baskets(username)",
+        "CREATE INDEX IF NOT EXISTS needs_price ON needs(price)",
+        // Databases created before entities had versions
+        "ALTER TABLE needs ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL",
+        "ALTER TABLE profiles ADD COLUMN IF NOT EXISTS version BIGINT DEFAULT 0 NOT NULL",
+        // Databases created before need names were unique: the oldest need of each name gets the key
+        "ALTER TABLE needs ADD COLUMN IF NOT EXISTS name_key VARCHAR(255)",
+        "UPDATE needs SET name_key = LOWER(name) WHERE name_key IS NULL "
+            + "AND id = (SELECT MIN(n.id) FROM needs n WHERE LOWER(n.name) = LOWER(needs.name)) "
+            + "AND NOT EXISTS (SELECT 1 FROM needs k WHERE k.name_key = LOWER(needs.name))",
+        "CREATE UNIQUE INDEX IF NOT EXISTS needs_name_key ON needs(name_key)"
+    };
+
+    static final String UNIQUE_VIOLATION = "23505";     // SQLState of a duplicate key, in H2 as in PostgreSQL
+
+    private final DataSource dataSource;    // Pool handing out connections
+
+    /**
+     * Work done with a borrowed connection
+     *
+     * @param <T> The result type
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        /**
+         * @param connection The borrowed connection
+         * @return The result of the work
+         * @throws SQLException if a statement fails
+         */
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Creates a JDBC Database and its tables if they do not exist
+     *
+     * @param dataSource The pooled {@link DataSource data source} to borrow connections from
+     *
+     * @throws IOException if the tables cannot be created
+     */
+    public JdbcDatabase(DataSource dataSource) throws IOException {
+        this.dataSource = dataSource;
+        transaction(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                for (String table : SCHEMA)
+                    statement.execute(table);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs work on a connection in auto-commit mode, for reads
+     *
+     * @param <T> The result type
+     * @param work The work to run
+     *
+     * @return The result of the work
+     *
+     * @throws IOException if a statement fails
+     */
+    public <T> T read(Work<T> work) throws IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            return work.run(connection);
+        }
+        catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Runs a single statement write on a connection in auto-commit mode, and
+     * bumps the {@linkplain DataVersion data version} once it has run
+     *
+     * @param <T> The result type
+     * @param work The work to run
+     *
+     * @return The result of the work
+     *
+     * @throws IOException if a statement fails
+     */
+    public <T> T write(Work<T> work) throws IOException {
+        try {
+            return read(work);
+        }
+        finally {
+            DataVersion.bump();
+        }
+    }
+
+    /**
+     * Runs work on a connection in one transaction, committed if the work
+     * completes and rolled back otherwise, then bumps the
+     * {@linkplain DataVersion data version}
+     *
+     * @param <T> The result type
+     * @param work The work to run
+     *
+     * @return The result of the work
+     *
+     * @throws IOException if a statement fails
+     */
+    public <T> T transaction(Work<T> work) throws IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            }
+            catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+            finally {
+                connection.setAutoCommit(autoCommit);
+                DataVersion.bump();
+            }
+        }
+        catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Determines if a table has no rows, used to import a JSON data file only once
+     *
+     * @param connection The connection to use
+     * @param table The table name
+     *
+     * @return true if the table is empty
+     *
+     * @throws SQLException if the table cannot be read
+     */
+    static boolean isEmpty(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rows.next();
+            return rows.getLong(1) == 0;
+        }
+    }
+
+    /**
+     * Moves the identity column of a table past the greatest id, after rows with
+     * explicit ids have been imported
+     *
+     * @param connection The connection to use
+     * @param table The table name, whose identity column is {@code id}
+     *
+     * @throws SQLException if the table cannot be altered
+     */
+    static void restartIdentity(Connection connection, String table) throws SQLException {
+        int next;
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table)) {
+            rows.next();
+            next = rows.getInt(1);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + next);
+        }
+    }
+
+    /**
+     * Creates a {@code LIKE ... ESCAPE '!'} pattern matching values that contain the given text
+     *
+     * @param text The text to look for, matched literally
+     *
+     * @return The pattern
+     */
+    static String containing(String text) {
+        return "%" + escape(text) + "%";
+    }
+
+    /**
+     * Creates a {@code LIKE ... ESCAPE '!'} pattern matching values that start with the given text
+     *
+     * @param text The text to look for, matched literally
+     *
+     * @return The pattern
+     */
+    static String starting(String text) {
+        return escape(text) + "%";
+    }
+
+    /**
+     * Escapes the wildcards of a {@code LIKE ... ESCAPE '!'} pattern
+     */
+    private static String escape(String text) {
+        return text.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * Determines if a statement failed because it would have duplicated a unique key
+     *
+     * @param e The exception the statement threw
+     *
+     * @return true if a unique constraint or index was violated
+     */
+    static boolean isUniqueViolation(SQLException e) {
+        return UNIQUE_VIOLATION.equals(e.getSQLState());
+    }
+
+    /**
+     * Retrieves the key generated for the row just inserted
+     *
+     * @param statement The insert statement, prepared to return generated keys
+     *
+     * @return The generated id
+     *
+     * @throws SQLException if no key was generated
+     */
+    static int generatedId(PreparedStatement statement) throws SQLException {
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            if (!keys.next())
+                throw new SQLException("No id was generated");
+            return keys.getInt(1);
+        }
+    }
+}
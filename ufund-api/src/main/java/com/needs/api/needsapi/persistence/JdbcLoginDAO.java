@@ -0,0 +1,261 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.needs.api.needsapi.model.Login;
+
+/**
+ * Implements the functionality for JDBC database persistence for Logins
+ * <br>
+ * Used instead of {@link LoginFileDAO} when the {@code jdbc} profile is active.
+ * The logins file is imported the first time the table is empty.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+@Profile("jdbc")
+public class JdbcLoginDAO implements LoginDAO {
+    private static final Logger LOG = Logger.getLogger(JdbcLoginDAO.class.getName());
+
+    static final String SELECT_ALL = "SELECT username, pass, basket_id FROM logins ORDER BY username";
+    static final String SELECT_CONTAINING = "SELECT username, pass, basket_id FROM logins WHERE username LIKE ? ESCAPE '!' ORDER BY username";
+    static final String SELECT_BY_NAME = "SELECT username, pass, basket_id FROM logins WHERE username = ?";
+    static final String INSERT = "INSERT INTO logins (username, pass, basket_id) VALUES (?, ?, ?)";
+    static final String UPDATE = "UPDATE logins SET pass = ?, basket_id = ? WHERE username = ?";
+    static final String UPDATE_BASKET = "UPDATE logins SET basket_id = ? WHERE username = ?";
+    static final String DELETE = "DELETE FROM logins WHERE username = ?";
+
+    private final JdbcDatabase database;    // Pooled connections to the database
+    private final BasketDAO basketDAO;      // Keeps the owner of a basket in step with a renamed login
+
+    /**
+     * Creates a JDBC Login Data Access Object
+     *
+     * @param filename The logins file imported while the table is empty
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param basketDAO The {@link BasketDAO basket DAO} holding each login's basket
+     * @param database The {@link JdbcDatabase database} holding the logins
+     *
+     * @throws IOException when the file or the database cannot be read
+     */
+    @Autowired
+    public JdbcLoginDAO(@Value("${logins.file}") String filename, ObjectMapper objectMapper, BasketDAO basketDAO, JdbcDatabase database) throws IOException {
+        this.database = database;
+        this.basketDAO = basketDAO;
+        importFile(new File(filename.trim()), objectMapper);
+    }
+
+    /**
+     * Imports the {@linkplain Login logins} of the file in one batch if the table is empty
+     */
+    private void importFile(File file, ObjectMapper objectMapper) throws IOException {
+        if (!file.exists())
+            return;
+
+        Login[] imported = objectMapper.readValue(file, Login[].class);
+        database.transaction(connection -> {
+            if (!JdbcDatabase.isEmpty(connection, "logins"))
+                return null;
+
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                for (Login login : imported) {
+                    bind(statement, login);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            LOG.info("Imported " + imported.length + " logins from " + file);
+            return null;
+        });
+    }
+
+    private static void bind(PreparedStatement statement, Login login) throws SQLException {
+        statement.setString(1, login.getUserName());
+        statement.setString(2, login.getPass());
+        statement.setInt(3, login.getBasketId());
+    }
+
+    private static Login[] readAll(PreparedStatement statement) throws SQLException {
+        List<Login> logins = new ArrayList<>();
+        try (ResultSet rows = statement.executeQuery()) {
+            while (rows.next())
+                logins.add(new Login(rows.getString(1), rows.getString(2), rows.getInt(3)));
+        }
+        return logins.toArray(new Login[logins.size()]);
+    }
+
+    private static Login getLogin(Connection connection, String userName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_BY_NAME)) {
+            statement.setString(1, userName);
+            Login[] logins = readAll(statement);
+            return logins.length == 0 ? null : logins[0];
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Login[] getLogins() throws IOException {
+        return database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_ALL)) {
+                return readAll(statement);
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Login[] findLogins(String userName) throws IOException {
+        if (userName == null)
+            return getLogins();
+
+        return database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_CONTAINING)) {
+                statement.setString(1, JdbcDatabase.containing(userName));
+                return readAll(statement);
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public boolean userExists(String userName) throws IOException {
+        return getLogin(userName) != null;
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Login getLogin(String userName) throws IOException {
+        return database.read(connection -> getLogin(connection, userName));
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Login createLogin(Login login) throws IOException {
+        return database.transaction(connection -> {
+            // checks if userName already exists
+            if (getLogin(connection, login.getUserName()) != null)
+                return null;
+
+            Login newLogin = new Login(login.getUserName(), login.getPass(), login.getBasketId());
+            try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                bind(statement, newLogin);
+                statement.executeUpdate();
+            }
+            return newLogin;
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Login updateLogin(String userName, Login login) throws IOException {
+        boolean renamed = !login.getUserName().equals(userName);
+        if (getLogin(userName) == null)
+            return null;  // login does not exist
+        if (renamed && userExists(login.getUserName()))
+            return null;
+
+        int id = basketDAO.getId(userName);
+        if (id != -1)
+            login.setBasketId(id);
+        basketDAO.setUsername(id, login.getUserName());
+
+        return database.transaction(connection -> {
+            if (renamed) {
+                // A renamed login replaces the old one, which takes its profile with it
+                try (PreparedStatement statement = connection.prepareStatement(DELETE)) {
+                    statement.setString(1, userName);
+                    if (statement.executeUpdate() == 0)
+                        return null;
+                }
+                try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+                    bind(statement, login);
+                    statement.executeUpdate();
+                }
+            }
+            else {
+                try (PreparedStatement statement = connection.prepareStatement(UPDATE)) {
+                    statement.setString(1, login.getPass());
+                    statement.setInt(2, login.getBasketId());
+                    statement.setString(3, userName);
+                    if (statement.executeUpdate() == 0)
+                        return null;
+                }
+            }
+            return login;
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public boolean deleteLogin(String userName) throws IOException {
+        return database.write(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE)) {
+                statement.setString(1, userName);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Login setBasketId(String userName, int basketId) throws IOException {
+        return database.transaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_BASKET)) {
+                statement.setInt(1, basketId);
+                statement.setString(2, userName);
+                if (statement.executeUpdate() == 0)
+                    return null;
+            }
+            return getLogin(connection, userName);
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public int getBasketId(String userName) {
+        try {
+            Login login = getLogin(userName);
+            return login == null ? 0 : login.getBasketId();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,645 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+/**
+ * Implements the functionality for JDBC database persistence for Needs
+ * <br>
+ * Used instead of {@link NeedFileDAO} when the {@code jdbc} profile is active.
+ * The needs file is imported into the table the first time it is empty.
+ * <br>
+ * The database has no index for typos or for ranking by relevance, so the DAO
+ * keeps its own: seeded from the table when created, and changed with every need
+ * this DAO creates, updates or deletes. Other nodes sharing the database do not
+ * tell it of their writes, so before a search it compares the count of the needs
+ * and the sums of their versions and ids with those it indexed, and rebuilds the
+ * indexes from the table when they differ. Writes of other nodes that leave all
+ * three as they were go unseen until the next that does not. Matches are read
+ * back from the table, so a need deleted meanwhile is never returned.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+@Profile("jdbc")
+public class JdbcNeedDAO implements NeedDAO {
+    private static final Logger LOG = Logger.getLogger(JdbcNeedDAO.class.getName());
+
+    static final String COLUMNS = "id, name, type, price, quantity_needed, quantity_fulfilled, urgency, description, image";
+    // The order of NeedComparator: high urgency first, then by id like the file DAO's tree map
+    static final String ORDER = " ORDER BY CASE WHEN urgency = 'HIGH' THEN 0 ELSE 1 END, id";
+    static final String SELECT_ALL = "SELECT " + COLUMNS + ", version FROM needs" + ORDER;
+    static final String SELECT_CONTAINING = "SELECT " + COLUMNS + ", version FROM needs WHERE LOWER(name) LIKE ? ESCAPE '!'" + ORDER;
+    // Urgent first, then the most still needed, then by id like the file DAO's prefix index
+    static final String SELECT_STARTING = "SELECT " + COLUMNS + ", version FROM needs WHERE LOWER(name) LIKE ? ESCAPE '!' "
+                                        + "ORDER BY CASE WHEN urgency = 'HIGH' THEN 0 ELSE 1 END, quantity_needed - quantity_fulfilled DESC, id LIMIT ?";
+    static final String SELECT_WHERE = "SELECT " + COLUMNS + ", version FROM needs WHERE 1 = 1";
+    static final String SELECT_BY_ID = "SELECT " + COLUMNS + ", version FROM needs WHERE id = ?";
+    static final String SELECT_BY_IDS = "SELECT " + COLUMNS + ", version FROM needs WHERE id IN ";
+    static final String SELECT_NAME_EXISTS = "SELECT 1 FROM needs WHERE name_key = ?";
+    // Fails on the unique name key if another need already has the name
+    static final String INSERT = "INSERT INTO needs (name, type, price, quantity_needed, quantity_fulfilled, urgency, description, image, name_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String IMPORT = "INSERT INTO needs (" + COLUMNS + ", version, name_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Only replaces the row read, so neither another update nor a fulfillment made since is lost.
+    // A need renamed to a name another need has keeps no name key, as the file DAO allows
+    static final String UPDATE = "UPDATE needs SET name = ?, type = ?, price = ?, quantity_needed = ?, quantity_fulfilled = ?, urgency = ?, description = ?, image = ?, version = ?, "
+                               + "name_key = CASE WHEN EXISTS (SELECT 1 FROM needs k WHERE k.name_key = ? AND k.id <> ?) THEN NULL ELSE ? END "
+                               + "WHERE id = ? AND version = ? AND quantity_fulfilled = ?";
+    static final String DELETE = "DELETE FROM needs WHERE id = ?";
+    static final String SELECT_QUANTITIES = "SELECT quantity_needed, quantity_fulfilled FROM needs WHERE id = ?";
+    static final String FULFILL = "UPDATE needs SET quantity_fulfilled = ? WHERE id = ? AND quantity_fulfilled = ?";
+    static final String TOTAL_NEEDED = "SELECT COALESCE(SUM(quantity_needed), 0) FROM needs";
+    // Changes with every need created, updated or deleted by any node, as versions only grow and ids are never reused
+    static final String SELECT_STATE = "SELECT COUNT(*), COALESCE(SUM(version), 0), COALESCE(SUM(id), 0) FROM needs";
+    static final String TOTAL_FULFILLED = "SELECT COALESCE(SUM(CASE WHEN quantity_fulfilled > quantity_needed THEN quantity_needed ELSE quantity_fulfilled END), 0) FROM needs";
+
+    private final JdbcDatabase database;    // Pooled connections to the database
+    private final NameTypoIndex typos = new NameTypoIndex(need -> need.getName() == null ? null : need.getName().toLowerCase());  // Words of the names, despite typos
+    private final NeedTextIndex texts = new NeedTextIndex();    // Terms of the names and descriptions, by relevance
+    private final Map<Integer,Need> indexed = new HashMap<>();  // The need as last filed in the indexes, guards them for writers
+    private long indexedVersions;   // Sum of the versions of the needs in the indexes
+    private long indexedIds;        // Sum of the ids of the needs in the indexes
+
+    /**
+     * Creates a JDBC Need Data Access Object
+     *
+     * @param filename The needs file imported while the table is empty
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param database The {@link JdbcDatabase database} holding the needs
+     *
+     * @throws IOException when the file or the database cannot be read
+     */
+    @Autowired
+    public JdbcNeedDAO(@Value("${needs.file}") String filename, ObjectMapper objectMapper, JdbcDatabase database) throws IOException {
+        this.database = database;
+        importFile(new File(filename.trim()), objectMapper);
+        reindex();
+    }
+
+    /**
+     * Rebuilds the indexes from the needs now in the table
+     */
+    private void reindex() throws IOException {
+        synchronized (indexed) {
+            indexed.clear();
+            indexedVersions = 0;
+            indexedIds = 0;
+            for (Need need : getNeeds()) {
+                indexed.put(need.getId(), need);
+                indexedVersions += need.getVersion();
+                indexedIds += need.getId();
+            }
+            typos.rebuild(indexed);
+            texts.rebuild(indexed);
+        }
+    }
+
+    /**
+     * Rebuilds the indexes if the table no longer holds the needs they were
+     * filed with, because another node sharing the database changed them
+     * <br>
+     * The count of the needs and the sums of their versions and ids are compared,
+     * so the table is only read in full after such a change
+     */
+    private void refresh() throws IOException {
+        long[] state = database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_STATE);
+                 ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return new long[] {resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3)};
+            }
+        });
+        synchronized (indexed) {
+            if (state[0] == indexed.size() && state[1] == indexedVersions && state[2] == indexedIds)
+                return;
+        }
+        reindex();
+    }
+
+    /**
+     * Files a {@linkplain Need need} this DAO created or updated in the indexes,
+     * unless they already hold a later version of it
+     */
+    private void index(Need need) {
+        synchronized (indexed) {
+            Need previous = indexed.get(need.getId());
+            if (previous == null) {
+                typos.add(need.getId(), need);
+                texts.add(need.getId(), need);
+            }
+            else if (previous.getVersion() < need.getVersion()) {
+                typos.replace(need.getId(), previous, need);
+                texts.replace(need.getId(), previous, need);
+                indexedVersions -= previous.getVersion();
+                indexedIds -= previous.getId();
+            }
+            else
+                return;
+            indexed.put(need.getId(), need);
+            indexedVersions += need.getVersion();
+            indexedIds += need.getId();
+        }
+    }
+
+    /**
+     * Removes a {@linkplain Need need} this DAO deleted from the indexes
+     */
+    private void unindex(int id) {
+        synchronized (indexed) {
+            Need previous = indexed.remove(id);
+            if (previous != null) {
+                typos.remove(id, previous);
+                texts.remove(id, previous);
+                indexedVersions -= previous.getVersion();
+                indexedIds -= previous.getId();
+            }
+        }
+    }
+
+    /**
+     * Imports the {@linkplain Need needs} of the file in one batch if the table is empty
+     */
+    private void importFile(File file, ObjectMapper objectMapper) throws IOException {
+        if (!file.exists())
+            return;
+
+        Need[] imported = objectMapper.readValue(file, Need[].class);
+        database.transaction(connection -> {
+            if (!JdbcDatabase.isEmpty(connection, "needs"))
+                return null;
+
+            Set<String> keys = new HashSet<>();
+            try (PreparedStatement statement = connection.prepareStatement(IMPORT)) {
+                for (Need need : imported) {
+                    statement.setInt(1, need.getId());
+                    bind(statement, 2, need);
+                    statement.setLong(10, need.getVersion());
+                    // files written before names were unique may repeat one
+                    String key = nameKey(need.getName());
+                    statement.setString(11, keys.add(key) ? key : null);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            JdbcDatabase.restartIdentity(connection, "needs");
+            LOG.info("Imported " + imported.length + " needs from " + file);
+            return null;
+        });
+    }
+
+    /**
+     * Binds every column of a {@linkplain Need need} except its id, starting at the given index
+     */
+    private static void bind(PreparedStatement statement, int index, Need need) throws SQLException {
+        statement.setString(index, need.getName());
+        statement.setString(index + 1, need.getType() == null ? null : need.getType().name());
+        statement.setDouble(index + 2, need.getPrice());
+        statement.setInt(index + 3, need.getQuantityNeeded());
+        statement.setInt(index + 4, need.getQuantityFulfilled());
+        statement.setString(index + 5, need.getUrgency() == null ? null : need.getUrgency().name());
+        statement.setString(index + 6, need.getDescription());
+        statement.setString(index + 7, need.getImage());
+    }
+
+    /**
+     * Reads the {@linkplain Need need} in the current row
+     */
+    private static Need read(ResultSet row) throws SQLException {
+        String type = row.getString("type");
+        String urgency = row.getString("urgency");
+        Need need = new Need(row.getInt("id"), row.getString("name"), type == null ? null : NeedType.valueOf(type),
+                             row.getDouble("price"), row.getInt("quantity_needed"), row.getInt("quantity_fulfilled"),
+                             urgency == null ? null : UrgencyTag.valueOf(urgency), row.getString("description"),
+                             row.getString("image"));
+        need.setVersion(row.getLong("version"));
+        return need;
+    }
+
+    /**
+     * Reads every {@linkplain Need need} returned by a query
+     */
+    private static Need[] readAll(PreparedStatement statement) throws SQLException {
+        List<Need> needs = new ArrayList<>();
+        try (ResultSet rows = statement.executeQuery()) {
+            while (rows.next())
+                needs.add(read(rows));
+        }
+        return needs.toArray(new Need[needs.size()]);
+    }
+
+    private static Need getNeed(Connection connection, int id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_BY_ID)) {
+            statement.setInt(1, id);
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next() ? read(rows) : null;
+            }
+        }
+    }
+
+    /**
+     * Reads the {@linkplain Need needs} with the given ids, those deleted meanwhile left out
+     */
+    private Map<Integer,Need> getNeeds(Collection<Integer> ids) throws IOException {
+        Map<Integer,Need> needs = new HashMap<>();
+        if (ids.isEmpty())
+            return needs;
+
+        String sql = SELECT_BY_IDS + "(" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        return database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int index = 1;
+                for (int id : ids)
+                    statement.setInt(index++, id);
+                for (Need need : readAll(statement))
+                    needs.put(need.getId(), need);
+                return needs;
+            }
+        });
+    }
+
+    /**
+     * Folds a name into the key that is unique among the needs, as the file DAO folds it
+     */
+    private static String nameKey(String name) {
+        return name == null ? null : name.toLowerCase();
+    }
+
+    private static boolean needExists(Connection connection, String needName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_NAME_EXISTS)) {
+            statement.setString(1, nameKey(needName));
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next();
+            }
+        }
+    }
+
+    private int total(String sql) {
+        try {
+            return database.read(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(sql);
+                     ResultSet rows = statement.executeQuery()) {
+                    rows.next();
+                    return (int)rows.getLong(1);
+                }
+            });
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Need[] getNeeds() throws IOException {
+        return database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_ALL)) {
+                return readAll(statement);
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Need[] findNeeds(String containsText) throws IOException {
+        if (containsText == null)
+            return getNeeds();
+
+        return database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_CONTAINING)) {
+                statement.setString(1, JdbcDatabase.containing(containsText.toLowerCase()));
+                return readAll(statement);
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The needs are found through the typo index kept by this DAO, rebuilt first
+     * if another node changed the table, then only their rows are read and scored
+     * again against the names they hold now
+     */
+    @Override
+    public Need[] findNeedsFuzzy(String text) throws IOException {
+        if (text == null)
+            return new Need[0];
+
+        refresh();
+
+        String folded = text.toLowerCase();
+        Map<Integer,Integer> scores = new HashMap<>();
+        List<Need> matches = new ArrayList<>();
+        for (Need need : getNeeds(typos.find(folded).keySet()).values()) {
+            int score = need.getName() == null ? -1 : NameTypoIndex.score(folded, need.getName().toLowerCase());
+            if (score >= 0) {
+                scores.put(need.getId(), score);
+                matches.add(need);
+            }
+        }
+
+        // by score, then in the order of the other queries
+        matches.sort(Comparator.<Need>comparingInt(need -> scores.get(need.getId()))
+                               .thenComparing(new NeedComparator())
+                               .thenComparingInt(Need::getId));
+        return matches.toArray(new Need[matches.size()]);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Need[] suggestNeeds(String prefix, int k) throws IOException {
+        return database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_STARTING)) {
+                statement.setString(1, JdbcDatabase.starting(prefix == null ? "" : prefix.toLowerCase()));
+                statement.setInt(2, Math.max(0, Math.min(k, MAX_SUGGESTIONS)));
+                return readAll(statement);
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The best k are found through the text index kept by this DAO, rebuilt first
+     * if another node changed the table, then only their rows are read
+     */
+    @Override
+    public Need[] rankNeeds(String text, int k) throws IOException {
+        refresh();
+        int[] ids = texts.search(text, Math.min(k, MAX_RANKED));
+        List<Integer> best = new ArrayList<>(ids.length);
+        for (int id : ids)
+            best.add(id);
+
+        Map<Integer,Need> needs = getNeeds(best);
+        List<Need> ranked = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Need need = needs.get(id);
+            if (need != null)
+                ranked.add(need);  // unless deleted meanwhile
+        }
+        return ranked.toArray(new Need[ranked.size()]);
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Each criterion given adds a condition to the query, left to the indexes
+     * of the database
+     */
+    @Override
+    public Need[] queryNeeds(Set<NeedType> types, Set<UrgencyTag> urgencies, double minPrice, double maxPrice, Boolean open) throws IOException {
+        StringBuilder sql = new StringBuilder(SELECT_WHERE);
+        List<Object> parameters = new ArrayList<>();
+        if (!types.isEmpty()) {
+            sql.append(" AND type IN (").append(String.join(", ", Collections.nCopies(types.size(), "?"))).append(")");
+            for (NeedType type : types)
+                parameters.add(type.name());
+        }
+        if (!urgencies.isEmpty()) {
+            sql.append(" AND urgency IN (").append(String.join(", ", Collections.nCopies(urgencies.size(), "?"))).append(")");
+            for (UrgencyTag urgency : urgencies)
+                parameters.add(urgency.name());
+        }
+        if (minPrice > Double.NEGATIVE_INFINITY) {
+            sql.append(" AND price >= ?");
+            parameters.add(minPrice);
+        }
+        if (maxPrice < Double.POSITIVE_INFINITY) {
+            sql.append(" AND price <= ?");
+            parameters.add(maxPrice);
+        }
+        if (open != null)
+            sql.append(open ? " AND quantity_fulfilled < quantity_needed" : " AND quantity_fulfilled >= quantity_needed");
+        sql.append(ORDER);
+
+        return database.read(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < parameters.size(); ++i)
+                    statement.setObject(i + 1, parameters.get(i));
+                return readAll(statement);
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public boolean needExists(String needName) throws IOException {
+        // if no name is given, then need will not be created
+        if (needName == null)
+            return false;
+
+        return database.read(connection -> needExists(connection, needName));
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Need getNeed(int id) throws IOException {
+        return database.read(connection -> getNeed(connection, id));
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The name is checked by the unique index on the folded name as the row is
+     * inserted, so of two creates of one name only one succeeds, without scanning
+     * the table.
+     */
+    @Override
+    public Need createNeed(Need need) throws IOException {
+        // if any fields are empty, new need is not created
+        if (need.getName() == null || need.getPrice() == 0 || need.getType() == null
+            || need.getQuantityNeeded() == 0 || need.getImage() == null)
+            return null;
+
+        need.setUrgencyImage(need.getUrgency().getImage());
+        Need created = database.write(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+                bind(statement, 1, need);
+                statement.setString(9, nameKey(need.getName()));
+                statement.executeUpdate();
+                return new Need(JdbcDatabase.generatedId(statement), need.getName(), need.getType(), need.getPrice(),
+                                need.getQuantityNeeded(), need.getQuantityFulfilled(), need.getUrgency(),
+                                need.getDescription(), need.getImage());
+            }
+            catch (SQLException e) {
+                if (JdbcDatabase.isUniqueViolation(e))
+                    return null;  // the need already exists
+                throw e;
+            }
+        });
+        if (created != null)
+            index(created);
+        return created;
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Reads the need and writes the update only if the row still has the version
+     * and quantity fulfilled read, retrying otherwise, so no row lock is held
+     * between the two statements
+     */
+    @Override
+    public Need updateNeed(Need need, long version) throws IOException {
+        // for partial updates: if any fields are left blank, they stay the same,
+        // filled in again from the row read on every attempt
+        String name = need.getName();
+        double price = need.getPrice();
+        int quantityNeeded = need.getQuantityNeeded();
+        int quantityFulfilled = need.getQuantityFulfilled();
+        NeedType type = need.getType();
+        String image = need.getImage();
+
+        while (true) {
+            Need needToUpdate = getNeed(need.getId());
+            if (needToUpdate == null)
+                return null;  // need does not exist
+            if (version != ANY_VERSION && version != needToUpdate.getVersion())
+                throw new VersionConflictException(version, needToUpdate.getVersion());
+
+            need.setName(name == null ? needToUpdate.getName() : name);
+            need.setPrice(price == 0 ? needToUpdate.getPrice() : price);
+            need.setQuantityNeeded(quantityNeeded == 0 ? needToUpdate.getQuantityNeeded() : quantityNeeded);
+            need.setQuantityFulfilled(quantityFulfilled == 0 ? needToUpdate.getQuantityFulfilled() : quantityFulfilled);
+            need.setType(type == null ? needToUpdate.getType() : type);
+            need.setImage(image == null ? needToUpdate.getImage() : image);
+            need.setUrgencyImage(need.getUrgency().getImage());
+            need.setVersion(needToUpdate.getVersion() + 1);
+
+            boolean updated = database.write(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(UPDATE)) {
+                    bind(statement, 1, need);
+                    statement.setLong(9, need.getVersion());
+                    statement.setString(10, nameKey(need.getName()));
+                    statement.setInt(11, need.getId());
+                    statement.setString(12, nameKey(need.getName()));
+                    statement.setInt(13, need.getId());
+                    statement.setLong(14, needToUpdate.getVersion());
+                    statement.setInt(15, needToUpdate.getQuantityFulfilled());
+                    return statement.executeUpdate() > 0;
+                }
+                catch (SQLException e) {
+                    if (JdbcDatabase.isUniqueViolation(e))
+                        return false;  // another need took the name meanwhile, read again
+                    throw e;
+                }
+            });
+            if (updated) {
+                index(need);
+                return need;
+            }
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Reads the quantities and writes the new quantity fulfilled only if it is
+     * still the one read, retrying otherwise, so no row lock is held between
+     * the two statements
+     */
+    @Override
+    public int fulfill(int id, int quantity, boolean capped) throws IOException {
+        return database.write(connection -> {
+            while (true) {
+                int needed;
+                int fulfilled;
+                try (PreparedStatement statement = connection.prepareStatement(SELECT_QUANTITIES)) {
+                    statement.setInt(1, id);
+                    try (ResultSet rows = statement.executeQuery()) {
+                        if (!rows.next())
+                            return -1;  // need does not exist
+                        needed = rows.getInt(1);
+                        fulfilled = rows.getInt(2);
+                    }
+                }
+
+                int accepted = Math.max(0, quantity);
+                if (capped)
+                    accepted = Math.min(accepted, Math.max(0, needed - fulfilled));
+                if (accepted == 0)
+                    return 0;
+
+                try (PreparedStatement statement = connection.prepareStatement(FULFILL)) {
+                    statement.setInt(1, fulfilled + accepted);
+                    statement.setInt(2, id);
+                    statement.setInt(3, fulfilled);
+                    if (statement.executeUpdate() > 0)
+                        return accepted;
+                }
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public int getTotalNeeded() {
+        return total(TOTAL_NEEDED);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public int getTotalFulfilled() {
+        return total(TOTAL_FULFILLED);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public boolean deleteNeed(int id) throws IOException {
+        boolean deleted = database.write(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE)) {
+                statement.setInt(1, id);
+                return statement.executeUpdate() > 0;
+            }
+        });
+        if (deleted)
+            unindex(id);
+        return deleted;
+    }
+}
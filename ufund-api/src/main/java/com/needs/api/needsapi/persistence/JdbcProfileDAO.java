@@ -0,0 +1,337 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.needs.api.needsapi.model.Profile;
+
+/**
+ * Implements the functionality for JDBC database persistence for Profiles
+ * <br>
+ * Used instead of {@link ProfileFileDAO} when the {@code jdbc} profile is active.
+ * A profile only exists while its login does: the database removes it with its
+ * login, and a profile saved for a missing login is not stored. The contributions
+ * of a profile are rows of the profile_contributions table, rewritten in one
+ * batch whenever the profile is saved. The profiles file is imported the first
+ * time the table is empty.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+@org.springframework.context.annotation.Profile("jdbc")
+public class JdbcProfileDAO implements ProfileDAO {
+    private static final Logger LOG = Logger.getLogger(JdbcProfileDAO.class.getName());
+
+    static final String SELECT_ALL = "SELECT username, first_name, last_name, email, country, is_private, version FROM profiles ORDER BY username";
+    static final String SELECT_ALL_CONTRIBUTIONS = "SELECT username, need_id, quantity FROM profile_contributions";
+    static final String SELECT_BY_NAME = "SELECT first_name, last_name, email, country, is_private, version FROM profiles WHERE username = ?";
+    static final String SELECT_CONTRIBUTIONS = "SELECT need_id, quantity FROM profile_contributions WHERE username = ?";
+    static final String SELECT_LOGIN = "SELECT 1 FROM logins WHERE username = ?";
+    static final String INSERT = "INSERT INTO profiles (username, first_name, last_name, email, country, is_private, version) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    static final String UPDATE = "UPDATE profiles SET first_name = ?, last_name = ?, email = ?, country = ?, is_private = ?, version = ? WHERE username = ?";
+    // Only replaces the row read, so another update made since is not lost
+    static final String UPDATE_VERSION = UPDATE + " AND version = ?";
+    static final String DELETE = "DELETE FROM profiles WHERE username = ?";
+    static final String INSERT_CONTRIBUTION = "INSERT INTO profile_contributions (username, need_id, quantity) VALUES (?, ?, ?)";
+    static final String CLEAR_CONTRIBUTIONS = "DELETE FROM profile_contributions WHERE username = ?";
+    static final String BUMP_VERSION = "UPDATE profiles SET version = version + 1 WHERE username = ?";
+    static final String ADD_CONTRIBUTION = "UPDATE profile_contributions SET quantity = quantity + ? WHERE username = ? AND need_id = ?";
+
+    private final JdbcDatabase database;    // Pooled connections to the database
+
+    /**
+     * Creates a JDBC Profile Data Access Object
+     *
+     * @param filename The profiles file imported while the table is empty
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param loginDAO The {@link LoginDAO login DAO}, created first so that the logins are imported before the profiles
+     * @param database The {@link JdbcDatabase database} holding the profiles
+     *
+     * @throws IOException when the file or the database cannot be read
+     */
+    @Autowired
+    public JdbcProfileDAO(@Value("${profiles.file}") String filename, ObjectMapper objectMapper, LoginDAO loginDAO, JdbcDatabase database) throws IOException {
+        this.database = database;
+        importFile(new File(filename.trim()), objectMapper);
+    }
+
+    /**
+     * Imports the {@linkplain Profile profiles} of the file if the table is empty,
+     * skipping those whose login does not exist
+     */
+    private void importFile(File file, ObjectMapper objectMapper) throws IOException {
+        if (!file.exists())
+            return;
+
+        Profile[] imported = objectMapper.readValue(file, Profile[].class);
+        database.transaction(connection -> {
+            if (!JdbcDatabase.isEmpty(connection, "profiles"))
+                return null;
+
+            int saved = 0;
+            for (Profile profile : imported) {
+                if (save(connection, profile))
+                    ++saved;
+            }
+            LOG.info("Imported " + saved + " profiles from " + file);
+            return null;
+        });
+    }
+
+    private static void bind(PreparedStatement statement, int index, Profile profile) throws SQLException {
+        statement.setString(index, profile.getFirstName());
+        statement.setString(index + 1, profile.getLastName());
+        statement.setString(index + 2, profile.getEmail());
+        statement.setString(index + 3, profile.getCountry());
+        statement.setBoolean(index + 4, profile.getIsPrivate());
+        statement.setLong(index + 5, profile.getVersion());
+    }
+
+    private static Profile getProfile(Connection connection, String userName) throws SQLException {
+        Profile profile;
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_BY_NAME)) {
+            statement.setString(1, userName);
+            try (ResultSet rows = statement.executeQuery()) {
+                if (!rows.next())
+                    return null;
+                profile = new Profile(rows.getString(1), rows.getString(2), rows.getString(3), rows.getString(4),
+                                      userName, new HashMap<>());
+                if (rows.getBoolean(5))
+                    profile.switchPrivacy();
+                profile.setVersion(rows.getLong(6));
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_CONTRIBUTIONS)) {
+            statement.setString(1, userName);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next())
+                    profile.getContributions().put(rows.getInt(1), rows.getInt(2));
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Inserts or replaces a {@linkplain Profile profile} and rewrites its
+     * contributions in one batch
+     *
+     * @return false if the profile's login does not exist, so it was not saved
+     */
+    private static boolean save(Connection connection, Profile profile) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_LOGIN)) {
+            statement.setString(1, profile.getUserName());
+            try (ResultSet rows = statement.executeQuery()) {
+                if (!rows.next())
+                    return false;
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE)) {
+            bind(statement, 1, profile);
+            statement.setString(7, profile.getUserName());
+            if (statement.executeUpdate() == 0) {
+                try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                    insert.setString(1, profile.getUserName());
+                    bind(insert, 2, profile);
+                    insert.executeUpdate();
+                }
+            }
+        }
+
+        saveContributions(connection, profile);
+        return true;
+    }
+
+    /**
+     * Rewrites the contributions of a {@linkplain Profile profile} in one batch
+     */
+    private static void saveContributions(Connection connection, Profile profile) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(CLEAR_CONTRIBUTIONS)) {
+            statement.setString(1, profile.getUserName());
+            statement.executeUpdate();
+        }
+        Map<Integer,Integer> contributions = profile.getContributions();
+        if (contributions != null && !contributions.isEmpty()) {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_CONTRIBUTION)) {
+                for (Map.Entry<Integer,Integer> contribution : contributions.entrySet()) {
+                    statement.setString(1, profile.getUserName());
+                    statement.setInt(2, contribution.getKey());
+                    statement.setInt(3, contribution.getValue());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Reads the profiles and then every contribution, two queries in all
+     */
+    @Override
+    public Profile[] getProfiles() throws IOException {
+        return database.read(connection -> {
+            Map<String,Profile> profiles = new LinkedHashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_ALL);
+                 ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    Profile profile = new Profile(rows.getString(2), rows.getString(3), rows.getString(4), rows.getString(5),
+                                                  rows.getString(1), new HashMap<>());
+                    if (rows.getBoolean(6))
+                        profile.switchPrivacy();
+                    profile.setVersion(rows.getLong(7));
+                    profiles.put(profile.getUserName(), profile);
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_ALL_CONTRIBUTIONS);
+                 ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    Profile profile = profiles.get(rows.getString(1));
+                    if (profile != null)    // added since the profiles were read
+                        profile.getContributions().put(rows.getInt(2), rows.getInt(3));
+                }
+            }
+            return profiles.values().toArray(new Profile[profiles.size()]);
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Profile getProfile(String userName) throws IOException {
+        return database.read(connection -> getProfile(connection, userName));
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Reads the profile and writes the update only if the row still has the
+     * version read, retrying otherwise, so no row lock is held between the two
+     */
+    @Override
+    public Profile updateProfile(Profile profile, long version) throws IOException {
+        // for partial updates: if any fields are left blank, they stay the same,
+        // filled in again from the row read on every attempt
+        String firstName = profile.getFirstName();
+        String lastName = profile.getLastName();
+        String email = profile.getEmail();
+        String country = profile.getCountry();
+
+        while (true) {
+            Profile profileToUpdate = getProfile(profile.getUserName());
+            if (profileToUpdate == null)
+                return null;  // profile does not exist
+            long stored = profileToUpdate.getVersion();
+            if (version != ANY_VERSION && version != stored)
+                throw new VersionConflictException(version, stored);
+
+            profile.setFirstName(firstName == null ? profileToUpdate.getFirstName() : firstName);
+            profile.setLastName(lastName == null ? profileToUpdate.getLastName() : lastName);
+            profile.setEmail(email == null ? profileToUpdate.getEmail() : email);
+            profile.setCountry(country == null ? profileToUpdate.getCountry() : country);
+            profile.setVersion(stored + 1);
+
+            boolean updated = database.transaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(UPDATE_VERSION)) {
+                    bind(statement, 1, profile);
+                    statement.setString(7, profile.getUserName());
+                    statement.setLong(8, stored);
+                    if (statement.executeUpdate() == 0)
+                        return false;
+                }
+                saveContributions(connection, profile);
+                return true;
+            });
+            if (updated)
+                return profile;
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Profile createProfile(Profile profile) throws IOException {
+        Profile newProfile = new Profile(profile.getFirstName(), profile.getLastName(), profile.getEmail(),
+                                         profile.getCountry(), profile.getUserName(), profile.getContributions());
+        database.transaction(connection -> save(connection, newProfile));
+        return newProfile;
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public boolean deleteProfile(String userName) throws IOException {
+        return database.write(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE)) {
+                statement.setString(1, userName);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Bumps the profile's version first, which locks its row until the
+     * transaction ends, then adds to the contribution's row in place
+     */
+    @Override
+    public Profile addContribution(String userName, int needId, int quantity) throws IOException {
+        return database.transaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(BUMP_VERSION)) {
+                statement.setString(1, userName);
+                if (statement.executeUpdate() == 0)
+                    return null;  // profile does not exist
+            }
+            try (PreparedStatement statement = connection.prepareStatement(ADD_CONTRIBUTION)) {
+                statement.setInt(1, quantity);
+                statement.setString(2, userName);
+                statement.setInt(3, needId);
+                if (statement.executeUpdate() == 0) {
+                    try (PreparedStatement insert = connection.prepareStatement(INSERT_CONTRIBUTION)) {
+                        insert.setString(1, userName);
+                        insert.setInt(2, needId);
+                        insert.setInt(3, quantity);
+                        insert.executeUpdate();
+                    }
+                }
+            }
+            return getProfile(connection, userName);
+        });
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public Profile switchPrivacy(Profile profile) throws IOException {
+        profile.switchPrivacy();
+        database.transaction(connection -> {
+            Profile stored = getProfile(connection, profile.getUserName());
+            profile.setVersion((stored == null ? profile.getVersion() : stored.getVersion()) + 1);
+            return save(connection, profile);
+        });
+        return profile;
+    }
+}
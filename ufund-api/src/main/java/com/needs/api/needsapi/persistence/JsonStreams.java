@@ -0,0 +1,170 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads and writes the JSON data files one record at a time
+ * <p>
+ * Each data file is a JSON array of objects. When streaming is enabled, records
+ * are parsed with a {@link JsonParser} and handed to the DAO as soon as each one
+ * is complete, and written with a {@link JsonGenerator} straight from the DAO's
+ * map, so neither direction builds an array of the whole data set. When it is
+ * disabled the whole array is read or written with a single {@link ObjectMapper}
+ * call, as the DAOs originally did.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class JsonStreams {
+    private final boolean enabled;  // Whether records are streamed instead of read and written as arrays
+
+    /**
+     * Creates a Json Streams
+     *
+     * @param enabled Whether records are streamed instead of read and written as whole arrays
+     */
+    public JsonStreams(@Value("${persistence.streaming:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Creates a Json Streams that reads and writes whole arrays
+     *
+     * @return A Json Streams with streaming disabled
+     */
+    public static JsonStreams arrays() {
+        return new JsonStreams(false);
+    }
+
+    /**
+     * Determines if records are streamed
+     *
+     * @return true if streaming is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reads every record of a data file, in file order
+     *
+     * @param <T> The record type
+     * @param objectMapper Maps the JSON objects to records
+     * @param file The data file
+     * @param type The record class
+     * @param sink Receives each record as soon as it has been read
+     *
+     * @throws IOException if the file cannot be read or is not an array of records
+     */
+    public <T> void read(ObjectMapper objectMapper, File file, Class<T> type, Consumer<? super T> sink) throws IOException {
+        if (!enabled) {
+            for (T value : readArray(objectMapper, file, type))
+                sink.accept(value);
+            return;
+        }
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(file)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw MismatchedInputException.from(parser, type, "Expected an array of " + type.getSimpleName());
+
+            // One iterator over the elements of the array, so the deserialization
+            // context is not recreated for every record
+            parser.clearCurrentToken();
+            MappingIterator<T> records = objectMapper.readerFor(type).readValues(parser);
+            while (records.hasNextValue())
+                sink.accept(records.nextValue());
+        }
+    }
+
+    /**
+     * Writes records to a data file as a JSON array
+     *
+     * @param <T> The record type
+     * @param objectMapper Maps the records to JSON objects
+     * @param file The data file
+     * @param type The record class
+     * @param values The records, in the order they should be written
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public <T> void write(ObjectMapper objectMapper, File file, Class<T> type, Collection<? extends T> values) throws IOException {
+        if (!enabled) {
+            objectMapper.writeValue(file, toArray(type, values));
+            return;
+        }
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            writeArray(objectMapper, generator, type, values);
+        }
+    }
+
+    /**
+     * Serializes records to the bytes of a JSON array, used by write-behind flushes
+     * that must not hold the DAO's lock while writing to disk
+     *
+     * @param <T> The record type
+     * @param objectMapper Maps the records to JSON objects
+     * @param type The record class
+     * @param values The records, in the order they should be written
+     *
+     * @return The JSON array
+     *
+     * @throws IOException if a record cannot be serialized
+     */
+    public <T> byte[] writeBytes(ObjectMapper objectMapper, Class<T> type, Collection<? extends T> values) throws IOException {
+        if (!enabled)
+            return objectMapper.writeValueAsBytes(toArray(type, values));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, values.size() * 128));
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator((OutputStream)out, JsonEncoding.UTF8)) {
+            writeArray(objectMapper, generator, type, values);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes records as a JSON array through one sequence writer, so the serializer
+     * state is shared by every record and nothing is flushed between them
+     */
+    private static <T> void writeArray(ObjectMapper objectMapper, JsonGenerator generator, Class<T> type,
+                                       Collection<? extends T> values) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (SequenceWriter records = writer.writeValuesAsArray(generator)) {
+            for (T value : values)
+                records.write(value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] readArray(ObjectMapper objectMapper, File file, Class<T> type) throws IOException {
+        return (T[])objectMapper.readValue(file, type.arrayType());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] toArray(Class<T> type, Collection<? extends T> values) {
+        return values.toArray((T[])Array.newInstance(type, values.size()));
+    }
+}
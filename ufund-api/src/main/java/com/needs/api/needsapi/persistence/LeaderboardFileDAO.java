@@ -1,21 +1,30 @@
 package com.needs.api.needsapi.persistence;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.needs.api.needsapi.model.Need;
 import com.needs.api.needsapi.model.Profile;
 
 /**
- * Implements the functionality for JSON file-based peristance for leaderboard
+ * Implements the functionality for the leaderboard
+ * <br>
+ * The profiles and needs are read from their {@linkplain ProfileDAO profile} and
+ * {@linkplain NeedDAO need} DAOs, so the leaderboard shows whichever storage is
+ * active. When the {@linkplain MutationBus mutation bus} is enabled and both DAOs
+ * publish their changes to it, they are read once, and then kept up to date from
+ * those changes, instead of being read for every leaderboard. If changes were
+ * lost to a full ring, they are read again for the next leaderboard. The JDBC
+ * DAOs publish nothing, since other nodes may write the database, so under the
+ * {@code jdbc} profile they are read for every leaderboard.
  * 
  * {@literal @}Component Spring annotation instantiates a single instance of this
  * class and injects the instance into other classes as needed
@@ -25,13 +34,56 @@ import com.needs.api.needsapi.model.Profile;
 @Component
 public class LeaderboardFileDAO implements LeaderboardDAO {
     private static final Logger LOG = Logger.getLogger(LeaderboardFileDAO.class.getName());
-    private ObjectMapper objectMapper;  // Provides conversion between Profile/Need
-                                        // objects and JSON text format written
-                                        // to the file
     ArrayList<Profile> profiles;
     Map<Integer, Need> needs;
 
-    private  LoginDAO loginDAO;
+    private NeedDAO needDAO;            // Source of the needs, whose prices weigh the contributions
+    private ProfileDAO profileDAO;      // Source of the profiles that are ranked
+    private final ReentrantLock view = new ReentrantLock();  // Guards the profiles and needs while they follow the bus
+    private boolean live;               // true if the profiles and needs follow the bus instead of the files
+    private volatile boolean stale;     // true if changes were lost and the DAOs must be read again
+
+    /**
+     * Applies the changes to profiles and needs published on the bus, on the
+     * subscriptions' threads
+     */
+    private class Follower implements MutationBus.Handler {
+        @Override
+        public void onEvent(MutationEvent event, boolean endOfBatch) {
+            view.lock();
+            try {
+                if (event.getEntity() == MutationEvent.Entity.NEED) {
+                    if (event.getChange() == MutationEvent.Change.PUT)
+                        needs.put((Integer)event.getKey(), (Need)event.getValue());
+                    else
+                        needs.remove(event.getKey());
+                    return;
+                }
+
+                String userName = (String)event.getKey();
+                for (int i = 0; i < profiles.size(); ++i) {
+                    if (profiles.get(i).getUserName().equals(userName)) {
+                        if (event.getChange() == MutationEvent.Change.PUT)
+                            profiles.set(i, (Profile)event.getValue());
+                        else
+                            profiles.remove(i);
+                        return;
+                    }
+                }
+                if (event.getChange() == MutationEvent.Change.PUT && !userName.equals("admin"))
+                    profiles.add((Profile)event.getValue());
+            }
+            finally {
+                view.unlock();
+                DataVersion.bump();     // the store bumped it before the view followed
+            }
+        }
+
+        @Override
+        public void onOverrun(long missed) {
+            stale = true;
+        }
+    }
 
     /**
      * calculate the total amount, in dollars, that a given user has contributed
@@ -79,45 +131,63 @@ public class LeaderboardFileDAO implements LeaderboardDAO {
     /**
      * Creates a Leaderboard File Data Access Object
      * 
-     * @param filename Filename to read from and write to
-     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param needDAO The {@link NeedDAO need DAO} to read the needs from
+     * @param profileDAO The {@link ProfileDAO profile DAO} to read the profiles from
+     * 
+     * @throws IOException when the needs or profiles cannot be read
+     */
+    public LeaderboardFileDAO(NeedDAO needDAO, ProfileDAO profileDAO) throws IOException {
+        this(needDAO, profileDAO, MutationBus.disabled());
+    }
+
+    /**
+     * Creates a Leaderboard File Data Access Object
+     * 
+     * @param needDAO The {@link NeedDAO need DAO} to read the needs from
+     * @param profileDAO The {@link ProfileDAO profile DAO} to read the profiles from
+     * @param events The {@link MutationBus mutation bus} to follow the profiles and needs on, if enabled and both DAOs publish to it
      * 
-     * @throws IOException when file cannot be accessed or read from
+     * @throws IOException when the needs or profiles cannot be read
      */
-    public LeaderboardFileDAO(ObjectMapper objectMapper, LoginDAO loginDAO) throws IOException {
-        this.objectMapper = objectMapper;
-        this.loginDAO = loginDAO;
-        load();  // load the profiles from the file
+    @Autowired
+    public LeaderboardFileDAO(NeedDAO needDAO, ProfileDAO profileDAO, MutationBus events) throws IOException {
+        this.needDAO = needDAO;
+        this.profileDAO = profileDAO;
+        load();  // load the profiles and needs from their DAOs
+
+        if (events.isEnabled() && events.topic(MutationEvent.Entity.PROFILE).hasWriter()
+                               && events.topic(MutationEvent.Entity.NEED).hasWriter()) {
+            Follower follower = new Follower();
+            events.subscribe(MutationEvent.Entity.PROFILE, "leaderboard-profiles", follower);
+            events.subscribe(MutationEvent.Entity.NEED, "leaderboard-needs", follower);
+            live = true;
+        }
     }
 
     /**
-     * Loads {@linkplain Need needs} and {@linkplain Profile profiles} from the JSON files into the map
+     * Loads {@linkplain Need needs} and {@linkplain Profile profiles} from their DAOs into the map
      * <br>
      * The needs are used to calculate each user's total contributions
      * The profiles are used to rank each user for the leaderboard by contribution
      * 
-     * @return true if the file was read successfully
+     * @return true if the needs and profiles were read successfully
      * 
-     * @throws IOException when file cannot be accessed or read from
+     * @throws IOException when the needs or profiles cannot be read
      */
     private boolean load() throws IOException {
-        // Deserializes the JSON objects from the file into an array of profiles
-        // readValue will throw an IOException if there's an issue with the file
-        // or reading from the file
+        // getProfiles and getNeeds will throw an IOException if there's an
+        // issue with the underlying storage
         
-        Profile[] profileArray = objectMapper.readValue(new File("data/profiles.json"),Profile[].class);
-        Need[] needsArray = objectMapper.readValue(new File("data/needs.json"),Need[].class);
+        Profile[] profileArray = profileDAO.getProfiles();
+        Need[] needsArray = needDAO.getNeeds();
 
         profiles = new ArrayList<>();
         needs = new HashMap<>();
 
         for (Profile profile : profileArray) {
-            
-            // if(loginDAO.userExists(profile.getUserName()) == true){
-                if(!profile.getUserName().equals("admin")){
-                    profiles.add(profile);
-                }
-           // }
+            if(!profile.getUserName().equals("admin")){
+                profiles.add(profile);
+            }
         }
 
         for (Need need : needsArray) {
@@ -130,7 +200,25 @@ public class LeaderboardFileDAO implements LeaderboardDAO {
 
     @Override
     public String[][] getLeaderboard() throws IOException {
-        load();
+        view.lock();
+        try {
+            if (!live || stale) {
+                stale = false;
+                load();
+            }
+            return rank();
+        }
+        finally {
+            view.unlock();
+        }
+    }
+
+    /**
+     * Ranks the profiles by their total contributions
+     * 
+     * @return The leaderboard rows
+     */
+    private String[][] rank() {
         profiles.sort(comparator);
         int length = 0;
 
@@ -165,7 +253,14 @@ public class LeaderboardFileDAO implements LeaderboardDAO {
 
     @Override
     public String[][] updateLeaderboard(Profile profile) throws IOException {
-        profiles.add(profile);
-        return getLeaderboard();
+        view.lock();
+        try {
+            if (!live)
+                profiles.add(profile);
+        }
+        finally {
+            view.unlock();
+        }
+        return getLeaderboard();  // a followed profile is already up to date
     }
 }
@@ -0,0 +1,63 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks that keys are spread over by hash
+ * <p>
+ * Operations on the same key always hold the same lock and so run one at a
+ * time, while operations on different keys usually hold different locks and
+ * run in parallel. The DAOs hold a key's lock across a read-modify-write of
+ * one value, and only take their store's lock for the moment the changed
+ * value is handed over. They are {@linkplain ReentrantLock reentrant locks}
+ * rather than monitors, so a request on a virtual thread waiting for one does
+ * not pin its carrier thread. The stripes of a DAO share one set of
+ * {@linkplain StoreMetrics metrics}, which record how long they are waited for and held.
+ *
+ * @author Team Swiss Pandas
+ */
+final class LockStripes {
+    static final int DEFAULT = 64;      // Stripes per DAO, enough for 64 clients to rarely share one
+
+    private final ReentrantLock[] locks;    // One lock per stripe
+    private final int mask;             // Number of stripes minus one, a power of two minus one
+
+    /**
+     * Creates lock stripes
+     *
+     * @param name What the stripes guard, names their {@linkplain StoreMetrics metrics}
+     * @param stripes The number of stripes, rounded up to a power of two,
+     * a single stripe serializes every key
+     */
+    LockStripes(String name, int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes));
+        if (size < stripes)
+            size <<= 1;
+        StoreMetrics metrics = StoreMetrics.of(name);
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; ++i)
+            locks[i] = new TimedLock(metrics);
+        mask = size - 1;
+    }
+
+    /**
+     * Retrieves the lock guarding a key
+     *
+     * @param key The key, may be null
+     *
+     * @return The lock to hold while reading and changing the key's value
+     */
+    ReentrantLock of(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    /**
+     * Retrieves the number of stripes
+     *
+     * @return The number of locks keys are spread over
+     */
+    int size() {
+        return locks.length;
+    }
+}
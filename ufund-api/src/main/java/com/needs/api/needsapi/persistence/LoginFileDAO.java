@@ -1,20 +1,22 @@
 package com.needs.api.needsapi.persistence;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import com.needs.api.needsapi.model.FundingBasket;
 import com.needs.api.needsapi.model.Login;
-import com.needs.api.needsapi.model.Profile;
 
 
 /**
@@ -27,31 +29,125 @@ import com.needs.api.needsapi.model.Profile;
  * @author Oscar Li
  */
 @Component
+@Profile("!jdbc")
 public class LoginFileDAO implements LoginDAO {
     private static final Logger LOG = Logger.getLogger(LoginFileDAO.class.getName());
-    Map<String,Login> logins;   // Provides a local cache of the login objects
-                                // so that we don't login to read from the file
-                                // each time
-    private ObjectMapper objectMapper;  // Provides conversion between Login
-                                        // objects and JSON text format written
-                                        // to the file
-    private String filename;    // Filename to read from and write to
+    FileBackedStore<String,Login> logins;   // Provides a local cache of the login objects
+                                            // so that we don't login to read from the file
+                                            // each time, and is the lock mutators hold
+    private final UniqueIndex<String,Login,String> userNames = new UniqueIndex<>(Login::getUserName);  // Every username, read without the lock
 
     private NeedFileDAO needDAO;
     private BasketFileDAO basketDAO;
+    private final List<RemovalListener> removalListeners = new CopyOnWriteArrayList<>();  // Told of every username that lost its login
+
+    /**
+     * Told of a username whose login was deleted or renamed, after the change
+     * has been made and the store's lock released
+     */
+    interface RemovalListener {
+        /**
+         * Handles the removal of a username
+         *
+         * @param userName The username that no longer has a login
+         *
+         * @throws IOException if the listener cannot persist its own change
+         */
+        void removed(String userName) throws IOException;
+    }
+
+    /**
+     * Creates a Login File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public LoginFileDAO(String filename,ObjectMapper objectMapper,BasketFileDAO basketDAO) throws IOException {
+        this(filename,objectMapper,basketDAO,WriteBehindFlusher.synchronous());
+    }
+
+    /**
+     * Creates a Login File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public LoginFileDAO(String filename,ObjectMapper objectMapper,BasketFileDAO basketDAO,WriteBehindFlusher flusher) throws IOException {
+        this(filename,objectMapper,basketDAO,flusher,BinarySnapshot.disabled());
+    }
 
     /**
      * Creates a Login File Data Access Object
      * 
      * @param filename Filename to read from and write to
      * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
      * 
      * @throws IOException when file cannot be accessed or read from
      */
-    public LoginFileDAO(@Value("${logins.file}") String filename,ObjectMapper objectMapper,BasketFileDAO basketDAO) throws IOException {
-        this.filename = filename;
-        this.objectMapper = objectMapper;
+    public LoginFileDAO(String filename,ObjectMapper objectMapper,BasketFileDAO basketDAO,WriteBehindFlusher flusher,BinarySnapshot snapshots) throws IOException {
+        this(filename,objectMapper,basketDAO,flusher,snapshots,JsonStreams.arrays());
+    }
+
+    /**
+     * Creates a Login File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link Login login} at a time
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public LoginFileDAO(String filename,ObjectMapper objectMapper,BasketFileDAO basketDAO,WriteBehindFlusher flusher,BinarySnapshot snapshots,JsonStreams streams) throws IOException {
+        this(filename,objectMapper,basketDAO,flusher,snapshots,streams,LsmStorage.disabled());
+    }
+
+    /**
+     * Creates a Login File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link Login login} at a time
+     * @param lsm The {@link LsmStorage LSM storage} to keep the logins in instead of the file
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public LoginFileDAO(String filename,ObjectMapper objectMapper,BasketFileDAO basketDAO,WriteBehindFlusher flusher,BinarySnapshot snapshots,JsonStreams streams,LsmStorage lsm) throws IOException {
+        this(filename,objectMapper,basketDAO,flusher,snapshots,streams,lsm,MutationBus.disabled());
+    }
+
+    /**
+     * Creates a Login File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link Login login} at a time
+     * @param lsm The {@link LsmStorage LSM storage} to keep the logins in instead of the file
+     * @param events The {@link MutationBus mutation bus} every change is published to
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    @Autowired
+    public LoginFileDAO(@Value("${logins.file}") String filename,ObjectMapper objectMapper,BasketFileDAO basketDAO,WriteBehindFlusher flusher,BinarySnapshot snapshots,JsonStreams streams,LsmStorage lsm,MutationBus events) throws IOException {
         this.basketDAO = basketDAO;
+        Map<String,Login> values = lsm.isEnabled() ? lsm.open("logins",LsmStore.STRINGS,Login.class) : new TreeMap<>();
+        logins = new FileBackedStore<>(filename,values,Login::getUserName,
+                                       FileBackedStore.Codec.json(objectMapper,streams,Login.class).withSnapshots(snapshots,SnapshotCodecs.LOGINS),
+                                       flusher);
+        logins.publishTo(events.topic(MutationEvent.Entity.LOGIN));
+        logins.index(userNames);
         load();  // load the logins from the file
     }
 
@@ -88,24 +184,24 @@ public class LoginFileDAO implements LoginDAO {
     }
 
     /**
-     * Saves the {@linkplain Login logins} from the map into the file as an array of JSON objects
-     * 
-     * @return true if the {@link Login logins} were written successfully
-     * 
-     * @throws IOException when file cannot be accessed or written to
+     * Registers a listener told of every username whose login is deleted or renamed
+     *
+     * @param listener The {@link RemovalListener listener} to add
      */
-    private boolean save() throws IOException {
-        Login[] loginArray = getLoginsArray();
+    void onRemoved(RemovalListener listener) {
+        removalListeners.add(listener);
+    }
 
-        // Serializes the Java Objects to JSON objects into the file
-        // writeValue will thrown an IOException if there is an issue
-        // with the file or reading from the file
-        objectMapper.writeValue(new File(filename),loginArray);
-        return true;
+    /**
+     * Tells every listener that a username no longer has a login
+     */
+    private void removed(String userName) throws IOException {
+        for (RemovalListener listener : removalListeners)
+            listener.removed(userName);
     }
 
     /**
-     * Loads {@linkplain Login logins} from the JSON file into the map
+     * Loads {@linkplain Login logins} from the file into the store
      * <br>
      * 
      * @return true if the file was read successfully
@@ -113,18 +209,11 @@ public class LoginFileDAO implements LoginDAO {
      * @throws IOException when file cannot be accessed or read from
      */
     private boolean load() throws IOException {
-        logins = new TreeMap<>();
-
-        // Deserializes the JSON objects from the file into an array of logins
-        // readValue will throw an IOException if there's an issue with the file
+        // Deserializes the JSON objects from the file one login at a time,
+        // or reads them from the binary snapshot if it is current
+        // load will throw an IOException if there's an issue with the file
         // or reading from the file
-        
-        Login[] loginArray = objectMapper.readValue(new File("data/logins.json"),Login[].class);
-
-        // Add each login to the tree map
-        for (Login login : loginArray) {
-            logins.put(login.getUserName(),login);
-        }
+        logins.load();
         return true;
     }
 
@@ -133,9 +222,13 @@ public class LoginFileDAO implements LoginDAO {
      */
     @Override
     public Login[] getLogins() {
-        synchronized(logins) {
+        logins.lock();
+        try {
             return getLoginsArray();
         }
+        finally {
+            logins.unlock();
+        }
     }
 
     /**
@@ -143,20 +236,20 @@ public class LoginFileDAO implements LoginDAO {
      */
     @Override
     public Login[] findLogins(String userName) {
-        synchronized(logins) {
+        logins.lock();
+        try {
             return getLoginsArray(userName);
         }
+        finally {
+            logins.unlock();
+        }
     }
 
     @Override
     public boolean userExists(String userName) {
-        for (Login login : logins.values()) {
-            if (login.getUserName().equals(userName)) {
-                return true;
-            }
-        }
-
-        return false;
+        // the index is kept in step under the store's lock, so it can be read
+        // without it, as the profile store does while holding its own lock
+        return userNames.contains(userName);
     }
 
     /**
@@ -164,12 +257,16 @@ public class LoginFileDAO implements LoginDAO {
      */
     @Override
     public Login getLogin(String userName) {
-        synchronized(logins) {
+        logins.lock();
+        try {
             if (logins.containsKey(userName))
                 return logins.get(userName);
             else
                 return null;
         }
+        finally {
+            logins.unlock();
+        }
     }
 
     /**
@@ -177,19 +274,27 @@ public class LoginFileDAO implements LoginDAO {
      */
     @Override
     public Login createLogin(Login login) throws IOException {
-        synchronized(logins) {
-            // We create a new login object because the name field is immutable
-            // and we login to assign the next unique name
-            Login newLogin = new Login(login.getUserName(), login.getPass(), login.getBasketId());
-
-            // checks if userName already exists
-            if(userExists(newLogin.getUserName()) == true){
-                return null;
+        try {
+            logins.lock();
+            try {
+                // We create a new login object because the name field is immutable
+                // and we login to assign the next unique name
+                Login newLogin = new Login(login.getUserName(), login.getPass(), login.getBasketId());
+
+                // checks if userName already exists
+                if(userExists(newLogin.getUserName()) == true){
+                    return null;
+                }
+
+                logins.put(newLogin); // may throw an IOException
+                return newLogin;
             }
-
-            logins.put(newLogin.getUserName(),newLogin);
-            save(); // may throw an IOException
-            return newLogin;
+            finally {
+                logins.unlock();
+            }
+        }
+        finally {
+            logins.await();
         }
     }
 
@@ -198,31 +303,37 @@ public class LoginFileDAO implements LoginDAO {
      */
     @Override
     public Login updateLogin(String userName, Login login) throws IOException {
-        synchronized(logins) {
-            if (logins.containsKey(userName) == false){
-                return null;  // login does not exist
-            }
-            if(login.getUserName() != userName && userExists(login.getUserName())){
-                return null;
-            }
+        try {
+            logins.lock();
+            try {
+                if (logins.containsKey(userName) == false){
+                    return null;  // login does not exist
+                }
+                if(!userName.equals(login.getUserName()) && userExists(login.getUserName())){
+                    return null;
+                }
 
             
 
-            int id = basketDAO.getId(userName);
-            if(id != -1){
-                login.setBasketId(id);
-            }
-
-            basketDAO.setUsername(id, login.getUserName());
-
-            logins.remove(userName);
-            logins.put(login.getUserName(), login);
+                int id = basketDAO.getId(userName);
+                if(id != -1){
+                    login.setBasketId(id);
+                }
 
+                basketDAO.setUsername(id, login.getUserName());
 
-            save(); // may throw an IOException
-
+                logins.replace(userName, login); // may throw an IOException
+            }
+            finally {
+                logins.unlock();
+            }
+            if (!userName.equals(login.getUserName()))
+                removed(userName);
             return login;
         }
+        finally {
+            logins.await();
+        }
     }
 
     /**
@@ -230,13 +341,21 @@ public class LoginFileDAO implements LoginDAO {
      */
     @Override
     public boolean deleteLogin(String userName) throws IOException {
-        synchronized(logins) {
-            if (logins.containsKey(userName)) {
-                logins.remove(userName);
-                return save();
+        try {
+            boolean deleted;
+            logins.lock();
+            try {
+                deleted = logins.remove(userName); // may throw an IOException
             }
-            else
-                return false;
+            finally {
+                logins.unlock();
+            }
+            if (deleted)
+                removed(userName);
+            return deleted;
+        }
+        finally {
+            logins.await();
         }
     }
 
@@ -244,23 +363,33 @@ public class LoginFileDAO implements LoginDAO {
     ** {@inheritDoc}
      */
     public Login setBasketId(String userName, int basketId) throws IOException {
-        synchronized(logins){
-            if(logins.containsKey(userName)){
-                Login login = logins.get(userName);
-                login.setBasketId(basketId);
-                save();
-                return login;
-            }else{
-                return null;
+        try {
+            logins.lock();
+            try {
+                if(logins.containsKey(userName)){
+                    Login login = logins.get(userName);
+                    login.setBasketId(basketId);
+                    logins.changed(userName);
+                    return login;
+                }else{
+                    return null;
+                }
+            }
+            finally {
+                logins.unlock();
             }
         }
+        finally {
+            logins.await();
+        }
     }
 
     /**
     ** {@inheritDoc}
      */
     public int getBasketId(String userName){
-        synchronized(logins){
+        logins.lock();
+        try {
             if(logins.containsKey(userName)){
                 Login login = logins.get(userName);
                 return login.getBasketId();
@@ -268,6 +397,9 @@ public class LoginFileDAO implements LoginDAO {
                 return 0;
             }
         }
+        finally {
+            logins.unlock();
+        }
     }
 }
 
@@ -0,0 +1,436 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, sorted segment file of an {@linkplain LsmTree LSM tree}
+ * <p>
+ * A segment is laid out as
+ * <ul>
+ * <li>the records in ascending key order, each a length prefixed key followed by a
+ * length prefixed value, or a length of -1 for a deleted key</li>
+ * <li>a sparse index holding the key and file offset of every {@code indexInterval}th record</li>
+ * <li>a Bloom filter over every key in the segment</li>
+ * <li>the greatest key, and a fixed footer with the end of the records, the record count and a magic number</li>
+ * </ul>
+ * Only the sparse index and the Bloom filter are kept in memory. A lookup checks the
+ * Bloom filter, finds the last indexed key not greater than the key it is looking
+ * for and reads forward from there, so it never reads more than one index interval.
+ *
+ * @author Team Swiss Pandas
+ */
+final class LsmSegment {
+    static final int MAGIC = 0x4C534D53;    // "LSMS"
+    static final int FOOTER_SIZE = 16;
+    static final int DELETED = -1;          // Value length of a deleted key
+
+    final long id;          // Unique, increasing with the age of the data it holds
+    final File file;
+    final int count;        // Number of records, including deletions
+    final byte[] minKey;
+    final byte[] maxKey;
+    private final FileChannel channel;
+    private final long dataEnd;         // Offset of the end of the records
+    private final byte[][] indexKeys;   // Every indexInterval-th key
+    private final long[] indexOffsets;  // File offset of each indexed key's record
+    private final BloomFilter bloom;
+
+    private LsmSegment(long id, File file, FileChannel channel, long dataEnd, int count,
+                       byte[][] indexKeys, long[] indexOffsets, BloomFilter bloom, byte[] maxKey) {
+        this.id = id;
+        this.file = file;
+        this.channel = channel;
+        this.dataEnd = dataEnd;
+        this.count = count;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.bloom = bloom;
+        this.minKey = indexKeys.length == 0 ? new byte[0] : indexKeys[0];
+        this.maxKey = maxKey;
+    }
+
+    /**
+     * A key and its value, or {@link LsmTree#TOMBSTONE} if it was deleted
+     */
+    static final class Entry {
+        final byte[] key;
+        final byte[] value;
+
+        Entry(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Writes a segment
+     *
+     * @param file The segment file
+     * @param id The segment id
+     * @param entries The records, in ascending key order
+     * @param expected The number of records expected, used to size the Bloom filter
+     * @param indexInterval The number of records between two sparse index entries
+     * @param maxBytes The size after which writing stops, leaving the remaining entries
+     *                 to the next segment
+     *
+     * @return The segment, open for reading
+     *
+     * @throws IOException if the segment cannot be written
+     */
+    static LsmSegment write(File file, long id, Iterator<Entry> entries, int expected, int indexInterval,
+                            long maxBytes) throws IOException {
+        List<byte[]> indexKeys = new ArrayList<>();
+        List<Long> indexOffsets = new ArrayList<>();
+        BloomFilter bloom = new BloomFilter(Math.max(1, expected));
+        byte[] maxKey = new byte[0];
+        long offset = 0;
+        int count = 0;
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 1 << 16))) {
+            while (offset < maxBytes && entries.hasNext()) {
+                Entry entry = entries.next();
+                if (count % indexInterval == 0) {
+                    indexKeys.add(entry.key);
+                    indexOffsets.add(offset);
+                }
+                bloom.add(entry.key);
+                maxKey = entry.key;
+
+                out.writeInt(entry.key.length);
+                out.write(entry.key);
+                if (entry.value == LsmTree.TOMBSTONE) {
+                    out.writeInt(DELETED);
+                    offset += 8 + entry.key.length;
+                }
+                else {
+                    out.writeInt(entry.value.length);
+                    out.write(entry.value);
+                    offset += 8 + entry.key.length + entry.value.length;
+                }
+                ++count;
+            }
+
+            out.writeInt(indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); ++i) {
+                out.writeInt(indexKeys.get(i).length);
+                out.write(indexKeys.get(i));
+                out.writeLong(indexOffsets.get(i));
+            }
+            bloom.writeTo(out);
+            out.writeInt(maxKey.length);
+            out.write(maxKey);
+
+            out.writeLong(offset);
+            out.writeInt(count);
+            out.writeInt(MAGIC);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file, id);
+    }
+
+    /**
+     * Opens a segment, reading its sparse index and Bloom filter
+     *
+     * @param file The segment file
+     * @param id The segment id
+     *
+     * @return The segment
+     *
+     * @throws IOException if the segment cannot be read or is not a segment
+     */
+    static LsmSegment open(File file, long id) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_SIZE)
+                throw new IOException("Truncated segment " + file);
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            readFully(channel, footer, size - FOOTER_SIZE);
+            long dataEnd = footer.getLong(0);
+            int count = footer.getInt(8);
+            if (footer.getInt(12) != MAGIC || dataEnd < 0 || dataEnd > size - FOOTER_SIZE)
+                throw new IOException("Not a segment " + file);
+
+            ByteBuffer meta = ByteBuffer.allocate((int)(size - FOOTER_SIZE - dataEnd));
+            readFully(channel, meta, dataEnd);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(meta.array()));
+            int indexCount = in.readInt();
+            byte[][] indexKeys = new byte[indexCount][];
+            long[] indexOffsets = new long[indexCount];
+            for (int i = 0; i < indexCount; ++i) {
+                indexKeys[i] = new byte[in.readInt()];
+                in.readFully(indexKeys[i]);
+                indexOffsets[i] = in.readLong();
+            }
+            BloomFilter bloom = BloomFilter.readFrom(in);
+            byte[] maxKey = new byte[in.readInt()];
+            in.readFully(maxKey);
+
+            return new LsmSegment(id, file, channel, dataEnd, count, indexKeys, indexOffsets, bloom, maxKey);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the size of the segment file
+     *
+     * @return The size in bytes
+     */
+    long size() {
+        return file.length();
+    }
+
+    /**
+     * Determines if the keys of this segment overlap a key range
+     *
+     * @param from The smallest key of the range
+     * @param to The greatest key of the range
+     *
+     * @return true if any key of this segment could lie in the range
+     */
+    boolean overlaps(byte[] from, byte[] to) {
+        return count > 0 && Arrays.compareUnsigned(minKey, to) <= 0 && Arrays.compareUnsigned(maxKey, from) >= 0;
+    }
+
+    /**
+     * Looks a key up
+     *
+     * @param key The key
+     *
+     * @return The value, {@link LsmTree#TOMBSTONE} if the key was deleted, or null if
+     *         the segment holds no record for the key
+     *
+     * @throws IOException if the segment cannot be read
+     */
+    byte[] get(byte[] key) throws IOException {
+        if (count == 0 || !bloom.mightContain(key)
+                || Arrays.compareUnsigned(key, minKey) < 0 || Arrays.compareUnsigned(key, maxKey) > 0)
+            return null;
+
+        // Last indexed key not greater than the key
+        int low = 0;
+        int high = indexKeys.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (Arrays.compareUnsigned(indexKeys[middle], key) <= 0)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+
+        long start = indexOffsets[low];
+        long end = low + 1 < indexOffsets.length ? indexOffsets[low + 1] : dataEnd;
+        ByteBuffer block = ByteBuffer.allocate((int)(end - start));
+        readFully(channel, block, start);
+        block.flip();
+        while (block.hasRemaining()) {
+            byte[] recordKey = new byte[block.getInt()];
+            block.get(recordKey);
+            int length = block.getInt();
+            int order = Arrays.compareUnsigned(recordKey, key);
+            if (order == 0) {
+                if (length == DELETED)
+                    return LsmTree.TOMBSTONE;
+                byte[] value = new byte[length];
+                block.get(value);
+                return value;
+            }
+            if (order > 0)
+                return null;
+            if (length != DELETED)
+                block.position(block.position() + length);
+        }
+        return null;
+    }
+
+    /**
+     * Iterates over every record in key order, reading the file sequentially
+     *
+     * @return The records, including deletions
+     */
+    Iterator<Entry> iterator() {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(new PositionalChannel(channel, dataEnd)), 1 << 16));
+        return new Iterator<Entry>() {
+            private int read;
+
+            @Override
+            public boolean hasNext() {
+                return read < count;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    byte[] key = new byte[in.readInt()];
+                    in.readFully(key);
+                    int length = in.readInt();
+                    byte[] value = LsmTree.TOMBSTONE;
+                    if (length != DELETED) {
+                        value = new byte[length];
+                        in.readFully(value);
+                    }
+                    ++read;
+                    return new Entry(key, value);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Closes the segment file
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException();
+            position += read;
+        }
+    }
+
+    /**
+     * Reads the records of a shared channel from the start without moving the
+     * channel's own position, so any number of iterators and lookups can share it
+     */
+    private static final class PositionalChannel implements ReadableByteChannel {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        PositionalChannel(FileChannel channel, long end) {
+            this.channel = channel;
+            this.end = end;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            if (position >= end)
+                return -1;
+            if (buffer.remaining() > end - position)
+                buffer.limit(buffer.position() + (int)(end - position));
+            int read = channel.read(buffer, position);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // The segment owns the channel
+        }
+    }
+
+    /**
+     * Bloom filter over the keys of a segment, about 1% false positives at ten bits per key
+     */
+    static final class BloomFilter {
+        private static final int BITS_PER_KEY = 10;
+        private static final int HASHES = 7;
+
+        private final long[] bits;
+
+        BloomFilter(int keys) {
+            this(new long[(int)Math.max(1, ((long)keys * BITS_PER_KEY + 63) / 64)]);
+        }
+
+        private BloomFilter(long[] bits) {
+            this.bits = bits;
+        }
+
+        void add(byte[] key) {
+            long hash = hash(key);
+            int first = (int)hash;
+            int second = (int)(hash >>> 32);
+            long size = bits.length * 64L;
+            for (int i = 0; i < HASHES; ++i) {
+                long bit = Integer.toUnsignedLong(first + i * second) % size;
+                bits[(int)(bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(byte[] key) {
+            long hash = hash(key);
+            int first = (int)hash;
+            int second = (int)(hash >>> 32);
+            long size = bits.length * 64L;
+            for (int i = 0; i < HASHES; ++i) {
+                long bit = Integer.toUnsignedLong(first + i * second) % size;
+                if ((bits[(int)(bit >>> 6)] & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(bits.length);
+            for (long word : bits)
+                out.writeLong(word);
+        }
+
+        static BloomFilter readFrom(DataInputStream in) throws IOException {
+            long[] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; ++i)
+                bits[i] = in.readLong();
+            return new BloomFilter(bits);
+        }
+
+        /**
+         * 64-bit FNV-1a followed by a finalizing mix, split into the two halves
+         * used for double hashing
+         */
+        private static long hash(byte[] key) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : key) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
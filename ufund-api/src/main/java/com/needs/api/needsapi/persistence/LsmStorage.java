@@ -0,0 +1,140 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Embedded log-structured merge tree storage for the file DAOs
+ * <p>
+ * When a directory is configured, each file DAO keeps its values in an
+ * {@linkplain LsmStore LSM store} in its own subdirectory instead of reading its
+ * whole JSON file into memory and rewriting it on every change. The JSON file is
+ * imported the first time a store is opened and is not written after that.
+ * <p>
+ * Each store logs writes to a write-ahead log and an in-memory memtable. Full
+ * memtables are flushed to sorted, immutable segment files with a sparse key
+ * index and a Bloom filter, so a lookup reads at most one block of every segment
+ * that may hold the key. A background thread merges the segments into levels that
+ * grow tenfold, bounding the number of segments a lookup has to consult.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class LsmStorage {
+    private static final Logger LOG = Logger.getLogger(LsmStorage.class.getName());
+
+    private final File directory;       // Directory holding one subdirectory per store, null if disabled
+    private final ObjectMapper objectMapper;    // Converts values to and from their stored JSON objects
+    private final long memtableBytes;   // Size a memtable may grow to before it is flushed
+    private final int indexInterval;    // Records between sparse index entries
+    private final long segmentBytes;    // Size at which compaction output is split into segments
+    private final int level0Segments;   // Number of flushed segments that triggers a compaction
+    private final long levelBaseBytes;  // Size budget of level 1, each further level has ten times more
+    private final int cacheSize;        // Values kept in memory by each store
+    private final List<LsmStore<?,?>> stores = new ArrayList<>();   // Stores opened, closed on shutdown
+
+    /**
+     * Creates LSM Storage
+     *
+     * @param directory Directory to keep the stores in, LSM storage is disabled if empty
+     * @param memtableBytes Size in bytes a memtable may grow to before it is flushed to a segment
+     * @param indexInterval Number of records between sparse index entries of a segment
+     * @param segmentBytes Size in bytes at which compaction splits its output into segments
+     * @param level0Segments Number of flushed segments that triggers a compaction into level 1
+     * @param levelBaseBytes Size in bytes of level 1, each further level is ten times larger
+     * @param cacheSize Maximum number of values each store keeps in memory
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     */
+    public LsmStorage(@Value("${persistence.lsm.dir:}") String directory,
+                      @Value("${persistence.lsm.memtable:4194304}") long memtableBytes,
+                      @Value("${persistence.lsm.index.interval:16}") int indexInterval,
+                      @Value("${persistence.lsm.segment:2097152}") long segmentBytes,
+                      @Value("${persistence.lsm.level0:4}") int level0Segments,
+                      @Value("${persistence.lsm.level.base:10485760}") long levelBaseBytes,
+                      @Value("${persistence.lsm.cache:1000}") int cacheSize,
+                      ObjectMapper objectMapper) {
+        this.directory = directory != null && !directory.isBlank() ? new File(directory.trim()) : null;
+        this.objectMapper = objectMapper;
+        this.memtableBytes = memtableBytes;
+        this.indexInterval = indexInterval;
+        this.segmentBytes = segmentBytes;
+        this.level0Segments = level0Segments;
+        this.levelBaseBytes = levelBaseBytes;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Creates LSM Storage that is never used, so the DAOs keep their values in memory
+     *
+     * @return Disabled LSM Storage
+     */
+    public static LsmStorage disabled() {
+        return new LsmStorage(null, 0, 0, 0, 0, 0, 0, null);
+    }
+
+    /**
+     * Determines if LSM storage has been configured
+     *
+     * @return true if the DAOs should keep their values in LSM stores
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Opens the store with the given name, creating it if it does not exist
+     * <br>
+     * The store is empty until it is {@linkplain LsmStore#open opened} by the
+     * {@link FileBackedStore file backed store} it is given to
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     * @param name The name of the store's subdirectory
+     * @param keys Encodes the keys of the store
+     * @param type The value class
+     *
+     * @return The {@link LsmStore store}
+     *
+     * @throws IOException if the store's files cannot be read
+     */
+    public synchronized <K,V> LsmStore<K,V> open(String name, LsmStore.KeyEncoding<K> keys, Class<V> type) throws IOException {
+        File storeDirectory = new File(directory, name);
+        Files.createDirectories(storeDirectory.toPath());
+        LsmTree tree = new LsmTree(storeDirectory, memtableBytes, indexInterval, segmentBytes, level0Segments, levelBaseBytes);
+        LsmStore<K,V> store = new LsmStore<>(tree, keys, type, objectMapper, cacheSize);
+        stores.add(store);
+        return store;
+    }
+
+    /**
+     * Closes every store opened, their memtables are replayed from the
+     * write-ahead logs on the next start
+     */
+    @PreDestroy
+    public synchronized void close() {
+        for (LsmStore<?,?> store : stores) {
+            try {
+                store.close();
+            }
+            catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not close an LSM store", e);
+            }
+        }
+        stores.clear();
+    }
+}
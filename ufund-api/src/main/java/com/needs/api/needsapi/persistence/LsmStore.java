@@ -0,0 +1,274 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Keeps the values of a {@linkplain FileBackedStore file backed store} in an
+ * {@linkplain LsmTree LSM tree} instead of the heap
+ * <p>
+ * Each value is stored as its JSON object under its encoded key. Only the most
+ * recently used values are kept in memory, so a value that is changed in place
+ * stays the same object until its change has been written. Like a
+ * {@link java.util.TreeMap TreeMap}, iteration is in key order.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ *
+ * @author Team Swiss Pandas
+ */
+public class LsmStore<K,V> extends AbstractMap<K,V> implements FileBackedStore.DurableMap<K,V> {
+    /**
+     * Encodes keys to bytes that sort in the same order as the keys
+     *
+     * @param <K> The key type
+     */
+    public interface KeyEncoding<K> {
+        byte[] encode(K key);
+        K decode(byte[] bytes);
+    }
+
+    /**
+     * Integers as four big-endian bytes with the sign bit flipped
+     */
+    public static final KeyEncoding<Integer> INTEGERS = new KeyEncoding<Integer>() {
+        @Override
+        public byte[] encode(Integer key) {
+            int bits = key ^ Integer.MIN_VALUE;
+            return new byte[] {(byte)(bits >>> 24), (byte)(bits >>> 16), (byte)(bits >>> 8), (byte)bits};
+        }
+
+        @Override
+        public Integer decode(byte[] bytes) {
+            return ((bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff)) ^ Integer.MIN_VALUE;
+        }
+    };
+
+    /**
+     * Strings as UTF-8, which sorts like {@link String#compareTo(String)} except that
+     * characters outside the Basic Multilingual Plane sort after every other character
+     */
+    public static final KeyEncoding<String> STRINGS = new KeyEncoding<String>() {
+        @Override
+        public byte[] encode(String key) {
+            return key.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    private final LsmTree tree;
+    private final KeyEncoding<K> keys;
+    private final ObjectReader reader;  // Reads a value from its JSON object
+    private final ObjectWriter writer;  // Writes a value as its JSON object
+    private final Map<K,V> cache;       // Recently used values, least recently used first
+
+    /**
+     * Creates an LSM Store
+     *
+     * @param tree The {@link LsmTree tree} holding the values
+     * @param keys Encodes the keys
+     * @param type The value class
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param cacheSize The number of values to keep in memory
+     */
+    LsmStore(LsmTree tree, KeyEncoding<K> keys, Class<V> type, ObjectMapper objectMapper, int cacheSize) {
+        this.tree = tree;
+        this.keys = keys;
+        this.reader = objectMapper.readerFor(type);
+        this.writer = objectMapper.writerFor(type);
+        int capacity = Math.max(1, cacheSize);
+        this.cache = new LinkedHashMap<K,V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Opens the tree, importing the data file the first time it is used
+     */
+    @Override
+    public synchronized void open(FileBackedStore.Importer<K,V> initial) throws IOException {
+        cache.clear();
+        if (tree.isImported())
+            return;
+
+        initial.load((key, value) -> {
+            try {
+                tree.put(keys.encode(key), writer.writeValueAsBytes(value));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        tree.markImported();
+    }
+
+    /**
+     * Writes a value put in or changed in the store, removals are written by {@link #remove(Object)}
+     */
+    @Override
+    public synchronized void write(K key, V value) throws IOException {
+        if (value != null)
+            tree.put(keys.encode(key), writer.writeValueAsBytes(value));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Retrieves a value, reading it from the tree if it is not in memory
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized V get(Object key) {
+        V value = cache.get(key);
+        if (value != null)
+            return value;
+
+        try {
+            byte[] bytes = tree.get(keys.encode((K)key));
+            if (bytes == null)
+                return null;
+            value = reader.readValue(bytes);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        cache.put((K)key, value);
+        return value;
+    }
+
+    /**
+     * Makes a value resident under its key
+     * <br>
+     * The value itself is written by {@link #write(Object, Object)} once the store reports the change
+     */
+    @Override
+    public synchronized V put(K key, V value) {
+        V previous = get(key);
+        cache.put(key, value);
+        return previous;
+    }
+
+    /**
+     * Removes a value from memory and deletes it from the tree
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(Object key) {
+        V previous = get(key);
+        if (previous == null)
+            return null;
+
+        cache.remove(key);
+        try {
+            tree.delete(keys.encode((K)key));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return previous;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return (int)Math.min(Integer.MAX_VALUE, tree.size());
+    }
+
+    /**
+     * Retrieves the number of values currently held in memory
+     *
+     * @return The number of resident values
+     */
+    synchronized int resident() {
+        return cache.size();
+    }
+
+    /**
+     * Iterates over every value in key order, reading the tree sequentially
+     * <br>
+     * Resident values are returned as they are in memory, the others are read
+     * without being kept
+     */
+    @Override
+    public Set<Map.Entry<K,V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K,V>> iterator() {
+                Iterator<LsmSegment.Entry> entries = tree.scan();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K,V> next() {
+                        LsmSegment.Entry entry = entries.next();
+                        K key = keys.decode(entry.key);
+                        V value;
+                        synchronized(LsmStore.this) {
+                            value = cache.get(key);
+                        }
+                        try {
+                            if (value == null)
+                                value = reader.readValue(entry.value);
+                        }
+                        catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return LsmStore.this.size();
+            }
+        };
+    }
+
+    /**
+     * Retrieves the tree holding the values
+     *
+     * @return The {@link LsmTree tree}
+     */
+    LsmTree tree() {
+        return tree;
+    }
+
+    /**
+     * Closes the tree
+     *
+     * @throws IOException if a file cannot be closed
+     */
+    void close() throws IOException {
+        tree.close();
+    }
+}
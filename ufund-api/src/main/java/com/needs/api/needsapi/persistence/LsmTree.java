@@ -0,0 +1,798 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.needs.api.needsapi.persistence.LsmSegment.Entry;
+
+/**
+ * Embedded log-structured merge tree over byte keys and values, kept in one directory
+ * <p>
+ * Writes go to a write-ahead log and a sorted in-memory memtable. Once the memtable
+ * is full it is frozen and written to a new level 0 {@linkplain LsmSegment segment}
+ * by a background thread, while a fresh memtable takes the writes. The same thread
+ * compacts the segments in levels: once level 0 has enough segments they are merged
+ * with the overlapping segments of level 1, and once a deeper level outgrows its
+ * budget (ten times the one above it) one of its segments is merged into the next
+ * level. Level 0 segments may overlap each other, deeper levels never do. Deleted
+ * keys are kept as tombstones until they are compacted into the deepest level.
+ * <p>
+ * A lookup checks the memtables and then the segments from newest to oldest, and
+ * stops at the first one holding the key. The live segments are listed in a
+ * manifest that is replaced atomically after every flush and compaction; segment
+ * files the manifest does not list are leftovers of an interrupted flush or
+ * compaction and are deleted on open.
+ *
+ * @author Team Swiss Pandas
+ */
+final class LsmTree {
+    private static final Logger LOG = Logger.getLogger(LsmTree.class.getName());
+
+    static final byte[] TOMBSTONE = new byte[0];    // Value of a deleted key, compared by identity
+
+    static final int MANIFEST_MAGIC = 0x4C534D4D;   // "LSMM"
+    static final short MANIFEST_VERSION = 1;
+    static final String MANIFEST = "MANIFEST";
+    static final String WAL = "wal.log";
+    static final String ROTATED_WAL = "wal.old";
+    static final int LEVELS = 7;
+    private static final int ENTRY_OVERHEAD = 48;   // Approximate memtable bytes per entry besides the key and value
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private final File directory;
+    private final long memtableLimit;   // Memtable size in bytes after which it is flushed
+    private final int indexInterval;    // Records between two sparse index entries
+    private final long segmentBytes;    // Size of the segments written by compactions
+    private final int level0Segments;   // Number of level 0 segments that triggers a compaction into level 1
+    private final long levelBaseBytes;  // Size budget of level 1, each deeper level gets ten times more
+
+    // All guarded by this tree's monitor
+    private ConcurrentSkipListMap<byte[],byte[]> memtable = newMemtable();
+    private ConcurrentSkipListMap<byte[],byte[]> immutable;    // Frozen memtable being flushed, or null
+    private long memtableBytes;
+    private final List<List<LsmSegment>> levels = new ArrayList<>();  // Level 0 newest first, deeper levels by key
+    private final int[] compactPointers = new int[LEVELS]; // Next segment of each level to compact, round robin
+    private long nextId = 1;            // Id of the next segment file
+    private long count;                 // Number of live keys
+    private boolean imported;           // Whether the initial contents have been imported
+    private DataOutputStream wal;
+    private IOException failure;        // Last background failure, surfaced to writers
+
+    private final ExecutorService maintainer;   // Flushes frozen memtables and compacts
+
+    /**
+     * Opens or creates a tree, replaying any write-ahead log left by the last run
+     *
+     * @param directory The directory holding the tree's files
+     * @param memtableLimit Memtable size in bytes after which it is flushed
+     * @param indexInterval Records between two sparse index entries
+     * @param segmentBytes Size of the segments written by compactions
+     * @param level0Segments Number of level 0 segments that triggers a compaction
+     * @param levelBaseBytes Size budget of level 1
+     *
+     * @throws IOException if the tree cannot be read
+     */
+    LsmTree(File directory, long memtableLimit, int indexInterval, long segmentBytes, int level0Segments,
+            long levelBaseBytes) throws IOException {
+        this.directory = directory;
+        this.memtableLimit = Math.max(1, memtableLimit);
+        this.indexInterval = Math.max(1, indexInterval);
+        this.segmentBytes = Math.max(1, segmentBytes);
+        this.level0Segments = Math.max(1, level0Segments);
+        this.levelBaseBytes = Math.max(1, levelBaseBytes);
+        for (int i = 0; i < LEVELS; ++i)
+            levels.add(new ArrayList<>());
+
+        Files.createDirectories(directory.toPath());
+        readManifest();
+        deleteUnlisted();
+        replay();
+
+        maintainer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lsm-maintainer-" + directory.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        schedule();
+    }
+
+    private static ConcurrentSkipListMap<byte[],byte[]> newMemtable() {
+        return new ConcurrentSkipListMap<>(Arrays::compareUnsigned);
+    }
+
+    /**
+     * Looks a key up
+     *
+     * @param key The key
+     *
+     * @return The value, or null if the key is not in the tree
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    synchronized byte[] get(byte[] key) throws IOException {
+        byte[] value = memtable.get(key);
+        if (value == null && immutable != null)
+            value = immutable.get(key);
+        for (int level = 0; value == null && level < LEVELS; ++level) {
+            for (LsmSegment segment : levels.get(level)) {
+                value = segment.get(key);
+                if (value != null)
+                    break;
+            }
+        }
+        return value == TOMBSTONE ? null : value;
+    }
+
+    /**
+     * Adds or replaces the value of a key
+     *
+     * @param key The key
+     * @param value The value
+     *
+     * @return true if the key was not in the tree before
+     *
+     * @throws IOException if the write-ahead log cannot be written, or a background flush failed
+     */
+    synchronized boolean put(byte[] key, byte[] value) throws IOException {
+        checkFailure();
+        boolean added = get(key) == null;
+        append(PUT, key, value);
+        apply(key, value, added);
+        return added;
+    }
+
+    /**
+     * Deletes a key
+     *
+     * @param key The key
+     *
+     * @return true if the key was in the tree
+     *
+     * @throws IOException if the write-ahead log cannot be written, or a background flush failed
+     */
+    synchronized boolean delete(byte[] key) throws IOException {
+        checkFailure();
+        if (get(key) == null)
+            return false;
+        append(DELETE, key, null);
+        apply(key, TOMBSTONE, false);
+        --count;
+        return true;
+    }
+
+    /**
+     * Puts a value in the memtable, freezing it once it is full
+     */
+    private void apply(byte[] key, byte[] value, boolean added) throws IOException {
+        memtable.put(key, value);
+        memtableBytes += key.length + value.length + ENTRY_OVERHEAD;
+        if (added)
+            ++count;
+        if (memtableBytes >= memtableLimit)
+            rotate();
+    }
+
+    /**
+     * Retrieves the number of keys
+     *
+     * @return The number of live keys in the tree
+     */
+    synchronized long size() {
+        return count;
+    }
+
+    /**
+     * Determines if the initial contents have been imported
+     *
+     * @return true once {@link #markImported()} has been called
+     */
+    synchronized boolean isImported() {
+        return imported;
+    }
+
+    /**
+     * Records that the initial contents have been imported, so they are never
+     * imported again
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    synchronized void markImported() throws IOException {
+        imported = true;
+        writeManifest();
+    }
+
+    /**
+     * Iterates over every live key in ascending order
+     * <br>
+     * Segments replaced by a compaction while iterating stay readable until the
+     * iterator is dropped. Writes made while iterating may or may not be seen.
+     *
+     * @return The keys and their values
+     */
+    Iterator<Entry> scan() {
+        List<Iterator<Entry>> sources = new ArrayList<>();
+        synchronized(this) {
+            sources.add(entries(memtable));
+            if (immutable != null)
+                sources.add(entries(immutable));
+            for (LsmSegment segment : levels.get(0))
+                sources.add(segment.iterator());
+            for (int level = 1; level < LEVELS; ++level)
+                sources.add(concat(new ArrayList<>(levels.get(level))));
+        }
+        return live(new MergingIterator(sources));
+    }
+
+    /**
+     * Retrieves the number of segments in a level
+     *
+     * @param level The level
+     *
+     * @return The number of segments
+     */
+    synchronized int segments(int level) {
+        return levels.get(level).size();
+    }
+
+    /**
+     * Freezes the memtable and hands it to the background thread, waiting first
+     * if the previous one has not been flushed yet
+     */
+    private void rotate() throws IOException {
+        while (immutable != null) {
+            checkFailure();
+            try {
+                wait(1000);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a memtable flush", e);
+            }
+        }
+
+        closeWal();
+        Files.move(new File(directory, WAL).toPath(), new File(directory, ROTATED_WAL).toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+        immutable = memtable;
+        memtable = newMemtable();
+        memtableBytes = 0;
+        schedule();
+    }
+
+    /**
+     * Writes the memtable to a segment now, for tests and shutdown
+     *
+     * @throws IOException if the segment cannot be written
+     */
+    void flush() throws IOException {
+        synchronized(this) {
+            if (!memtable.isEmpty())
+                rotate();
+        }
+        awaitMaintenance();
+    }
+
+    /**
+     * Waits until the background thread has finished all the work scheduled so far
+     *
+     * @throws IOException if the background work failed
+     */
+    void awaitMaintenance() throws IOException {
+        try {
+            maintainer.submit(() -> {}).get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compaction", e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        synchronized(this) {
+            checkFailure();
+        }
+    }
+
+    /**
+     * Stops the background thread and closes every file
+     * <br>
+     * The memtable is not flushed, it is replayed from the write-ahead log on the next open
+     *
+     * @throws IOException if a file cannot be closed
+     */
+    void close() throws IOException {
+        maintainer.shutdown();
+        try {
+            maintainer.awaitTermination(30, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized(this) {
+            closeWal();
+            for (List<LsmSegment> level : levels) {
+                for (LsmSegment segment : level)
+                    segment.close();
+            }
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null)
+            throw new IOException("Background flush or compaction failed", failure);
+    }
+
+    private void schedule() {
+        if (maintainer != null && !maintainer.isShutdown())
+            maintainer.execute(this::maintain);
+    }
+
+    /**
+     * Background work: flushes the frozen memtable, then compacts until every
+     * level is within its budget
+     */
+    private void maintain() {
+        try {
+            // Flush between compactions so writers waiting on a full memtable are released early
+            do {
+                flushImmutable();
+            } while (compactOnce());
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.log(Level.SEVERE, "LSM maintenance of " + directory + " failed: " + e.getLocalizedMessage());
+            synchronized(this) {
+                failure = e instanceof IOException ? (IOException)e : new IOException(e);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes the frozen memtable to a new level 0 segment
+     */
+    private void flushImmutable() throws IOException {
+        ConcurrentSkipListMap<byte[],byte[]> frozen;
+        long id;
+        synchronized(this) {
+            frozen = immutable;
+            if (frozen == null)
+                return;
+            id = nextId++;
+        }
+
+        LsmSegment segment = LsmSegment.write(segmentFile(id), id, entries(frozen), frozen.size(), indexInterval, Long.MAX_VALUE);
+        synchronized(this) {
+            levels.get(0).add(0, segment);
+            immutable = null;
+            writeManifest();
+            Files.deleteIfExists(new File(directory, ROTATED_WAL).toPath());
+            failure = null;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Runs one compaction if any level is over its budget
+     *
+     * @return true if a compaction was run
+     */
+    private boolean compactOnce() throws IOException {
+        int upperLevel;
+        List<LsmSegment> upper;
+        List<LsmSegment> lower;
+        boolean bottom;
+        long totalBytes = 0;
+        long totalCount = 0;
+        synchronized(this) {
+            if (levels.get(0).size() >= level0Segments) {
+                upperLevel = 0;
+                upper = new ArrayList<>(levels.get(0));
+            }
+            else {
+                upperLevel = -1;
+                upper = null;
+                long budget = levelBaseBytes;
+                for (int level = 1; level < LEVELS - 1; ++level, budget *= 10) {
+                    List<LsmSegment> segments = levels.get(level);
+                    if (bytes(segments) > budget) {
+                        upperLevel = level;
+                        upper = List.of(segments.get(compactPointers[level]++ % segments.size()));
+                        break;
+                    }
+                }
+                if (upper == null)
+                    return false;
+            }
+
+            byte[] from = null;
+            byte[] to = null;
+            for (LsmSegment segment : upper) {
+                if (segment.count == 0)
+                    continue;
+                if (from == null || Arrays.compareUnsigned(segment.minKey, from) < 0)
+                    from = segment.minKey;
+                if (to == null || Arrays.compareUnsigned(segment.maxKey, to) > 0)
+                    to = segment.maxKey;
+            }
+            lower = new ArrayList<>();
+            for (LsmSegment segment : levels.get(upperLevel + 1)) {
+                if (from != null && segment.overlaps(from, to))
+                    lower.add(segment);
+            }
+
+            bottom = true;
+            for (int level = upperLevel + 2; level < LEVELS; ++level)
+                bottom &= levels.get(level).isEmpty();
+            for (LsmSegment segment : upper) {
+                totalBytes += segment.size();
+                totalCount += segment.count;
+            }
+            for (LsmSegment segment : lower) {
+                totalBytes += segment.size();
+                totalCount += segment.count;
+            }
+        }
+
+        // Merge outside the lock, the inputs are immutable and only this thread replaces them
+        List<Iterator<Entry>> sources = new ArrayList<>();
+        for (LsmSegment segment : upper)
+            sources.add(segment.iterator());
+        sources.add(concat(lower));
+        Iterator<Entry> merged = new MergingIterator(sources);
+        if (bottom)
+            merged = live(merged);
+        int perSegment = (int)Math.min(totalCount, segmentBytes / Math.max(1, totalBytes / Math.max(1, totalCount)) + 1);
+
+        List<LsmSegment> outputs = new ArrayList<>();
+        while (merged.hasNext()) {
+            long id;
+            synchronized(this) {
+                id = nextId++;
+            }
+            outputs.add(LsmSegment.write(segmentFile(id), id, merged, perSegment, indexInterval, segmentBytes));
+        }
+
+        synchronized(this) {
+            levels.get(upperLevel).removeAll(upper);
+            List<LsmSegment> target = levels.get(upperLevel + 1);
+            target.removeAll(lower);
+            target.addAll(outputs);
+            target.sort((a, b) -> Arrays.compareUnsigned(a.minKey, b.minKey));
+            writeManifest();
+        }
+
+        // Iterators that are still reading a replaced segment keep its channel open;
+        // the descriptor is released by the channel's cleaner once they are gone
+        for (LsmSegment segment : upper)
+            Files.deleteIfExists(segment.file.toPath());
+        for (LsmSegment segment : lower)
+            Files.deleteIfExists(segment.file.toPath());
+        return true;
+    }
+
+    private static long bytes(List<LsmSegment> segments) {
+        long total = 0;
+        for (LsmSegment segment : segments)
+            total += segment.size();
+        return total;
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%08d.sst", id));
+    }
+
+    /**
+     * Appends a record to the write-ahead log and flushes it to the file
+     */
+    private void append(byte op, byte[] key, byte[] value) throws IOException {
+        if (wal == null)
+            wal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, WAL), true)));
+
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(key);
+        if (value != null)
+            crc.update(value);
+
+        wal.writeByte(op);
+        wal.writeInt(key.length);
+        wal.write(key);
+        wal.writeInt(value == null ? LsmSegment.DELETED : value.length);
+        if (value != null)
+            wal.write(value);
+        wal.writeInt((int)crc.getValue());
+        wal.flush();
+    }
+
+    private void closeWal() throws IOException {
+        if (wal != null) {
+            wal.close();
+            wal = null;
+        }
+    }
+
+    /**
+     * Applies the rotated and active write-ahead logs left by the last run and writes
+     * them to a segment, so the tree starts with an empty memtable and log
+     */
+    private void replay() throws IOException {
+        File rotated = new File(directory, ROTATED_WAL);
+        File active = new File(directory, WAL);
+        for (File log : new File[] {rotated, active}) {
+            if (!log.exists())
+                continue;
+
+            long size = log.length();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log.toPath())))) {
+                while (true) {
+                    byte op;
+                    byte[] key;
+                    byte[] value = null;
+                    try {
+                        op = in.readByte();
+                        key = new byte[checkLength(in.readInt(), size)];
+                        in.readFully(key);
+                        int length = in.readInt();
+                        if (length != LsmSegment.DELETED) {
+                            value = new byte[checkLength(length, size)];
+                            in.readFully(value);
+                        }
+                        CRC32 crc = new CRC32();
+                        crc.update(op);
+                        crc.update(key);
+                        if (value != null)
+                            crc.update(value);
+                        if (in.readInt() != (int)crc.getValue())
+                            throw new EOFException("Checksum mismatch");
+                    }
+                    catch (EOFException e) {
+                        break;  // a record torn by a crash mid-append ends the log
+                    }
+
+                    // Replayed records may already be in a segment, so counting relies on lookups
+                    boolean present = get(key) != null;
+                    if (op == PUT) {
+                        memtable.put(key, value);
+                        if (!present)
+                            ++count;
+                    }
+                    else if (present) {
+                        memtable.put(key, TOMBSTONE);
+                        --count;
+                    }
+                }
+            }
+        }
+
+        if (!memtable.isEmpty()) {
+            long id = nextId++;
+            levels.get(0).add(0, LsmSegment.write(segmentFile(id), id, entries(memtable), memtable.size(), indexInterval, Long.MAX_VALUE));
+            memtable = newMemtable();
+            writeManifest();
+        }
+        Files.deleteIfExists(rotated.toPath());
+        Files.deleteIfExists(active.toPath());
+    }
+
+    /**
+     * Rejects a length read from a torn record, which may be garbage
+     */
+    private static int checkLength(int length, long fileSize) throws EOFException {
+        if (length < 0 || length > fileSize)
+            throw new EOFException("Invalid record length " + length);
+        return length;
+    }
+
+    /**
+     * Replaces the manifest with the current levels, count and import flag
+     */
+    private void writeManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        File temp = new File(directory, MANIFEST + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeShort(MANIFEST_VERSION);
+            out.writeLong(nextId);
+            out.writeLong(count);
+            out.writeBoolean(imported);
+            out.writeInt(levels.size());
+            for (List<LsmSegment> level : levels) {
+                out.writeInt(level.size());
+                for (LsmSegment segment : level)
+                    out.writeLong(segment.id);
+            }
+        }
+        Files.move(temp.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the manifest and opens every segment it lists
+     */
+    private void readManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        if (!manifest.exists())
+            return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest.toPath())))) {
+            if (in.readInt() != MANIFEST_MAGIC)
+                throw new IOException("Not an LSM manifest " + manifest);
+            short version = in.readShort();
+            if (version != MANIFEST_VERSION)
+                throw new IOException("Unsupported LSM manifest version " + version);
+            nextId = in.readLong();
+            count = in.readLong();
+            imported = in.readBoolean();
+            int levelCount = in.readInt();
+            for (int level = 0; level < levelCount; ++level) {
+                int segments = in.readInt();
+                for (int i = 0; i < segments; ++i) {
+                    long id = in.readLong();
+                    levels.get(Math.min(level, LEVELS - 1)).add(LsmSegment.open(segmentFile(id), id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes segment and temporary files the manifest does not list
+     */
+    private void deleteUnlisted() throws IOException {
+        List<File> listed = new ArrayList<>();
+        for (List<LsmSegment> level : levels) {
+            for (LsmSegment segment : level)
+                listed.add(segment.file);
+        }
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            if ((file.getName().endsWith(".sst") && !listed.contains(file)) || file.getName().endsWith(".tmp"))
+                Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private static Iterator<Entry> entries(Map<byte[],byte[]> memtable) {
+        Iterator<Map.Entry<byte[],byte[]>> entries = memtable.entrySet().iterator();
+        return new Iterator<Entry>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                Map.Entry<byte[],byte[]> entry = entries.next();
+                return new Entry(entry.getKey(), entry.getValue());
+            }
+        };
+    }
+
+    /**
+     * Chains the iterators of non-overlapping segments sorted by key
+     */
+    private static Iterator<Entry> concat(List<LsmSegment> segments) {
+        return new Iterator<Entry>() {
+            private int next;
+            private Iterator<Entry> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && next < segments.size())
+                    current = segments.get(next++).iterator();
+                return current.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Skips deleted keys
+     */
+    private static Iterator<Entry> live(Iterator<Entry> entries) {
+        return new Iterator<Entry>() {
+            private Entry next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && entries.hasNext()) {
+                    Entry entry = entries.next();
+                    if (entry.value != TOMBSTONE)
+                        next = entry;
+                }
+                return next != null;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Entry entry = next;
+                next = null;
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Merges sorted sources into one sorted sequence, keeping only the newest
+     * record of each key
+     * <br>
+     * Sources are given newest first, so of equal keys the one from the
+     * lowest numbered source wins
+     */
+    static final class MergingIterator implements Iterator<Entry> {
+        private static final class Head {
+            final Entry entry;
+            final int source;
+
+            Head(Entry entry, int source) {
+                this.entry = entry;
+                this.source = source;
+            }
+        }
+
+        private final List<Iterator<Entry>> sources;
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> {
+            int order = Arrays.compareUnsigned(a.entry.key, b.entry.key);
+            return order != 0 ? order : Integer.compare(a.source, b.source);
+        });
+
+        MergingIterator(List<Iterator<Entry>> sources) {
+            this.sources = sources;
+            for (int i = 0; i < sources.size(); ++i)
+                advance(i);
+        }
+
+        private void advance(int source) {
+            if (sources.get(source).hasNext())
+                heads.add(new Head(sources.get(source).next(), source));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            Head head = heads.poll();
+            if (head == null)
+                throw new NoSuchElementException();
+            advance(head.source);
+            while (!heads.isEmpty() && Arrays.equals(heads.peek().entry.key, head.entry.key))
+                advance(heads.poll().source);
+            return head.entry;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+
+import com.needs.api.needsapi.persistence.MutationEvent.Change;
+import com.needs.api.needsapi.persistence.MutationEvent.Entity;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes every change to the stores to the derived views that follow them
+ * <p>
+ * Each {@linkplain Entity kind of store} has a {@linkplain Topic topic}: a ring of
+ * {@linkplain MutationEvent events} allocated when the bus is created. The ring
+ * has a single writer, the {@linkplain FileBackedStore store} publishing to it,
+ * which fills the next slot while holding its lock, so publishing needs no
+ * synchronization of its own and allocates nothing. Every {@linkplain Subscription subscription}
+ * reads the ring on a thread of its own, in batches of up to the configured
+ * size, and is handed the slots themselves. It only publishes how far it has
+ * read once per batch.
+ * <p>
+ * When a ring is full, {@link Backpressure#BLOCK BLOCK} makes the writer wait for
+ * the slowest subscription, holding its store's lock, so handlers must never
+ * call into the DAOs. {@link Backpressure#DROP DROP} lets the writer overwrite
+ * events a subscription has not read, and tells the subscription how many it
+ * missed so it can rebuild its view.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class MutationBus {
+    private static final Logger LOG = Logger.getLogger(MutationBus.class.getName());
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);  // Longest a subscription sleeps between looks at its ring
+    private static final long BLOCKED_NANOS = TimeUnit.MICROSECONDS.toNanos(50); // Pause of a writer waiting for a full ring
+
+    private final boolean enabled;          // false publishes nothing
+    private final int size;                 // Events per ring, a power of two
+    private final int batch;                // Most events handed to a subscription before it reports its progress
+    private final Backpressure backpressure;
+    private final Map<Entity,Topic> topics = new EnumMap<>(Entity.class);
+
+    /**
+     * What a writer does when its ring is full
+     */
+    public enum Backpressure {
+        BLOCK,      // Wait for the slowest subscription to read the oldest event
+        DROP        // Overwrite it, the subscriptions that missed it are told
+    }
+
+    /**
+     * Receives the events of a topic, on the subscription's thread
+     */
+    public interface Handler {
+        /**
+         * Handles an event
+         * <br>
+         * The event is a slot of the ring and is filled again once the ring wraps
+         * around, anything needed later must be taken from it before returning.
+         *
+         * @param event The {@link MutationEvent event}
+         * @param endOfBatch true if it is the last event of the batch, a good time
+         * to bring a derived view up to date
+         */
+        void onEvent(MutationEvent event, boolean endOfBatch);
+
+        /**
+         * Called when the writer overwrote events before they were handled,
+         * only with {@link Backpressure#DROP DROP}
+         *
+         * @param missed The number of events that were lost
+         */
+        default void onOverrun(long missed) {}
+    }
+
+    /**
+     * Creates a Mutation Bus
+     *
+     * @param enabled false to publish nothing
+     * @param size Events per ring, rounded up to a power of two
+     * @param batch Most events handed to a subscription before it reports how far it has read
+     * @param backpressure What a writer does when its ring is full
+     */
+    @Autowired
+    public MutationBus(@Value("${events.enabled:true}") boolean enabled,
+                       @Value("${events.ring.size:1024}") int size,
+                       @Value("${events.batch:64}") int batch,
+                       @Value("${events.backpressure:BLOCK}") Backpressure backpressure) {
+        int ring = Integer.highestOneBit(Math.max(2, size));
+        if (ring < size)
+            ring <<= 1;
+        this.enabled = enabled;
+        this.size = ring;
+        this.batch = Math.max(1, batch);
+        this.backpressure = backpressure;
+        if (enabled) {
+            for (Entity entity : Entity.values())
+                topics.put(entity, new Topic(entity));
+        }
+    }
+
+    /**
+     * Creates a bus that publishes nothing, for DAOs created without one
+     *
+     * @return The disabled Mutation Bus
+     */
+    public static MutationBus disabled() {
+        return new MutationBus(false, 2, 1, Backpressure.BLOCK);
+    }
+
+    /**
+     * Determines if changes are published
+     *
+     * @return true if the bus is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Retrieves the topic of a kind of store
+     *
+     * @param entity The {@link Entity kind of store}
+     *
+     * @return The {@link Topic topic}, or null if the bus is disabled
+     */
+    public Topic topic(Entity entity) {
+        return topics.get(entity);
+    }
+
+    /**
+     * Starts handing the changes to a kind of store published from now on to a handler
+     *
+     * @param entity The {@link Entity kind of store}
+     * @param name Names the subscription's thread
+     * @param handler The {@link Handler handler}
+     *
+     * @return The running {@link Subscription subscription}, or null if the bus is disabled
+     */
+    public Subscription subscribe(Entity entity, String name, Handler handler) {
+        Topic topic = topics.get(entity);
+        if (topic == null)
+            return null;
+        Subscription subscription = new Subscription(topic, name, handler);
+        topic.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * Stops every subscription
+     */
+    @PreDestroy
+    public void close() {
+        for (Topic topic : topics.values()) {
+            for (Subscription subscription : topic.subscriptions)
+                subscription.close();
+        }
+    }
+
+    /**
+     * The ring of events of one kind of store
+     */
+    public final class Topic {
+        private final MutationEvent[] slots;    // Allocated once and filled in place
+        private final int mask;                 // Ring size minus one
+        private final AtomicLong cursor = new AtomicLong(-1);   // Sequence of the latest event published
+        private long next;                      // Sequence of the next event, only used by the writer
+        private volatile Subscription[] subscriptions = new Subscription[0];  // Replaced, never changed
+        private volatile boolean attached;      // true once a store publishes to the topic
+
+        private Topic(Entity entity) {
+            slots = new MutationEvent[size];
+            for (int i = 0; i < size; ++i)
+                slots[i] = new MutationEvent(entity);
+            mask = size - 1;
+        }
+
+        /**
+         * Publishes a change, called by the topic's single writer
+         * <br>
+         * With {@link Backpressure#BLOCK BLOCK} waits while the ring is full
+         *
+         * @param change What happened to the value
+         * @param key The key of the value
+         * @param value The value
+         */
+        void publish(Change change, Object key, Object value) {
+            long sequence = next;
+            if (backpressure == Backpressure.BLOCK) {
+                while (sequence - size > slowest()) {
+                    wake();
+                    LockSupport.parkNanos(BLOCKED_NANOS);
+                }
+            }
+            slots[(int)sequence & mask].set(sequence, change, key, value);
+            next = sequence + 1;
+            cursor.set(sequence);
+            wake();
+        }
+
+        /**
+         * Records that a store publishes its changes to the topic
+         */
+        void attach() {
+            attached = true;
+        }
+
+        /**
+         * Determines if a store publishes its changes to the topic
+         * <br>
+         * Stores that are not {@linkplain FileBackedStore file-backed}, like those of
+         * the {@code jdbc} profile, publish nothing, so a view that follows the
+         * topic must read them again instead
+         *
+         * @return true if changes to this kind of store are published
+         */
+        public boolean hasWriter() {
+            return attached;
+        }
+
+        /**
+         * Retrieves the sequence of the latest event published
+         *
+         * @return The sequence number, -1 before the first event
+         */
+        public long getCursor() {
+            return cursor.get();
+        }
+
+        /**
+         * Finds the sequence the slowest subscription has read up to
+         */
+        private long slowest() {
+            long slowest = Long.MAX_VALUE;
+            for (Subscription subscription : subscriptions)
+                slowest = Math.min(slowest, subscription.sequence.get());
+            return slowest;
+        }
+
+        /**
+         * Wakes the subscriptions that are sleeping for lack of events
+         */
+        private void wake() {
+            for (Subscription subscription : subscriptions) {
+                if (subscription.sleeping)
+                    LockSupport.unpark(subscription.thread);
+            }
+        }
+
+        private synchronized void add(Subscription subscription) {
+            Subscription[] added = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+            added[added.length - 1] = subscription;
+            subscriptions = added;
+        }
+
+        private synchronized void remove(Subscription subscription) {
+            subscriptions = Arrays.stream(subscriptions).filter(other -> other != subscription).toArray(Subscription[]::new);
+        }
+    }
+
+    /**
+     * A handler reading a topic on a thread of its own
+     */
+    public final class Subscription {
+        private final Topic topic;
+        private final Handler handler;
+        private final Thread thread;
+        private final AtomicLong sequence;      // Latest event handled, published once per batch
+        private final AtomicLong missed = new AtomicLong();  // Events overwritten before they were handled
+        private volatile boolean sleeping;      // Waiting to be woken by the writer
+        private volatile boolean running = true;
+
+        private Subscription(Topic topic, String name, Handler handler) {
+            this.topic = topic;
+            this.handler = handler;
+            this.sequence = new AtomicLong(topic.getCursor());
+            this.thread = new Thread(this::run, "mutation-" + name);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Main loop of the subscription's thread
+         */
+        private void run() {
+            long next = sequence.get() + 1;
+            while (running) {
+                long available = topic.cursor.get();
+                if (available < next) {
+                    sleeping = true;
+                    if (running && topic.cursor.get() < next)
+                        LockSupport.parkNanos(this, IDLE_NANOS);
+                    sleeping = false;
+                    continue;
+                }
+
+                if (available - next >= size) {
+                    // only with DROP: the writer has lapped this subscription
+                    long first = available - size + 1;
+                    overrun(first - next);
+                    next = first;
+                }
+
+                long end = Math.min(available, next + batch - 1);
+                long handled = next - 1;
+                for (long at = next; at <= end; ++at) {
+                    MutationEvent event = topic.slots[(int)at & topic.mask];
+                    if (event.getSequence() != at)
+                        break;  // overwritten since, counted as missed on the next pass
+                    try {
+                        handler.onEvent(event, at == end);
+                    }
+                    catch (RuntimeException e) {
+                        LOG.log(Level.SEVERE, "Handler of " + thread.getName() + " failed: " + e.getLocalizedMessage(), e);
+                    }
+                    if (event.getSequence() != at)
+                        overrun(1);  // overwritten while it was being handled
+                    handled = at;
+                }
+                sequence.set(handled);
+                next = handled + 1;
+            }
+        }
+
+        /**
+         * Tells the handler events were lost
+         */
+        private void overrun(long count) {
+            missed.addAndGet(count);
+            try {
+                handler.onOverrun(count);
+            }
+            catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Handler of " + thread.getName() + " failed: " + e.getLocalizedMessage(), e);
+            }
+        }
+
+        /**
+         * Retrieves the sequence of the latest event handled
+         *
+         * @return The sequence number, reported once per batch
+         */
+        public long getSequence() {
+            return sequence.get();
+        }
+
+        /**
+         * Retrieves the number of events overwritten before they were handled
+         *
+         * @return The events missed, always 0 with {@link Backpressure#BLOCK BLOCK}
+         */
+        public long getMissed() {
+            return missed.get();
+        }
+
+        /**
+         * Waits until every event published before the call has been handled
+         *
+         * @param timeout The most milliseconds to wait
+         *
+         * @return true if they have been handled, false if the time ran out
+         */
+        public boolean await(long timeout) {
+            long target = topic.getCursor();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (sequence.get() < target) {
+                if (!running || System.nanoTime() - deadline >= 0)
+                    return false;
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(BLOCKED_NANOS);
+            }
+            return true;
+        }
+
+        /**
+         * Stops the subscription's thread, a writer never waits for it again
+         */
+        public void close() {
+            running = false;
+            topic.remove(this);
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
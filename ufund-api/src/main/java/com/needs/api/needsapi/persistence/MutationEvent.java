@@ -0,0 +1,104 @@
+package com.needs.api.needsapi.persistence;
+
+/**
+ * A change to one value of a store, as published on the {@linkplain MutationBus mutation bus}
+ * <p>
+ * Events are slots of a ring allocated once, when the bus is created. The
+ * store's writer fills the next slot in place for every change, and consumers
+ * are handed the slot itself, so publishing and consuming allocate nothing. A
+ * consumer must take what it needs from the event before returning, since the
+ * slot is filled again once the ring wraps around. The value is the store's own
+ * object, which a consumer reads but must not change.
+ *
+ * @author Team Swiss Pandas
+ */
+public final class MutationEvent {
+    /**
+     * The kinds of stores that publish changes
+     */
+    public enum Entity {
+        NEED,
+        BASKET,
+        LOGIN,
+        PROFILE
+    }
+
+    /**
+     * What happened to the value
+     */
+    public enum Change {
+        PUT,        // Added, replaced, or changed in place
+        REMOVE      // Removed, or dropped from memory
+    }
+
+    private final Entity entity;
+    private volatile long sequence = -1;    // Position in the ring, -1 while being filled
+    private Change change;
+    private Object key;
+    private Object value;
+
+    /**
+     * Creates an empty slot
+     *
+     * @param entity The kind of store whose ring the slot belongs to
+     */
+    MutationEvent(Entity entity) {
+        this.entity = entity;
+    }
+
+    /**
+     * Fills the slot with a change, called by the ring's writer
+     */
+    void set(long sequence, Change change, Object key, Object value) {
+        this.sequence = -1;     // readers racing the writer see the slot is being filled
+        this.change = change;
+        this.key = key;
+        this.value = value;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Retrieves the kind of store the value belongs to
+     *
+     * @return The {@link Entity entity}
+     */
+    public Entity getEntity() {
+        return entity;
+    }
+
+    /**
+     * Retrieves the position of the event in its ring
+     *
+     * @return The sequence number, counting from 0 for the first change published
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Retrieves what happened to the value
+     *
+     * @return The {@link Change change}
+     */
+    public Change getChange() {
+        return change;
+    }
+
+    /**
+     * Retrieves the key of the changed value
+     *
+     * @return The key the store holds the value under
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * Retrieves the value
+     *
+     * @return The value as stored, or as it was when removed
+     */
+    public Object getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,251 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.needs.api.needsapi.model.Need;
+
+/**
+ * Trigram inverted index over the case-folded names of the {@linkplain Need needs}
+ * <p>
+ * Every run of three characters of a name is a gram, and each gram has a posting
+ * list: the ids of the needs whose name contains it, in ascending order. A name
+ * containing some text contains every gram of the text, so intersecting their
+ * posting lists narrows the search to a few candidates, which the caller then
+ * checks against the text itself. Runs of one and two characters are filed as
+ * well, so the first keystrokes of a search, too short to hold a trigram, are
+ * looked up as a single gram of their own.
+ * <p>
+ * The index is kept in step by the {@linkplain FileBackedStore store}, under its
+ * lock. Posting lists are never changed once published: a new need's id is the
+ * greatest yet, so it is appended past the end of the array that readers of the
+ * previous list stop short of, and anything else copies the list. Readers thus
+ * need no lock and always see each list as it was before or after a change.
+ *
+ * @author Team Swiss Pandas
+ */
+class NameGramIndex implements FileBackedStore.Index<Integer,Need> {
+    static final int GRAM = 3;  // Characters per gram, shorter texts are grams of their own
+
+    private final Function<Need,String> nameOf;    // Derives the folded name of a need, null files nothing
+    private final Map<String,Postings> postings = new ConcurrentHashMap<>();  // Posting list of each gram, read without the lock
+    private final Map<Integer,String> filed = new HashMap<>();    // The name each need was filed under, guarded by the store's lock
+
+    /**
+     * Ids of the needs whose name contains a gram, the first size entries of the array
+     */
+    private static final class Postings {
+        final int[] ids;
+        final int size;
+
+        Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Creates a Name Gram Index
+     *
+     * @param nameOf Derives the case-folded name a {@linkplain Need need} is filed under
+     */
+    NameGramIndex(Function<Need,String> nameOf) {
+        this.nameOf = nameOf;
+    }
+
+    /**
+     * Finds the needs whose name contains every gram of a text
+     *
+     * @param text The case-folded text
+     *
+     * @return The ids of the candidates in ascending order, a superset of the
+     * needs whose name contains the text, exactly those needs if the text is no
+     * longer than a gram, or null if the text is empty and so cannot narrow the
+     * search
+     */
+    int[] candidates(String text) {
+        if (text.isEmpty())
+            return null;
+
+        Set<String> grams = grams(text);
+        Postings[] lists = new Postings[grams.size()];
+        int count = 0;
+        for (String gram : grams) {
+            Postings list = postings.get(gram);
+            if (list == null)
+                return new int[0];  // no name contains the gram
+            lists[count++] = list;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        // each id of the shortest list is looked for in the others, whose
+        // cursors only move forward as the ids ascend
+        Postings shortest = lists[0];
+        int[] cursors = new int[lists.length];
+        int[] matches = new int[shortest.size];
+        int found = 0;
+        next:
+        for (int i = 0; i < shortest.size; ++i) {
+            int id = shortest.ids[i];
+            for (int list = 1; list < lists.length; ++list) {
+                int at = seek(lists[list], cursors[list], id);
+                cursors[list] = at;
+                if (at == lists[list].size)
+                    break next;     // the list is exhausted, no later id can match
+                if (lists[list].ids[at] != id)
+                    continue next;
+            }
+            matches[found++] = id;
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    /**
+     * Finds the first position at or after a cursor holding an id no less than
+     * the one sought, galloping ahead then searching the range it lands in
+     */
+    private static int seek(Postings list, int from, int id) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < list.size && list.ids[high] < id) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high + 1, list.size);
+        int at = Arrays.binarySearch(list.ids, low, high, id);
+        return at >= 0 ? at : -at - 1;
+    }
+
+    /**
+     * Splits a text into its distinct grams, in order of first appearance, a
+     * text shorter than a gram being the only gram of its own
+     */
+    static Set<String> grams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (text.length() < GRAM)
+            grams.add(text);
+        for (int i = 0; i + GRAM <= text.length(); ++i)
+            grams.add(text.substring(i, i + GRAM));
+        return grams;
+    }
+
+    /**
+     * Splits a name into the distinct grams it is filed under: every run of up
+     * to a gram's length, so any text it contains has its grams among them
+     */
+    static Set<String> filedGrams(String name) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int length = 1; length <= GRAM; ++length) {
+            for (int i = 0; i + length <= name.length(); ++i)
+                grams.add(name.substring(i, i + length));
+        }
+        return grams;
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void add(Integer key, Need value) {
+        String name = nameOf.apply(value);
+        if (name == null)
+            return;
+        filed.put(key, name);
+        for (String gram : filedGrams(name))
+            postings.put(gram, insert(postings.get(gram), key));
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The name is the one the need was filed under, it may have changed since
+     */
+    @Override
+    public void remove(Integer key, Need value) {
+        String name = filed.remove(key);
+        if (name == null)
+            return;
+        for (String gram : filedGrams(name)) {
+            Postings list = delete(postings.get(gram), key);
+            if (list == null)
+                postings.remove(gram);
+            else
+                postings.put(gram, list);
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Leaves the posting lists alone if the name did not change, as when a need
+     * is fulfilled
+     */
+    @Override
+    public void replace(Integer key, Need previous, Need value) {
+        if (filed.containsKey(key) && Objects.equals(filed.get(key), nameOf.apply(value)))
+            return;
+        remove(key, previous);
+        add(key, value);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        postings.clear();
+        filed.clear();
+    }
+
+    /**
+     * Publishes a posting list with an id added
+     */
+    private static Postings insert(Postings list, int id) {
+        if (list == null)
+            return new Postings(new int[] {id, 0, 0, 0}, 1);
+
+        if (id > list.ids[list.size - 1]) {
+            // readers of the current list stop short of the slot written here
+            int[] ids = list.size < list.ids.length ? list.ids : Arrays.copyOf(list.ids, list.size * 2);
+            ids[list.size] = id;
+            return new Postings(ids, list.size + 1);
+        }
+
+        int at = Arrays.binarySearch(list.ids, 0, list.size, id);
+        if (at >= 0)
+            return list;
+        at = -at - 1;
+        int[] ids = new int[list.size + 1];
+        System.arraycopy(list.ids, 0, ids, 0, at);
+        ids[at] = id;
+        System.arraycopy(list.ids, at, ids, at + 1, list.size - at);
+        return new Postings(ids, ids.length);
+    }
+
+    /**
+     * Publishes a posting list with an id removed
+     *
+     * @return The list, or null if it is left empty
+     */
+    private static Postings delete(Postings list, int id) {
+        if (list == null)
+            return null;
+        int at = Arrays.binarySearch(list.ids, 0, list.size, id);
+        if (at < 0)
+            return list;
+        if (list.size == 1)
+            return null;
+        int[] ids = new int[list.size - 1];
+        System.arraycopy(list.ids, 0, ids, 0, at);
+        System.arraycopy(list.ids, at + 1, ids, at, list.size - at - 1);
+        return new Postings(ids, ids.length);
+    }
+}
@@ -0,0 +1,316 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+/**
+ * Radix trie over the case-folded names of the {@linkplain Need needs}, for
+ * suggesting names as they are typed
+ * <p>
+ * Each node holds the best needs among those whose name starts with the node's
+ * prefix: urgent ones first, then those with the most still needed, then by id.
+ * A suggestion walks down the prefix and hands back the list of the node it
+ * ends at, so it costs the length of the prefix whatever the number of needs.
+ * The best of a node are among its own needs and the best of its children, so
+ * a change only recomputes the nodes on the path to the name that changed.
+ * <p>
+ * The trie is kept in step by the {@linkplain FileBackedStore store}, under its
+ * lock. A node's children and best list are arrays replaced rather than changed,
+ * and splitting an edge builds the new nodes before linking them in, so readers
+ * need no lock.
+ *
+ * @author Team Swiss Pandas
+ */
+class NamePrefixIndex implements FileBackedStore.Index<Integer,Need> {
+    private static final Entry[] NONE = new Entry[0];
+    private static final Node[] LEAF = new Node[0];
+
+    /**
+     * Urgent first, then most still needed, then by id
+     */
+    private static final Comparator<Entry> RANK = Comparator.comparing((Entry entry) -> !entry.urgent)
+                                                            .thenComparing(Comparator.comparingInt((Entry entry) -> entry.remaining).reversed())
+                                                            .thenComparingInt(entry -> entry.id);
+
+    private final Function<Need,String> nameOf;    // Derives the folded name of a need, null files nothing
+    private final int depth;                        // Needs kept in each node's best list
+    private volatile Node root = new Node("");
+    private final Map<Integer,Entry> filed = new HashMap<>();  // What each need was filed as, guarded by the store's lock
+
+    /**
+     * A need as ranked when it was filed, its fields may have changed since
+     */
+    private static final class Entry {
+        final int id;
+        final String name;
+        final boolean urgent;
+        final int remaining;        // Quantity still needed
+
+        Entry(int id, String name, Need need) {
+            this.id = id;
+            this.name = name;
+            this.urgent = need.getUrgency() == UrgencyTag.HIGH;
+            this.remaining = need.getQuantityNeeded() - need.getQuantityFulfilled();
+        }
+
+        boolean sameAs(Entry other) {
+            return name.equals(other.name) && urgent == other.urgent && remaining == other.remaining;
+        }
+    }
+
+    /**
+     * The prefix ending at a node is the labels of the edges down to it
+     */
+    private static final class Node {
+        final String label;         // Label of the edge from the parent, never empty but at the root
+        volatile Node[] children = LEAF;    // Sorted by the first character of their labels
+        volatile Entry[] best = NONE;       // Best needs under this node, in RANK order
+        List<Entry> own;            // Needs named by exactly this prefix, only used by writers
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Creates a node with another label taking over everything under a node,
+         * which is no longer changed afterwards
+         */
+        Node(String label, Node node) {
+            this.label = label;
+            this.children = node.children;
+            this.best = node.best;
+            this.own = node.own;
+        }
+
+        Node child(char first) {
+            Node[] nodes = children;
+            int low = 0;
+            int high = nodes.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char at = nodes[middle].label.charAt(0);
+                if (at < first)
+                    low = middle + 1;
+                else if (at > first)
+                    high = middle - 1;
+                else
+                    return nodes[middle];
+            }
+            return null;
+        }
+
+        void attach(Node child) {
+            Node[] nodes = Arrays.copyOf(children, children.length + 1);
+            int at = nodes.length - 1;
+            while (at > 0 && nodes[at - 1].label.charAt(0) > child.label.charAt(0)) {
+                nodes[at] = nodes[at - 1];
+                --at;
+            }
+            nodes[at] = child;
+            children = nodes;
+        }
+
+        void swap(Node child, Node replacement) {
+            Node[] nodes = children.clone();
+            for (int at = 0; at < nodes.length; ++at) {
+                if (nodes[at] == child)
+                    nodes[at] = replacement;
+            }
+            children = nodes;
+        }
+
+        void detach(Node child) {
+            children = Arrays.stream(children).filter(node -> node != child).toArray(Node[]::new);
+        }
+    }
+
+    /**
+     * Creates a Name Prefix Index
+     *
+     * @param nameOf Derives the case-folded name a {@linkplain Need need} is filed under
+     * @param depth Needs kept for each prefix, the most a suggestion can return
+     */
+    NamePrefixIndex(Function<Need,String> nameOf, int depth) {
+        this.nameOf = nameOf;
+        this.depth = depth;
+    }
+
+    /**
+     * Suggests the best {@linkplain Need needs} whose name starts with a prefix
+     *
+     * @param prefix The case-folded prefix
+     * @param k The most needs to suggest, no more than the depth are kept
+     *
+     * @return The ids of the needs, urgent ones first, then those with the most still needed
+     */
+    int[] suggest(String prefix, int k) {
+        Node node = root;
+        int at = 0;
+        while (at < prefix.length()) {
+            Node child = node.child(prefix.charAt(at));
+            if (child == null)
+                return new int[0];
+            String label = child.label;
+            int common = common(label, prefix, at);
+            if (common < label.length() && at + common < prefix.length())
+                return new int[0];  // the prefix leaves the edge before its end
+            node = child;
+            at += common;
+        }
+
+        Entry[] best = node.best;
+        int[] ids = new int[Math.min(Math.max(k, 0), best.length)];
+        for (int i = 0; i < ids.length; ++i)
+            ids[i] = best[i].id;
+        return ids;
+    }
+
+    /**
+     * Counts the characters a label has in common with a text from a position
+     */
+    private static int common(String label, String text, int from) {
+        int length = Math.min(label.length(), text.length() - from);
+        int common = 0;
+        while (common < length && label.charAt(common) == text.charAt(from + common))
+            ++common;
+        return common;
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void add(Integer key, Need value) {
+        String name = nameOf.apply(value);
+        if (name == null)
+            return;
+        Entry entry = new Entry(key, name, value);
+        filed.put(key, entry);
+
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int at = 0;
+        while (at < name.length()) {
+            Node child = node.child(name.charAt(at));
+            if (child == null) {
+                child = new Node(name.substring(at));
+                node.attach(child);
+                node = child;
+                path.add(node);
+                break;
+            }
+
+            int common = common(child.label, name, at);
+            if (common < child.label.length()) {
+                // split the edge, the new nodes are complete before they are linked in
+                Node middle = new Node(child.label.substring(0, common));
+                Node rest = new Node(child.label.substring(common), child);
+                middle.children = new Node[] {rest};
+                middle.best = rest.best;
+                node.swap(child, middle);
+                child = middle;
+            }
+            node = child;
+            path.add(node);
+            at += common;
+        }
+
+        if (node.own == null)
+            node.own = new ArrayList<>(1);
+        node.own.add(entry);
+        rank(path);
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The need is removed as it was filed, its fields may have changed since
+     */
+    @Override
+    public void remove(Integer key, Need value) {
+        Entry entry = filed.remove(key);
+        if (entry == null)
+            return;
+
+        List<Node> path = path(entry.name);
+        Node node = path.get(path.size() - 1);
+        node.own.removeIf(own -> own.id == entry.id);
+        if (node.own.isEmpty())
+            node.own = null;
+
+        // drop the nodes left with nothing under them
+        while (path.size() > 1) {
+            Node last = path.get(path.size() - 1);
+            if (last.own != null || last.children.length > 0)
+                break;
+            path.remove(path.size() - 1);
+            path.get(path.size() - 1).detach(last);
+        }
+        rank(path);
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Leaves the trie alone if neither the name nor the rank changed
+     */
+    @Override
+    public void replace(Integer key, Need previous, Need value) {
+        Entry filedAs = filed.get(key);
+        String name = nameOf.apply(value);
+        if (filedAs != null && name != null && filedAs.sameAs(new Entry(key, name, value)))
+            return;
+        remove(key, previous);
+        add(key, value);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        root = new Node("");
+        filed.clear();
+    }
+
+    /**
+     * Finds the nodes down to the one a name ends at, which is in the trie
+     */
+    private List<Node> path(String name) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int at = 0;
+        while (at < name.length()) {
+            node = node.child(name.charAt(at));
+            path.add(node);
+            at += node.label.length();
+        }
+        return path;
+    }
+
+    /**
+     * Recomputes the best lists of the nodes on a path, from the bottom up
+     */
+    private void rank(List<Node> path) {
+        for (int at = path.size() - 1; at >= 0; --at) {
+            Node node = path.get(at);
+            List<Entry> candidates = new ArrayList<>();
+            if (node.own != null)
+                candidates.addAll(node.own);
+            for (Node child : node.children)
+                candidates.addAll(Arrays.asList(child.best));
+            candidates.sort(RANK);
+            node.best = candidates.subList(0, Math.min(depth, candidates.size())).toArray(NONE);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.needs.api.needsapi.model.Need;
+
+/**
+ * Symmetric delete dictionary over the words of the case-folded names of the
+ * {@linkplain Need needs}, for finding them despite typos
+ * <p>
+ * Every word is filed under each string left by deleting up to {@link #MAX_TYPOS}
+ * of its characters. Two words within that many typos of each other leave a
+ * string in common once each has lost as many characters, so the deletes of a
+ * misspelled word lead straight to the few words that may be meant, which are
+ * then checked by computing their distance. A query only costs the deletes of
+ * its own words, however many needs there are.
+ * <p>
+ * The index is kept in step by the {@linkplain FileBackedStore store}, under its
+ * lock, in concurrent maps and sets, so readers need no lock.
+ *
+ * @author Team Swiss Pandas
+ */
+class NameTypoIndex implements FileBackedStore.Index<Integer,Need> {
+    static final int MAX_TYPOS = 2;     // Most typos tolerated in a word, and deletes filed per word
+
+    private final Function<Need,String> nameOf;    // Derives the folded name of a need, null files nothing
+    private final Map<String,Set<Integer>> needsByWord = new ConcurrentHashMap<>();   // Ids of the needs whose name has each word
+    private final Map<String,Set<String>> wordsByDelete = new ConcurrentHashMap<>();  // Words each string is a delete of
+    private final Map<Integer,String> filed = new HashMap<>();  // The name each need was filed under, guarded by the store's lock
+
+    /**
+     * Creates a Name Typo Index
+     *
+     * @param nameOf Derives the case-folded name a {@linkplain Need need} is filed under
+     */
+    NameTypoIndex(Function<Need,String> nameOf) {
+        this.nameOf = nameOf;
+    }
+
+    /**
+     * Splits a case-folded text into its words
+     *
+     * @param text The text
+     *
+     * @return The words, runs of letters and digits, in order
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty())
+                words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * Decides how many typos a word of a query may have, so short words are not
+     * taken for unrelated ones
+     *
+     * @param word The word
+     *
+     * @return None up to two characters, one up to five, {@link #MAX_TYPOS} beyond
+     */
+    static int typos(String word) {
+        return word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : MAX_TYPOS;
+    }
+
+    /**
+     * Computes the number of insertions, deletions, substitutions and swaps of
+     * adjacent characters turning one word into another, if no more than a bound
+     *
+     * @param a A word
+     * @param b Another word
+     * @param bound The most typos of interest
+     *
+     * @return The distance, or bound + 1 if it is greater than the bound
+     */
+    static int distance(String a, String b, int bound) {
+        if (Math.abs(a.length() - b.length()) > bound)
+            return bound + 1;
+
+        int[] before = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); ++j)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); ++i) {
+            current[0] = i;
+            int smallest = i;
+            for (int j = 1; j <= b.length(); ++j) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int best = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1))
+                    best = Math.min(best, before[j - 2] + 1);
+                current[j] = best;
+                smallest = Math.min(smallest, best);
+            }
+            if (smallest > bound)
+                return bound + 1;   // every alignment is already too far apart
+            int[] rotated = before;
+            before = previous;
+            previous = current;
+            current = rotated;
+        }
+        return Math.min(previous[b.length()], bound + 1);
+    }
+
+    /**
+     * Scores a name against a text the way {@link #find(String)} does, for
+     * stores without the index
+     *
+     * @param text The case-folded text
+     * @param name The case-folded name
+     *
+     * @return The typos of the text's words added up, or -1 if a word of the
+     * text has no word of the name within the typos it may have
+     */
+    static int score(String text, String name) {
+        List<String> words = words(text);
+        if (words.isEmpty())
+            return -1;
+
+        List<String> named = words(name);
+        int score = 0;
+        for (String word : words) {
+            int typos = typos(word);
+            int closest = typos + 1;
+            for (String candidate : named)
+                closest = Math.min(closest, distance(word, candidate, typos));
+            if (closest > typos)
+                return -1;
+            score += closest;
+        }
+        return score;
+    }
+
+    /**
+     * Finds the {@linkplain Need needs} whose name has, for every word of a text,
+     * a word within the typos that word may have
+     *
+     * @param text The case-folded text
+     *
+     * @return The id of each need found with its distance, the typos of the
+     * text's words added up, empty if the text has no words
+     */
+    Map<Integer,Integer> find(String text) {
+        Map<Integer,Integer> found = null;
+        for (String word : words(text)) {
+            int typos = typos(word);
+
+            // each word that may be meant, with its distance
+            Map<String,Integer> meant = new HashMap<>();
+            for (String delete : deletes(word, typos)) {
+                Set<String> words = wordsByDelete.get(delete);
+                if (words == null)
+                    continue;
+                for (String candidate : words) {
+                    if (!meant.containsKey(candidate)) {
+                        int distance = distance(word, candidate, typos);
+                        if (distance <= typos)
+                            meant.put(candidate, distance);
+                    }
+                }
+            }
+
+            // the closest word of each need's name
+            Map<Integer,Integer> matched = new HashMap<>();
+            for (Map.Entry<String,Integer> entry : meant.entrySet()) {
+                Set<Integer> ids = needsByWord.get(entry.getKey());
+                if (ids == null)
+                    continue;
+                for (int id : ids)
+                    matched.merge(id, entry.getValue(), Math::min);
+            }
+
+            if (found == null)
+                found = matched;
+            else {
+                // every word of the text must be matched
+                Map<Integer,Integer> both = new HashMap<>();
+                for (Map.Entry<Integer,Integer> entry : found.entrySet()) {
+                    Integer distance = matched.get(entry.getKey());
+                    if (distance != null)
+                        both.put(entry.getKey(), entry.getValue() + distance);
+                }
+                found = both;
+            }
+            if (found.isEmpty())
+                break;
+        }
+        return found == null ? new HashMap<>() : found;
+    }
+
+    /**
+     * Lists the strings left by deleting up to some characters of a word,
+     * the word itself included
+     */
+    static Set<String> deletes(String word, int count) {
+        Set<String> deletes = new HashSet<>();
+        deletes.add(word);
+        List<String> round = List.of(word);
+        for (int deleted = 0; deleted < count; ++deleted) {
+            List<String> next = new ArrayList<>();
+            for (String string : round) {
+                for (int at = 0; at < string.length(); ++at) {
+                    String delete = string.substring(0, at) + string.substring(at + 1);
+                    if (deletes.add(delete))
+                        next.add(delete);
+                }
+            }
+            round = next;
+        }
+        return deletes;
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void add(Integer key, Need value) {
+        String name = nameOf.apply(value);
+        if (name == null)
+            return;
+        filed.put(key, name);
+        for (String word : new HashSet<>(words(name))) {
+            Set<Integer> ids = needsByWord.get(word);
+            if (ids == null) {
+                // a new word, filed under its deletes before it leads anywhere
+                ids = ConcurrentHashMap.newKeySet();
+                ids.add(key);
+                for (String delete : deletes(word, MAX_TYPOS))
+                    wordsByDelete.computeIfAbsent(delete, unused -> ConcurrentHashMap.newKeySet()).add(word);
+                needsByWord.put(word, ids);
+            }
+            else
+                ids.add(key);
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The name is the one the need was filed under, it may have changed since
+     */
+    @Override
+    public void remove(Integer key, Need value) {
+        String name = filed.remove(key);
+        if (name == null)
+            return;
+        for (String word : new HashSet<>(words(name))) {
+            Set<Integer> ids = needsByWord.get(word);
+            if (ids == null)
+                continue;
+            ids.remove(key);
+            if (ids.isEmpty()) {
+                // the last need with the word, which leaves the dictionary
+                needsByWord.remove(word);
+                for (String delete : deletes(word, MAX_TYPOS)) {
+                    Set<String> words = wordsByDelete.get(delete);
+                    if (words != null) {
+                        words.remove(word);
+                        if (words.isEmpty())
+                            wordsByDelete.remove(delete);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Leaves the dictionary alone if the name did not change
+     */
+    @Override
+    public void replace(Integer key, Need previous, Need value) {
+        String name = filed.get(key);
+        if (name != null && name.equals(nameOf.apply(value)))
+            return;
+        remove(key, previous);
+        add(key, value);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        needsByWord.clear();
+        wordsByDelete.clear();
+        filed.clear();
+    }
+}
@@ -0,0 +1,416 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+/**
+ * Bitmap indexes over the type, urgency, price and openness of the
+ * {@linkplain Need needs}, for filtering them on several criteria at once
+ * <p>
+ * Each type and each urgency has a bitmap with the bit of every need's id set if
+ * the need has it, and another bitmap has the bits of the needs still open, with
+ * less fulfilled than needed. Prices are kept sorted with their ids, so a price
+ * range is a contiguous run turned into a bitmap. A query ORs the bitmaps of the
+ * values allowed for a criterion and ANDs the criteria together, a word of 64
+ * needs at a time, without looking at a single need.
+ * <p>
+ * The index is kept in step by the {@linkplain FileBackedStore store}, under its
+ * lock. Bitmap words are written atomically and the price list is copied on
+ * every change, so readers need no lock; a need changed while a query runs may
+ * be seen before or after the change, which the caller checks against the
+ * need itself.
+ *
+ * @author Team Swiss Pandas
+ */
+class NeedBitmapIndex implements FileBackedStore.Index<Integer,Need> {
+    private final Map<NeedType,Bitmap> types = new EnumMap<>(NeedType.class);         // Needs of each type, every type present
+    private final Map<UrgencyTag,Bitmap> urgencies = new EnumMap<>(UrgencyTag.class); // Needs of each urgency, every urgency present
+    private final Bitmap open = new Bitmap();       // Needs with less fulfilled than needed
+    private final Bitmap all = new Bitmap();        // Every need
+    private volatile Prices prices = new Prices(new double[0], new int[0]);  // Every need by price, replaced on every change
+    private final Map<Integer,Filed> filed = new HashMap<>();  // What each need was filed under, guarded by the store's lock
+
+    /**
+     * Bits of need ids, growing as greater ids are set
+     * <br>
+     * Written by one thread at a time, read by any
+     */
+    private static final class Bitmap {
+        private volatile AtomicLongArray words = new AtomicLongArray(1);
+
+        void set(int bit) {
+            int word = bit >>> 6;
+            AtomicLongArray current = words;
+            if (word >= current.length()) {
+                // readers of the current words may miss the bit, as if they ran first
+                AtomicLongArray grown = new AtomicLongArray(Math.max(word + 1, current.length() * 2));
+                for (int i = 0; i < current.length(); ++i)
+                    grown.set(i, current.get(i));
+                words = current = grown;
+            }
+            current.set(word, current.get(word) | 1L << bit);
+        }
+
+        void clear(int bit) {
+            int word = bit >>> 6;
+            AtomicLongArray current = words;
+            if (word < current.length())
+                current.set(word, current.get(word) & ~(1L << bit));
+        }
+
+        /**
+         * Copies the first words of the bitmap, those past its end are empty
+         */
+        long[] copy(int length) {
+            AtomicLongArray current = words;
+            long[] copy = new long[length];
+            for (int i = 0, end = Math.min(length, current.length()); i < end; ++i)
+                copy[i] = current.get(i);
+            return copy;
+        }
+
+        /**
+         * ORs the first words of the bitmap into others
+         */
+        void or(long[] into) {
+            AtomicLongArray current = words;
+            for (int i = 0, end = Math.min(into.length, current.length()); i < end; ++i)
+                into[i] |= current.get(i);
+        }
+
+        /**
+         * ANDs the first words of the bitmap, or of its complement, into others
+         */
+        void and(long[] into, boolean complement) {
+            AtomicLongArray current = words;
+            long flip = complement ? -1L : 0L;
+            for (int i = 0; i < into.length; ++i)
+                into[i] &= (i < current.length() ? current.get(i) : 0L) ^ flip;
+        }
+
+        int length() {
+            return words.length();
+        }
+    }
+
+    /**
+     * Prices in ascending order with the ids of their needs, by id among equal prices
+     */
+    private static final class Prices {
+        final double[] prices;
+        final int[] ids;
+
+        Prices(double[] prices, int[] ids) {
+            this.prices = prices;
+            this.ids = ids;
+        }
+
+        /**
+         * Finds the first position whose price and id come no earlier than those given
+         */
+        int search(double price, int id) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int order = Double.compare(prices[middle], price);
+                if (order < 0 || order == 0 && ids[middle] < id)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return low;
+        }
+    }
+
+    /**
+     * What a need was filed under
+     */
+    private static final class Filed {
+        final NeedType type;
+        final UrgencyTag urgency;
+        final double price;
+        final boolean open;
+
+        Filed(Need need) {
+            this.type = need.getType();
+            this.urgency = need.getUrgency();
+            this.price = need.getPrice();
+            this.open = isOpen(need);
+        }
+    }
+
+    /**
+     * Creates a Need Bitmap Index
+     */
+    NeedBitmapIndex() {
+        for (NeedType type : NeedType.values())
+            types.put(type, new Bitmap());
+        for (UrgencyTag urgency : UrgencyTag.values())
+            urgencies.put(urgency, new Bitmap());
+    }
+
+    /**
+     * Decides if a need is still open, with less fulfilled than needed
+     */
+    static boolean isOpen(Need need) {
+        return need.getQuantityFulfilled() < need.getQuantityNeeded();
+    }
+
+    /**
+     * Decides if a need meets the criteria of a query
+     *
+     * @param need The need
+     * @param types The types allowed, any if empty
+     * @param urgencies The urgencies allowed, any if empty
+     * @param minPrice The lowest price allowed
+     * @param maxPrice The highest price allowed
+     * @param open Whether the need must be open, or fulfilled, either if null
+     *
+     * @return true if the need meets every criterion
+     */
+    static boolean matches(Need need, Set<NeedType> types, Set<UrgencyTag> urgencies,
+                           double minPrice, double maxPrice, Boolean open) {
+        return (types.isEmpty() || types.contains(need.getType()))
+            && (urgencies.isEmpty() || urgencies.contains(need.getUrgency()))
+            && need.getPrice() >= minPrice && need.getPrice() <= maxPrice
+            && (open == null || open == isOpen(need));
+    }
+
+    /**
+     * Finds the needs meeting the criteria of a query
+     *
+     * @param types The types allowed, any if empty
+     * @param urgencies The urgencies allowed, any if empty
+     * @param minPrice The lowest price allowed
+     * @param maxPrice The highest price allowed
+     * @param open Whether the needs must be open, or fulfilled, either if null
+     *
+     * @return The ids of the needs found in ascending order
+     */
+    int[] select(Set<NeedType> types, Set<UrgencyTag> urgencies, double minPrice, double maxPrice, Boolean open) {
+        int length = all.length();
+        long[] selected = all.copy(length);
+
+        if (!types.isEmpty()) {
+            long[] any = new long[length];
+            for (NeedType type : types)
+                this.types.get(type).or(any);
+            and(selected, any);
+        }
+        if (!urgencies.isEmpty()) {
+            long[] any = new long[length];
+            for (UrgencyTag urgency : urgencies)
+                this.urgencies.get(urgency).or(any);
+            and(selected, any);
+        }
+        if (open != null)
+            this.open.and(selected, !open);
+        if (minPrice > Double.NEGATIVE_INFINITY || maxPrice < Double.POSITIVE_INFINITY)
+            and(selected, priced(minPrice, maxPrice, length));
+
+        int count = 0;
+        for (long word : selected)
+            count += Long.bitCount(word);
+        int[] ids = new int[count];
+        int found = 0;
+        for (int word = 0; word < selected.length; ++word) {
+            for (long bits = selected[word]; bits != 0; bits &= bits - 1)
+                ids[found++] = word << 6 | Long.numberOfTrailingZeros(bits);
+        }
+        return ids;
+    }
+
+    /**
+     * Turns the run of needs priced within a range into the first words of a bitmap
+     */
+    private long[] priced(double minPrice, double maxPrice, int length) {
+        Prices current = prices;
+        long[] bits = new long[length];
+        if (minPrice > maxPrice)
+            return bits;
+        int end = current.search(maxPrice, Integer.MAX_VALUE);
+        for (int at = current.search(minPrice, Integer.MIN_VALUE); at < end; ++at) {
+            int id = current.ids[at];
+            if (id >>> 6 < length)
+                bits[id >>> 6] |= 1L << id;
+        }
+        return bits;
+    }
+
+    private static void and(long[] into, long[] bits) {
+        for (int i = 0; i < into.length; ++i)
+            into[i] &= bits[i];
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void add(Integer key, Need value) {
+        if (key < 0)
+            return;     // no bit to set
+        Filed filing = new Filed(value);
+        filed.put(key, filing);
+        all.set(key);
+        if (filing.type != null)
+            types.get(filing.type).set(key);
+        if (filing.urgency != null)
+            urgencies.get(filing.urgency).set(key);
+        if (filing.open)
+            open.set(key);
+        prices = insert(prices, filing.price, key);
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The fields are those the need was filed under, they may have changed since
+     */
+    @Override
+    public void remove(Integer key, Need value) {
+        Filed filing = filed.remove(key);
+        if (filing == null)
+            return;
+        all.clear(key);
+        if (filing.type != null)
+            types.get(filing.type).clear(key);
+        if (filing.urgency != null)
+            urgencies.get(filing.urgency).clear(key);
+        open.clear(key);
+        prices = delete(prices, filing.price, key);
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Only touches the bitmaps of the fields that changed, as when a need is
+     * fulfilled and only its openness may have
+     */
+    @Override
+    public void replace(Integer key, Need previous, Need value) {
+        Filed filing = filed.get(key);
+        if (filing == null) {
+            add(key, value);
+            return;
+        }
+        Filed refiling = new Filed(value);
+        filed.put(key, refiling);
+        if (filing.type != refiling.type) {
+            if (filing.type != null)
+                types.get(filing.type).clear(key);
+            if (refiling.type != null)
+                types.get(refiling.type).set(key);
+        }
+        if (filing.urgency != refiling.urgency) {
+            if (filing.urgency != null)
+                urgencies.get(filing.urgency).clear(key);
+            if (refiling.urgency != null)
+                urgencies.get(refiling.urgency).set(key);
+        }
+        if (filing.open != refiling.open) {
+            if (refiling.open)
+                open.set(key);
+            else
+                open.clear(key);
+        }
+        if (Double.compare(filing.price, refiling.price) != 0)
+            prices = insert(delete(prices, filing.price, key), refiling.price, key);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        for (int id : filed.keySet()) {
+            all.clear(id);
+            for (Bitmap bitmap : types.values())
+                bitmap.clear(id);
+            for (Bitmap bitmap : urgencies.values())
+                bitmap.clear(id);
+            open.clear(id);
+        }
+        prices = new Prices(new double[0], new int[0]);
+        filed.clear();
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The prices are sorted once, rather than each inserted into a copy of the
+     * list
+     */
+    @Override
+    public void rebuild(Map<Integer,Need> values) {
+        clear();
+        Integer[] order = new Integer[values.size()];
+        int count = 0;
+        for (Map.Entry<Integer,Need> entry : values.entrySet()) {
+            int key = entry.getKey();
+            if (key < 0)
+                continue;
+            Filed filing = new Filed(entry.getValue());
+            filed.put(key, filing);
+            all.set(key);
+            if (filing.type != null)
+                types.get(filing.type).set(key);
+            if (filing.urgency != null)
+                urgencies.get(filing.urgency).set(key);
+            if (filing.open)
+                open.set(key);
+            order[count++] = key;
+        }
+        Arrays.sort(order, 0, count, (a, b) -> {
+            int byPrice = Double.compare(filed.get(a).price, filed.get(b).price);
+            return byPrice != 0 ? byPrice : Integer.compare(a, b);
+        });
+        double[] sortedPrices = new double[count];
+        int[] sortedIds = new int[count];
+        for (int i = 0; i < count; ++i) {
+            sortedIds[i] = order[i];
+            sortedPrices[i] = filed.get(order[i]).price;
+        }
+        prices = new Prices(sortedPrices, sortedIds);
+    }
+
+    /**
+     * Publishes a price list with a need added
+     */
+    private static Prices insert(Prices list, double price, int id) {
+        int at = list.search(price, id);
+        double[] prices = new double[list.prices.length + 1];
+        int[] ids = new int[prices.length];
+        System.arraycopy(list.prices, 0, prices, 0, at);
+        System.arraycopy(list.ids, 0, ids, 0, at);
+        prices[at] = price;
+        ids[at] = id;
+        System.arraycopy(list.prices, at, prices, at + 1, list.prices.length - at);
+        System.arraycopy(list.ids, at, ids, at + 1, list.ids.length - at);
+        return new Prices(prices, ids);
+    }
+
+    /**
+     * Publishes a price list with a need removed
+     */
+    private static Prices delete(Prices list, double price, int id) {
+        int at = list.search(price, id);
+        if (at == list.ids.length || list.ids[at] != id)
+            return list;
+        double[] prices = new double[list.prices.length - 1];
+        int[] ids = new int[prices.length];
+        System.arraycopy(list.prices, 0, prices, 0, at);
+        System.arraycopy(list.ids, 0, ids, 0, at);
+        System.arraycopy(list.prices, at + 1, prices, at, prices.length - at);
+        System.arraycopy(list.ids, at + 1, ids, at, ids.length - at);
+        return new Prices(prices, ids);
+    }
+}
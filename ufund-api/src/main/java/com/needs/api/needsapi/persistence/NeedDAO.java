@@ -1,7 +1,10 @@
 package com.needs.api.needsapi.persistence;
 
 import java.io.IOException;
+import java.util.Set;
 import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
 
 /**
  * Defines the interface for Need object persistence
@@ -10,6 +13,22 @@ import com.needs.api.needsapi.model.Need;
  * @author SWEN Faculty
  */
 public interface NeedDAO {
+    /**
+     * Version passed to {@link #updateNeed(Need, long)} to update a {@linkplain Need need}
+     * whatever version it is at
+     */
+    long ANY_VERSION = -1;
+
+    /**
+     * Most {@linkplain Need needs} {@link #suggestNeeds(String, int)} returns
+     */
+    int MAX_SUGGESTIONS = 10;
+
+    /**
+     * Most {@linkplain Need needs} {@link #rankNeeds(String, int)} returns
+     */
+    int MAX_RANKED = 50;
+
     /**
      * Retrieves all {@linkplain Need needs}
      * 
@@ -30,6 +49,72 @@ public interface NeedDAO {
      */
     Need[] findNeeds(String containsText) throws IOException;
 
+    /**
+     * Finds the {@linkplain Need needs} whose name has a word close to each word
+     * of the given text, despite typos
+     * <br>
+     * A word of up to two characters must be spelled right, one of up to five
+     * may have one typo and a longer one two. A typo is a character inserted,
+     * deleted or replaced, or two adjacent characters swapped. Case is ignored.
+     * 
+     * @param text The text to match against
+     * 
+     * @return An array of the {@link Need needs} found, those with the fewest
+     * typos first and then in {@link NeedComparator} order, may be empty
+     * 
+     * @throws IOException if an issue with underlying storage
+     */
+    Need[] findNeedsFuzzy(String text) throws IOException;
+
+    /**
+     * Suggests the {@linkplain Need needs} whose name starts with the given text,
+     * as it is being typed
+     * <br>
+     * Urgent needs come first, then those with the most still needed
+     * 
+     * @param prefix The text names must start with, case is ignored
+     * @param k The most {@link Need needs} to suggest, no more than {@link #MAX_SUGGESTIONS}
+     * 
+     * @return An array of up to k {@link Need needs}, may be empty
+     * 
+     * @throws IOException if an issue with underlying storage
+     */
+    Need[] suggestNeeds(String prefix, int k) throws IOException;
+
+    /**
+     * Ranks the {@linkplain Need needs} whose name or description mentions the
+     * words of the given text by relevance
+     * <br>
+     * Words are matched whole, ignoring case, common words like "the" and plural
+     * endings. Needs mentioning more of the words, rarer words and the same words
+     * more often rank higher, shorter texts rank higher, and urgent needs rank
+     * higher than others just as relevant.
+     * 
+     * @param text The text to match against
+     * @param k The most {@link Need needs} to rank, no more than {@link #MAX_RANKED}
+     * 
+     * @return An array of up to k {@link Need needs}, the most relevant first, may be empty
+     * 
+     * @throws IOException if an issue with underlying storage
+     */
+    Need[] rankNeeds(String text, int k) throws IOException;
+
+    /**
+     * Finds the {@linkplain Need needs} meeting every one of the given criteria
+     * 
+     * @param types The {@link NeedType types} allowed, any if empty
+     * @param urgencies The {@link UrgencyTag urgencies} allowed, any if empty
+     * @param minPrice The lowest price allowed, may be negative infinity
+     * @param maxPrice The highest price allowed, may be positive infinity
+     * @param open true for needs with less fulfilled than needed, false for the
+     * others, null for either
+     * 
+     * @return An array of the {@link Need needs} found in {@link NeedComparator} order, may be empty
+     * 
+     * @throws IOException if an issue with underlying storage
+     */
+    Need[] queryNeeds(Set<NeedType> types, Set<UrgencyTag> urgencies, double minPrice, double maxPrice, Boolean open) throws IOException;
+
     /**
      * Determines if a need already exists
      * 
@@ -77,7 +162,46 @@ public interface NeedDAO {
      * 
      * @throws IOException if underlying storage cannot be accessed
      */
-    Need updateNeed(Need need) throws IOException;
+    default Need updateNeed(Need need) throws IOException {
+        return updateNeed(need, ANY_VERSION);
+    }
+
+    /**
+     * Updates and saves a {@linkplain Need need} if it is still at the given version
+     * <br>
+     * The version is compared and replaced in one atomic step, so of two updates
+     * expecting the same version only one succeeds. The saved {@link Need need}
+     * is one version past the one it replaced.
+     * 
+     * @param need {@link Need need} object to be updated and saved
+     * @param version The version the stored {@link Need need} must be at,
+     * {@link #ANY_VERSION} to update it whatever its version
+     * 
+     * @return updated {@link Need need} if successful, null if
+     * {@link Need need} could not be found
+     * 
+     * @throws VersionConflictException if the {@link Need need} is at another version
+     * @throws IOException if underlying storage cannot be accessed
+     */
+    Need updateNeed(Need need, long version) throws IOException;
+
+    /**
+     * Atomically adds to the quantity fulfilled of a {@linkplain Need need}
+     * <br>
+     * Concurrent fulfillments of the same {@link Need need} are never lost, and
+     * when capped they never take the quantity fulfilled past the quantity needed
+     * 
+     * @param id The id of the {@link Need need} to fulfill
+     * @param quantity The quantity to add, nothing is added if not positive
+     * @param capped true to accept no more than the quantity still needed
+     * 
+     * @return The quantity actually accepted, 0 if none was
+     * <br>
+     * -1 if no {@link Need need} with a matching id is found
+     * 
+     * @throws IOException if underlying storage cannot be accessed
+     */
+    int fulfill(int id, int quantity, boolean capped) throws IOException;
 
     /**
      * gets the total quantity needed of all needs
@@ -2,18 +2,36 @@ package com.needs.api.needsapi.persistence;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.PreDestroy;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
 import com.needs.api.needsapi.model.UrgencyTag;
 
 /**
@@ -26,28 +44,233 @@ import com.needs.api.needsapi.model.UrgencyTag;
  * @author SWEN Faculty
  */
 @Component
+@Profile("!jdbc")
 public class NeedFileDAO implements NeedDAO {
     private static final Logger LOG = Logger.getLogger(NeedFileDAO.class.getName());
-    Map<Integer,Need> needs;   // Provides a local cache of the need objects
-                                // so that we don't need to read from the file
-                                // each time
-    private ObjectMapper objectMapper;  // Provides conversion between Need
-                                        // objects and JSON text format written
-                                        // to the file
+    private static final Comparator<Need> ORDER = new NeedComparator().thenComparingInt(Need::getId);
+    FileBackedStore<Integer,Need> needs;   // Provides a local cache of the need objects
+                                            // so that we don't need to read from the file
+                                            // each time, and is the lock mutators hold
     private static int nextId;  // The next Id to assign to a new need
-    private String filename;    // Filename to read from and write to
+    private NeedJournal journal;    // Mutation log used instead of full saves when journaling is enabled
+    private ExecutorService compactor;  // Background thread that folds the journal into a new snapshot
+    private final AtomicBoolean compacting = new AtomicBoolean();  // Set while a compaction is in progress
+    private volatile Catalog catalog = new Catalog(new Need[0]);  // Every need in NeedComparator order, never modified
+                                                                   // once published, so readers need no lock
+    private final Map<Integer,Tally> tallies = new ConcurrentHashMap<>();  // Every need and its quantity fulfilled, by id
+    private final UniqueIndex<Integer,Need,String> names = new UniqueIndex<>(need -> foldName(need.getName()));  // Id of each need by case-folded name
+    private final NameGramIndex grams = new NameGramIndex(need -> foldName(need.getName()));  // Ids of the needs by the trigrams of their name
+    private final NamePrefixIndex prefixes = new NamePrefixIndex(need -> foldName(need.getName()), MAX_SUGGESTIONS);  // Best needs by name prefix
+    private final NameTypoIndex typos = new NameTypoIndex(need -> foldName(need.getName()));  // Ids of the needs by the words of their name, despite typos
+    private final NeedTextIndex texts = new NeedTextIndex();  // Ids of the needs by the terms of their name and description
+    private final NeedBitmapIndex bitmaps = new NeedBitmapIndex();  // Ids of the needs by type, urgency, price and openness
+
+    /**
+     * Quantity fulfilled of one {@linkplain Need need}, changed by compare-and-set
+     * <br>
+     * A tally is retired when its need is replaced or deleted: its count is
+     * swapped for {@link #RETIRED}, which no compare-and-set can succeed against,
+     * so every fulfillment either lands before the replacement copies the count
+     * or retries against the replacement's tally. A replacement starts out
+     * {@link #PENDING} with its lock held by the replacing thread, so
+     * fulfillments block on the lock until the count has been copied.
+     */
+    private static final class Tally {
+        static final int RETIRED = Integer.MIN_VALUE;
+        static final int PENDING = Integer.MIN_VALUE + 1;   // Until the replaced tally's count is carried over
+
+        final Need need;            // The need the count is written back to
+        final AtomicInteger fulfilled;
+        int persisted;              // Greatest count handed to the store, guarded by this tally's lock
+        final ReentrantLock lock = new ReentrantLock();
+
+        Tally(Need need) {
+            this(need, need.getQuantityFulfilled());
+        }
+
+        Tally(Need need, int fulfilled) {
+            this.need = need;
+            this.fulfilled = new AtomicInteger(fulfilled);
+            this.persisted = need.getQuantityFulfilled();
+        }
+
+        /**
+         * Waits until the count of a pending tally has been carried over
+         */
+        void awaitCarriedOver() {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Every {@linkplain Need need} in the order the {@link NeedComparator need comparator}
+     * and then the id put them, with the position of each id
+     */
+    private static final class Catalog {
+        final Need[] needs;
+        final int[] ranks;          // Position of each id in needs, -1 for ids not in it
+
+        Catalog(Need[] needs) {
+            int greatest = -1;
+            for (Need need : needs)
+                greatest = Math.max(greatest, need.getId());
+            this.needs = needs;
+            this.ranks = new int[greatest + 1];
+            Arrays.fill(ranks, -1);
+            for (int rank = 0; rank < needs.length; ++rank) {
+                if (needs[rank].getId() >= 0)
+                    ranks[needs[rank].getId()] = rank;
+            }
+        }
+
+        int rankOf(int id) {
+            return id >= 0 && id < ranks.length ? ranks[id] : -1;
+        }
+    }
+
+    /**
+     * Creates a Need File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public NeedFileDAO(String filename,ObjectMapper objectMapper) throws IOException {
+        this(filename,objectMapper,null,WriteBehindFlusher.synchronous());
+    }
+
+    /**
+     * Creates a Need File Data Access Object that writes every change immediately
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param journal The {@link NeedJournal journal} to append mutations to, may be null
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public NeedFileDAO(String filename,ObjectMapper objectMapper,NeedJournal journal) throws IOException {
+        this(filename,objectMapper,journal,WriteBehindFlusher.synchronous());
+    }
+
+    /**
+     * Creates a Need File Data Access Object
+     * <br>
+     * If the journal is enabled, mutations are appended to it instead of rewriting
+     * the whole file, and the file is only rewritten when the journal is compacted
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param journal The {@link NeedJournal journal} to append mutations to, may be null
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public NeedFileDAO(String filename,ObjectMapper objectMapper,NeedJournal journal,WriteBehindFlusher flusher) throws IOException {
+        this(filename,objectMapper,journal,flusher,BinarySnapshot.disabled());
+    }
+
+    /**
+     * Creates a Need File Data Access Object
+     * <br>
+     * If the journal is enabled, mutations are appended to it instead of rewriting
+     * the whole file, and the file is only rewritten when the journal is compacted
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param journal The {@link NeedJournal journal} to append mutations to, may be null
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public NeedFileDAO(String filename,ObjectMapper objectMapper,NeedJournal journal,WriteBehindFlusher flusher,BinarySnapshot snapshots) throws IOException {
+        this(filename,objectMapper,journal,flusher,snapshots,JsonStreams.arrays());
+    }
+
+    /**
+     * Creates a Need File Data Access Object
+     * <br>
+     * If the journal is enabled, mutations are appended to it instead of rewriting
+     * the whole file, and the file is only rewritten when the journal is compacted
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param journal The {@link NeedJournal journal} to append mutations to, may be null
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link Need need} at a time
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public NeedFileDAO(String filename,ObjectMapper objectMapper,NeedJournal journal,WriteBehindFlusher flusher,BinarySnapshot snapshots,JsonStreams streams) throws IOException {
+        this(filename,objectMapper,journal,flusher,snapshots,streams,LsmStorage.disabled());
+    }
+
+    /**
+     * Creates a Need File Data Access Object
+     * <br>
+     * If LSM storage is enabled, the needs are kept in an {@link LsmStore LSM store}
+     * that the file is imported into once, and the journal is not used. Otherwise,
+     * if the journal is enabled, mutations are appended to it instead of rewriting
+     * the whole file, and the file is only rewritten when the journal is compacted
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param journal The {@link NeedJournal journal} to append mutations to, may be null
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link Need need} at a time
+     * @param lsm The {@link LsmStorage LSM storage} to keep the needs in instead of the file
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public NeedFileDAO(String filename,ObjectMapper objectMapper,NeedJournal journal,WriteBehindFlusher flusher,BinarySnapshot snapshots,JsonStreams streams,LsmStorage lsm) throws IOException {
+        this(filename,objectMapper,journal,flusher,snapshots,streams,lsm,MutationBus.disabled());
+    }
 
     /**
      * Creates a Need File Data Access Object
+     * <br>
+     * If LSM storage is enabled, the needs are kept in an {@link LsmStore LSM store}
+     * that the file is imported into once, and the journal is not used. Otherwise,
+     * if the journal is enabled, mutations are appended to it instead of rewriting
+     * the whole file, and the file is only rewritten when the journal is compacted
      * 
      * @param filename Filename to read from and write to
      * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param journal The {@link NeedJournal journal} to append mutations to, may be null
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link Need need} at a time
+     * @param lsm The {@link LsmStorage LSM storage} to keep the needs in instead of the file
+     * @param events The {@link MutationBus mutation bus} every change is published to
      * 
      * @throws IOException when file cannot be accessed or read from
      */
-    public NeedFileDAO(@Value("${needs.file}") String filename,ObjectMapper objectMapper) throws IOException {
-        this.filename = filename;
-        this.objectMapper = objectMapper;
+    @Autowired
+    public NeedFileDAO(@Value("${needs.file}") String filename,ObjectMapper objectMapper,NeedJournal journal,WriteBehindFlusher flusher,BinarySnapshot snapshots,JsonStreams streams,LsmStorage lsm,MutationBus events) throws IOException {
+        Map<Integer,Need> values = lsm.isEnabled() ? lsm.open("needs",LsmStore.INTEGERS,Need.class) : new TreeMap<>();
+        needs = new FileBackedStore<>(filename,values,Need::getId,
+                                      FileBackedStore.Codec.json(objectMapper,streams,Need.class).withSnapshots(snapshots,SnapshotCodecs.NEEDS),
+                                      flusher);
+        if (journal != null && journal.isEnabled() && !lsm.isEnabled()) {
+            this.journal = journal;
+            this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "need-journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            needs.flushPolicy(new JournalPolicy());
+        }
+        needs.publishTo(events.topic(MutationEvent.Entity.NEED));
+        needs.index(names);
+        needs.index(grams);
+        needs.index(prefixes);
+        needs.index(typos);
+        needs.index(texts);
+        needs.index(bitmaps);
         load();  // load the needs from the file
     }
 
@@ -63,95 +286,217 @@ public class NeedFileDAO implements NeedDAO {
     }
 
     /**
-     * Generates an array of {@linkplain Need needs} from the tree map
-     * 
-     * @return  The array of {@link Need needs}, may be empty
+     * Publishes a new catalog of every {@linkplain Need need}, sorted by the
+     * {@link NeedComparator need comparator}
+     * <br>
+     * Called once the store is loaded, while holding its lock. The needs are
+     * taken from their tallies, so the catalog holds the same objects
+     * fulfillments are written back to, and needs of the same urgency are in
+     * id order as in the store.
      */
-    private Need[] getNeedsArray() {
-        return getNeedsArray(null);
+    private void publish() {
+        List<Need> sorted = new ArrayList<>(tallies.size());
+        for (Tally tally : tallies.values())
+            sorted.add(tally.need);
+        sorted.sort(ORDER);
+        catalog = new Catalog(sorted.toArray(new Need[sorted.size()]));
+        DataVersion.bump();     // the store bumped it before the catalog showed the change
     }
 
     /**
-     * Generates an array of {@linkplain Need needs} from the tree map for any
-     * {@linkplain Need needs} that contains the text specified by containsText
+     * Publishes a new catalog with one {@linkplain Need need} put back in place
      * <br>
-     * If containsText is null, the array contains all of the {@linkplain Need needs}
-     * in the tree map
-     * 
-     * @return  The array of {@link Need needs}, may be empty
+     * Called by writers after every change to the store, while holding its lock.
+     * The need's old entry is dropped by its rank and its tally's need inserted
+     * where a binary search puts it, so the catalog is copied instead of sorted
+     * again.
+     *
+     * @param id The id of the need created, replaced or deleted
      */
-    private Need[] getNeedsArray(String containsText) { // if containsText == null, no filter
-        ArrayList<Need> needArrayList = new ArrayList<>();
-        NeedComparator comparator = new NeedComparator();
-        for (Need need : needs.values()) {
-            if (containsText == null || need.getName().toLowerCase().contains(containsText.toLowerCase())) {
-                needArrayList.add(need);
-            }
+    private void publish(int id) {
+        Catalog previous = catalog;
+        int removed = previous.rankOf(id);
+        Tally tally = tallies.get(id);
+
+        Need[] kept = previous.needs;
+        if (removed >= 0) {
+            kept = new Need[previous.needs.length - 1];
+            System.arraycopy(previous.needs, 0, kept, 0, removed);
+            System.arraycopy(previous.needs, removed + 1, kept, removed, kept.length - removed);
         }
-
-        Collections.sort(needArrayList, comparator);
-        
-        Need[] needArray = new Need[needArrayList.size()];
-        needArrayList.toArray(needArray);
-        return needArray;
+        Need[] sorted = kept;
+        if (tally != null) {
+            int at = Arrays.binarySearch(kept, tally.need, ORDER);
+            if (at < 0)
+                at = -at - 1;
+            sorted = new Need[kept.length + 1];
+            System.arraycopy(kept, 0, sorted, 0, at);
+            sorted[at] = tally.need;
+            System.arraycopy(kept, at, sorted, at + 1, kept.length - at);
+        }
+        catalog = new Catalog(sorted);
+        DataVersion.bump();     // the store bumped it before the catalog showed the change
     }
 
     /**
-     * Saves the {@linkplain Need needs} from the map into the file as an array of JSON objects
-     * 
-     * @return true if the {@link Need needs} were written successfully
+     * Puts a {@linkplain Need need} in the store and publishes the new catalog,
+     * even if persisting the change fails after the store was updated
      * 
      * @throws IOException when file cannot be accessed or written to
      */
-    private boolean save() throws IOException {
-        Need[] needArray = getNeedsArray();
-
-        // Serializes the Java Objects to JSON objects into the file
-        // writeValue will thrown an IOException if there is an issue
-        // with the file or reading from the file
-        objectMapper.writeValue(new File(filename),needArray);
-        return true;
+    private void store(Need need) throws IOException {
+        tallies.put(need.getId(), new Tally(need));
+        try {
+            needs.put(need);
+        }
+        finally {
+            publish(need.getId());
+        }
     }
 
     /**
-     * Loads {@linkplain Need needs} from the JSON file into the map
+     * Loads {@linkplain Need needs} from the file into the store
      * <br>
      * Also sets next id to one more than the greatest id found in the file
+     * or the journal
      * 
      * @return true if the file was read successfully
      * 
      * @throws IOException when file cannot be accessed or read from
      */
     private boolean load() throws IOException {
-        needs = new TreeMap<>();
         nextId = 0;
 
-        // Deserializes the JSON objects from the file into an array of needs
-        // readValue will throw an IOException if there's an issue with the file
+        // Deserializes the JSON objects from the file one need at a time,
+        // or reads them from the binary snapshot if it is current, then
+        // applies any mutations journaled since
+        // load will throw an IOException if there's an issue with the file
         // or reading from the file
-        
-        Need[] needArray = objectMapper.readValue(new File("data/needs.json"),Need[].class);
+        needs.load();
 
-        // Add each need to the tree map and keep track of the greatest id
-        for (Need need : needArray) {
-            needs.put(need.getId(),need);
+        // Keep track of the greatest id
+        for (Need need : needs.values()) {
             if (need.getId() > nextId)
                 nextId = need.getId();
         }
-        
+
         // Make the next id one greater than the maximum from the file
         ++nextId;
+        needs.lock();
+        try {
+            tallies.clear();
+            for (Need need : needs.values())
+                tallies.put(need.getId(), new Tally(need));
+            publish();
+        }
+        finally {
+            needs.unlock();
+        }
         return true;
     }
 
+    /**
+     * Persists changes by appending them to the {@linkplain NeedJournal journal}
+     * instead of rewriting the whole file
+     */
+    private class JournalPolicy implements FileBackedStore.FlushPolicy<Integer,Need> {
+        /**
+         * Appends a put or a delete record and starts a compaction once the journal is large enough
+         */
+        @Override
+        public boolean changed(Integer id, Need need) throws IOException {
+            if (need == null)
+                journal.appendDelete(id);
+            else
+                journal.appendPut(need);
+            scheduleCompaction();
+            return true;
+        }
+
+        /**
+         * Applies any mutations made since the snapshot was written, and keeps
+         * the ids of needs deleted since from being reused
+         */
+        @Override
+        public void recover(Map<Integer,Need> values) throws IOException {
+            nextId = Math.max(nextId, journal.replay(values));
+        }
+    }
+
+    /**
+     * Starts a background compaction if the journal has passed its threshold and
+     * no compaction is already running
+     */
+    private void scheduleCompaction() {
+        if (journal.needsCompaction() && compacting.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                }
+                catch (IOException e) {
+                    LOG.log(Level.SEVERE, "Journal compaction failed: " + e.getLocalizedMessage());
+                }
+                finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Folds the journal into a new snapshot file
+     * <br>
+     * The journal is rotated and the {@linkplain Need needs} are copied under the
+     * lock, so writers are only blocked for copying the references. The snapshot is then written
+     * to a temporary file and moved over the old one before the rotated journal is
+     * discarded.
+     * 
+     * @throws IOException when file cannot be accessed or written to
+     */
+    void compact() throws IOException {
+        List<Need> needList;
+        needs.lock();
+        try {
+            journal.rotate();
+            needList = new ArrayList<>(needs.values());
+        }
+        finally {
+            needs.unlock();
+        }
+
+        File snapshot = needs.getFile();
+        File temp = new File(snapshot.getPath() + ".tmp");
+        needs.getCodec().write(temp,needList);
+        Files.move(temp.toPath(),snapshot.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+        journal.discardRotated();
+    }
+
+    /**
+     * Stops the compaction thread and releases the journal when the application shuts down
+     * 
+     * @throws IOException when the journal cannot be closed
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (journal != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            journal.close();
+        }
+    }
+
     /**
     ** {@inheritDoc}
      */
     @Override
     public Need[] getNeeds() {
-        synchronized(needs) {
-            return getNeedsArray();
-        }
+        // The catalog is already sorted, callers get their own copy of it
+        return catalog.needs.clone();
     }
 
     /**
@@ -159,9 +504,120 @@ public class NeedFileDAO implements NeedDAO {
      */
     @Override
     public Need[] findNeeds(String containsText) {
-        synchronized(needs) {
-            return getNeedsArray(containsText);
+        Catalog snapshot = catalog;  // read once, writers may publish a new one meanwhile
+        if (containsText == null)
+            return snapshot.needs.clone();
+
+        String text = containsText.toLowerCase();
+        int[] candidates = grams.candidates(text);
+        if (candidates == null)
+            return snapshot.needs.clone();  // every name contains the empty text
+
+        // The candidates contain every gram of the text, those whose name in
+        // the catalog contains the text itself are put back in catalog order. A
+        // need renamed meanwhile is only found if both agree it matches.
+        int[] ranks = new int[candidates.length];
+        int found = 0;
+        for (int id : candidates) {
+            int rank = snapshot.rankOf(id);
+            if (rank >= 0 && snapshot.needs[rank].getName().toLowerCase().contains(text))
+                ranks[found++] = rank;
+        }
+        Arrays.sort(ranks, 0, found);
+        Need[] matches = new Need[found];
+        for (int i = 0; i < found; ++i)
+            matches[i] = snapshot.needs[ranks[i]];
+        return matches;
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The needs are found through the deletes of the text's words, without
+     * scanning the catalog, and put in order by their position in it
+     */
+    @Override
+    public Need[] findNeedsFuzzy(String text) {
+        if (text == null)
+            return new Need[0];
+
+        Map<Integer,Integer> found = typos.find(foldName(text));
+        Catalog snapshot = catalog;  // read once, writers may publish a new one meanwhile
+        long[] order = new long[found.size()];
+        int count = 0;
+        for (Map.Entry<Integer,Integer> entry : found.entrySet()) {
+            int rank = snapshot.rankOf(entry.getKey());
+            if (rank >= 0)
+                order[count++] = (long)entry.getValue() << 32 | rank;  // by distance, then by rank
+        }
+        Arrays.sort(order, 0, count);
+        Need[] matches = new Need[count];
+        for (int i = 0; i < count; ++i)
+            matches[i] = snapshot.needs[(int)order[i]];
+        return matches;
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Answered from the best needs kept for each prefix, so it costs the length
+     * of the prefix however many needs there are
+     */
+    @Override
+    public Need[] suggestNeeds(String prefix, int k) {
+        int[] ids = prefixes.suggest(prefix == null ? "" : foldName(prefix), Math.min(k, MAX_SUGGESTIONS));
+        ArrayList<Need> suggestions = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Tally tally = tallies.get(id);
+            if (tally != null)
+                suggestions.add(tally.need);  // unless deleted meanwhile
+        }
+        return suggestions.toArray(new Need[suggestions.size()]);
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Answered from an inverted index of the terms of every need, skipping the
+     * needs that cannot make the best k
+     */
+    @Override
+    public Need[] rankNeeds(String text, int k) {
+        int[] ids = texts.search(text, Math.min(k, MAX_RANKED));
+        ArrayList<Need> ranked = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Tally tally = tallies.get(id);
+            if (tally != null)
+                ranked.add(tally.need);  // unless deleted meanwhile
+        }
+        return ranked.toArray(new Need[ranked.size()]);
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Answered from bitmaps of the needs by type, urgency and openness and their
+     * list by price, so combining criteria costs a pass over a bit per need
+     */
+    @Override
+    public Need[] queryNeeds(Set<NeedType> types, Set<UrgencyTag> urgencies, double minPrice, double maxPrice, Boolean open) {
+        int[] ids = bitmaps.select(types, urgencies, minPrice, maxPrice, open);
+
+        // The needs found are put back in catalog order. A need changed
+        // meanwhile is only found if both agree it meets the criteria.
+        Catalog snapshot = catalog;  // read once, writers may publish a new one meanwhile
+        int[] ranks = new int[ids.length];
+        int found = 0;
+        for (int id : ids) {
+            int rank = snapshot.rankOf(id);
+            if (rank >= 0 && NeedBitmapIndex.matches(snapshot.needs[rank], types, urgencies, minPrice, maxPrice, open))
+                ranks[found++] = rank;
         }
+        Arrays.sort(ranks, 0, found);
+        Need[] matches = new Need[found];
+        for (int i = 0; i < found; ++i)
+            matches[i] = snapshot.needs[ranks[i]];
+        return matches;
     }
 
     /**
@@ -174,13 +630,20 @@ public class NeedFileDAO implements NeedDAO {
             return false;
         }
         
-        for (Need need : needs.values()) {
-            if (need.getName().toLowerCase().equals(needName.toLowerCase())) {
-                return true;
-            }
-        }
+        // the index is kept in step under the store's lock, createNeed checks
+        // while holding it so no other need can take the name meanwhile
+        return names.contains(foldName(needName));
+    }
 
-        return false;
+    /**
+     * Folds a {@linkplain Need need} name so that names differing only in case match
+     *
+     * @param name The name, may be null
+     *
+     * @return The folded name, or null if there is no name
+     */
+    private static String foldName(String name) {
+        return name == null ? null : name.toLowerCase();
     }
 
     /**
@@ -188,12 +651,8 @@ public class NeedFileDAO implements NeedDAO {
      */
     @Override
     public Need getNeed(int id) {
-        synchronized(needs) {
-            if (needs.containsKey(id))
-                return needs.get(id);
-            else
-                return null;
-        }
+        Tally tally = tallies.get(id);
+        return tally == null ? null : tally.need;
     }
 
     /**
@@ -201,66 +660,184 @@ public class NeedFileDAO implements NeedDAO {
      */
     @Override
     public Need createNeed(Need need) throws IOException {
-        synchronized(needs) {
-            // We create a new need object because the id field is immutable
-            // and we need to assign the next unique id
-            Need newNeed = new Need(nextId(),need.getName(),need.getType(), need.getPrice(), need.getQuantityNeeded(), need.getQuantityFulfilled(), need.getUrgency(), need.getDescription(), need.getImage());
-
-            // if any fields are empty or if need already exists, new need is not created
-            if (needExists(newNeed.getName()) == true || newNeed.getName() == null || newNeed.getPrice() == 0 
-            || need.getType() == null|| newNeed.getQuantityNeeded() == 0 || newNeed.getImage() == null){
-                return null;
-            }
+        try {
+            needs.lock();
+            try {
+                // We create a new need object because the id field is immutable
+                // and we need to assign the next unique id
+                Need newNeed = new Need(nextId(),need.getName(),need.getType(), need.getPrice(), need.getQuantityNeeded(), need.getQuantityFulfilled(), need.getUrgency(), need.getDescription(), need.getImage());
+
+                // if any fields are empty or if need already exists, new need is not created
+                if (needExists(newNeed.getName()) == true || newNeed.getName() == null || newNeed.getPrice() == 0 
+                || need.getType() == null|| newNeed.getQuantityNeeded() == 0 || newNeed.getImage() == null){
+                    return null;
+                }
 
-            need.setUrgencyImage(need.getUrgency().getImage());
+                need.setUrgencyImage(need.getUrgency().getImage());
             
-            needs.put(newNeed.getId(),newNeed);
-            save(); // may throw an IOException
-            return newNeed;
+                store(newNeed); // may throw an IOException
+                return newNeed;
+            }
+            finally {
+                needs.unlock();
+            }
+        }
+        finally {
+            needs.await();
         }
     }
 
     /**
     ** {@inheritDoc}
+     * <br>
+     * The version is checked and the need's tally replaced by compare-and-set on
+     * the tally map, so updates to different needs never wait for each other
+     * except while the store records them. The replacement tally stays pending
+     * until the replaced one's count has been carried over. An update that a
+     * delete overtakes is not stored, and reported as a need that does not exist.
      */
     @Override
-    public Need updateNeed(Need need) throws IOException {
-        synchronized(needs) {
-            if (needs.containsKey(need.getId()) == false)
-                return null;  // need does not exist
-
-            // for partial updates: if any fields are left blank, they stay the same
-            Need needToUpdate = getNeed(need.getId());
-
-            if(need.getName() == null){
-                need.setName(needToUpdate.getName());
+    public Need updateNeed(Need need, long version) throws IOException {
+        // for partial updates: if any fields are left blank, they stay the same,
+        // filled in again from the need being replaced on every attempt
+        String name = need.getName();
+        double price = need.getPrice();
+        int quantityNeeded = need.getQuantityNeeded();
+        int quantityFulfilled = need.getQuantityFulfilled();
+        NeedType type = need.getType();
+        String image = need.getImage();
+
+        try {
+            Tally current;
+            Tally replacement;
+            while (true) {
+                current = tallies.get(need.getId());
+                if (current == null)
+                    return null;  // need does not exist
+
+                int fulfilled = current.fulfilled.get();
+                if (fulfilled == Tally.PENDING) {
+                    current.awaitCarriedOver();  // the need is being replaced
+                    continue;
+                }
+                if (fulfilled == Tally.RETIRED)
+                    continue;  // already replaced or deleted in the map
+
+                Need needToUpdate = current.need;
+                if (version != ANY_VERSION && version != needToUpdate.getVersion())
+                    throw new VersionConflictException(version, needToUpdate.getVersion());
+
+                need.setName(name == null ? needToUpdate.getName() : name);
+                need.setPrice(price == 0 ? needToUpdate.getPrice() : price);
+                need.setQuantityNeeded(quantityNeeded == 0 ? needToUpdate.getQuantityNeeded() : quantityNeeded);
+                need.setQuantityFulfilled(quantityFulfilled == 0 ? fulfilled : quantityFulfilled);
+                need.setType(type == null ? needToUpdate.getType() : type);
+                need.setImage(image == null ? needToUpdate.getImage() : image);
+                need.setUrgencyImage(need.getUrgency().getImage());
+                need.setVersion(needToUpdate.getVersion() + 1);
+
+                replacement = new Tally(need, Tally.PENDING);
+                replacement.lock.lock();  // held until the count is carried over
+                if (tallies.replace(need.getId(), current, replacement))
+                    break;
+                replacement.lock.unlock();
             }
 
-            if(need.getPrice() == 0){
-                need.setPrice(needToUpdate.getPrice());
+            // fulfillments stop landing on the old need here and carry over
+            int fulfilled = current.fulfilled.getAndSet(Tally.RETIRED);
+            if (quantityFulfilled == 0)
+                need.setQuantityFulfilled(fulfilled);
+            replacement.persisted = need.getQuantityFulfilled();
+            replacement.fulfilled.compareAndSet(Tally.PENDING, need.getQuantityFulfilled());
+            replacement.lock.unlock();
+
+            needs.lock();
+            try {
+                if (!tallies.containsKey(need.getId()))
+                    return null;  // deleted meanwhile, so never stored
+                try {
+                    // a later update may have replaced it meanwhile
+                    if (tallies.get(need.getId()) == replacement)
+                        needs.put(need); // may throw an IOException
+                }
+                finally {
+                    publish(need.getId());
+                }
             }
-
-            if(need.getQuantityNeeded() == 0){
-                need.setQuantityNeeded(needToUpdate.getQuantityNeeded());
+            finally {
+                needs.unlock();
             }
+            return need;
+        }
+        finally {
+            needs.await();
+        }
+    }
 
-            if(need.getQuantityFulfilled() == 0){
-                need.setQuantityFulfilled(needToUpdate.getQuantityFulfilled());
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The count is claimed by compare-and-set on the need's tally without any
+     * lock. The claimed count is then written back to the need and handed to the
+     * store while holding the tally's lock, and a thread whose count was already
+     * handed over by another one skips the write, so a burst of fulfillments of
+     * one need is persisted in a few writes.
+     */
+    @Override
+    public int fulfill(int id, int quantity, boolean capped) throws IOException {
+        Tally tally;
+        int accepted;
+        int fulfilled;
+        while (true) {
+            tally = tallies.get(id);
+            if (tally == null)
+                return -1;  // need does not exist
+
+            int current = tally.fulfilled.get();
+            if (current == Tally.PENDING) {
+                tally.awaitCarriedOver();  // the need is being replaced
+                continue;
             }
+            if (current == Tally.RETIRED)
+                continue;  // already replaced or deleted in the map
+
+            accepted = Math.max(0, quantity);
+            if (capped)
+                accepted = Math.min(accepted, Math.max(0, tally.need.getQuantityNeeded() - current));
+            if (accepted == 0)
+                return 0;
+
+            fulfilled = current + accepted;
+            if (tally.fulfilled.compareAndSet(current, fulfilled))
+                break;
+        }
 
-            if(need.getType() == null){
-                need.setType(needToUpdate.getType());
+        try {
+            tally.lock.lock();
+            try {
+                if (tally.persisted >= fulfilled)
+                    return accepted;  // handed over with a later count already
+
+                needs.lock();
+                try {
+                    int latest = tally.fulfilled.get();
+                    if (latest == Tally.RETIRED)
+                        return accepted;  // carried over by the replacement, which persists it
+                    tally.need.setQuantityFulfilled(latest);
+                    needs.put(tally.need); // may throw an IOException
+                    tally.persisted = latest;
+                }
+                finally {
+                    needs.unlock();
+                }
             }
-            
-            if(need.getImage() == null) {
-                need.setImage(needToUpdate.getImage());
+            finally {
+                tally.lock.unlock();
             }
-
-            need.setUrgencyImage(need.getUrgency().getImage());
-
-            needs.put(need.getId(),need);
-            save(); // may throw an IOException
-            return need;
+            return accepted;
+        }
+        finally {
+            needs.await();
         }
     }
 
@@ -268,20 +845,25 @@ public class NeedFileDAO implements NeedDAO {
     ** {@inheritDoc}
      */
     public int getTotalNeeded(){
-        synchronized(needs){
+        needs.lock();
+        try {
             int total = 0;
             for(Need need : needs.values()){
                 total += need.getQuantityNeeded();
             }
             return total;
         }
+        finally {
+            needs.unlock();
+        }
     }
 
     /**
     ** {@inheritDoc}
      */
     public int getTotalFulfilled(){
-        synchronized(needs){
+        needs.lock();
+        try {
             int total = 0;
             for(Need need : needs.values()){
                 if(need.getQuantityFulfilled() > need.getQuantityNeeded()){
@@ -292,6 +874,9 @@ public class NeedFileDAO implements NeedDAO {
             }
             return total;
         }
+        finally {
+            needs.unlock();
+        }
     }
 
     /**
@@ -299,13 +884,25 @@ public class NeedFileDAO implements NeedDAO {
      */
     @Override
     public boolean deleteNeed(int id) throws IOException {
-        synchronized(needs) {
-            if (needs.containsKey(id)) {
-                needs.remove(id);
-                return save();
+        try {
+            needs.lock();
+            try {
+                Tally tally = tallies.remove(id);
+                if (tally != null)
+                    tally.fulfilled.getAndSet(Tally.RETIRED);
+                try {
+                    return needs.remove(id); // may throw an IOException
+                }
+                finally {
+                    publish(id);
+                }
             }
-            else
-                return false;
+            finally {
+                needs.unlock();
+            }
+        }
+        finally {
+            needs.await();
         }
     }
 }
@@ -0,0 +1,336 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.needs.api.needsapi.model.Need;
+
+/**
+ * Append-only log of {@linkplain Need need} mutations used by the journaled
+ * persistence mode of {@link NeedFileDAO}
+ * <p>
+ * Each mutation is written as one JSON object per line. At startup the log is
+ * replayed over the last snapshot. When the log grows past the compaction
+ * threshold the DAO rotates it and writes a fresh snapshot, after which the
+ * rotated log is discarded.
+ * <p>
+ * Records are idempotent (a full need for a put, an id for a delete), so a
+ * crash between writing the snapshot and discarding the rotated log only
+ * causes already applied records to be replayed again.
+ * <p>
+ * Unless the {@linkplain Durability durability} is {@link Durability#ASYNC ASYNC},
+ * every append is forced to the disk before it returns, so an acknowledged
+ * change survives a power loss.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class NeedJournal {
+    private static final Logger LOG = Logger.getLogger(NeedJournal.class.getName());
+
+    static final String PUT = "PUT";
+    static final String DELETE = "DELETE";
+
+    private File active;        // Log currently being appended to
+    private File rotated;       // Log frozen by a compaction that is still in progress
+    private long threshold;     // Size in bytes after which the log should be compacted
+    private ObjectMapper objectMapper;  // Provides conversion between journal records
+                                        // and JSON text format written to the log
+    private boolean force;      // true forces every append to the disk
+    private FileOutputStream writer;    // Open append handle on the active log
+    private long size;          // Current size in bytes of the active log
+    private final StoreMetrics metrics = StoreMetrics.of("needs journal");  // Times the lock and the appends
+    private final ReentrantLock lock = new TimedLock(metrics);  // Guards the logs, held while appending to them
+
+    /**
+     * A single journal record
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class Entry {
+        @JsonProperty("op") String op;
+        @JsonProperty("id") int id;
+        @JsonProperty("need") Need need;
+
+        Entry(@JsonProperty("op") String op, @JsonProperty("id") int id, @JsonProperty("need") Need need) {
+            this.op = op;
+            this.id = id;
+            this.need = need;
+        }
+    }
+
+    /**
+     * Creates a Need Journal
+     *
+     * @param filename Log file to append to, journaling is disabled if empty
+     * @param threshold Size of the log in bytes after which it should be compacted
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     */
+    public NeedJournal(String filename, long threshold, ObjectMapper objectMapper) {
+        this(filename, threshold, objectMapper, Durability.SYNC);
+    }
+
+    /**
+     * Creates a Need Journal
+     *
+     * @param filename Log file to append to, journaling is disabled if empty
+     * @param threshold Size of the log in bytes after which it should be compacted
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param durability When appends must reach the disk, forced before they return unless {@link Durability#ASYNC ASYNC}
+     */
+    @Autowired
+    public NeedJournal(@Value("${needs.journal.file:}") String filename,
+                       @Value("${needs.journal.threshold:1048576}") long threshold,
+                       ObjectMapper objectMapper,
+                       @Value("${persistence.durability:SYNC}") Durability durability) {
+        if (filename != null && !filename.isBlank()) {
+            this.active = new File(filename.trim());
+            this.rotated = new File(filename.trim() + ".old");
+        }
+        this.threshold = threshold;
+        this.objectMapper = objectMapper;
+        this.force = durability != Durability.ASYNC;
+    }
+
+    /**
+     * Determines if journaling has been configured
+     *
+     * @return true if mutations should be appended to this journal
+     */
+    public boolean isEnabled() {
+        return active != null;
+    }
+
+    /**
+     * Replays every record in the rotated log and then the active log over the given map
+     * <br>
+     * A torn record at the very end of a log (from a crash mid-append) is skipped
+     * and cut off the log, so later appends do not follow it on the same line. An
+     * unreadable record anywhere else fails the replay, rather than losing the
+     * change it held.
+     *
+     * @param needs The map loaded from the last snapshot
+     *
+     * @return The greatest id seen in the journal, or 0 if there is none
+     *
+     * @throws IOException when a log cannot be read, or holds an unreadable record before its last
+     */
+    int replay(Map<Integer,Need> needs) throws IOException {
+        lock.lock();
+        try {
+            int maxId = 0;
+            for (File log : new File[] {rotated, active}) {
+                if (!log.exists())
+                    continue;
+
+                byte[] bytes = Files.readAllBytes(log.toPath());
+                int start = 0;
+                int number = 0;
+                while (start < bytes.length) {
+                    int end = start;
+                    while (end < bytes.length && bytes[end] != '\n')
+                        ++end;
+                    String line = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                    ++number;
+
+                    if (!line.isBlank()) {
+                        Entry entry;
+                        try {
+                            entry = objectMapper.readValue(line, Entry.class);
+                        }
+                        catch (JsonProcessingException e) {
+                            if (!new String(bytes, end, bytes.length - end, StandardCharsets.UTF_8).isBlank())
+                                throw new IOException("Unreadable journal record at line " + number + " of " + log, e);
+                            LOG.warning("Cutting torn journal record off the end of " + log + ": " + line);
+                            try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.WRITE)) {
+                                channel.truncate(start);
+                                channel.force(true);
+                            }
+                            break;
+                        }
+
+                        if (PUT.equals(entry.op)) {
+                            needs.put(entry.need.getId(), entry.need);
+                            maxId = Math.max(maxId, entry.need.getId());
+                        }
+                        else if (DELETE.equals(entry.op)) {
+                            needs.remove(entry.id);
+                            maxId = Math.max(maxId, entry.id);
+                        }
+                    }
+                    start = end + 1;
+                }
+            }
+            size = active.length();
+            return maxId;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record that creates or replaces a {@linkplain Need need}
+     *
+     * @param need The {@link Need need} as it should be after the mutation
+     *
+     * @throws IOException when the log cannot be written to
+     */
+    void appendPut(Need need) throws IOException {
+        lock.lock();
+        try {
+            append(new Entry(PUT, need.getId(), need));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record that deletes a {@linkplain Need need}
+     *
+     * @param id The id of the deleted {@link Need need}
+     *
+     * @throws IOException when the log cannot be written to
+     */
+    void appendDelete(int id) throws IOException {
+        lock.lock();
+        try {
+            append(new Entry(DELETE, id, null));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a single record as one line, forced to the disk unless the
+     * durability is {@link Durability#ASYNC ASYNC}
+     */
+    private void append(Entry entry) throws IOException {
+        if (writer == null)
+            writer = new FileOutputStream(active, true);
+
+        long start = System.nanoTime();
+        byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        long serialized = System.nanoTime();
+        writer.write(line);
+        if (force)
+            writer.getChannel().force(false);
+        metrics.wrote(serialized - start, System.nanoTime() - serialized);
+        size += line.length;
+    }
+
+    /**
+     * Determines if the active log has grown large enough to be compacted
+     *
+     * @return true if the active log is over the compaction threshold
+     */
+    boolean needsCompaction() {
+        lock.lock();
+        try {
+            return size >= threshold;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Freezes the active log so a snapshot can be written without blocking appends
+     * <br>
+     * Must be called while the owner holds the lock that orders mutations, so the
+     * snapshot taken under the same lock covers exactly the records rotated out
+     * <br>
+     * If an earlier compaction failed and left a rotated log behind, the active
+     * log is appended to it so no record is lost
+     *
+     * @throws IOException when the log cannot be renamed
+     */
+    void rotate() throws IOException {
+        lock.lock();
+        try {
+            close();
+            if (active.exists()) {
+                if (rotated.exists()) {
+                    Files.write(rotated.toPath(), Files.readAllBytes(active.toPath()), StandardOpenOption.APPEND);
+                    Files.delete(active.toPath());
+                }
+                else
+                    Files.move(active.toPath(), rotated.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            size = 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards the rotated log once the snapshot covering it has been written
+     *
+     * @throws IOException when the rotated log cannot be deleted
+     */
+    void discardRotated() throws IOException {
+        lock.lock();
+        try {
+            Files.deleteIfExists(rotated.toPath());
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the current size of the active log
+     *
+     * @return Size in bytes
+     */
+    long size() {
+        lock.lock();
+        try {
+            return size;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the append handle on the active log
+     *
+     * @throws IOException when the handle cannot be closed
+     */
+    void close() throws IOException {
+        lock.lock();
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+/**
+ * Inverted index over the words of the names and descriptions of the
+ * {@linkplain Need needs}, ranking them by BM25 relevance to a text
+ * <p>
+ * Each term has a posting list: the ids of the needs mentioning it, in ascending
+ * order, with how often they do. A need scores for every term of the text it
+ * mentions, more for rare terms and for terms it repeats, less the longer its
+ * text is, and urgent needs score {@link #URGENT_BOOST} times as much.
+ * <p>
+ * Only the best k needs are wanted, so the posting lists are walked together in
+ * id order (WAND): every term bounds what it can add to a score, and needs whose
+ * terms cannot add up to more than the k-th best score so far are skipped
+ * without being scored.
+ * <p>
+ * The index is kept in step by the {@linkplain FileBackedStore store}, under its
+ * lock, and is rebuilt in parallel when the store is loaded. Posting lists are
+ * never changed once published, the same way as those of the
+ * {@linkplain NameGramIndex name gram index}, so readers need no lock.
+ *
+ * @author Team Swiss Pandas
+ */
+class NeedTextIndex implements FileBackedStore.Index<Integer,Need> {
+    static final double K1 = 1.2;               // How quickly repeating a term stops raising the score
+    static final double B = 0.75;               // How much a long text lowers the score
+    static final double URGENT_BOOST = 1.5;     // Factor the scores of urgent needs are raised by
+
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "by", "for", "from",
+                                                         "in", "is", "it", "of", "on", "or", "that", "the", "to", "with");
+
+    private final Map<String,Postings> postings = new ConcurrentHashMap<>();       // Posting list of each term, read without the lock
+    private final Map<Integer,Document> documents = new ConcurrentHashMap<>();     // What each need was filed under, read without the lock
+    private volatile long totalLength;      // Terms in every text added up, written under the store's lock
+
+    /**
+     * Ids of the needs mentioning a term and how often they do, the first size
+     * entries of the arrays
+     */
+    private static final class Postings {
+        final int[] ids;
+        final int[] frequencies;
+        final int size;
+
+        Postings(int[] ids, int[] frequencies, int size) {
+            this.ids = ids;
+            this.frequencies = frequencies;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The terms of a need's text with their frequencies, and its urgency
+     */
+    private static final class Document {
+        final Map<String,Integer> frequencies;
+        final int length;
+        final boolean urgent;
+
+        Document(Map<String,Integer> frequencies, int length, boolean urgent) {
+            this.frequencies = frequencies;
+            this.length = length;
+            this.urgent = urgent;
+        }
+    }
+
+    /**
+     * A posting list being walked by a query
+     */
+    private static final class Cursor {
+        final Postings list;
+        final double idf;       // Weight of the term, the rarer the heavier
+        final double bound;     // Most the term can add to a score
+        int at;
+
+        Cursor(Postings list, double idf) {
+            this.list = list;
+            this.idf = idf;
+            this.bound = idf * (K1 + 1) * URGENT_BOOST;
+        }
+
+        int id() {
+            return at < list.size ? list.ids[at] : Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * A need scored by a query
+     */
+    private static final class Hit {
+        final int id;
+        final double score;
+
+        Hit(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    // best first, and the lowest id first among equal scores
+    private static final Comparator<Hit> BEST = Comparator.comparingDouble((Hit hit) -> -hit.score).thenComparingInt(hit -> hit.id);
+
+    /**
+     * Splits a text into its terms: words of letters and digits, case-folded,
+     * without stop words, and with plural endings removed
+     *
+     * @param text The text, may be null
+     *
+     * @return The terms in order, repeated as often as they occur
+     */
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null)
+            return terms;
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && !STOP_WORDS.contains(word))
+                terms.add(stem(word));
+        }
+        return terms;
+    }
+
+    /**
+     * Removes the plural ending of a word, as the S-stemmer does
+     */
+    static String stem(String word) {
+        int length = word.length();
+        if (length > 3 && word.endsWith("ies") && !word.endsWith("eies") && !word.endsWith("aies"))
+            return word.substring(0, length - 3) + "y";
+        if (length > 3 && word.endsWith("es") && !word.endsWith("aes") && !word.endsWith("ees") && !word.endsWith("oes"))
+            return word.substring(0, length - 1);
+        if (length > 2 && word.endsWith("s") && !word.endsWith("us") && !word.endsWith("ss"))
+            return word.substring(0, length - 1);
+        return word;
+    }
+
+    /**
+     * Ranks the needs whose text mentions a term of a text
+     *
+     * @param text The text
+     * @param k The most needs to rank
+     *
+     * @return The ids of up to k needs, the most relevant first and the lowest
+     * id first among equally relevant ones
+     */
+    int[] search(String text, int k) {
+        int count = documents.size();
+        if (count == 0 || k < 1)
+            return new int[0];
+        double averageLength = Math.max(1.0, (double)totalLength / count);
+
+        List<Cursor> cursors = new ArrayList<>();
+        for (String term : new LinkedHashSet<>(terms(text))) {
+            Postings list = postings.get(term);
+            if (list != null)
+                cursors.add(new Cursor(list, Math.log(1 + (count - list.size + 0.5) / (list.size + 0.5))));
+        }
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(BEST.reversed());  // the worst of the best at the head
+        Cursor[] walking = cursors.toArray(new Cursor[cursors.size()]);
+        while (true) {
+            Arrays.sort(walking, Comparator.comparingInt(Cursor::id));
+
+            // the first need that could beat the worst of the best, the needs
+            // before it only mention terms whose bounds add up to no more
+            double threshold = best.size() < k ? -1 : best.peek().score;
+            double bound = 0;
+            int pivot = -1;
+            for (int i = 0; i < walking.length && walking[i].id() != Integer.MAX_VALUE; ++i) {
+                bound += walking[i].bound;
+                if (bound > threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0)
+                break;      // no need left can make the best k
+
+            int id = walking[pivot].id();
+            if (walking[0].id() == id) {
+                double score = score(id, cursors, averageLength);
+                if (score > threshold) {
+                    best.add(new Hit(id, score));
+                    if (best.size() > k)
+                        best.poll();
+                }
+                for (int i = 0; i < walking.length && walking[i].id() == id; ++i)
+                    walking[i].at++;
+            }
+            else {
+                // skip every need before the pivot without scoring it
+                for (int i = 0; i < pivot; ++i)
+                    walking[i].at = seek(walking[i].list, walking[i].at, id);
+            }
+        }
+
+        Hit[] hits = best.toArray(new Hit[best.size()]);
+        Arrays.sort(hits, BEST);
+        int[] ids = new int[hits.length];
+        for (int i = 0; i < hits.length; ++i)
+            ids[i] = hits[i].id;
+        return ids;
+    }
+
+    /**
+     * Scores the need some cursors are on, adding up the terms in the order of
+     * the query so equally relevant needs score exactly the same
+     *
+     * @return The score, or -1 if the need was removed meanwhile
+     */
+    private double score(int id, List<Cursor> cursors, double averageLength) {
+        Document document = documents.get(id);
+        if (document == null)
+            return -1;
+        double norm = K1 * (1 - B + B * document.length / averageLength);
+        double score = 0;
+        for (Cursor cursor : cursors) {
+            if (cursor.id() == id) {
+                int frequency = cursor.list.frequencies[cursor.at];
+                score += cursor.idf * frequency * (K1 + 1) / (frequency + norm);
+            }
+        }
+        return document.urgent ? score * URGENT_BOOST : score;
+    }
+
+    /**
+     * Finds the first position at or after a cursor holding an id no less than
+     * the one sought, galloping ahead then searching the range it lands in
+     */
+    private static int seek(Postings list, int from, int id) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < list.size && list.ids[high] < id) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high + 1, list.size);
+        int at = Arrays.binarySearch(list.ids, low, high, id);
+        return at >= 0 ? at : -at - 1;
+    }
+
+    /**
+     * Analyzes the text of a need
+     */
+    private static Document document(Need need) {
+        List<String> terms = terms(need.getName());
+        terms.addAll(terms(need.getDescription()));
+        Map<String,Integer> frequencies = new HashMap<>();
+        for (String term : terms)
+            frequencies.merge(term, 1, Integer::sum);
+        return new Document(frequencies, terms.size(), need.getUrgency() == UrgencyTag.HIGH);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void add(Integer key, Need value) {
+        Document document = document(value);
+        documents.put(key, document);
+        totalLength += document.length;
+        for (Map.Entry<String,Integer> entry : document.frequencies.entrySet())
+            postings.put(entry.getKey(), insert(postings.get(entry.getKey()), key, entry.getValue()));
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The text is the one the need was filed under, it may have changed since
+     */
+    @Override
+    public void remove(Integer key, Need value) {
+        Document document = documents.remove(key);
+        if (document == null)
+            return;
+        totalLength -= document.length;
+        for (String term : document.frequencies.keySet()) {
+            Postings list = delete(postings.get(term), key);
+            if (list == null)
+                postings.remove(term);
+            else
+                postings.put(term, list);
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Leaves the posting lists alone if the text did not change, as when a need
+     * is fulfilled or only its urgency is
+     */
+    @Override
+    public void replace(Integer key, Need previous, Need value) {
+        Document filed = documents.get(key);
+        Document document = document(value);
+        if (filed != null && Objects.equals(filed.frequencies, document.frequencies))
+            documents.put(key, document);
+        else {
+            remove(key, previous);
+            add(key, value);
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        postings.clear();
+        documents.clear();
+        totalLength = 0;
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The texts are analyzed, and the posting lists built, in parallel
+     */
+    @Override
+    public void rebuild(Map<Integer,Need> values) {
+        clear();
+        Map<Integer,Document> analyzed = values.entrySet().parallelStream()
+            .collect(Collectors.toConcurrentMap(Map.Entry::getKey, entry -> document(entry.getValue())));
+        Map<String,List<Integer>> mentions = analyzed.entrySet().parallelStream()
+            .flatMap(entry -> entry.getValue().frequencies.keySet().stream().map(term -> Map.entry(term, entry.getKey())))
+            .collect(Collectors.groupingByConcurrent(Map.Entry::getKey, Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
+        mentions.entrySet().parallelStream().forEach(entry -> {
+            int[] ids = entry.getValue().stream().mapToInt(Integer::intValue).sorted().toArray();
+            int[] frequencies = new int[ids.length];
+            for (int i = 0; i < ids.length; ++i)
+                frequencies[i] = analyzed.get(ids[i]).frequencies.get(entry.getKey());
+            postings.put(entry.getKey(), new Postings(ids, frequencies, ids.length));
+        });
+        documents.putAll(analyzed);
+        totalLength = analyzed.values().stream().mapToLong(document -> document.length).sum();
+    }
+
+    /**
+     * Publishes a posting list with an id and its frequency added
+     */
+    private static Postings insert(Postings list, int id, int frequency) {
+        if (list == null)
+            return new Postings(new int[] {id, 0, 0, 0}, new int[] {frequency, 0, 0, 0}, 1);
+
+        if (id > list.ids[list.size - 1]) {
+            // readers of the current list stop short of the slots written here
+            boolean room = list.size < list.ids.length;
+            int[] ids = room ? list.ids : Arrays.copyOf(list.ids, list.size * 2);
+            int[] frequencies = room ? list.frequencies : Arrays.copyOf(list.frequencies, list.size * 2);
+            ids[list.size] = id;
+            frequencies[list.size] = frequency;
+            return new Postings(ids, frequencies, list.size + 1);
+        }
+
+        int at = Arrays.binarySearch(list.ids, 0, list.size, id);
+        int[] ids = new int[at >= 0 ? list.size : list.size + 1];
+        int[] frequencies = new int[ids.length];
+        if (at >= 0) {
+            System.arraycopy(list.ids, 0, ids, 0, list.size);
+            System.arraycopy(list.frequencies, 0, frequencies, 0, list.size);
+        }
+        else {
+            at = -at - 1;
+            System.arraycopy(list.ids, 0, ids, 0, at);
+            System.arraycopy(list.frequencies, 0, frequencies, 0, at);
+            System.arraycopy(list.ids, at, ids, at + 1, list.size - at);
+            System.arraycopy(list.frequencies, at, frequencies, at + 1, list.size - at);
+        }
+        ids[at] = id;
+        frequencies[at] = frequency;
+        return new Postings(ids, frequencies, ids.length);
+    }
+
+    /**
+     * Publishes a posting list with an id removed
+     *
+     * @return The list, or null if it is left empty
+     */
+    private static Postings delete(Postings list, int id) {
+        if (list == null)
+            return null;
+        int at = Arrays.binarySearch(list.ids, 0, list.size, id);
+        if (at < 0)
+            return list;
+        if (list.size == 1)
+            return null;
+        int[] ids = new int[list.size - 1];
+        int[] frequencies = new int[list.size - 1];
+        System.arraycopy(list.ids, 0, ids, 0, at);
+        System.arraycopy(list.frequencies, 0, frequencies, 0, at);
+        System.arraycopy(list.ids, at + 1, ids, at, list.size - at - 1);
+        System.arraycopy(list.frequencies, at + 1, frequencies, at, list.size - at - 1);
+        return new Postings(ids, frequencies, ids.length);
+    }
+}
@@ -15,6 +15,21 @@ import com.needs.api.needsapi.model.Profile;
  * @author Ryan Garvin
  */
 public interface ProfileDAO {
+    /**
+     * Version passed to {@link #updateProfile(Profile, long)} to update a
+     * {@linkplain Profile profile} whatever version it is at
+     */
+    long ANY_VERSION = -1;
+
+    /**
+     * Retrieves every {@linkplain Profile user profile}
+     * 
+     * @return An array of {@link Profile user profiles}, may be empty
+     * 
+     * @throws IOException if an issue with underlying storage
+     */
+    Profile[] getProfiles() throws IOException;
+
     /**
      * Retrieves a {@link Profile user profile} with given username 
      * 
@@ -36,7 +51,27 @@ public interface ProfileDAO {
      * 
      * @throws IOException if an issue with underlying storage
      */
-    Profile updateProfile(Profile profile) throws IOException;
+    default Profile updateProfile(Profile profile) throws IOException {
+        return updateProfile(profile, ANY_VERSION);
+    }
+
+    /**
+     * updates a {@link Profile user profile} if it is still at the given version
+     * <br>
+     * The version is compared and replaced in one atomic step, so of two updates
+     * expecting the same version only one succeeds. The saved profile is one
+     * version past the one it replaced.
+     * 
+     * @param profile {@link Profile profile} the updated profile
+     * @param version The version the stored profile must be at, {@link #ANY_VERSION}
+     * to update it whatever its version
+     *
+     * @return updated {@link Profile user profile} if successful, null otherwise 
+     * 
+     * @throws VersionConflictException if the profile is at another version
+     * @throws IOException if an issue with underlying storage
+     */
+    Profile updateProfile(Profile profile, long version) throws IOException;
 
 
     /**
@@ -64,6 +99,24 @@ public interface ProfileDAO {
     boolean deleteProfile(String containsText) throws IOException;
 
 
+    /**
+     * Adds a quantity to what a {@linkplain Profile user profile} contributed to a need
+     * <br>
+     * The profile is read and saved in one atomic step, so concurrent contributions
+     * of the same user are all kept. The saved profile is one version past the one
+     * it replaced.
+     *
+     * @param userName The username of the {@link Profile user profile}
+     * @param needId The id of the need contributed to
+     * @param quantity The quantity contributed
+     *
+     * @return updated {@link Profile user profile} if successful, null if it does not exist
+     *
+     * @throws IOException if an issue with underlying storage
+     */
+    Profile addContribution(String userName, int needId, int quantity) throws IOException;
+
+
     /**
      * Switches a {@linkplain Profile user profile} to be private or public 
      *
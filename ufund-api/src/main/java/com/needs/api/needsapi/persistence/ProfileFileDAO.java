@@ -1,23 +1,28 @@
 package com.needs.api.needsapi.persistence;
 
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.needs.api.needsapi.model.Need;
 import com.needs.api.needsapi.model.Profile;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 
 /**
  * Implements the functionality for JSON file-based peristance for a User Pofile
+ * <br>
+ * Operations on a profile hold its username's {@linkplain LockStripes stripe}, so
+ * changes to different users' profiles do not wait for each other except while
+ * the store records them. A profile is removed when its login is deleted or
+ * renamed, and profiles left without a login are dropped when the file is loaded.
  * 
  * {@literal @}Component Spring annotation instantiates a single instance of this
  * class and injects the instance into other classes as needed
@@ -27,16 +32,14 @@ import org.springframework.stereotype.Component;
  */
 
  @Component
+@org.springframework.context.annotation.Profile("!jdbc")
 public class ProfileFileDAO implements ProfileDAO {
 
     private static final Logger LOG = Logger.getLogger(ProfileFileDAO.class.getName());
-    Map<String,Profile> profiles;   // Provides a local cache of the profile objects
-                                // so that we don't need to read from the file
-                                // each time
-    private ObjectMapper objectMapper;  // Provides conversion between Profile
-                                        // objects and JSON text format written
-                                        // to the file
-    private String filename;    // Filename to read from and write to
+    FileBackedStore<String,Profile> profiles;   // Provides a local cache of the profile objects
+                                                // so that we don't need to read from the file
+                                                // each time
+    LockStripes locks = new LockStripes("profile stripes",LockStripes.DEFAULT);  // Serializes the operations on each username
 
     private LoginFileDAO loginDAO;
     /**
@@ -47,96 +50,144 @@ public class ProfileFileDAO implements ProfileDAO {
      * 
      * @throws IOException when file cannot be accessed or read from
      */
-    public ProfileFileDAO(@Value("${profiles.file}") String filename,ObjectMapper objectMapper, LoginFileDAO loginDAO) throws IOException {
-        this.filename = filename;
-        this.objectMapper = objectMapper;
-        this.loginDAO = loginDAO;
-        load();  // load the profiles from the file
+    public ProfileFileDAO(String filename,ObjectMapper objectMapper, LoginFileDAO loginDAO) throws IOException {
+        this(filename,objectMapper,loginDAO,WriteBehindFlusher.synchronous());
     }
 
     /**
-     * Generates an array of {@linkplain Profile user profile} from the tree map
+     * Creates a Profile File Data Access Object
      * 
-     * @return  The array of {@link  Profile user profile}, may be empty
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * 
+     * @throws IOException when file cannot be accessed or read from
      */
-    private Profile[] getProfilesArray() {
-        return getProfilesArray(null);
+    public ProfileFileDAO(String filename,ObjectMapper objectMapper, LoginFileDAO loginDAO, WriteBehindFlusher flusher) throws IOException {
+        this(filename,objectMapper,loginDAO,flusher,BinarySnapshot.disabled());
     }
 
     /**
-     * Generates an array of {@linkplain  Profile user profile} from the tree map for any
-     * {@linkplain Profile user profile} that contains the text specified by containsText
-     * <br>
-     * If containsText is null, the array contains all of the {@linkplain  Profile user profile}
-     * in the tree map
+     * Creates a Profile File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
      * 
-     * @return  The array of {@link  Profile user profile}, may be empty
+     * @throws IOException when file cannot be accessed or read from
      */
-    private Profile[] getProfilesArray(String containsText) { // if containsText == null, no filter
-        ArrayList<Profile> profileArrayList = new ArrayList<>();
+    public ProfileFileDAO(String filename,ObjectMapper objectMapper, LoginFileDAO loginDAO, WriteBehindFlusher flusher, BinarySnapshot snapshots) throws IOException {
+        this(filename,objectMapper,loginDAO,flusher,snapshots,JsonStreams.arrays());
+    }
 
-        for (Profile profile : profiles.values()) {
-            if (containsText == null || profile.getUserName().contains(containsText)) {
-                profileArrayList.add(profile);
-            }
-        }
-        Profile[] proflieArray = new Profile[profileArrayList.size()];
-        profileArrayList.toArray(proflieArray);
-        return proflieArray;
+    /**
+     * Creates a Profile File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link Profile profile} at a time
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public ProfileFileDAO(String filename,ObjectMapper objectMapper, LoginFileDAO loginDAO, WriteBehindFlusher flusher, BinarySnapshot snapshots, JsonStreams streams) throws IOException {
+        this(filename,objectMapper,loginDAO,flusher,snapshots,streams,LsmStorage.disabled());
+    }
+
+    /**
+     * Creates a Profile File Data Access Object
+     * 
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link Profile profile} at a time
+     * @param lsm The {@link LsmStorage LSM storage} to keep the profiles in instead of the file
+     * 
+     * @throws IOException when file cannot be accessed or read from
+     */
+    public ProfileFileDAO(String filename,ObjectMapper objectMapper, LoginFileDAO loginDAO, WriteBehindFlusher flusher, BinarySnapshot snapshots, JsonStreams streams, LsmStorage lsm) throws IOException {
+        this(filename,objectMapper,loginDAO,flusher,snapshots,streams,lsm,MutationBus.disabled());
     }
 
     /**
-     * Saves the {@linkplain Profile profiles} from the map into the file as an array of JSON objects
+     * Creates a Profile File Data Access Object
      * 
-     * @return true if the {@link Profile profiles} were written successfully
+     * @param filename Filename to read from and write to
+     * @param objectMapper Provides JSON Object to/from Java Object serialization and deserialization
+     * @param flusher The {@link WriteBehindFlusher flusher} that decides when the file is rewritten
+     * @param snapshots The {@link BinarySnapshot binary snapshots} to load from when current
+     * @param streams Reads and writes the file one {@link Profile profile} at a time
+     * @param lsm The {@link LsmStorage LSM storage} to keep the profiles in instead of the file
+     * @param events The {@link MutationBus mutation bus} every change is published to
      * 
-     * @throws IOException when file cannot be accessed or written to
+     * @throws IOException when file cannot be accessed or read from
      */
-    private boolean save() throws IOException {
-        Profile[] profileArray = getProfilesArray();
-
-        // Serializes the Java Objects to JSON objects into the file
-        // writeValue will thrown an IOException if there is an issue
-        // with the file or reading from the file
-        objectMapper.writeValue(new File(filename),profileArray);
-
-        // Add each need to the tree map and keep track of the greatest id
-        for (Profile profile : profileArray) {
-            profiles.put(profile.getUserName(),profile);
-            if(loginDAO.userExists(profile.getUserName()) == false){
-                profiles.remove(profile.getUserName());
+    @Autowired
+    public ProfileFileDAO(@Value("${profiles.file}") String filename,ObjectMapper objectMapper, LoginFileDAO loginDAO, WriteBehindFlusher flusher, BinarySnapshot snapshots, JsonStreams streams, LsmStorage lsm, MutationBus events) throws IOException {
+        this.loginDAO = loginDAO;
+        Map<String,Profile> values = lsm.isEnabled() ? lsm.open("profiles",LsmStore.STRINGS,Profile.class) : new TreeMap<>();
+        profiles = new FileBackedStore<>(filename,values,Profile::getUserName,
+                                         FileBackedStore.Codec.json(objectMapper,streams,Profile.class).withSnapshots(snapshots,SnapshotCodecs.PROFILES),
+                                         flusher);
+        profiles.publishTo(events.topic(MutationEvent.Entity.PROFILE));
+        load();  // load the profiles from the file
+        loginDAO.onRemoved(this::removeOrphan);
+    }
+
+    /**
+     * Removes the {@linkplain Profile profile} of a username whose login was deleted
+     * or renamed, while holding the username's stripe
+     *
+     * @param userName The username that no longer has a login
+     *
+     * @throws IOException if the removal cannot be written
+     */
+    private void removeOrphan(String userName) throws IOException {
+        try {
+            ReentrantLock lock = locks.of(userName);
+            lock.lock();
+            try {
+                if (!loginDAO.userExists(userName))
+                    profiles.remove(userName); // may throw an IOException
+            }
+            finally {
+                lock.unlock();
             }
         }
-        return true;
+        finally {
+            profiles.await();
+        }
     }
 
     /**
-     * Loads {@linkplain Need needs} from the JSON file into the map
+     * Removes {@linkplain Profile profiles} whose login no longer exists from the store,
+     * so the file is rewritten without them by the next change
      * <br>
-     * Also sets next id to one more than the greatest id found in the file
+     * Scans every profile, so it is only done once the file is loaded
+     */
+    private void removeOrphans() {
+        profiles.evictIf(profile -> loginDAO.userExists(profile.getUserName()) == false);
+    }
+
+    /**
+     * Loads {@linkplain Profile profiles} from the file into the store
      * 
      * @return true if the file was read successfully
      * 
      * @throws IOException when file cannot be accessed or read from
      */
     private boolean load() throws IOException {
-        profiles = new TreeMap<>();
-        
-
-        // Deserializes the JSON objects from the file into an array of profiles
-        // readValue will throw an IOException if there's an issue with the file
+        // Deserializes the JSON objects from the file one profile at a time,
+        // or reads them from the binary snapshot if it is current
+        // load will throw an IOException if there's an issue with the file
         // or reading from the file
-        
-        Profile[] profileArray = objectMapper.readValue(new File("data/profiles.json"),Profile[].class);
+        profiles.load();
 
-        // Add each need to the tree map and keep track of the greatest id
-        for (Profile profile : profileArray) {
-            profiles.put(profile.getUserName(),profile);
-            if(loginDAO.userExists(profile.getUserName()) == false){
-                profiles.remove(profile.getUserName());
-            }
-        }
-        
+        // Only keep the profiles whose login still exists
+        removeOrphans();
         return true;
     }
 
@@ -159,47 +210,76 @@ public class ProfileFileDAO implements ProfileDAO {
     // }
 
 
+    /**
+    ** {@inheritDoc}
+     */
     @Override
-    public Profile getProfile(String userName) throws IOException {
-     
-        synchronized(profiles) {
-            if (profiles.containsKey(userName))
-                return profiles.get(userName);
-            else
-                return null;
+    public Profile[] getProfiles() {
+        profiles.lock();
+        try {
+            return profiles.values().toArray(new Profile[profiles.size()]);
+        }
+        finally {
+            profiles.unlock();
         }
     }
-    
 
     @Override
-    public Profile updateProfile(Profile profile) throws IOException {
-        synchronized(profiles) {
-            if (profiles.containsKey(profile.getUserName()) == false){
-                return null;  // profile does not exist
-            }
-
-            // for partial updates: if any fields are left blank, they stay the same
-            Profile profileToUpdate = getProfile(profile.getUserName());
-
-            if(profile.getFirstName() == null){
-                profile.setFirstName(profileToUpdate.getFirstName());
-            }
-
-            if(profile.getLastName() == null){
-                profile.setLastName(profileToUpdate.getLastName());
-            }
+    public Profile getProfile(String userName) throws IOException {
+        return profiles.get(userName);
+    }
+    
 
-            if(profile.getEmail() == null){
-                profile.setEmail(profileToUpdate.getEmail());
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The version is checked while holding the username's stripe, which every
+     * change to the profile holds, so the check and the put are one atomic step
+     * without any lock shared with other users' profiles.
+     */
+    @Override
+    public Profile updateProfile(Profile profile, long version) throws IOException {
+        try {
+            ReentrantLock lock = locks.of(profile.getUserName());
+            lock.lock();
+            try {
+                // for partial updates: if any fields are left blank, they stay the same
+                Profile profileToUpdate = getProfile(profile.getUserName());
+                if (profileToUpdate == null){
+                    return null;  // profile does not exist
+                }
+
+                long stored = profileToUpdate.getVersion();
+                if (version != ANY_VERSION && version != stored){
+                    throw new VersionConflictException(version, stored);
+                }
+
+                if(profile.getFirstName() == null){
+                    profile.setFirstName(profileToUpdate.getFirstName());
+                }
+
+                if(profile.getLastName() == null){
+                    profile.setLastName(profileToUpdate.getLastName());
+                }
+
+                if(profile.getEmail() == null){
+                    profile.setEmail(profileToUpdate.getEmail());
+                }
+
+                if(profile.getCountry() == null){
+                    profile.setCountry(profileToUpdate.getCountry());
+                }
+
+                profile.setVersion(stored + 1);
+                profiles.put(profile); // may throw an IOException
+                return profile;
             }
-
-            if(profile.getCountry() == null){
-                profile.setCountry(profileToUpdate.getCountry());
+            finally {
+                lock.unlock();
             }
-
-            profiles.put(profile.getUserName(),profile);
-            save(); // may throw an IOException
-            return profile;
+        }
+        finally {
+            profiles.await();
         }
     }
 
@@ -207,13 +287,22 @@ public class ProfileFileDAO implements ProfileDAO {
 
     @Override
     public Profile createProfile(Profile profile) throws IOException {
-        synchronized(profiles) {
-            // We create a new Profile object because 
-            Profile newProfile = new Profile(profile.getFirstName(),profile.getLastName(),profile.getEmail(), profile.getCountry(), profile.getUserName(), profile.getContributions());
-            System.out.println(newProfile);
-            profiles.put(newProfile.getUserName(), newProfile);
-            save(); // may throw an IOException
-            return newProfile;
+        try {
+            ReentrantLock lock = locks.of(profile.getUserName());
+            lock.lock();
+            try {
+                // We create a new Profile object because 
+                Profile newProfile = new Profile(profile.getFirstName(),profile.getLastName(),profile.getEmail(), profile.getCountry(), profile.getUserName(), profile.getContributions());
+                System.out.println(newProfile);
+                profiles.put(newProfile); // may throw an IOException
+                return newProfile;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        finally {
+            profiles.await();
         }
     }
 
@@ -222,24 +311,77 @@ public class ProfileFileDAO implements ProfileDAO {
      */
     @Override
     public boolean deleteProfile(String userName) throws IOException {
-        synchronized(profiles) {
-            if (profiles.containsKey(userName)) {
-                profiles.remove(userName);
-                return save();
+        try {
+            ReentrantLock lock = locks.of(userName);
+            lock.lock();
+            try {
+                return profiles.remove(userName); // may throw an IOException
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        finally {
+            profiles.await();
+        }
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * Holds the username's stripe while reading and saving the profile, and saves
+     * a copy with its own contributions, so the stored profile is never changed in
+     * place while the flusher may be writing it.
+     */
+    @Override
+    public Profile addContribution(String userName, int needId, int quantity) throws IOException {
+        try {
+            ReentrantLock lock = locks.of(userName);
+            lock.lock();
+            try {
+                Profile stored = getProfile(userName);
+                if (stored == null)
+                    return null;  // profile does not exist
+
+                HashMap<Integer,Integer> contributions = stored.getContributions() == null
+                    ? new HashMap<>() : new HashMap<>(stored.getContributions());
+                Profile profile = new Profile(stored.getFirstName(), stored.getLastName(), stored.getEmail(),
+                                              stored.getCountry(), userName, contributions);
+                if (stored.getIsPrivate())
+                    profile.switchPrivacy();
+                profile.addContribution(needId, quantity);
+                profile.setVersion(stored.getVersion() + 1);
+                profiles.put(profile); // may throw an IOException
+                return profile;
+            }
+            finally {
+                lock.unlock();
             }
-            else
-                return false;
+        }
+        finally {
+            profiles.await();
         }
     }
 
     @Override
     public Profile switchPrivacy(Profile profile) throws IOException {
-        synchronized(profiles) {
-            profile.switchPrivacy();
-            profiles.put(profile.getUserName(),profile);
-            save();
-            return profile;
+        try {
+            ReentrantLock lock = locks.of(profile.getUserName());
+            lock.lock();
+            try {
+                Profile stored = getProfile(profile.getUserName());
+                profile.setVersion((stored == null ? profile.getVersion() : stored.getVersion()) + 1);
+                profile.switchPrivacy();
+                profiles.put(profile);
+                return profile;
 
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        finally {
+            profiles.await();
         }
     }
 }
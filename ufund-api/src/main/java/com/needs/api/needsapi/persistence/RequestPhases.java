@@ -0,0 +1,67 @@
+package com.needs.api.needsapi.persistence;
+
+/**
+ * Adds up where the request being served on the current thread spends its time
+ * in the persistence layer
+ * <p>
+ * The request's filter calls {@link #begin()} before the request is handled and
+ * {@link #end()} once it has been, and in between the {@linkplain StoreMetrics store metrics}
+ * add every lock wait, serialization and disk write the thread makes to the
+ * request's {@linkplain Phase phases}. Whatever is left of the request's time
+ * was spent computing. On threads that are not serving a request, such as the
+ * write-behind flusher, nothing is recorded.
+ *
+ * @author Team Swiss Pandas
+ */
+public final class RequestPhases {
+    private static final ThreadLocal<long[]> CURRENT = new ThreadLocal<>();  // Nanoseconds by phase ordinal
+
+    /**
+     * The parts of a request's time the persistence layer accounts for
+     */
+    public enum Phase {
+        LOCK_WAIT,      // Waiting for a store's lock or lock stripe
+        SERIALIZE,      // Serializing values for a write-behind flush or the journal
+        DISK_WRITE,     // Writing a data file or the journal
+        FLUSH_WAIT      // Waiting for a write-behind flush to cover the request's changes
+    }
+
+    private RequestPhases() {}
+
+    /**
+     * Starts recording the phases of the request served on the current thread
+     *
+     * @return true if recording started, false if the thread was already recording
+     * a request, in which case the caller must not call {@link #end()}
+     */
+    public static boolean begin() {
+        if (CURRENT.get() != null)
+            return false;
+        CURRENT.set(new long[Phase.values().length]);
+        return true;
+    }
+
+    /**
+     * Stops recording the phases of the request served on the current thread
+     *
+     * @return Nanoseconds spent in each phase, indexed by {@link Phase#ordinal() ordinal},
+     * all 0 if the thread was not recording
+     */
+    public static long[] end() {
+        long[] phases = CURRENT.get();
+        CURRENT.remove();
+        return phases == null ? new long[Phase.values().length] : phases;
+    }
+
+    /**
+     * Adds time to a phase of the request served on the current thread, if any
+     *
+     * @param phase The {@link Phase phase}
+     * @param nanos The nanoseconds spent in it
+     */
+    static void add(Phase phase, long nanos) {
+        long[] phases = CURRENT.get();
+        if (phases != null && nanos > 0)
+            phases[phase.ordinal()] += nanos;
+    }
+}
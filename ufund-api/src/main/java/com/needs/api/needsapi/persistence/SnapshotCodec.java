@@ -0,0 +1,55 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Defines how one kind of entity is written to and read from a {@link BinarySnapshot binary snapshot}
+ * <p>
+ * Strings are not written inline. They are added to the snapshot's string table
+ * and only their index is written, so repeated values such as image paths are
+ * stored once per file.
+ *
+ * @param <T> The entity type
+ *
+ * @author Team Swiss Pandas
+ */
+public interface SnapshotCodec<T> {
+    /**
+     * Retrieves the tag identifying this kind of entity in the snapshot header
+     *
+     * @return The entity tag
+     */
+    short kind();
+
+    /**
+     * Retrieves the entity class, used to create arrays and for JSON conversion
+     *
+     * @return The entity class
+     */
+    Class<T> type();
+
+    /**
+     * Writes one entity
+     *
+     * @param value The entity to write
+     * @param strings The snapshot's string table
+     * @param out The record being written
+     *
+     * @throws IOException if the record cannot be written
+     */
+    void write(T value, BinarySnapshot.StringTable strings, DataOutput out) throws IOException;
+
+    /**
+     * Reads one entity
+     *
+     * @param in The record being read
+     * @param strings The snapshot's string table
+     *
+     * @return The entity
+     *
+     * @throws IOException if the record is malformed
+     */
+    T read(DataInput in, String[] strings) throws IOException;
+}
@@ -0,0 +1,198 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.needs.api.needsapi.model.FundingBasket;
+import com.needs.api.needsapi.model.Login;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.Profile;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+/**
+ * The {@linkplain SnapshotCodec snapshot codecs} for each stored entity
+ * <p>
+ * Enum values are stored by name through the string table, so reordering an
+ * enum does not invalidate existing snapshots. Any change to the fields written
+ * here must increment {@link BinarySnapshot#VERSION}.
+ *
+ * @author Team Swiss Pandas
+ */
+public final class SnapshotCodecs {
+    /**
+     * Codec for {@linkplain Need needs}
+     */
+    public static final SnapshotCodec<Need> NEEDS = new SnapshotCodec<>() {
+        @Override
+        public short kind() {return 1;}
+
+        @Override
+        public Class<Need> type() {return Need.class;}
+
+        @Override
+        public void write(Need need, BinarySnapshot.StringTable strings, DataOutput out) throws IOException {
+            out.writeInt(need.getId());
+            out.writeInt(strings.indexOf(need.getName()));
+            out.writeInt(strings.indexOf(need.getType() == null ? null : need.getType().name()));
+            out.writeDouble(need.getPrice());
+            out.writeInt(need.getQuantityNeeded());
+            out.writeInt(need.getQuantityFulfilled());
+            out.writeInt(strings.indexOf(need.getUrgency() == null ? null : need.getUrgency().name()));
+            out.writeInt(strings.indexOf(need.getUrgencyImage()));
+            out.writeInt(strings.indexOf(need.getDescription()));
+            out.writeInt(strings.indexOf(need.getImage()));
+            out.writeLong(need.getVersion());
+        }
+
+        @Override
+        public Need read(DataInput in, String[] strings) throws IOException {
+            int id = in.readInt();
+            String name = string(in, strings);
+            String type = string(in, strings);
+            double price = in.readDouble();
+            int quantityNeeded = in.readInt();
+            int quantityFulfilled = in.readInt();
+            String urgency = string(in, strings);
+            String urgencyImage = string(in, strings);
+            String description = string(in, strings);
+            String image = string(in, strings);
+            long version = in.readLong();
+
+            Need need = new Need(id, name, type == null ? null : NeedType.valueOf(type), price,
+                                 quantityNeeded, quantityFulfilled, UrgencyTag.valueOf(urgency), description, image);
+            need.setUrgencyImage(urgencyImage);
+            need.setVersion(version);
+            return need;
+        }
+    };
+
+    /**
+     * Codec for {@linkplain FundingBasket funding baskets}
+     */
+    public static final SnapshotCodec<FundingBasket> BASKETS = new SnapshotCodec<>() {
+        @Override
+        public short kind() {return 2;}
+
+        @Override
+        public Class<FundingBasket> type() {return FundingBasket.class;}
+
+        @Override
+        public void write(FundingBasket basket, BinarySnapshot.StringTable strings, DataOutput out) throws IOException {
+            out.writeInt(basket.getId());
+            out.writeInt(strings.indexOf(basket.getUsername()));
+            writeQuantities(basket.getNeeds(), out);
+        }
+
+        @Override
+        public FundingBasket read(DataInput in, String[] strings) throws IOException {
+            FundingBasket basket = new FundingBasket(in.readInt(), string(in, strings));
+            HashMap<Integer,Integer> needs = readQuantities(in);
+            if (needs != null)
+                basket.getNeeds().putAll(needs);
+            return basket;
+        }
+    };
+
+    /**
+     * Codec for {@linkplain Login logins}
+     */
+    public static final SnapshotCodec<Login> LOGINS = new SnapshotCodec<>() {
+        @Override
+        public short kind() {return 3;}
+
+        @Override
+        public Class<Login> type() {return Login.class;}
+
+        @Override
+        public void write(Login login, BinarySnapshot.StringTable strings, DataOutput out) throws IOException {
+            out.writeInt(strings.indexOf(login.getUserName()));
+            out.writeInt(strings.indexOf(login.getPass()));
+            out.writeInt(login.getBasketId());
+        }
+
+        @Override
+        public Login read(DataInput in, String[] strings) throws IOException {
+            return new Login(string(in, strings), string(in, strings), in.readInt());
+        }
+    };
+
+    /**
+     * Codec for {@linkplain Profile profiles}
+     */
+    public static final SnapshotCodec<Profile> PROFILES = new SnapshotCodec<>() {
+        @Override
+        public short kind() {return 4;}
+
+        @Override
+        public Class<Profile> type() {return Profile.class;}
+
+        @Override
+        public void write(Profile profile, BinarySnapshot.StringTable strings, DataOutput out) throws IOException {
+            out.writeInt(strings.indexOf(profile.getFirstName()));
+            out.writeInt(strings.indexOf(profile.getLastName()));
+            out.writeInt(strings.indexOf(profile.getEmail()));
+            out.writeInt(strings.indexOf(profile.getCountry()));
+            out.writeInt(strings.indexOf(profile.getUserName()));
+            out.writeBoolean(profile.getIsPrivate());
+            writeQuantities(profile.getContributions(), out);
+            out.writeLong(profile.getVersion());
+        }
+
+        @Override
+        public Profile read(DataInput in, String[] strings) throws IOException {
+            Profile profile = new Profile(string(in, strings), string(in, strings), string(in, strings),
+                                          string(in, strings), string(in, strings), null);
+            if (in.readBoolean())
+                profile.switchPrivacy();
+            profile.setContributions(readQuantities(in));
+            profile.setVersion(in.readLong());
+            return profile;
+        }
+    };
+
+    private SnapshotCodecs() {}
+
+    /**
+     * Reads a string table reference
+     */
+    private static String string(DataInput in, String[] strings) throws IOException {
+        int index = in.readInt();
+        if (index == -1)
+            return null;
+        if (index < 0 || index >= strings.length)
+            throw new IOException("String table index " + index + " out of range");
+        return strings[index];
+    }
+
+    /**
+     * Writes a need id to quantity map, -1 standing for null
+     */
+    private static void writeQuantities(Map<Integer,Integer> quantities, DataOutput out) throws IOException {
+        if (quantities == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(quantities.size());
+        for (Map.Entry<Integer,Integer> entry : quantities.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a need id to quantity map written by {@link #writeQuantities}
+     */
+    private static HashMap<Integer,Integer> readQuantities(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0)
+            return null;
+        HashMap<Integer,Integer> quantities = new HashMap<>();
+        for (int i = 0; i < size; ++i)
+            quantities.put(in.readInt(), in.readInt());
+        return quantities;
+    }
+}
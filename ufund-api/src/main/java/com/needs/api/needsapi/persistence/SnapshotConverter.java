@@ -0,0 +1,94 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Converts data files between their JSON form and {@linkplain BinarySnapshot binary snapshots}
+ * <p>
+ * Usage: {@code SnapshotConverter <needs|baskets|logins|profiles> <to-binary|to-json> <input> <output>}
+ * <br>
+ * Snapshots written by hand are not tied to any JSON file, so the DAOs load them
+ * until the JSON file next to them is written.
+ *
+ * @author Team Swiss Pandas
+ */
+public final class SnapshotConverter {
+    private static final Map<String,SnapshotCodec<?>> CODECS = Map.of(
+        "needs", SnapshotCodecs.NEEDS,
+        "baskets", SnapshotCodecs.BASKETS,
+        "logins", SnapshotCodecs.LOGINS,
+        "profiles", SnapshotCodecs.PROFILES);
+    private static final JsonStreams STREAMS = new JsonStreams(true);
+
+    private SnapshotConverter() {}
+
+    /**
+     * Converts a JSON data file into a binary snapshot
+     *
+     * @param <T> The entity type
+     * @param codec The {@linkplain SnapshotCodec codec} for the entity type
+     * @param json The JSON data file to read
+     * @param snapshot The snapshot file to write
+     * @param objectMapper Reads the JSON file
+     *
+     * @return The number of entities converted
+     *
+     * @throws IOException if either file cannot be accessed
+     */
+    public static <T> int toBinary(SnapshotCodec<T> codec, File json, File snapshot, ObjectMapper objectMapper) throws IOException {
+        List<T> values = new ArrayList<>();
+        STREAMS.read(objectMapper, json, codec.type(), values::add);
+        BinarySnapshot.write(snapshot, codec, values, null);
+        return values.size();
+    }
+
+    /**
+     * Converts a binary snapshot into a JSON data file
+     *
+     * @param <T> The entity type
+     * @param codec The {@linkplain SnapshotCodec codec} for the entity type
+     * @param snapshot The snapshot file to read
+     * @param json The JSON data file to write
+     * @param objectMapper Writes the JSON file
+     *
+     * @return The number of entities converted
+     *
+     * @throws IOException if either file cannot be accessed or the snapshot is invalid
+     */
+    public static <T> int toJson(SnapshotCodec<T> codec, File snapshot, File json, ObjectMapper objectMapper) throws IOException {
+        List<T> values = new ArrayList<>();
+        BinarySnapshot.read(snapshot, codec, null, values::add);
+        STREAMS.write(objectMapper, json, codec.type(), values);
+        return values.size();
+    }
+
+    /**
+     * Runs the converter from the command line
+     *
+     * @param args The data file kind, the direction, the input file and the output file
+     *
+     * @throws IOException if either file cannot be accessed
+     */
+    public static void main(String[] args) throws IOException {
+        SnapshotCodec<?> codec = args.length == 4 ? CODECS.get(args[0]) : null;
+        if (codec == null || !(args[1].equals("to-binary") || args[1].equals("to-json"))) {
+            System.err.println("Usage: SnapshotConverter <needs|baskets|logins|profiles> <to-binary|to-json> <input> <output>");
+            System.exit(2);
+            return;
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        File input = new File(args[2]);
+        File output = new File(args[3]);
+        int count = args[1].equals("to-binary")
+            ? toBinary(codec, input, output, objectMapper)
+            : toJson(codec, input, output, objectMapper);
+        System.out.println("Converted " + count + " " + args[0] + " from " + input + " to " + output);
+    }
+}
@@ -0,0 +1,133 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the operations on one store spend their time: waiting for its locks,
+ * holding them, and serializing and writing its file
+ * <p>
+ * Every {@linkplain FileBackedStore store}, {@linkplain LockStripes set of lock stripes}
+ * and {@linkplain NeedJournal journal} records into the metrics of its name, which
+ * live as long as the process so that {@code GET /diagnostics/stores} can report
+ * them. The time is also added to the {@linkplain RequestPhases phases} of the
+ * request being served on the thread, if any. Counters are {@link LongAdder adders},
+ * so recording never makes threads wait for each other.
+ *
+ * @author Team Swiss Pandas
+ */
+public final class StoreMetrics {
+    private static final Map<String,StoreMetrics> ALL = new ConcurrentHashMap<>();
+
+    private final String name;          // The store's file, or what its locks guard
+    private final LongAdder acquired = new LongAdder();     // Locks acquired
+    private final LongAdder contended = new LongAdder();    // Locks acquired after waiting
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder holdNanos = new LongAdder();
+    private final LongAccumulator maxHoldNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder writes = new LongAdder();       // Files or journal records written
+    private final LongAdder serializeNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAccumulator maxWriteNanos = new LongAccumulator(Math::max, 0);
+
+    private StoreMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Retrieves the metrics of a store, creating them the first time
+     *
+     * @param name The store's file name, or what its locks guard
+     *
+     * @return The metrics every store of that name records into
+     */
+    public static StoreMetrics of(String name) {
+        return ALL.computeIfAbsent(name, StoreMetrics::new);
+    }
+
+    /**
+     * Retrieves the metrics of every store for monitoring
+     *
+     * @return The {@link #metrics() metrics} of each store, by name
+     */
+    public static Map<String,Map<String,Object>> all() {
+        Map<String,Map<String,Object>> all = new TreeMap<>();
+        for (StoreMetrics metrics : ALL.values())
+            all.put(metrics.name, metrics.metrics());
+        return all;
+    }
+
+    /**
+     * Records a lock acquired
+     *
+     * @param waited Nanoseconds the thread waited for it, 0 if it was free
+     */
+    void locked(long waited) {
+        acquired.increment();
+        if (waited > 0) {
+            contended.increment();
+            waitNanos.add(waited);
+            maxWaitNanos.accumulate(waited);
+            RequestPhases.add(RequestPhases.Phase.LOCK_WAIT, waited);
+        }
+    }
+
+    /**
+     * Records a lock released by its outermost holder
+     *
+     * @param held Nanoseconds it was held
+     */
+    void unlocked(long held) {
+        holdNanos.add(held);
+        maxHoldNanos.accumulate(held);
+    }
+
+    /**
+     * Records a write of the file or of a journal record
+     *
+     * @param serialized Nanoseconds spent serializing the values, 0 if they were
+     * streamed to the file and so are counted as writing
+     * @param written Nanoseconds spent writing to the file
+     */
+    void wrote(long serialized, long written) {
+        writes.increment();
+        serializeNanos.add(serialized);
+        writeNanos.add(written);
+        maxWriteNanos.accumulate(written);
+        RequestPhases.add(RequestPhases.Phase.SERIALIZE, serialized);
+        RequestPhases.add(RequestPhases.Phase.DISK_WRITE, written);
+    }
+
+    /**
+     * Retrieves the totals recorded so far, times in milliseconds
+     *
+     * @return The metrics by name
+     */
+    public Map<String,Object> metrics() {
+        Map<String,Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("locksAcquired", acquired.sum());
+        metrics.put("locksContended", contended.sum());
+        metrics.put("lockWaitMillis", millis(waitNanos.sum()));
+        metrics.put("maxLockWaitMillis", millis(maxWaitNanos.get()));
+        metrics.put("lockHoldMillis", millis(holdNanos.sum()));
+        metrics.put("maxLockHoldMillis", millis(maxHoldNanos.get()));
+        metrics.put("writes", writes.sum());
+        metrics.put("serializeMillis", millis(serializeNanos.sum()));
+        metrics.put("diskWriteMillis", millis(writeNanos.sum()));
+        metrics.put("maxDiskWriteMillis", millis(maxWriteNanos.get()));
+        return metrics;
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds with a microsecond resolution
+     */
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+}
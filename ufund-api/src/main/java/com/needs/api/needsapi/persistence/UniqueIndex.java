@@ -0,0 +1,116 @@
+package com.needs.api.needsapi.persistence;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Hash index from a term derived from each value, such as a case-folded name,
+ * to the key of the value filed under it
+ * <p>
+ * The index is kept in step by its {@linkplain FileBackedStore store}, which only
+ * changes it while holding its lock, so a lookup made while holding the lock
+ * always agrees with the store, as check-then-insert needs. The terms are in a
+ * {@link ConcurrentHashMap}, so lookups without the lock are O(1) and never see
+ * the index mid-change, only as it was before or after a change.
+ * <p>
+ * Terms are meant to be unique, but files written before they were enforced may
+ * hold values sharing one. The index then answers with the first value filed
+ * and keeps the others in line behind it, so removing one still leaves the term
+ * filed under another.
+ *
+ * @param <K> The key type of the store
+ * @param <V> The value type of the store
+ * @param <T> The term type
+ *
+ * @author Team Swiss Pandas
+ */
+public class UniqueIndex<K,V,T> implements FileBackedStore.Index<K,V> {
+    private final Function<? super V,? extends T> termOf;  // Derives the term of a value, null files nothing
+    private final Map<T,K> keys = new ConcurrentHashMap<>();  // The key filed under each term, read without the lock
+    private final Map<K,T> filed = new HashMap<>();         // The term each key was filed under, guarded by the store's lock
+    private final Map<T,Deque<K>> shared = new HashMap<>(); // Further keys filed under a term in use, guarded by the store's lock
+
+    /**
+     * Creates a Unique Index
+     *
+     * @param termOf Derives the term a value is filed under, or null to leave it out
+     */
+    public UniqueIndex(Function<? super V,? extends T> termOf) {
+        this.termOf = termOf;
+    }
+
+    /**
+     * Retrieves the key of the value filed under a term
+     *
+     * @param term The term, may be null
+     *
+     * @return The key, or null if no value is filed under the term
+     */
+    public K get(T term) {
+        return term == null ? null : keys.get(term);
+    }
+
+    /**
+     * Determines if a value is filed under a term
+     *
+     * @param term The term, may be null
+     *
+     * @return true if a value is filed under the term
+     */
+    public boolean contains(T term) {
+        return term != null && keys.containsKey(term);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void add(K key, V value) {
+        T term = termOf.apply(value);
+        if (term == null)
+            return;
+        filed.put(key, term);
+        K first = keys.putIfAbsent(term, key);
+        if (first != null && !first.equals(key))
+            shared.computeIfAbsent(term, unused -> new ArrayDeque<>()).add(key);
+    }
+
+    /**
+    ** {@inheritDoc}
+     * <br>
+     * The term is the one the key was filed under, the value may have changed since
+     */
+    @Override
+    public void remove(K key, V value) {
+        T term = filed.remove(key);
+        if (term == null)
+            return;
+
+        Deque<K> others = shared.get(term);
+        if (key.equals(keys.get(term))) {
+            if (others == null)
+                keys.remove(term);
+            else
+                keys.put(term, others.poll());
+        }
+        else if (others != null)
+            others.remove(key);
+
+        if (others != null && others.isEmpty())
+            shared.remove(term);
+    }
+
+    /**
+    ** {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        keys.clear();
+        filed.clear();
+        shared.clear();
+    }
+}
@@ -0,0 +1,49 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a conditional update when the stored entity is no longer at the
+ * version the caller expected, because another update came first
+ * <br>
+ * The entity is left as it is. Being an {@link IOException}, it is reported
+ * like any other failure to write by callers that do not handle it.
+ *
+ * @author Team Swiss Pandas
+ */
+public class VersionConflictException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long expected;    // The version the caller expected
+    private final long actual;      // The version stored when the update was refused
+
+    /**
+     * Creates a Version Conflict Exception
+     *
+     * @param expected The version the caller expected
+     * @param actual The version stored
+     */
+    public VersionConflictException(long expected, long actual) {
+        super("Expected version " + expected + " but found " + actual);
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    /**
+     * Retrieves the version the caller expected
+     *
+     * @return The expected version
+     */
+    public long getExpected() {
+        return expected;
+    }
+
+    /**
+     * Retrieves the version stored when the update was refused
+     *
+     * @return The stored version
+     */
+    public long getActual() {
+        return actual;
+    }
+}
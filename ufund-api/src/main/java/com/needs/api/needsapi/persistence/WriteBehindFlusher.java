@@ -0,0 +1,410 @@
+package com.needs.api.needsapi.persistence;
+
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Write-behind layer shared by the file DAOs
+ * <p>
+ * Each DAO registers its file as a {@linkplain Store store} and reports every
+ * mutation with {@link Store#changed()} while still holding its own lock. In
+ * {@link Durability#SYNC SYNC} mode the DAO's save runs immediately, as before.
+ * Otherwise a single flusher thread coalesces all changes made to a store since
+ * its last flush into one write, either every flush interval or as soon as the
+ * configured number of changes has accumulated.
+ * <p>
+ * The flusher serializes a store while holding the DAO's lock (so objects are
+ * never serialized mid-mutation) but writes the bytes to disk outside of it.
+ * Callers that have to wait for the disk ({@link Durability#GROUP_COMMIT GROUP_COMMIT},
+ * or any writer once a store's backlog is full) do so in {@link Store#await()}
+ * after releasing their DAO's lock, so the waiting never blocks the flusher.
+ * <p>
+ * The flusher's own state is guarded by a {@linkplain ReentrantLock lock} and
+ * waited on through its {@linkplain Condition condition} rather than a monitor,
+ * so a writer on a virtual thread waiting for a flush does not pin its carrier.
+ * <p>
+ * Every write is timed into the {@linkplain StoreMetrics metrics} of its file,
+ * and the time a request spends waiting for a flush into its
+ * {@linkplain RequestPhases phases}.
+ *
+ * {@literal @}Component Spring annotation instantiates a single instance of this
+ * class and injects the instance into other classes as needed
+ *
+ * @author Team Swiss Pandas
+ */
+@Component
+public class WriteBehindFlusher {
+    private static final Logger LOG = Logger.getLogger(WriteBehindFlusher.class.getName());
+
+    private final Durability durability;  // When changes must reach the disk
+    private final long interval;        // Milliseconds between flushes of dirty stores
+    private final int batchSize;        // Number of changes to a store that triggers an early flush
+    private final int backlog;          // Number of unflushed changes to a store after which writers wait
+
+    private final List<Store> stores = new CopyOnWriteArrayList<>();
+    private final ReentrantLock state = new ReentrantLock();   // Guards the sequence numbers of every store
+    private final Condition progress = state.newCondition();    // Signalled when a flush is requested or has finished
+    private final ThreadLocal<Map<Store,Long>> deferred = ThreadLocal.withInitial(HashMap::new);
+                                        // Changes the current thread has to wait for once it leaves its locks
+    private Thread flusher;             // Background thread, only started when not in SYNC mode
+    private volatile boolean running;
+
+    /**
+     * Serializes the contents of a store while the DAO's lock is held
+     */
+    @FunctionalInterface
+    public interface Snapshot {
+        /**
+         * @return The complete file contents
+         * @throws IOException if the contents cannot be serialized
+         */
+        byte[] take() throws IOException;
+    }
+
+    /**
+     * Creates a Write Behind Flusher
+     *
+     * @param durability When changes must reach the disk
+     * @param interval Milliseconds between flushes of dirty stores
+     * @param batchSize Number of changes to a store that triggers a flush before the interval is up
+     * @param backlog Number of unflushed changes to a store after which writers wait for the flush
+     */
+    public WriteBehindFlusher(@Value("${persistence.durability:SYNC}") Durability durability,
+                              @Value("${persistence.flush.interval:200}") long interval,
+                              @Value("${persistence.flush.changes:100}") int batchSize,
+                              @Value("${persistence.flush.backlog:1000}") int backlog) {
+        this.durability = durability;
+        this.interval = interval;
+        this.batchSize = Math.max(1, batchSize);
+        this.backlog = Math.max(1, backlog);
+
+        if (durability != Durability.SYNC) {
+            running = true;
+            flusher = new Thread(this::run, "write-behind-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Creates a flusher that writes every change immediately, as the file DAOs
+     * did before write-behind was introduced
+     *
+     * @return A {@link Durability#SYNC SYNC} flusher
+     */
+    public static WriteBehindFlusher synchronous() {
+        return new WriteBehindFlusher(Durability.SYNC, 0, 1, 1);
+    }
+
+    /**
+     * Registers a file to be flushed
+     *
+     * @param lock The lock the DAO holds while mutating and reporting changes
+     * @param filename The file the store is written to
+     * @param save Writes the file directly, used in {@link Durability#SYNC SYNC} mode
+     * @param snapshot Serializes the file contents, used by the flusher thread
+     *
+     * @return The registered {@link Store store}
+     */
+    public Store register(ReentrantLock lock, String filename, Flushable save, Snapshot snapshot) {
+        Store store = new Store(lock, new File(filename), save, snapshot);
+        stores.add(store);
+        return store;
+    }
+
+    /**
+     * Retrieves the durability mode
+     *
+     * @return The {@link Durability durability} this flusher was configured with
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Retrieves the number of changes that have been made in memory but not written yet
+     *
+     * @return The combined backlog of every store
+     */
+    public long getBacklog() {
+        state.lock();
+        try {
+            long total = 0;
+            for (Store store : stores)
+                total += store.changes - store.flushed;
+            return total;
+        }
+        finally {
+            state.unlock();
+        }
+    }
+
+    /**
+     * Main loop of the flusher thread
+     */
+    private void run() {
+        while (running) {
+            state.lock();
+            try {
+                if (!flushRequested())
+                    progress.await(interval, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            finally {
+                state.unlock();
+            }
+            flushAll();
+        }
+    }
+
+    /**
+     * Determines if any store needs to be flushed before the interval is up
+     */
+    private boolean flushRequested() {
+        for (Store store : stores) {
+            // A store whose last flush failed is retried on the interval rather than in a tight loop
+            if (store.failure == null && (store.changes - store.flushed >= batchSize || store.waiters > 0))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes every dirty store
+     */
+    private void flushAll() {
+        for (Store store : stores)
+            store.flush();
+    }
+
+    /**
+     * Waits for the changes the current thread made to reach the disk, if its
+     * durability mode or a full backlog requires it
+     * <br>
+     * Does nothing while the thread still holds a registered DAO lock, so that a DAO
+     * calling into another DAO never waits while blocking the flusher. The
+     * outermost DAO call waits for all of them instead.
+     *
+     * @throws IOException if a flush covering one of the changes failed
+     */
+    void await() throws IOException {
+        Map<Store,Long> tickets = deferred.get();
+        if (tickets.isEmpty())
+            return;
+        for (Store store : stores) {
+            if (store.lock.isHeldByCurrentThread())
+                return;
+        }
+        deferred.remove();
+
+        // Once the flusher has been shut down, nobody else will write the stores
+        if (!running)
+            flushAll();
+
+        long start = System.nanoTime();
+        state.lock();
+        try {
+            for (Map.Entry<Store,Long> ticket : tickets.entrySet()) {
+                Store store = ticket.getKey();
+                store.waiters++;
+                progress.signalAll();
+                try {
+                    while (store.flushed < ticket.getValue()) {
+                        if (store.failure != null && store.failedThrough >= ticket.getValue())
+                            throw new IOException("Write-behind flush failed", store.failure);
+                        if (!running)
+                            throw new IOException("Write-behind flusher has been shut down");
+                        progress.await(interval, TimeUnit.MILLISECONDS);
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for flush", e);
+                }
+                finally {
+                    store.waiters--;
+                }
+            }
+        }
+        finally {
+            state.unlock();
+            RequestPhases.add(RequestPhases.Phase.FLUSH_WAIT, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Stops the flusher thread and writes every store that still has unflushed changes
+     */
+    @PreDestroy
+    public void close() {
+        if (flusher == null)
+            return;
+
+        state.lock();
+        try {
+            running = false;
+            progress.signalAll();
+        }
+        finally {
+            state.unlock();
+        }
+        try {
+            flusher.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+    }
+
+    /**
+     * A file registered with the flusher
+     */
+    public class Store {
+        private final ReentrantLock lock;
+        private final File file;
+        private final Flushable save;
+        private final Snapshot snapshot;
+        private final StoreMetrics metrics; // Times every write of the file
+
+        // All guarded by the flusher's state lock
+        private long changes;       // Sequence number of the latest change
+        private long flushed;       // Sequence number of the latest change written
+        private long failedThrough; // Sequence number covered by the latest failed flush
+        private IOException failure;
+        private int waiters;        // Threads waiting for this store to be flushed
+
+        private Store(ReentrantLock lock, File file, Flushable save, Snapshot snapshot) {
+            this.lock = lock;
+            this.file = file;
+            this.save = save;
+            this.snapshot = snapshot;
+            this.metrics = StoreMetrics.of(file.getName());
+        }
+
+        /**
+         * Records a change to the store
+         * <br>
+         * Must be called while holding the store's lock. In {@link Durability#SYNC SYNC}
+         * mode the file is written before returning.
+         *
+         * @return true if the change was accepted
+         *
+         * @throws IOException when the file cannot be written in {@link Durability#SYNC SYNC} mode
+         */
+        public boolean changed() throws IOException {
+            if (durability == Durability.SYNC) {
+                // the save streams the values to the file, so serializing counts as writing
+                long start = System.nanoTime();
+                save.flush();
+                metrics.wrote(0, System.nanoTime() - start);
+                return true;
+            }
+
+            state.lock();
+            try {
+                long ticket = ++changes;
+                if (durability == Durability.GROUP_COMMIT || ticket - flushed >= backlog)
+                    deferred.get().merge(this, ticket, Math::max);
+                if (ticket - flushed >= batchSize)
+                    progress.signalAll();
+            }
+            finally {
+                state.unlock();
+            }
+            return true;
+        }
+
+        /**
+         * Waits for changes made by the current thread if required, see {@link WriteBehindFlusher#await()}
+         * <br>
+         * Must be called after releasing the store's lock
+         *
+         * @throws IOException if a flush covering the changes failed
+         */
+        public void await() throws IOException {
+            WriteBehindFlusher.this.await();
+        }
+
+        /**
+         * Writes the store if it has unflushed changes
+         * <br>
+         * Serializes under the DAO lock, then writes to a temporary file that is
+         * moved over the real one so a crash never leaves a half written file
+         */
+        private void flush() {
+            long target;
+            byte[] contents;
+            long serialized;
+            try {
+                lock.lock();
+                try {
+                    state.lock();
+                    try {
+                        if (changes == flushed)
+                            return;
+                        target = changes;
+                    }
+                    finally {
+                        state.unlock();
+                    }
+                    long start = System.nanoTime();
+                    contents = snapshot.take();
+                    serialized = System.nanoTime() - start;
+                }
+                finally {
+                    lock.unlock();
+                }
+
+                long start = System.nanoTime();
+                File temp = new File(file.getPath() + ".tmp");
+                Files.write(temp.toPath(), contents);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                metrics.wrote(serialized, System.nanoTime() - start);
+            }
+            catch (IOException e) {
+                LOG.log(Level.SEVERE, "Write-behind flush of " + file + " failed: " + e.getLocalizedMessage());
+                state.lock();
+                try {
+                    failure = e;
+                    failedThrough = changes;
+                    progress.signalAll();
+                }
+                finally {
+                    state.unlock();
+                }
+                return;
+            }
+
+            state.lock();
+            try {
+                flushed = Math.max(flushed, target);
+                failure = null;
+                progress.signalAll();
+            }
+            finally {
+                state.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.needs.api.needsapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Concurrency Limiter class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Controller-tier")
+public class ConcurrencyLimiterTest {
+    private static final long MILLI = 1_000_000;
+
+    @Test
+    public void testRejectsOverLimit() {
+        // Setup
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 2, 1, 10);
+
+        // Invoke
+        int first = limiter.tryAcquire();
+        int second = limiter.tryAcquire();
+        int third = limiter.tryAcquire();
+
+        // Analyze
+        assertEquals(1, first);
+        assertEquals(2, second);
+        assertEquals(-1, third);
+        assertEquals(2, limiter.getInFlight());
+        Map<String,Object> metrics = limiter.metrics();
+        assertEquals(2L, metrics.get("accepted"));
+        assertEquals(1L, metrics.get("rejected"));
+    }
+
+    @Test
+    public void testGrowsWhileLatencyHolds() {
+        // Setup
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 10, 1, 100);
+
+        // Invoke: saturated, every request as fast as the last
+        for (int i = 0; i < 50; ++i) {
+            int inFlight = limiter.tryAcquire();
+            limiter.release(5 * MILLI, Math.max(inFlight, limiter.getLimit()), false);
+        }
+
+        // Analyze
+        assertTrue(limiter.getLimit() > 10);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testShrinksWhenLatencyRises() {
+        // Setup
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 50, 1, 100);
+        for (int i = 0; i < 20; ++i)
+            limiter.release(5 * MILLI, 50, false);
+        int before = limiter.getLimit();
+
+        // Invoke: requests start queueing
+        for (int i = 0; i < 20; ++i)
+            limiter.release(50 * MILLI, limiter.getLimit(), false);
+
+        // Analyze
+        assertTrue(limiter.getLimit() < before);
+    }
+
+    @Test
+    public void testIgnoresLatencyFarBelowLimit() {
+        // Setup
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 20, 1, 100);
+
+        // Invoke
+        for (int i = 0; i < 20; ++i) {
+            limiter.tryAcquire();
+            limiter.release(5 * MILLI, 1, false);
+        }
+
+        // Analyze
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    public void testBacksOffOnFailure() {
+        // Setup
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 20, 15, 100);
+
+        // Invoke
+        for (int i = 0; i < 10; ++i) {
+            limiter.tryAcquire();
+            limiter.release(5 * MILLI, 1, true);
+        }
+
+        // Analyze
+        assertEquals(15, limiter.getLimit());
+        assertEquals(10L, limiter.metrics().get("failed"));
+    }
+}
@@ -0,0 +1,51 @@
+package com.needs.api.needsapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.Map;
+
+import com.needs.api.needsapi.persistence.StoreMetrics;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Test the Diagnostics Controller class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Controller-tier")
+public class DiagnosticsControllerTest {
+    @Test
+    public void testGetStores() {
+        // Setup
+        StoreMetrics.of("diagnostics.json");
+        DiagnosticsController diagnosticsController = new DiagnosticsController(new SlowRequestLog(500));
+
+        // Invoke
+        ResponseEntity<Map<String,Map<String,Object>>> response = diagnosticsController.getStores();
+
+        // Analyze
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody().get("diagnostics.json"));
+        assertEquals(0L, response.getBody().get("diagnostics.json").get("locksAcquired"));
+    }
+
+    @Test
+    public void testGetEndpoints() {
+        // Setup
+        SlowRequestLog slowRequestLog = new SlowRequestLog(500);
+        slowRequestLog.record("GET /needs", 1000000, new long[4]);
+        DiagnosticsController diagnosticsController = new DiagnosticsController(slowRequestLog);
+
+        // Invoke
+        ResponseEntity<Map<String,Map<String,Object>>> response = diagnosticsController.getEndpoints();
+
+        // Analyze
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1L, response.getBody().get("GET /needs").get("requests"));
+    }
+}
@@ -0,0 +1,33 @@
+package com.needs.api.needsapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Test the Limits Controller class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Controller-tier")
+public class LimitsControllerTest {
+    @Test
+    public void testGetLimits() {
+        // Setup
+        LoadSheddingFilter filter = new LoadSheddingFilter(true, 8, 16, 32, 64, 2, 1);
+        LimitsController limitsController = new LimitsController(filter);
+
+        // Invoke
+        ResponseEntity<Map<String,Map<String,Object>>> response = limitsController.getLimits();
+
+        // Analyze
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(8, response.getBody().get("expensive").get("limit"));
+        assertEquals(32, response.getBody().get("cheap").get("limit"));
+    }
+}
@@ -0,0 +1,121 @@
+package com.needs.api.needsapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Load Shedding Filter class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Controller-tier")
+public class LoadSheddingFilterTest {
+    private ConcurrencyLimiter expensive;
+    private ConcurrencyLimiter cheap;
+    private LoadSheddingFilter filter;
+
+    /**
+     * Before each test, create a filter whose limiters let one request through
+     */
+    @BeforeEach
+    public void setupLoadSheddingFilter() {
+        expensive = new ConcurrencyLimiter("expensive", 1, 1, 1);
+        cheap = new ConcurrencyLimiter("cheap", 1, 1, 1);
+        filter = new LoadSheddingFilter(true, expensive, cheap, 2);
+    }
+
+    private static HttpServletRequest request(String method, String path) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn(method);
+        when(request.getContextPath()).thenReturn("");
+        when(request.getRequestURI()).thenReturn(path);
+        return request;
+    }
+
+    @Test
+    public void testLimiterFor() {
+        // Invoke & Analyze
+        assertSame(expensive, filter.limiterFor("GET", "/needs"));
+        assertSame(expensive, filter.limiterFor("GET", "/needs/"));
+        assertSame(expensive, filter.limiterFor("GET", "/needs/progress"));
+        assertSame(expensive, filter.limiterFor("GET", "/leaderboard"));
+        assertSame(expensive, filter.limiterFor("PUT", "/needs/3/fulfill"));
+        assertSame(cheap, filter.limiterFor("GET", "/needs/3"));
+        assertSame(cheap, filter.limiterFor("GET", "/profiles/RyanG"));
+        assertNull(filter.limiterFor("OPTIONS", "/needs"));
+        assertNull(filter.limiterFor("GET", "/limits"));
+        assertNull(filter.limiterFor("GET", "/diagnostics/stores"));
+        assertNull(new LoadSheddingFilter(false, expensive, cheap, 1).limiterFor("GET", "/needs"));
+    }
+
+    @Test
+    public void testShedsOverLimit() throws IOException, ServletException {
+        // Setup: the first request is still being served
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        expensive.tryAcquire();
+
+        // Invoke
+        filter.doFilter(request("GET", "/leaderboard"), response, chain);
+
+        // Analyze
+        verify(response).setStatus(503);
+        verify(response).setHeader("Retry-After", "2");
+        verify(chain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    public void testCheapNotHeldUpByExpensive() throws IOException, ServletException {
+        // Setup
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getStatus()).thenReturn(200);
+        FilterChain chain = mock(FilterChain.class);
+        expensive.tryAcquire();
+
+        // Invoke
+        filter.doFilter(request("GET", "/needs/3"), response, chain);
+
+        // Analyze
+        verify(chain).doFilter(any(), any());
+        verify(response, never()).setStatus(503);
+        assertEquals(0, cheap.getInFlight());
+    }
+
+    @Test
+    public void testReleasesOnException() throws IOException, ServletException {
+        // Setup
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+        doThrow(new IOException()).when(chain).doFilter(any(), any());
+
+        // Invoke
+        try {
+            filter.doFilter(request("PUT", "/needs"), response, chain);
+        }
+        catch (IOException e) {
+            // expected
+        }
+
+        // Analyze
+        assertEquals(0, expensive.getInFlight());
+        assertEquals(1L, expensive.metrics().get("failed"));
+    }
+}
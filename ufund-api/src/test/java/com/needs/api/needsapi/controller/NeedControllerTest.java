@@ -6,8 +6,10 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 import com.needs.api.needsapi.persistence.NeedDAO;
+import com.needs.api.needsapi.persistence.VersionConflictException;
 import com.needs.api.needsapi.model.Need;
 import com.needs.api.needsapi.model.NeedType;
 import com.needs.api.needsapi.model.UrgencyTag;
@@ -52,6 +54,7 @@ public class NeedControllerTest {
         // Analyze
         assertEquals(HttpStatus.OK,response.getStatusCode());
         assertEquals(need,response.getBody());
+        assertEquals("\"0\"",response.getHeaders().getETag());
     }
 
     @Test
@@ -143,12 +146,12 @@ public class NeedControllerTest {
       
         // when updateNeed is called, return true simulating successful
         // update and save
-        when(mockNeedDAO.updateNeed(need)).thenReturn(need);
-        ResponseEntity<Need> response = needController.updateNeed(need);
+        when(mockNeedDAO.updateNeed(need, NeedDAO.ANY_VERSION)).thenReturn(need);
+        ResponseEntity<Need> response = needController.updateNeed(need, null);
         need.setName("Milk Formula");
 
         // Invoke
-        response = needController.updateNeed(need);
+        response = needController.updateNeed(need, null);
 
         // Analyze
         assertEquals(HttpStatus.OK,response.getStatusCode());
@@ -162,25 +165,54 @@ public class NeedControllerTest {
       
         // when updateNeed is called, return true simulating successful
         // update and save
-        when(mockNeedDAO.updateNeed(need)).thenReturn(null);
+        when(mockNeedDAO.updateNeed(need, NeedDAO.ANY_VERSION)).thenReturn(null);
 
         // Invoke
-        ResponseEntity<Need> response = needController.updateNeed(need);
+        ResponseEntity<Need> response = needController.updateNeed(need, null);
 
         // Analyze
         assertEquals(HttpStatus.NOT_FOUND,response.getStatusCode());
     }
 
+    @Test
+    public void testUpdateNeedIfMatch() throws IOException { // updateNeed may throw IOException
+        // Setup
+        Need need = new Need(98,"syringes",NeedType.EQUIPMENT,50.0,1,0, UrgencyTag.LOW, "some description", "image");
+        need.setVersion(4);
+        when(mockNeedDAO.updateNeed(need, 3)).thenReturn(need);
+
+        // Invoke
+        ResponseEntity<Need> response = needController.updateNeed(need, "\"3\"");
+
+        // Analyze
+        assertEquals(HttpStatus.OK,response.getStatusCode());
+        assertEquals("\"4\"",response.getHeaders().getETag());
+    }
+
+    @Test
+    public void testUpdateNeedVersionConflict() throws IOException { // updateNeed may throw IOException
+        // Setup
+        Need need = new Need(98,"syringes",NeedType.EQUIPMENT,50.0,1,0, UrgencyTag.LOW, "some description", "image");
+        doThrow(new VersionConflictException(3, 5)).when(mockNeedDAO).updateNeed(need, 3);
+
+        // Invoke
+        ResponseEntity<Need> response = needController.updateNeed(need, "\"3\"");
+
+        // Analyze
+        assertEquals(HttpStatus.PRECONDITION_FAILED,response.getStatusCode());
+        assertEquals("\"5\"",response.getHeaders().getETag());
+    }
+
     @Test
     public void testUpdateNeedHandleException() throws IOException { // updateNeed may throw IOException
         // Setup
         Need need = new Need(98,"syringes",NeedType.EQUIPMENT,50.0,1,0, UrgencyTag.LOW, "some description", "image");
       
         // When updateNeed is called on the Mock Need DAO, throw an IOException
-        doThrow(new IOException()).when(mockNeedDAO).updateNeed(need);
+        doThrow(new IOException()).when(mockNeedDAO).updateNeed(need, NeedDAO.ANY_VERSION);
 
         // Invoke
-        ResponseEntity<Need> response = needController.updateNeed(need);
+        ResponseEntity<Need> response = needController.updateNeed(need, null);
 
         // Analyze
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,response.getStatusCode());
@@ -297,6 +329,143 @@ public class NeedControllerTest {
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,response.getStatusCode());
     }
 
+    @Test
+    public void testSearchNeedsFuzzy() throws IOException { // findNeedsFuzzy may throw IOException
+        // Setup
+        Need[] needs = new Need[1];
+        needs[0] = new Need(98,"vaccines",NeedType.EQUIPMENT,25.0,1,0, UrgencyTag.LOW, "some description", "image");
+        when(mockNeedDAO.findNeedsFuzzy("vacines")).thenReturn(needs);
+
+        // Invoke
+        ResponseEntity<Need[]> response = needController.searchNeedsFuzzy("vacines");
+
+        // Analyze
+        assertEquals(HttpStatus.OK,response.getStatusCode());
+        assertEquals(needs,response.getBody());
+    }
+
+    @Test
+    public void testSearchNeedsFuzzyHandleException() throws IOException { // findNeedsFuzzy may throw IOException
+        // Setup
+        doThrow(new IOException()).when(mockNeedDAO).findNeedsFuzzy("vacines");
+
+        // Invoke
+        ResponseEntity<Need[]> response = needController.searchNeedsFuzzy("vacines");
+
+        // Analyze
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,response.getStatusCode());
+    }
+
+    @Test
+    public void testRankNeeds() throws IOException { // rankNeeds may throw IOException
+        // Setup
+        Need[] needs = new Need[1];
+        needs[0] = new Need(98,"vaccines",NeedType.EQUIPMENT,25.0,1,0, UrgencyTag.LOW, "Vaccines for newborns", "image");
+        when(mockNeedDAO.rankNeeds("newborn",NeedDAO.MAX_RANKED)).thenReturn(needs);
+
+        // Invoke: k is capped
+        ResponseEntity<Need[]> response = needController.rankNeeds("newborn",1000);
+
+        // Analyze
+        assertEquals(HttpStatus.OK,response.getStatusCode());
+        assertEquals(needs,response.getBody());
+    }
+
+    @Test
+    public void testRankNeedsBadK() throws IOException {
+        // Invoke
+        ResponseEntity<Need[]> response = needController.rankNeeds("newborn",0);
+
+        // Analyze
+        assertEquals(HttpStatus.BAD_REQUEST,response.getStatusCode());
+    }
+
+    @Test
+    public void testRankNeedsHandleException() throws IOException { // rankNeeds may throw IOException
+        // Setup
+        doThrow(new IOException()).when(mockNeedDAO).rankNeeds("newborn",10);
+
+        // Invoke
+        ResponseEntity<Need[]> response = needController.rankNeeds("newborn",10);
+
+        // Analyze
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,response.getStatusCode());
+    }
+
+    @Test
+    public void testQueryNeeds() throws IOException { // queryNeeds may throw IOException
+        // Setup
+        Need[] needs = new Need[1];
+        needs[0] = new Need(98,"tutoring",NeedType.PROGRAM,3.0,10,0, UrgencyTag.HIGH, "some description", "image");
+        when(mockNeedDAO.queryNeeds(EnumSet.of(NeedType.PROGRAM,NeedType.DONATE),EnumSet.noneOf(UrgencyTag.class),
+                                    Double.NEGATIVE_INFINITY,50.0,true)).thenReturn(needs);
+
+        // Invoke
+        ResponseEntity<Need[]> response = needController.queryNeeds(new NeedType[] {NeedType.PROGRAM,NeedType.DONATE},null,null,50.0,true);
+
+        // Analyze
+        assertEquals(HttpStatus.OK,response.getStatusCode());
+        assertEquals(needs,response.getBody());
+    }
+
+    @Test
+    public void testQueryNeedsBadPrices() throws IOException {
+        // Invoke
+        ResponseEntity<Need[]> response = needController.queryNeeds(null,null,50.0,10.0,null);
+
+        // Analyze
+        assertEquals(HttpStatus.BAD_REQUEST,response.getStatusCode());
+    }
+
+    @Test
+    public void testQueryNeedsHandleException() throws IOException { // queryNeeds may throw IOException
+        // Setup
+        doThrow(new IOException()).when(mockNeedDAO).queryNeeds(EnumSet.noneOf(NeedType.class),EnumSet.of(UrgencyTag.HIGH),
+                                                                Double.NEGATIVE_INFINITY,Double.POSITIVE_INFINITY,null);
+
+        // Invoke
+        ResponseEntity<Need[]> response = needController.queryNeeds(null,new UrgencyTag[] {UrgencyTag.HIGH},null,null,null);
+
+        // Analyze
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,response.getStatusCode());
+    }
+
+    @Test
+    public void testSuggestNeeds() throws IOException { // suggestNeeds may throw IOException
+        // Setup
+        Need[] needs = new Need[1];
+        needs[0] = new Need(99,"incubator",NeedType.EQUIPMENT,100.0,1,0, UrgencyTag.LOW, "some description", "image");
+        when(mockNeedDAO.suggestNeeds("inc",NeedDAO.MAX_SUGGESTIONS)).thenReturn(needs);
+
+        // Invoke: k is capped
+        ResponseEntity<Need[]> response = needController.suggestNeeds("inc",1000);
+
+        // Analyze
+        assertEquals(HttpStatus.OK,response.getStatusCode());
+        assertEquals(needs,response.getBody());
+    }
+
+    @Test
+    public void testSuggestNeedsBadK() throws IOException {
+        // Invoke
+        ResponseEntity<Need[]> response = needController.suggestNeeds("inc",0);
+
+        // Analyze
+        assertEquals(HttpStatus.BAD_REQUEST,response.getStatusCode());
+    }
+
+    @Test
+    public void testSuggestNeedsHandleException() throws IOException { // suggestNeeds may throw IOException
+        // Setup
+        doThrow(new IOException()).when(mockNeedDAO).suggestNeeds("inc",5);
+
+        // Invoke
+        ResponseEntity<Need[]> response = needController.suggestNeeds("inc",5);
+
+        // Analyze
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,response.getStatusCode());
+    }
+
     @Test
     public void testDeleteNeed() throws IOException { // deleteNeed may throw IOException
         // Setup
@@ -344,15 +513,15 @@ public class NeedControllerTest {
         //Setup
         int quantity = 2;
         int needId = 98;
-        Need need = new Need(needId,"Syringes",NeedType.EQUIPMENT,50.0,2,0, UrgencyTag.LOW, "some description", "image");
-        Need need2 = new Need(needId,"Syringes",NeedType.EQUIPMENT,50.0,2,quantity, UrgencyTag.LOW, "some description", "image");
-        when(mockNeedDAO.updateNeed(need2)).thenReturn(need2);
+        Need need = new Need(needId,"Syringes",NeedType.EQUIPMENT,50.0,2,quantity, UrgencyTag.LOW, "some description", "image");
+        when(mockNeedDAO.fulfill(needId, 5, true)).thenReturn(quantity);
         when(mockNeedDAO.getNeed(needId)).thenReturn(need);
         //Invoke
-        ResponseEntity<Need> response = needController.fulfillQuanity(98, quantity);
+        ResponseEntity<Need> response = needController.fulfillQuanity(98, 5);
         //Analyze
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(quantity, response.getBody().getQuantityFulfilled());
+        assertEquals("2", response.getHeaders().getFirst(NeedController.QUANTITY_ACCEPTED));
     }
 
     @Test
@@ -360,7 +529,7 @@ public class NeedControllerTest {
         //Setup
         int quantity = 2;
         int needId = 98;
-        when(mockNeedDAO.getNeed(needId)).thenReturn(null);
+        when(mockNeedDAO.fulfill(needId, quantity, true)).thenReturn(-1);
         //Invoke
         ResponseEntity<Need> response = needController.fulfillQuanity(98, quantity);
         //Analyze
@@ -371,13 +540,24 @@ public class NeedControllerTest {
         //Setup
         int quantity = 2;
         int needId = 98;
-        doThrow(new IOException()).when(mockNeedDAO).getNeed(needId);
+        doThrow(new IOException()).when(mockNeedDAO).fulfill(needId, quantity, true);
         //Invoke
         ResponseEntity<Need> response = needController.fulfillQuanity(98, quantity);
         //Analyze
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
     }
     @Test
+    public void testFulfillQuantityFullyFulfilled() throws IOException{
+        //Setup
+        int quantity = 2;
+        int needId = 98;
+        when(mockNeedDAO.fulfill(needId, quantity, true)).thenReturn(0);
+        //Invoke
+        ResponseEntity<Need> response = needController.fulfillQuanity(98, quantity);
+        //Analyze
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+    }
+    @Test
     public void testGetProgress(){
         int needed = 1;
         int fulfilled = 2;
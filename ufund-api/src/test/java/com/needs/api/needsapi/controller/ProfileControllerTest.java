@@ -15,6 +15,7 @@ import java.util.HashMap;
 
 import com.needs.api.needsapi.model.Profile;
 import com.needs.api.needsapi.persistence.ProfileDAO;
+import com.needs.api.needsapi.persistence.VersionConflictException;
 
 /**
  * Test the Profile Controller class
@@ -92,12 +93,12 @@ public class ProfileControllerTest {
         Profile profile = new Profile("Ryan","Garvin","ryangarvin19@gmail.com","New York", "RyanG", null);
         // when update is called, return null simulating an unsuccessful
         // update and save
-        when(mockprofileDAO.updateProfile(profile)).thenReturn(null);
-        ResponseEntity<Profile> response = profileController.updateProfile(profile);
+        when(mockprofileDAO.updateProfile(profile, ProfileDAO.ANY_VERSION)).thenReturn(null);
+        ResponseEntity<Profile> response = profileController.updateProfile(profile, null);
         profile.setFirstName("Bob");
 
         // Invoke
-        response = profileController.updateProfile(profile);
+        response = profileController.updateProfile(profile, null);
 
         // Analyze
         assertEquals(HttpStatus.NOT_FOUND,response.getStatusCode());
@@ -108,29 +109,57 @@ public class ProfileControllerTest {
         // Setup
         Profile profile = new Profile("Ryan","Garvin","ryangarvin19@gmail.com","New York", "RyanG", null);
         // When getProfile is called on the Mock Profile DAO, throw an IOException
-        doThrow(new IOException()).when(mockprofileDAO).updateProfile(profile);
-        ResponseEntity<Profile> response = profileController.updateProfile(profile);
+        doThrow(new IOException()).when(mockprofileDAO).updateProfile(profile, ProfileDAO.ANY_VERSION);
+        ResponseEntity<Profile> response = profileController.updateProfile(profile, null);
         profile.setFirstName("Bob");
 
         // Invoke
-        response = profileController.updateProfile(profile);
+        response = profileController.updateProfile(profile, null);
 
         // Analyze
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR,response.getStatusCode());
     }
 
+    @Test
+    public void testUpdateProfileVersionConflict() throws IOException { 
+        // Setup
+        Profile profile = new Profile("Ryan","Garvin","ryangarvin19@gmail.com","New York", "RyanG", null);
+        // when the profile was updated since version 2, the update is refused
+        doThrow(new VersionConflictException(2, 3)).when(mockprofileDAO).updateProfile(profile, 2);
+
+        // Invoke
+        ResponseEntity<Profile> response = profileController.updateProfile(profile, "\"2\"");
+
+        // Analyze
+        assertEquals(HttpStatus.PRECONDITION_FAILED,response.getStatusCode());
+        assertEquals("\"3\"",response.getHeaders().getETag());
+    }
+
+    @Test
+    public void testUpdateProfileWeakIfMatch() throws IOException { 
+        // Setup
+        Profile profile = new Profile("Ryan","Garvin","ryangarvin19@gmail.com","New York", "RyanG", null);
+        doThrow(new VersionConflictException(ETags.NO_MATCH, 0)).when(mockprofileDAO).updateProfile(profile, ETags.NO_MATCH);
+
+        // Invoke
+        ResponseEntity<Profile> response = profileController.updateProfile(profile, "W/\"0\"");
+
+        // Analyze
+        assertEquals(HttpStatus.PRECONDITION_FAILED,response.getStatusCode());
+    }
+
     @Test
     public void testUpdateProfile() throws IOException { 
         // Setup
         Profile profile = new Profile("Ryan","Garvin","ryangarvin19@gmail.com","New York", "RyanG", null);
         // when update is called, return true simulating successful
         // update and save
-        when(mockprofileDAO.updateProfile(profile)).thenReturn(profile);
-        ResponseEntity<Profile> response = profileController.updateProfile(profile);
+        when(mockprofileDAO.updateProfile(profile, ProfileDAO.ANY_VERSION)).thenReturn(profile);
+        ResponseEntity<Profile> response = profileController.updateProfile(profile, null);
         profile.setFirstName("Bob");
 
         // Invoke
-        response = profileController.updateProfile(profile);
+        response = profileController.updateProfile(profile, null);
 
         // Analyze
         assertEquals(HttpStatus.OK,response.getStatusCode());
@@ -238,12 +267,10 @@ public class ProfileControllerTest {
         Profile profile = new Profile("Ryan","Garvin","ryangarvin19@gmail.com","New York", "RyanG", contributions);
         int needId = 1;
         int quantity = 2;
-        Profile profile2 = new Profile("Ryan","Garvin","ryangarvin19@gmail.com","New York", "RyanG", contributions);
-        profile2.addContribution(needId, quantity);
-        when(mockprofileDAO.updateProfile(profile2)).thenReturn(profile2);
-        when(mockprofileDAO.getProfile(profile.getUserName())).thenReturn(profile);
-        when(mockprofileDAO.getProfile("fakeUser")).thenReturn(null);
-        doThrow(new IOException()).when(mockprofileDAO).getProfile("errorTest");
+        profile.addContribution(needId, quantity);
+        when(mockprofileDAO.addContribution(profile.getUserName(), needId, quantity)).thenReturn(profile);
+        when(mockprofileDAO.addContribution("fakeUser", needId, quantity)).thenReturn(null);
+        doThrow(new IOException()).when(mockprofileDAO).addContribution("errorTest", needId, quantity);
         
         //Invoke
         ResponseEntity<HttpStatus> response = profileController.addContribution(profile.getUserName(), needId, quantity);
@@ -0,0 +1,237 @@
+package com.needs.api.needsapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+import com.needs.api.needsapi.persistence.NeedFileDAO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Single Flight class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Controller-tier")
+public class SingleFlightTest {
+    private SingleFlight singleFlight;
+    private ExecutorService pool;
+
+    @BeforeEach
+    public void setupSingleFlight() {
+        singleFlight = new SingleFlight(true);
+        pool = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    public void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Waits for the latch inside a computation, which may only throw IOException
+     */
+    private static void hold(CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Starts a read of the key that blocks until released, and waits until it computes
+     */
+    private Future<Object> startBlocked(String key, Object result, CountDownLatch release, AtomicInteger computations)
+        throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<Object> leader = pool.submit(() -> singleFlight.share(key, () -> {
+            computations.incrementAndGet();
+            started.countDown();
+            hold(release);
+            return result;
+        }));
+        assertEquals(true, started.await(5, TimeUnit.SECONDS));
+        return leader;
+    }
+
+    @Test
+    public void testConcurrentReadsShareOneComputation() throws Exception {
+        // Setup
+        Object result = new Object();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+        Future<Object> leader = startBlocked("/needs", result, release, computations);
+
+        // Invoke
+        List<Future<Object>> followers = new ArrayList<>();
+        for (int i = 0; i < 5; ++i)
+            followers.add(pool.submit(() -> singleFlight.share("/needs", () -> {
+                computations.incrementAndGet();
+                return new Object();
+            })));
+        while (singleFlight.getJoined() < 5)
+            Thread.sleep(1);
+        release.countDown();
+
+        // Analyze
+        assertSame(result, leader.get());
+        for (Future<Object> follower : followers)
+            assertSame(result, follower.get());
+        assertEquals(1, computations.get());
+        assertEquals(1, singleFlight.getComputed());
+    }
+
+    @Test
+    public void testDifferentKeysComputedApart() throws Exception {
+        // Setup
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+        Future<Object> leader = startBlocked("/needs/?name=a", "a", release, computations);
+
+        // Invoke
+        Object other = singleFlight.share("/needs/?name=b", () -> "b");
+        release.countDown();
+
+        // Analyze
+        assertEquals("b", other);
+        assertEquals("a", leader.get());
+        assertEquals(0, singleFlight.getJoined());
+    }
+
+    @Test
+    public void testNoSharingAcrossWrite() throws Exception {
+        // Setup
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+        Future<Object> leader = startBlocked("/leaderboard", "before", release, computations);
+
+        // Invoke
+        singleFlight.beginWrite();
+        singleFlight.endWrite();
+        Object after = singleFlight.share("/leaderboard", () -> "after");
+        release.countDown();
+
+        // Analyze
+        assertEquals("after", after);
+        assertEquals("before", leader.get());
+    }
+
+    @Test
+    public void testNoSharingAcrossBackgroundWrite() throws Exception {
+        // Setup
+        ObjectMapper mockObjectMapper = mock(ObjectMapper.class);
+        when(mockObjectMapper
+            .readValue(new File("data/needs.json"),Need[].class))
+                .thenReturn(new Need[] {new Need(97,"syringes",NeedType.EQUIPMENT,20.0,50,0,UrgencyTag.LOW,"some description","image")});
+        NeedFileDAO needFileDAO = new NeedFileDAO("data/needs.json",mockObjectMapper);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+        Future<Object> leader = startBlocked("/needs/progress", "before", release, computations);
+
+        // Invoke: written outside of any request, as the escrow materializer does
+        needFileDAO.fulfill(97, 5, false);
+        Object after = singleFlight.share("/needs/progress", () -> "after");
+        release.countDown();
+
+        // Analyze
+        assertEquals("after", after);
+        assertEquals("before", leader.get());
+        assertEquals(0, singleFlight.getJoined());
+    }
+
+    @Test
+    public void testFilterBumpsVersionAroundWrites() throws IOException {
+        // Setup
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("PUT");
+        FilterChain chain = mock(FilterChain.class);
+        AtomicInteger computations = new AtomicInteger();
+        SingleFlight.Computation<Object> computation = () -> {
+            computations.incrementAndGet();
+            // a write finishes while this read is computed
+            try {
+                singleFlight.doFilter(request, mock(HttpServletResponse.class), chain);
+            }
+            catch (ServletException e) {
+                throw new IOException(e);
+            }
+            return null;
+        };
+
+        // Invoke, the second read only joins if the first is still in progress
+        singleFlight.share("/needs/progress", computation);
+        singleFlight.share("/needs/progress", computation);
+
+        // Analyze
+        assertEquals(2, computations.get());
+        assertEquals(0, singleFlight.getJoined());
+    }
+
+    @Test
+    public void testFailureShared() throws Exception {
+        // Setup
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Object> leader = pool.submit(() -> singleFlight.share("/needs", () -> {
+            started.countDown();
+            hold(release);
+            throw new IOException("disk");
+        }));
+        assertEquals(true, started.await(5, TimeUnit.SECONDS));
+
+        // Invoke
+        Future<Object> follower = pool.submit(() -> singleFlight.share("/needs", () -> "fresh"));
+        while (singleFlight.getJoined() < 1)
+            Thread.sleep(1);
+        release.countDown();
+
+        // Analyze
+        Exception e = assertThrows(Exception.class, () -> follower.get());
+        assertEquals(IOException.class, e.getCause().getClass());
+        assertThrows(Exception.class, () -> leader.get());
+        assertEquals("fresh", singleFlight.share("/needs", () -> "fresh"));
+    }
+
+    @Test
+    public void testDisabledComputesEveryRead() throws IOException {
+        // Setup
+        SingleFlight disabled = SingleFlight.disabled();
+        AtomicInteger computations = new AtomicInteger();
+
+        // Invoke
+        disabled.share("/needs", computations::incrementAndGet);
+        disabled.share("/needs", computations::incrementAndGet);
+
+        // Analyze
+        assertEquals(2, computations.get());
+        assertEquals(0, disabled.getComputed());
+    }
+}
@@ -0,0 +1,91 @@
+package com.needs.api.needsapi.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.needs.api.needsapi.persistence.RequestPhases;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Test the Slow Request Log class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Controller-tier")
+public class SlowRequestLogTest {
+    private static HttpServletRequest request(String method, String pattern) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn(method);
+        when(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE)).thenReturn(pattern);
+        return request;
+    }
+
+    @Test
+    public void testRecord() {
+        // Setup
+        SlowRequestLog log = new SlowRequestLog(5);
+
+        // Invoke: 4 ms waiting for a lock, 1 ms serializing and 2 ms writing of 10 ms
+        log.record("PUT /needs/{id}/fulfill", 10000000, new long[] {4000000, 1000000, 2000000, 0});
+        log.record("PUT /needs/{id}/fulfill", 2000000, new long[] {0, 0, 0, 0});
+
+        // Analyze
+        Map<String,Object> metrics = log.metrics().get("PUT /needs/{id}/fulfill");
+        assertEquals(2L, metrics.get("requests"));
+        assertEquals(1L, metrics.get("slowRequests"));
+        assertEquals(12.0, metrics.get("totalMillis"));
+        assertEquals(10.0, metrics.get("maxMillis"));
+        assertEquals(4.0, metrics.get("lockWaitMillis"));
+        assertEquals(5.0, metrics.get("computeMillis"));
+        assertEquals(1.0, metrics.get("serializeMillis"));
+        assertEquals(2.0, metrics.get("diskWriteMillis"));
+        assertEquals(0.0, metrics.get("flushWaitMillis"));
+    }
+
+    @Test
+    public void testThreshold() {
+        // Setup
+        SlowRequestLog everything = new SlowRequestLog(0);
+        SlowRequestLog nothing = new SlowRequestLog(-1);
+
+        // Invoke
+        everything.record("GET /needs", 1000, new long[4]);
+        nothing.record("GET /needs", 1000000000, new long[4]);
+
+        // Analyze
+        assertEquals(1L, everything.metrics().get("GET /needs").get("slowRequests"));
+        assertEquals(0L, nothing.metrics().get("GET /needs").get("slowRequests"));
+    }
+
+    @Test
+    public void testDoFilter() throws IOException, ServletException {
+        // Setup
+        SlowRequestLog log = new SlowRequestLog(500);
+        FilterChain chain = (request, response) -> assertFalse(RequestPhases.begin());  // the filter is recording
+
+        // Invoke
+        log.doFilter(request("GET", "/needs/{id}"), mock(HttpServletResponse.class), chain);
+        log.doFilter(request("GET", "/needs/{id}"), mock(HttpServletResponse.class), chain);
+        log.doFilter(request("GET", null), mock(HttpServletResponse.class), chain);
+
+        // Analyze: requests are grouped by pattern, the recording ended with the request
+        assertEquals(2L, log.metrics().get("GET /needs/{id}").get("requests"));
+        assertEquals(1L, log.metrics().get("GET unmapped").get("requests"));
+        assertTrue(RequestPhases.begin());
+        RequestPhases.end();
+    }
+}
@@ -116,6 +116,42 @@ public class BasketFileDAOTest {
         assertNull(username);
     }
 
+    @Test
+    public void testGetId() {
+        // Invoke: an equal username that is not the same string
+        int id = assertDoesNotThrow(() -> basketFileDAO.getId(new String("mark")), "Unexpected exception thrown");
+
+        // Analzye
+        assertEquals(1,id);
+    }
+
+    @Test
+    public void testGetIdFakeUser() {
+        // Invoke
+        int id = assertDoesNotThrow(() -> basketFileDAO.getId("nobody"), "Unexpected exception thrown");
+
+        // Analzye
+        assertEquals(-1,id);
+    }
+
+    @Test
+    public void testGetIdAfterSetUsername() throws IOException {
+        // Setup
+        basketFileDAO.setUsername(0, "thomas");
+
+        // Invoke
+        int renamed = basketFileDAO.getId("thomas");
+        int previous = basketFileDAO.getId("tom");
+        int created = basketFileDAO.createBasket("mike").getId();
+        basketFileDAO.deleteBasket(2);
+
+        // Analzye
+        assertEquals(0,renamed);
+        assertEquals(-1,previous);
+        assertEquals(created,basketFileDAO.getId("mike"));
+        assertEquals(-1,basketFileDAO.getId("john"));
+    }
+
     @Test
     public void testAddNeeds() {
         // Invoke
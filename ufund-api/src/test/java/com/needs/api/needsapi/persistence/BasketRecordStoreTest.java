@@ -0,0 +1,159 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.FundingBasket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Basket Record Store class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class BasketRecordStoreTest {
+    File directory;
+    ObjectMapper objectMapper;
+    BasketRecordStore records;
+    FundingBasket[] testBaskets;
+
+    /**
+     * Before each test, import three baskets into a fresh temporary directory
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupBasketRecordStore() throws IOException {
+        directory = new File(Files.createTempDirectory("baskets").toFile(), "records");
+        objectMapper = new ObjectMapper();
+        testBaskets = new FundingBasket[3];
+        testBaskets[0] = new FundingBasket(1, "tom");
+        testBaskets[1] = new FundingBasket(2, "mark");
+        testBaskets[1].addNeed(1,1);
+        testBaskets[1].addNeed(2,2);
+        testBaskets[2] = new FundingBasket(3, "john");
+
+        records = new BasketRecordStore(directory.getPath(), 2, objectMapper);
+        records.importAll(testBaskets);
+        records.open();
+    }
+
+    @Test
+    public void testDisabled() {
+        assertFalse(new BasketRecordStore("", 2, objectMapper).isEnabled());
+        assertTrue(records.isEnabled());
+    }
+
+    @Test
+    public void testOpenReadsOnlyIndex() {
+        // Analyze
+        assertTrue(records.exists());
+        assertEquals(3, records.size());
+        assertEquals(3, records.maxId());
+        assertEquals(0, records.resident());
+        assertEquals(2, records.idOf("mark"));
+        assertEquals(-1, records.idOf("nobody"));
+    }
+
+    @Test
+    public void testFaultInAndEvict() {
+        // Invoke
+        FundingBasket mark = records.get(2);
+        records.get(1);
+        records.get(3);
+
+        // Analyze
+        assertEquals(2, mark.getNeeds().size());
+        assertEquals(2, records.resident());
+        assertNull(records.get(4));
+    }
+
+    @Test
+    public void testWriteSurvivesEviction() throws IOException {
+        // Setup
+        records.get(1).addNeed(5, 3);
+        records.write(1);
+
+        // Invoke: touch enough other baskets to evict basket 1
+        records.get(2);
+        records.get(3);
+        FundingBasket reread = records.get(1);
+
+        // Analyze
+        assertEquals(3, reread.getNeeds().get(5));
+    }
+
+    @Test
+    public void testPutRemoveAndOwnerChange() throws IOException {
+        // Invoke
+        records.put(4, new FundingBasket(4, "anna"));
+        records.write(4);
+        records.remove(1);
+        records.get(2).setUsername("marcus");
+        records.write(2);
+
+        BasketRecordStore reopened = new BasketRecordStore(directory.getPath(), 2, objectMapper);
+        reopened.open();
+
+        // Analyze
+        assertEquals(3, reopened.size());
+        assertFalse(reopened.containsKey(1));
+        assertFalse(new File(directory, "1.json").exists());
+        assertEquals(4, reopened.idOf("anna"));
+        assertEquals(2, reopened.idOf("marcus"));
+        assertEquals(-1, reopened.idOf("mark"));
+        assertEquals("anna", reopened.get(4).getUsername());
+    }
+
+    @Test
+    public void testMissingRecordIsAbsent() throws IOException {
+        // Setup: the index names basket 4, but its record was never written
+        records.put(4, new FundingBasket(4, "anna"));
+        BasketRecordStore reopened = new BasketRecordStore(directory.getPath(), 2, objectMapper);
+        reopened.open();
+
+        // Invoke
+        FundingBasket basket = reopened.get(4);
+
+        // Analyze
+        assertNull(basket);
+        assertNotNull(reopened.get(2));
+    }
+
+    @Test
+    public void testBasketFileDAORecordMode() throws IOException {
+        // Setup
+        ObjectMapper mockObjectMapper = mock(ObjectMapper.class);
+        when(mockObjectMapper
+            .readValue(new File("data/baskets.json"),FundingBasket[].class))
+                .thenReturn(testBaskets);
+        BasketRecordStore empty = new BasketRecordStore(new File(directory.getParentFile(), "dao").getPath(), 2, objectMapper);
+        BasketFileDAO basketFileDAO = new BasketFileDAO("data/baskets.json",mockObjectMapper,mock(NeedDAO.class),
+                                                        WriteBehindFlusher.synchronous(),empty);
+
+        // Invoke
+        FundingBasket created = basketFileDAO.createBasket("anna");
+        basketFileDAO.addNeed(2, 7, 1);
+
+        // Analyze
+        assertEquals(4, created.getId());
+        assertEquals(4, basketFileDAO.getId("anna"));
+        assertEquals(2, basketFileDAO.getId("mark"));
+        assertEquals(1, basketFileDAO.getQuantity(2, 7));
+        assertNotNull(basketFileDAO.getBasket(1));
+        assertTrue(empty.resident() <= 2);
+    }
+}
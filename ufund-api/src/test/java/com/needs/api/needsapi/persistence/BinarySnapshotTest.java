@@ -0,0 +1,245 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.FundingBasket;
+import com.needs.api.needsapi.model.Login;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.Profile;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Binary Snapshot class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class BinarySnapshotTest {
+    File directory;
+    File json;
+    ObjectMapper objectMapper;
+    Need[] testNeeds;
+
+    /**
+     * Before each test, write three needs to a JSON file in a fresh temporary directory
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupBinarySnapshot() throws IOException {
+        directory = Files.createTempDirectory("snapshot").toFile();
+        json = new File(directory, "needs.json");
+        objectMapper = new ObjectMapper();
+        testNeeds = new Need[3];
+        testNeeds[0] = new Need(1, "Boots", NeedType.EQUIPMENT, 20.5, 4, 1, UrgencyTag.HIGH, "Warm boots", "boots.png");
+        testNeeds[1] = new Need(2, "Tutoring", NeedType.PROGRAM, 0, 10, 0, UrgencyTag.LOW, null, "boots.png");
+        testNeeds[2] = new Need(3, "Blankets", NeedType.DONATE, 5, 50, 50, UrgencyTag.HIGH, "Wool", "boots.png");
+        objectMapper.writeValue(json, testNeeds);
+    }
+
+    private Need[] load(BinarySnapshot snapshots, BinarySnapshot.JsonLoader<Need> loader) throws IOException {
+        List<Need> needs = new ArrayList<>();
+        snapshots.load(json, SnapshotCodecs.NEEDS, needs::add, loader);
+        return needs.toArray(new Need[0]);
+    }
+
+    private void readJson(Consumer<? super Need> sink) throws IOException {
+        new JsonStreams(true).read(objectMapper, json, Need.class, sink);
+    }
+
+    private void assertSameNeeds(Need[] expected, Need[] actual) throws IOException {
+        assertEquals(objectMapper.writeValueAsString(expected), objectMapper.writeValueAsString(actual));
+    }
+
+    @Test
+    public void testNeedRoundTrip() throws IOException {
+        // Setup
+        File snapshot = BinarySnapshot.snapshotFile(json);
+
+        // Invoke
+        BinarySnapshot.write(snapshot, SnapshotCodecs.NEEDS, Arrays.asList(testNeeds), json);
+        Need[] read = BinarySnapshot.read(snapshot, SnapshotCodecs.NEEDS, json);
+
+        // Analyze
+        assertSameNeeds(testNeeds, read);
+        assertNull(read[1].getDescription());
+        assertEquals(testNeeds[0].getUrgencyImage(), read[0].getUrgencyImage());
+    }
+
+    @Test
+    public void testOtherEntitiesRoundTrip() throws IOException {
+        // Setup
+        FundingBasket basket = new FundingBasket(7, "mark");
+        basket.addNeed(1, 3);
+        Login login = new Login("mark", "secret", 7);
+        HashMap<Integer,Integer> contributions = new HashMap<>();
+        contributions.put(2, 5);
+        Profile profile = new Profile("Mark", "Smith", "mark@example.com", "USA", "mark", contributions);
+        profile.switchPrivacy();
+        Profile bare = new Profile("Anna", null, null, null, "anna", null);
+        File snapshot = new File(directory, "other.bin");
+
+        // Invoke & Analyze
+        BinarySnapshot.write(snapshot, SnapshotCodecs.BASKETS, List.of(basket), null);
+        assertEquals(objectMapper.writeValueAsString(new FundingBasket[]{basket}),
+                     objectMapper.writeValueAsString(BinarySnapshot.read(snapshot, SnapshotCodecs.BASKETS, null)));
+
+        BinarySnapshot.write(snapshot, SnapshotCodecs.LOGINS, List.of(login), null);
+        assertEquals(objectMapper.writeValueAsString(new Login[]{login}),
+                     objectMapper.writeValueAsString(BinarySnapshot.read(snapshot, SnapshotCodecs.LOGINS, null)));
+
+        BinarySnapshot.write(snapshot, SnapshotCodecs.PROFILES, List.of(profile, bare), null);
+        Profile[] profiles = BinarySnapshot.read(snapshot, SnapshotCodecs.PROFILES, null);
+        assertEquals(objectMapper.writeValueAsString(new Profile[]{profile, bare}), objectMapper.writeValueAsString(profiles));
+        assertTrue(profiles[0].getIsPrivate());
+        assertNull(profiles[1].getContributions());
+    }
+
+    @Test
+    public void testStringTableStoresRepeatsOnce() {
+        // Setup
+        BinarySnapshot.StringTable strings = new BinarySnapshot.StringTable();
+
+        // Invoke
+        int first = strings.indexOf("boots.png");
+        int second = strings.indexOf("boots.png");
+        int other = strings.indexOf("coat.png");
+
+        // Analyze
+        assertEquals(first, second);
+        assertEquals(1, other);
+        assertEquals(-1, strings.indexOf(null));
+        assertEquals(2, strings.size());
+    }
+
+    @Test
+    public void testRejectsCorruptAndForeignSnapshots() throws IOException {
+        // Setup
+        File snapshot = BinarySnapshot.snapshotFile(json);
+        BinarySnapshot.write(snapshot, SnapshotCodecs.NEEDS, Arrays.asList(testNeeds), null);
+
+        // Invoke & Analyze: another entity type
+        assertThrows(IOException.class, () -> BinarySnapshot.read(snapshot, SnapshotCodecs.LOGINS, null));
+
+        // Invoke & Analyze: another schema version
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(4);
+            file.writeShort(BinarySnapshot.VERSION + 1);
+        }
+        assertThrows(IOException.class, () -> BinarySnapshot.read(snapshot, SnapshotCodecs.NEEDS, null));
+
+        // Invoke & Analyze: a flipped byte in the body
+        BinarySnapshot.write(snapshot, SnapshotCodecs.NEEDS, Arrays.asList(testNeeds), null);
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        assertThrows(IOException.class, () -> BinarySnapshot.read(snapshot, SnapshotCodecs.NEEDS, null));
+    }
+
+    @Test
+    public void testLoadPrefersCurrentSnapshot() throws IOException {
+        // Setup
+        BinarySnapshot snapshots = new BinarySnapshot(true);
+        AtomicInteger jsonLoads = new AtomicInteger();
+        BinarySnapshot.JsonLoader<Need> loader = sink -> {
+            jsonLoads.incrementAndGet();
+            readJson(sink);
+        };
+
+        // Invoke: the first load reads JSON and takes a snapshot, the second uses it
+        Need[] first = load(snapshots, loader);
+        Need[] second = load(snapshots, loader);
+
+        // Analyze
+        assertTrue(BinarySnapshot.snapshotFile(json).exists());
+        assertEquals(1, jsonLoads.get());
+        assertSameNeeds(first, second);
+
+        // Invoke: the JSON file changes, so the snapshot is stale
+        objectMapper.writeValue(json, new Need[]{testNeeds[0]});
+        json.setLastModified(json.lastModified() + 2000);
+        Need[] third = load(snapshots, loader);
+
+        // Analyze
+        assertEquals(2, jsonLoads.get());
+        assertEquals(1, third.length);
+    }
+
+    @Test
+    public void testLoadFallsBackOnCorruptSnapshot() throws IOException {
+        // Setup
+        BinarySnapshot snapshots = new BinarySnapshot(true);
+        File snapshot = BinarySnapshot.snapshotFile(json);
+        Files.write(snapshot.toPath(), new byte[]{1, 2, 3});
+
+        // Invoke
+        Need[] needs = load(snapshots, this::readJson);
+
+        // Analyze: the JSON file was used and the snapshot replaced
+        assertSameNeeds(testNeeds, needs);
+        assertSameNeeds(testNeeds, BinarySnapshot.read(snapshot, SnapshotCodecs.NEEDS, json));
+    }
+
+    @Test
+    public void testDisabledNeverTouchesSnapshot() throws IOException {
+        // Invoke
+        Need[] needs = load(BinarySnapshot.disabled(), this::readJson);
+
+        // Analyze
+        assertEquals(3, needs.length);
+        assertFalse(BinarySnapshot.snapshotFile(json).exists());
+    }
+
+    @Test
+    public void testConverterRoundTrip() throws IOException {
+        // Setup
+        File snapshot = new File(directory, "converted.bin");
+        File back = new File(directory, "back.json");
+
+        // Invoke
+        int written = SnapshotConverter.toBinary(SnapshotCodecs.NEEDS, json, snapshot, objectMapper);
+        int read = SnapshotConverter.toJson(SnapshotCodecs.NEEDS, snapshot, back, objectMapper);
+
+        // Analyze
+        assertEquals(3, written);
+        assertEquals(3, read);
+        assertSameNeeds(testNeeds, objectMapper.readValue(back, Need[].class));
+    }
+
+    @Test
+    public void testNeedFileDAOLoadsSnapshot() throws IOException {
+        // Setup: a snapshot that differs from what the JSON loader would return
+        BinarySnapshot.write(BinarySnapshot.snapshotFile(json), SnapshotCodecs.NEEDS, List.of(testNeeds[2]), json);
+
+        // Invoke
+        NeedFileDAO needFileDAO = new NeedFileDAO(json.getPath(), objectMapper, null,
+                                                  WriteBehindFlusher.synchronous(), new BinarySnapshot(true));
+
+        // Analyze
+        assertEquals(1, needFileDAO.getNeeds().length);
+        assertEquals("Blankets", needFileDAO.getNeed(3).getName());
+    }
+}
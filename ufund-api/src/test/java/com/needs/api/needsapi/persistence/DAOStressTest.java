@@ -0,0 +1,376 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.FundingBasket;
+import com.needs.api.needsapi.model.Login;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.Profile;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Hammers each file DAO from many threads with a random mix of operations, then
+ * checks that no update was lost, ids are unique, no need is fulfilled past its
+ * cap, and the data file, read back by a fresh DAO, holds what was in memory
+ * <p>
+ * Changes go through an {@link Durability#ASYNC ASYNC} flusher with a short
+ * interval and a small backlog, so flushes and backpressure run alongside the
+ * operations. Every run prints its throughput, so the suite doubles as a
+ * regression benchmark. The defaults are sized for the regular build; larger
+ * runs can be requested, for example
+ * {@code mvn test -Dtest=DAOStressTest -Dstress.threads=64 -Dstress.operations=5000}.
+ * Each thread draws from its own random generator seeded from {@code stress.seed},
+ * printed with the results so a failing mix can be replayed.
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class DAOStressTest {
+    private static final int THREADS = Integer.getInteger("stress.threads", 8);
+    private static final int OPERATIONS = Integer.getInteger("stress.operations", 300);
+    private static final long SEED = Long.getLong("stress.seed", System.nanoTime());
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private File directory;
+    private WriteBehindFlusher flusher;
+
+    /**
+     * The operations one thread runs
+     */
+    @FunctionalInterface
+    private interface Worker {
+        /**
+         * @param thread The thread's number, from 0
+         * @param random The thread's own random generator
+         * @throws Exception if an operation failed
+         */
+        void run(int thread, Random random) throws Exception;
+    }
+
+    @BeforeEach
+    public void setupDirectory() throws IOException {
+        directory = Files.createTempDirectory("dao-stress").toFile();
+        flusher = new WriteBehindFlusher(Durability.ASYNC, 5, 10, 50);
+    }
+
+    /**
+     * Runs the worker on every thread at once, fails if any of them threw, and
+     * prints the throughput
+     */
+    private void hammer(String name, Worker worker) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; ++thread) {
+            final int id = thread;
+            results.add(pool.submit(() -> {
+                start.await();
+                worker.run(id, new Random(SEED + id));
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<Void> result : results)
+            result.get();  // rethrows the first failure of a thread
+        long nanos = System.nanoTime() - begin;
+        pool.shutdown();
+        flusher.close();
+
+        System.out.printf("%-9s %3d threads %7d ops %10.0f ops/s (stress.seed=%d)%n", name, THREADS,
+                          THREADS * OPERATIONS, THREADS * (double)OPERATIONS * 1e9 / nanos, SEED);
+    }
+
+    @Test
+    public void testNeeds() throws Exception {
+        // Setup: a few needs with small caps every thread fulfills and reprices
+        File file = new File(directory, "needs.json");
+        int initial = 8;
+        Need[] needs = new Need[initial];
+        for (int id = 1; id <= initial; ++id)
+            needs[id - 1] = new Need(id, "need" + id, NeedType.EQUIPMENT, 10.0, 40, 0, UrgencyTag.LOW, "description", "image");
+        objectMapper.writeValue(file, needs);
+        NeedFileDAO dao = new NeedFileDAO(file.getPath(), objectMapper, null, flusher);
+
+        Map<Integer,AtomicInteger> accepted = new ConcurrentHashMap<>();
+        for (int id = 1; id <= initial; ++id)
+            accepted.put(id, new AtomicInteger());
+        Set<Integer> created = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+
+        // Invoke
+        hammer("needs", (thread, random) -> {
+            for (int i = 0; i < OPERATIONS; ++i) {
+                int op = random.nextInt(100);
+                int id = 1 + random.nextInt(initial);
+                if (op < 45) {
+                    int quantity = 1 + random.nextInt(3);
+                    accepted.get(id).addAndGet(Math.max(0, dao.fulfill(id, quantity, true)));
+                }
+                else if (op < 60) {
+                    // names collide across threads, only one of each may be created
+                    Need need = new Need(0, "stress" + random.nextInt(THREADS * 10), NeedType.EQUIPMENT, 5.0, 10, 0, UrgencyTag.LOW, "description", "image");
+                    Need newNeed = dao.createNeed(need);
+                    if (newNeed == null)
+                        duplicates.incrementAndGet();
+                    else
+                        assertTrue(created.add(newNeed.getId()), "id " + newNeed.getId() + " assigned twice");
+                }
+                else if (op < 70) {
+                    // reprices without touching the quantities, which must be kept
+                    dao.updateNeed(new Need(id, null, null, 10.0 + random.nextInt(10), 0, 0, UrgencyTag.LOW, null, null));
+                }
+                else if (op < 78) {
+                    for (Integer stress : created) {
+                        if (random.nextBoolean()) {
+                            dao.deleteNeed(stress);
+                            break;
+                        }
+                    }
+                }
+                else {
+                    assertNotNull(dao.getNeeds());
+                    dao.findNeeds("stress");
+                    dao.needExists("stress" + random.nextInt(THREADS * 10));
+                    assertTrue(dao.getTotalFulfilled() <= dao.getTotalNeeded());
+                }
+            }
+        });
+
+        // Analyze
+        Need[] after = dao.getNeeds();
+        Set<Integer> ids = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        for (Need need : after) {
+            assertTrue(ids.add(need.getId()), "id " + need.getId() + " stored twice");
+            assertTrue(names.add(need.getName().toLowerCase()), "name " + need.getName() + " stored twice");
+            assertTrue(need.getQuantityFulfilled() <= need.getQuantityNeeded(), need + " fulfilled past its cap");
+        }
+        for (int id = 1; id <= initial; ++id) {
+            Need need = dao.getNeed(id);
+            assertEquals(accepted.get(id).get(), need.getQuantityFulfilled(), "fulfillments of need " + id + " lost");
+            assertEquals(40, need.getQuantityNeeded());
+        }
+        assertTrue(duplicates.get() > 0 || created.size() > 0);
+
+        NeedFileDAO reloaded = new NeedFileDAO(file.getPath(), objectMapper);
+        assertEquals(after.length, reloaded.getNeeds().length);
+        for (Need need : after) {
+            Need stored = reloaded.getNeed(need.getId());
+            assertNotNull(stored, need + " not written");
+            assertEquals(need.getName(), stored.getName());
+            assertEquals(need.getPrice(), stored.getPrice());
+            assertEquals(need.getQuantityFulfilled(), stored.getQuantityFulfilled());
+            assertEquals(need.getVersion(), stored.getVersion());
+        }
+    }
+
+    @Test
+    public void testBaskets() throws Exception {
+        // Setup: a few baskets every thread changes, each thread only its own needs
+        File file = new File(directory, "baskets.json");
+        int shared = 4;
+        FundingBasket[] baskets = new FundingBasket[shared];
+        for (int id = 0; id < shared; ++id)
+            baskets[id] = new FundingBasket(id, "user" + id);
+        objectMapper.writeValue(file, baskets);
+        BasketFileDAO dao = new BasketFileDAO(file.getPath(), objectMapper, null, flusher, null);
+
+        List<Map<Integer,Map<Integer,Integer>>> expected = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; ++thread)
+            expected.add(new HashMap<>());
+        Set<Integer> created = ConcurrentHashMap.newKeySet();
+
+        // Invoke
+        hammer("baskets", (thread, random) -> {
+            Map<Integer,Map<Integer,Integer>> mine = expected.get(thread);
+            for (int i = 0; i < OPERATIONS; ++i) {
+                int op = random.nextInt(100);
+                int basket = random.nextInt(shared);
+                int need = thread * 1000 + random.nextInt(10);
+                Map<Integer,Integer> contents = mine.computeIfAbsent(basket, key -> new HashMap<>());
+                if (op < 35) {
+                    int quantity = 1 + random.nextInt(5);
+                    dao.addNeed(basket, need, quantity);
+                    contents.put(need, quantity);
+                }
+                else if (op < 50) {
+                    int quantity = 1 + random.nextInt(5);
+                    if (dao.setQuantity(basket, need, quantity) != null)
+                        contents.put(need, quantity);
+                    else
+                        assertTrue(!contents.containsKey(need), "need " + need + " missing from basket " + basket);
+                }
+                else if (op < 65) {
+                    dao.removeNeed(basket, need);
+                    contents.remove(need);
+                }
+                else if (op < 72) {
+                    FundingBasket newBasket = dao.createBasket("stress" + thread + "-" + i);
+                    assertTrue(created.add(newBasket.getId()), "id " + newBasket.getId() + " assigned twice");
+                }
+                else {
+                    assertNotNull(dao.getNeeds(basket));
+                    dao.getId("user" + basket);
+                    dao.getQuantity(basket, need);
+                }
+            }
+        });
+
+        // Analyze
+        BasketFileDAO reloaded = new BasketFileDAO(file.getPath(), objectMapper, null);
+        for (int basket = 0; basket < shared; ++basket) {
+            Map<Integer,Integer> contents = new HashMap<>();
+            for (Map<Integer,Map<Integer,Integer>> mine : expected)
+                contents.putAll(mine.getOrDefault(basket, Map.of()));
+            assertEquals(contents, dao.getNeeds(basket), "changes to basket " + basket + " lost");
+            assertEquals(contents, reloaded.getNeeds(basket), "basket " + basket + " not written");
+        }
+        for (int id : created) {
+            assertNotNull(dao.getBasket(id));
+            assertNotNull(reloaded.getBasket(id), "basket " + id + " not written");
+        }
+    }
+
+    @Test
+    public void testLogins() throws Exception {
+        // Setup: threads race to create the same usernames, and each moves its own logins between baskets
+        File basketFile = new File(directory, "baskets.json");
+        File file = new File(directory, "logins.json");
+        objectMapper.writeValue(basketFile, new FundingBasket[0]);
+        Login[] logins = new Login[THREADS];
+        for (int thread = 0; thread < THREADS; ++thread)
+            logins[thread] = new Login("owner" + thread, "pass", 0);
+        objectMapper.writeValue(file, logins);
+        BasketFileDAO basketDAO = new BasketFileDAO(basketFile.getPath(), objectMapper, null, flusher, null);
+        LoginFileDAO dao = new LoginFileDAO(file.getPath(), objectMapper, basketDAO, flusher);
+
+        Map<String,AtomicInteger> createdBy = new ConcurrentHashMap<>();
+        int[] basketOf = new int[THREADS];
+
+        // Invoke
+        hammer("logins", (thread, random) -> {
+            for (int i = 0; i < OPERATIONS; ++i) {
+                int op = random.nextInt(100);
+                if (op < 30) {
+                    String userName = "user" + random.nextInt(THREADS * 20);
+                    if (dao.createLogin(new Login(userName, "pass", -1)) != null)
+                        createdBy.computeIfAbsent(userName, key -> new AtomicInteger()).incrementAndGet();
+                }
+                else if (op < 55) {
+                    basketOf[thread] = 1 + random.nextInt(1000);
+                    assertNotNull(dao.setBasketId("owner" + thread, basketOf[thread]));
+                }
+                else {
+                    dao.userExists("user" + random.nextInt(THREADS * 20));
+                    dao.getLogin("owner" + thread);
+                    assertNotNull(dao.getLogins());
+                    basketDAO.getId("owner" + thread);
+                }
+            }
+        });
+
+        // Analyze
+        LoginFileDAO reloaded = new LoginFileDAO(file.getPath(), objectMapper, basketDAO);
+        assertEquals(THREADS + createdBy.size(), dao.getLogins().length);
+        assertEquals(THREADS + createdBy.size(), reloaded.getLogins().length);
+        for (Map.Entry<String,AtomicInteger> entry : createdBy.entrySet()) {
+            assertEquals(1, entry.getValue().get(), entry.getKey() + " created twice");
+            assertNotNull(reloaded.getLogin(entry.getKey()), entry.getKey() + " not written");
+        }
+        for (int thread = 0; thread < THREADS; ++thread) {
+            assertEquals(basketOf[thread], dao.getLogin("owner" + thread).getBasketId(), "basket of owner" + thread + " lost");
+            assertEquals(basketOf[thread], reloaded.getLogin("owner" + thread).getBasketId());
+        }
+    }
+
+    @Test
+    public void testProfiles() throws Exception {
+        // Setup: every thread counts up every profile's first name with conditional updates
+        File basketFile = new File(directory, "baskets.json");
+        File loginFile = new File(directory, "logins.json");
+        File file = new File(directory, "profiles.json");
+        int users = 4;
+        Login[] logins = new Login[users];
+        Profile[] profiles = new Profile[users];
+        for (int user = 0; user < users; ++user) {
+            logins[user] = new Login("user" + user, "pass", user);
+            profiles[user] = new Profile("0", "last", "user" + user + "@example.com", "US", "user" + user, new HashMap<>());
+        }
+        objectMapper.writeValue(basketFile, new FundingBasket[0]);
+        objectMapper.writeValue(loginFile, logins);
+        objectMapper.writeValue(file, profiles);
+        BasketFileDAO basketDAO = new BasketFileDAO(basketFile.getPath(), objectMapper, null, flusher, null);
+        LoginFileDAO loginDAO = new LoginFileDAO(loginFile.getPath(), objectMapper, basketDAO, flusher);
+        ProfileFileDAO dao = new ProfileFileDAO(file.getPath(), objectMapper, loginDAO, flusher);
+
+        AtomicInteger[] increments = new AtomicInteger[users];
+        for (int user = 0; user < users; ++user)
+            increments[user] = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        // Invoke
+        hammer("profiles", (thread, random) -> {
+            for (int i = 0; i < OPERATIONS; ++i) {
+                int user = random.nextInt(users);
+                String userName = "user" + user;
+                if (random.nextInt(100) < 60) {
+                    while (true) {
+                        Profile current = dao.getProfile(userName);
+                        long version = current.getVersion();
+                        String next = String.valueOf(Integer.parseInt(current.getFirstName()) + 1);
+                        try {
+                            dao.updateProfile(new Profile(next, null, null, null, userName, new HashMap<>()), version);
+                            increments[user].incrementAndGet();
+                            break;
+                        }
+                        catch (VersionConflictException e) {
+                            conflicts.incrementAndGet();
+                        }
+                    }
+                }
+                else {
+                    assertNotNull(dao.getProfile(userName));
+                }
+            }
+        });
+
+        // Analyze
+        ProfileFileDAO reloaded = new ProfileFileDAO(file.getPath(), objectMapper, loginDAO);
+        for (int user = 0; user < users; ++user) {
+            Profile profile = dao.getProfile("user" + user);
+            assertEquals(String.valueOf(increments[user].get()), profile.getFirstName(), "updates of user" + user + " lost");
+            assertEquals(increments[user].get(), profile.getVersion());
+            Profile stored = reloaded.getProfile("user" + user);
+            assertEquals(profile.getFirstName(), stored.getFirstName(), "user" + user + " not written");
+            assertEquals(profile.getVersion(), stored.getVersion());
+        }
+        System.out.printf("%-9s %d version conflicts retried%n", "profiles", conflicts.get());
+    }
+}
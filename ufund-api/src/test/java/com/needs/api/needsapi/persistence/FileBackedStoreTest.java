@@ -0,0 +1,216 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.Login;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the File Backed Store class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class FileBackedStoreTest {
+    File file;
+    ObjectMapper objectMapper;
+    FileBackedStore.Codec<Need> codec;
+    FileBackedStore<Integer,Need> store;
+    Map<String,Integer> names;
+
+    /**
+     * Before each test, write two needs to a temporary file and load a store
+     * with a name index from it
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupFileBackedStore() throws IOException {
+        file = new File(Files.createTempDirectory("store").toFile(), "needs.json");
+        objectMapper = new ObjectMapper();
+        codec = FileBackedStore.Codec.json(objectMapper, new JsonStreams(true), Need.class);
+        codec.write(file, List.of(
+            new Need(1, "Boots", NeedType.EQUIPMENT, 20.5, 4, 1, UrgencyTag.HIGH, "Warm boots", "boots.png"),
+            new Need(2, "Tutoring", NeedType.PROGRAM, 3, 10, 0, UrgencyTag.LOW, null, "tutor.png")));
+
+        names = new HashMap<>();
+        store = new FileBackedStore<>(file.getPath(), new TreeMap<>(), Need::getId, codec, WriteBehindFlusher.synchronous())
+            .index(new FileBackedStore.Index<Integer,Need>() {
+                @Override
+                public void add(Integer id, Need need) {
+                    names.put(need.getName(), id);
+                }
+
+                @Override
+                public void remove(Integer id, Need need) {
+                    names.values().remove(id);
+                }
+
+                @Override
+                public void clear() {
+                    names.clear();
+                }
+            });
+        store.load();
+    }
+
+    private List<Need> readFile() throws IOException {
+        List<Need> needs = new ArrayList<>();
+        codec.read(file, needs::add);
+        return needs;
+    }
+
+    @Test
+    public void testLoad() {
+        // Analyze
+        assertEquals(2, store.size());
+        assertEquals("Tutoring", store.get(2).getName());
+        assertEquals(Map.of("Boots", 1, "Tutoring", 2), names);
+    }
+
+    @Test
+    public void testPutWritesAndIndexes() throws IOException {
+        // Invoke
+        Need previous = store.put(new Need(3, "Blankets", NeedType.DONATE, 5, 50, 0, UrgencyTag.HIGH, "Wool", "blankets.png"));
+
+        // Analyze
+        assertNull(previous);
+        assertEquals(3, readFile().size());
+        assertEquals(3, names.get("Blankets"));
+    }
+
+    @Test
+    public void testRemove() throws IOException {
+        // Invoke
+        boolean removed = store.remove(1);
+        boolean missing = store.remove(1);
+
+        // Analyze
+        assertTrue(removed);
+        assertFalse(missing);
+        assertEquals(1, readFile().size());
+        assertFalse(names.containsKey("Boots"));
+    }
+
+    @Test
+    public void testChangedInPlace() throws IOException {
+        // Setup
+        store.get(2).setName("Math tutoring");
+
+        // Invoke
+        boolean changed = store.changed(2);
+
+        // Analyze
+        assertTrue(changed);
+        assertFalse(store.changed(99));
+        assertEquals("Math tutoring", readFile().get(1).getName());
+        assertEquals(2, names.get("Math tutoring"));
+        assertFalse(names.containsKey("Tutoring"));
+    }
+
+    @Test
+    public void testChangesBumpDataVersion() throws IOException {
+        // Setup
+        long before = DataVersion.current();
+
+        // Invoke
+        store.put(new Need(3, "Blankets", NeedType.DONATE, 5, 50, 0, UrgencyTag.HIGH, "Wool", "blankets.png"));
+        long afterPut = DataVersion.current();
+        store.changed(3);
+        long afterChanged = DataVersion.current();
+        store.remove(3);
+
+        // Analyze: other stores may bump it too, so only that it moved each time
+        assertTrue(afterPut > before);
+        assertTrue(afterChanged > afterPut);
+        assertTrue(DataVersion.current() > afterChanged);
+    }
+
+    @Test
+    public void testReplaceUnderNewKey() throws IOException {
+        // Setup
+        File logins = new File(file.getParentFile(), "logins.json");
+        FileBackedStore<String,Login> loginStore = new FileBackedStore<>(logins.getPath(), new TreeMap<>(), Login::getUserName,
+            FileBackedStore.Codec.json(objectMapper, new JsonStreams(true), Login.class), WriteBehindFlusher.synchronous());
+        loginStore.put(new Login("mark", "pass", 4));
+
+        // Invoke
+        loginStore.replace("mark", new Login("marcus", "pass", 4));
+        loginStore.load();
+
+        // Analyze
+        assertEquals(1, loginStore.size());
+        assertFalse(loginStore.containsKey("mark"));
+        assertEquals(4, loginStore.get("marcus").getBasketId());
+    }
+
+    @Test
+    public void testFlushPolicy() throws IOException {
+        // Setup
+        List<String> changes = new ArrayList<>();
+        store.flushPolicy(new FileBackedStore.FlushPolicy<Integer,Need>() {
+            @Override
+            public boolean changed(Integer id, Need need) {
+                changes.add(id + (need == null ? " removed" : " put"));
+                return true;
+            }
+
+            @Override
+            public void recover(Map<Integer,Need> values) {
+                values.remove(1);
+            }
+        });
+
+        // Invoke
+        store.remove(2);
+        store.put(new Need(4, "Gloves", NeedType.EQUIPMENT, 3, 2, 0, UrgencyTag.LOW, "Wool", "gloves.png"));
+        store.load();
+
+        // Analyze: the policy replaced the file writes, and recovery ran before indexing
+        assertEquals(List.of("2 removed", "4 put"), changes);
+        assertEquals(2, readFile().size());
+        assertEquals(1, store.size());
+        assertEquals(Map.of("Tutoring", 2), names);
+    }
+
+    @Test
+    public void testEvictIf() throws IOException {
+        // Invoke
+        store.evictIf(need -> need.getQuantityFulfilled() > 0);
+
+        // Analyze: dropped from memory only
+        assertEquals(1, store.size());
+        assertFalse(names.containsKey("Boots"));
+        assertEquals(2, readFile().size());
+    }
+
+    @Test
+    public void testFilenameIsTrimmed() throws IOException {
+        // Invoke
+        FileBackedStore<Integer,Need> padded = new FileBackedStore<>(file.getPath() + " ", new TreeMap<>(), Need::getId,
+                                                                     codec, WriteBehindFlusher.synchronous());
+        padded.load();
+
+        // Analyze
+        assertEquals(file, padded.getFile());
+        assertEquals(2, padded.size());
+    }
+}
@@ -0,0 +1,258 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Fulfillment Escrow class
+ * <br>
+ * The materializer only runs when the tests call it, its own interval is too
+ * long to pass during a test
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class FulfillmentEscrowTest {
+    NeedFileDAO needFileDAO;
+    FulfillmentEscrow escrow;
+
+    @BeforeEach
+    public void setupFulfillmentEscrow() throws IOException {
+        ObjectMapper mockObjectMapper = mock(ObjectMapper.class);
+        Need[] testNeeds = new Need[2];
+        testNeeds[0] = new Need(97,"syringes",NeedType.EQUIPMENT,20.0,50,0, UrgencyTag.LOW, "some description", "image");
+        testNeeds[1] = new Need(98,"incubator",NeedType.EQUIPMENT,100.0,10,0, UrgencyTag.LOW, "some description", "image");
+        when(mockObjectMapper
+            .readValue(new File("data/needs.json"),Need[].class))
+                .thenReturn(testNeeds);
+        needFileDAO = new NeedFileDAO("data/needs.json",mockObjectMapper);
+        escrow = new FulfillmentEscrow(needFileDAO, 3, Long.MAX_VALUE, 4);
+    }
+
+    @AfterEach
+    public void closeFulfillmentEscrow() {
+        escrow.close();
+    }
+
+    @Test
+    public void testDisabledPassesThrough() throws IOException {
+        // Setup
+        FulfillmentEscrow disabled = FulfillmentEscrow.disabled(needFileDAO);
+
+        // Invoke
+        int accepted = disabled.fulfill(97, 5);
+
+        // Analyze
+        assertEquals(5, accepted);
+        assertEquals(5, needFileDAO.getNeed(97).getQuantityFulfilled());
+        assertEquals(-1, disabled.fulfill(50, 1));
+    }
+
+    @Test
+    public void testPromotedAfterThreshold() throws IOException {
+        // Invoke
+        for (int i = 0; i < 3; ++i)
+            escrow.fulfill(97, 1);
+        escrow.fulfill(98, 1);
+        escrow.materialize();
+
+        // Analyze
+        assertTrue(escrow.isHot(97));
+        assertFalse(escrow.isHot(98));
+        assertEquals(3, needFileDAO.getNeed(97).getQuantityFulfilled());
+    }
+
+    @Test
+    public void testClaimsMaterialized() throws IOException {
+        // Setup
+        assertTrue(escrow.promote(97));
+
+        // Invoke
+        int accepted = escrow.fulfill(97, 4) + escrow.fulfill(97, 6);
+
+        // Analyze
+        assertEquals(10, accepted);
+        assertEquals(0, needFileDAO.getNeed(97).getQuantityFulfilled());
+        escrow.materialize();
+        assertEquals(10, needFileDAO.getNeed(97).getQuantityFulfilled());
+    }
+
+    @Test
+    public void testRebalancesDryStripe() throws IOException {
+        // Setup, 50 split over 4 stripes leaves at most 13 in the caller's
+        assertTrue(escrow.promote(97));
+
+        // Invoke
+        int accepted = escrow.fulfill(97, 40);
+
+        // Analyze
+        assertEquals(40, accepted);
+        assertEquals(10, escrow.fulfill(97, 20));
+        assertEquals(0, escrow.fulfill(97, 1));
+        escrow.materialize();
+        assertEquals(50, needFileDAO.getNeed(97).getQuantityFulfilled());
+    }
+
+    @Test
+    public void testRefillsFromUpdatedNeed() throws IOException {
+        // Setup
+        assertTrue(escrow.promote(98));
+        assertEquals(10, escrow.fulfill(98, 20));
+
+        // Invoke
+        escrow.materialize();
+        needFileDAO.updateNeed(new Need(98,"incubator",NeedType.EQUIPMENT,100.0,15,0, UrgencyTag.LOW, "some description", "image"));
+        assertEquals(0, escrow.fulfill(98, 1));   // keeps the need hot until the shares are refilled
+        escrow.materialize();
+
+        // Analyze
+        assertEquals(5, escrow.fulfill(98, 10));
+        escrow.materialize();
+        assertEquals(15, needFileDAO.getNeed(98).getQuantityFulfilled());
+    }
+
+    @Test
+    public void testUpdateLowersHotShares() throws IOException {
+        // Setup, 50 split over 4 stripes, 20 of it claimed
+        assertTrue(escrow.promote(97));
+        assertEquals(20, escrow.fulfill(97, 20));
+
+        // Invoke
+        Need updated = escrow.updateNeed(new Need(97,"syringes",NeedType.EQUIPMENT,20.0,25,0, UrgencyTag.LOW, "some description", "image"),
+                                         NeedDAO.ANY_VERSION);
+
+        // Analyze: claims granted before are kept, later ones capped by the new quantity
+        assertEquals(25, updated.getQuantityNeeded());
+        assertTrue(escrow.isHot(97));
+        assertEquals(20, needFileDAO.getNeed(97).getQuantityFulfilled());
+        assertEquals(5, escrow.fulfill(97, 10));
+        assertEquals(0, escrow.fulfill(97, 1));
+        escrow.materialize();
+        assertEquals(25, needFileDAO.getNeed(97).getQuantityFulfilled());
+    }
+
+    @Test
+    public void testUpdateColdPassesThrough() throws IOException {
+        // Invoke
+        Need updated = escrow.updateNeed(new Need(98,"incubator",NeedType.EQUIPMENT,100.0,4,0, UrgencyTag.LOW, "some description", "image"),
+                                         NeedDAO.ANY_VERSION);
+
+        // Analyze
+        assertEquals(4, updated.getQuantityNeeded());
+        assertFalse(escrow.isHot(98));
+        assertTrue(escrow.promote(98));
+        assertEquals(4, escrow.fulfill(98, 10));
+    }
+
+    @Test
+    public void testDemotedWhenIdle() throws IOException {
+        // Setup
+        assertTrue(escrow.promote(97));
+        escrow.fulfill(97, 1);
+
+        // Invoke
+        escrow.materialize();
+        escrow.materialize();
+
+        // Analyze
+        assertFalse(escrow.isHot(97));
+        assertEquals(1, escrow.fulfill(97, 1));
+        assertEquals(2, needFileDAO.getNeed(97).getQuantityFulfilled());
+    }
+
+    @Test
+    public void testCountDroppedWhenCold() throws IOException {
+        // Setup
+        escrow.fulfill(98, 1);
+        assertTrue(escrow.isCounted(98));
+
+        // Invoke: counted once, then an interval without fulfillments
+        escrow.materialize();
+        boolean countedAfterBusy = escrow.isCounted(98);
+        escrow.materialize();
+
+        // Analyze
+        assertTrue(countedAfterBusy);
+        assertFalse(escrow.isCounted(98));
+        assertEquals(1, escrow.fulfill(98, 1));
+        assertTrue(escrow.isCounted(98));
+        assertEquals(2, needFileDAO.getNeed(98).getQuantityFulfilled());
+    }
+
+    @Test
+    public void testCountDroppedWhenDeleted() throws IOException {
+        // Setup
+        escrow.fulfill(98, 1);
+
+        // Invoke
+        boolean deleted = escrow.deleteNeed(98);
+
+        // Analyze
+        assertTrue(deleted);
+        assertFalse(escrow.isCounted(98));
+        assertEquals(-1, escrow.fulfill(98, 1));
+    }
+
+    @Test
+    public void testPromoteMissingNeed() throws IOException {
+        // Invoke
+        boolean promoted = escrow.promote(50);
+
+        // Analyze
+        assertFalse(promoted);
+        assertFalse(escrow.isHot(50));
+        assertEquals(-1, escrow.fulfill(50, 1));
+    }
+
+    @Test
+    public void testConcurrentClaimsNeverOvershoot() throws Exception {
+        // Setup
+        assertTrue(escrow.promote(97));
+        int clients = 16;
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<?>> results = new ArrayList<>();
+
+        // Invoke
+        for (int client = 0; client < clients; ++client) {
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < 10; ++i) {
+                    accepted.addAndGet(escrow.fulfill(97, 1));
+                    if (i == 5)
+                        escrow.materialize();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results)
+            result.get();
+        pool.shutdown();
+        escrow.materialize();
+
+        // Analyze
+        assertEquals(50, accepted.get());
+        assertEquals(50, needFileDAO.getNeed(97).getQuantityFulfilled());
+    }
+}
@@ -0,0 +1,121 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.FundingBasket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the JDBC Basket DAO class against an in-memory H2 database
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class JdbcBasketDAOTest {
+    JdbcBasketDAO jdbcBasketDAO;
+    FundingBasket[] testBaskets;
+
+    /**
+     * Before each test, import three baskets into a fresh database
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupJdbcBasketDAO() throws IOException {
+        testBaskets = new FundingBasket[3];
+        testBaskets[0] = new FundingBasket(1, "tom");
+        testBaskets[1] = new FundingBasket(2, "mark");
+        testBaskets[1].addNeed(1,1);
+        testBaskets[1].addNeed(2,2);
+        testBaskets[2] = new FundingBasket(3, "john");
+
+        jdbcBasketDAO = new JdbcBasketDAO(JdbcNeedDAOTest.dataFile("baskets.json", testBaskets).getPath(),
+                                          new ObjectMapper(), JdbcNeedDAOTest.newDatabase());
+    }
+
+    @Test
+    public void testGetBasket() throws IOException {
+        // Invoke
+        FundingBasket basket = jdbcBasketDAO.getBasket(2);
+
+        // Analyze
+        assertEquals("mark", basket.getUsername());
+        assertEquals(Map.of(1, 1, 2, 2), basket.getNeeds());
+        assertNull(jdbcBasketDAO.getBasket(100));
+        assertNull(jdbcBasketDAO.getNeeds(100));
+    }
+
+    @Test
+    public void testGetId() throws IOException {
+        // Invoke & Analyze: usernames are compared by value
+        assertEquals(3, jdbcBasketDAO.getId(new String("john")));
+        assertEquals(-1, jdbcBasketDAO.getId("mike"));
+    }
+
+    @Test
+    public void testAddAndSetQuantity() throws IOException {
+        // Invoke
+        jdbcBasketDAO.addNeed(1, 3, 4);
+        jdbcBasketDAO.addNeed(1, 3, 5);
+        FundingBasket basket = jdbcBasketDAO.setQuantity(2, 1, 7);
+
+        // Analyze
+        assertEquals(5, jdbcBasketDAO.getQuantity(1, 3));
+        assertEquals(7, basket.getNeeds().get(1));
+        assertNull(jdbcBasketDAO.setQuantity(2, 9, 1));
+        assertNull(jdbcBasketDAO.addNeed(100, 1, 1));
+        assertEquals(-1, jdbcBasketDAO.getQuantity(3, 1));
+    }
+
+    @Test
+    public void testRemoveNeed() throws IOException {
+        // Invoke
+        FundingBasket basket = jdbcBasketDAO.removeNeed(2, 2);
+
+        // Analyze
+        assertEquals(Map.of(1, 1), basket.getNeeds());
+        assertNull(jdbcBasketDAO.removeNeed(2, 347));
+        assertNull(jdbcBasketDAO.removeNeed(129, 1));
+    }
+
+    @Test
+    public void testClearBasket() throws IOException {
+        // Invoke
+        FundingBasket basket = jdbcBasketDAO.clearBasket(2);
+
+        // Analyze
+        assertEquals(0, basket.getNeeds().size());
+        assertEquals(0, jdbcBasketDAO.getNeeds(2).size());
+        assertNull(jdbcBasketDAO.clearBasket(138));
+    }
+
+    @Test
+    public void testCreateAndDeleteBasket() throws IOException {
+        // Invoke
+        FundingBasket basket = jdbcBasketDAO.createBasket("mike");
+
+        // Analyze: ids continue after the imported ones, and needs go with their basket
+        assertEquals(4, basket.getId());
+        assertEquals("mike", jdbcBasketDAO.getUsername(4));
+        assertTrue(jdbcBasketDAO.deleteBasket(2));
+        assertFalse(jdbcBasketDAO.deleteBasket(2));
+        assertEquals(-1, jdbcBasketDAO.getQuantity(2, 1));
+    }
+
+    @Test
+    public void testSetUsername() throws IOException {
+        // Invoke & Analyze
+        assertTrue(jdbcBasketDAO.setUsername(1, "thomas"));
+        assertFalse(jdbcBasketDAO.setUsername(100, "thomas"));
+        assertEquals("thomas", jdbcBasketDAO.getUsername(1));
+    }
+}
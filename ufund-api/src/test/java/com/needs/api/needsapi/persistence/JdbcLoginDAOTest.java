@@ -0,0 +1,163 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.FundingBasket;
+import com.needs.api.needsapi.model.Login;
+import com.needs.api.needsapi.model.Profile;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the JDBC Login and Profile DAO classes against an in-memory H2 database
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class JdbcLoginDAOTest {
+    JdbcBasketDAO jdbcBasketDAO;
+    JdbcLoginDAO jdbcLoginDAO;
+    JdbcProfileDAO jdbcProfileDAO;
+
+    /**
+     * Before each test, import two logins with their baskets and a profile into
+     * a fresh database
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupJdbcLoginDAO() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        JdbcDatabase database = JdbcNeedDAOTest.newDatabase();
+        FundingBasket[] baskets = {new FundingBasket(1, "tom"), new FundingBasket(2, "mark")};
+        Login[] logins = {new Login("tom", "pass", 1), new Login("mark", "word", 2)};
+        HashMap<Integer,Integer> contributions = new HashMap<>();
+        contributions.put(3, 2);
+        Profile[] profiles = {new Profile("Tom", "T", "tom@example.com", "US", "tom", contributions),
+                              new Profile("Ghost", "G", "ghost@example.com", "US", "ghost", new HashMap<>())};
+
+        jdbcBasketDAO = new JdbcBasketDAO(JdbcNeedDAOTest.dataFile("baskets.json", baskets).getPath(), objectMapper, database);
+        jdbcLoginDAO = new JdbcLoginDAO(JdbcNeedDAOTest.dataFile("logins.json", logins).getPath(), objectMapper, jdbcBasketDAO, database);
+        jdbcProfileDAO = new JdbcProfileDAO(JdbcNeedDAOTest.dataFile("profiles.json", profiles).getPath(), objectMapper, jdbcLoginDAO, database);
+    }
+
+    @Test
+    public void testGetAndFindLogins() throws IOException {
+        // Analyze: in username order, matched case-sensitively
+        assertEquals("mark", jdbcLoginDAO.getLogins()[0].getUserName());
+        assertEquals(1, jdbcLoginDAO.findLogins("ar").length);
+        assertEquals(0, jdbcLoginDAO.findLogins("AR").length);
+        assertEquals("word", jdbcLoginDAO.getLogin("mark").getPass());
+        assertEquals(0, jdbcLoginDAO.getBasketId("mike"));
+    }
+
+    @Test
+    public void testCreateLogin() throws IOException {
+        // Invoke & Analyze
+        assertNotNull(jdbcLoginDAO.createLogin(new Login("mike", "pass", 3)));
+        assertNull(jdbcLoginDAO.createLogin(new Login("mike", "other", 4)));
+        assertTrue(jdbcLoginDAO.userExists("mike"));
+    }
+
+    @Test
+    public void testRenameLogin() throws IOException {
+        // Invoke
+        Login login = jdbcLoginDAO.updateLogin("tom", new Login("thomas", "secret", 0));
+
+        // Analyze: the basket follows the login, the old profile goes with the old login
+        assertEquals(1, login.getBasketId());
+        assertFalse(jdbcLoginDAO.userExists("tom"));
+        assertEquals(1, jdbcLoginDAO.getBasketId("thomas"));
+        assertEquals("thomas", jdbcBasketDAO.getUsername(1));
+        assertNull(jdbcProfileDAO.getProfile("tom"));
+        assertNull(jdbcLoginDAO.updateLogin("thomas", new Login("mark", "pass", 0)));
+        assertNull(jdbcLoginDAO.updateLogin("nobody", new Login("nobody", "pass", 0)));
+    }
+
+    @Test
+    public void testUpdateLoginKeepingName() throws IOException {
+        // Invoke
+        Login login = jdbcLoginDAO.updateLogin("mark", new Login(new String("mark"), "changed", 0));
+
+        // Analyze
+        assertNotNull(login);
+        assertEquals("changed", jdbcLoginDAO.getLogin("mark").getPass());
+        assertEquals(2, jdbcLoginDAO.getBasketId("mark"));
+    }
+
+    @Test
+    public void testSetBasketId() throws IOException {
+        // Invoke & Analyze
+        assertEquals(7, jdbcLoginDAO.setBasketId("mark", 7).getBasketId());
+        assertNull(jdbcLoginDAO.setBasketId("mike", 7));
+    }
+
+    @Test
+    public void testProfiles() throws IOException {
+        // Setup: the ghost profile had no login and was not imported
+        assertNull(jdbcProfileDAO.getProfile("ghost"));
+        Profile tom = jdbcProfileDAO.getProfile("tom");
+        tom.addContribution(3, 1);
+        tom.addContribution(4, 5);
+
+        // Invoke
+        jdbcProfileDAO.updateProfile(tom);
+        jdbcProfileDAO.switchPrivacy(tom);
+        jdbcProfileDAO.createProfile(new Profile("Mark", null, null, null, "mark", new HashMap<>()));
+        jdbcProfileDAO.createProfile(new Profile("Mike", null, null, null, "mike", new HashMap<>()));
+
+        // Analyze
+        Profile stored = jdbcProfileDAO.getProfile("tom");
+        assertEquals(3, stored.getContributions().get(3));
+        assertEquals(5, stored.getContributions().get(4));
+        assertTrue(stored.getIsPrivate());
+        assertEquals("Mark", jdbcProfileDAO.getProfile("mark").getFirstName());
+        assertNull(jdbcProfileDAO.getProfile("mike"));
+        assertTrue(jdbcLoginDAO.deleteLogin("mark"));
+        assertNull(jdbcProfileDAO.getProfile("mark"));
+        assertFalse(jdbcProfileDAO.deleteProfile("mark"));
+    }
+
+    @Test
+    public void testGetProfiles() throws IOException {
+        // Setup
+        jdbcProfileDAO.createProfile(new Profile("Mark", null, null, null, "mark", new HashMap<>()));
+
+        // Invoke
+        Profile[] profiles = jdbcProfileDAO.getProfiles();
+
+        // Analyze: in username order, with their contributions
+        assertEquals(2, profiles.length);
+        assertEquals("mark", profiles[0].getUserName());
+        assertTrue(profiles[0].getContributions().isEmpty());
+        assertEquals("tom", profiles[1].getUserName());
+        assertEquals(2, profiles[1].getContributions().get(3));
+    }
+
+    @Test
+    public void testAddContribution() throws IOException {
+        // Setup
+        long version = jdbcProfileDAO.getProfile("tom").getVersion();
+
+        // Invoke
+        Profile added = jdbcProfileDAO.addContribution("tom", 3, 4);
+        jdbcProfileDAO.addContribution("tom", 5, 1);
+
+        // Analyze
+        Profile stored = jdbcProfileDAO.getProfile("tom");
+        assertEquals(6, added.getContributions().get(3));
+        assertEquals(6, stored.getContributions().get(3));
+        assertEquals(1, stored.getContributions().get(5));
+        assertEquals(version + 2, stored.getVersion());
+        assertNull(jdbcProfileDAO.addContribution("ghost", 3, 4));
+    }
+}
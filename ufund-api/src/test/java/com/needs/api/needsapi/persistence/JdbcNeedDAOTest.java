@@ -0,0 +1,387 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the JDBC Need DAO class against an in-memory H2 database
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class JdbcNeedDAOTest {
+    JdbcNeedDAO jdbcNeedDAO;
+    Need[] testNeeds;
+
+    /**
+     * Creates an empty in-memory database for a test
+     *
+     * @return The {@link JdbcDatabase database}
+     * @throws IOException
+     */
+    static JdbcDatabase newDatabase() throws IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return new JdbcDatabase(dataSource);
+    }
+
+    /**
+     * Writes values to a temporary JSON data file
+     *
+     * @return The data file
+     * @throws IOException
+     */
+    static File dataFile(String name, Object values) throws IOException {
+        File file = new File(Files.createTempDirectory("jdbc").toFile(), name);
+        new ObjectMapper().writeValue(file, values);
+        return file;
+    }
+
+    /**
+     * Before each test, import four needs of mixed urgency into a fresh database
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupJdbcNeedDAO() throws IOException {
+        testNeeds = new Need[4];
+        testNeeds[0] = new Need(97,"syringes",NeedType.EQUIPMENT,20.0,50,0,UrgencyTag.LOW,"some description","image");
+        testNeeds[1] = new Need(98,"incubator",NeedType.EQUIPMENT,100.0,1,1,UrgencyTag.HIGH,"some description","image");
+        testNeeds[2] = new Need(99,"milk formula",NeedType.EQUIPMENT,25.0,1,3,UrgencyTag.LOW,"some description","image");
+        testNeeds[3] = new Need(100,"Tutoring",NeedType.PROGRAM,3.0,10,0,UrgencyTag.HIGH,null,"image");
+
+        jdbcNeedDAO = new JdbcNeedDAO(dataFile("needs.json", testNeeds).getPath(), new ObjectMapper(), newDatabase());
+    }
+
+    private static List<Integer> ids(Need[] needs) {
+        List<Integer> ids = new ArrayList<>();
+        for (Need need : needs)
+            ids.add(need.getId());
+        return ids;
+    }
+
+    @Test
+    public void testGetNeedsInComparatorOrder() throws IOException {
+        // Setup
+        Need[] expected = testNeeds.clone();
+        Arrays.sort(expected, new NeedComparator());
+
+        // Invoke
+        Need[] needs = jdbcNeedDAO.getNeeds();
+
+        // Analyze
+        assertEquals(ids(expected), ids(needs));
+        assertEquals("Tutoring", needs[1].getName());
+        assertNull(needs[1].getDescription());
+        assertEquals(UrgencyTag.HIGH.getImage(), needs[0].getUrgencyImage());
+    }
+
+    @Test
+    public void testFindNeeds() throws IOException {
+        // Invoke
+        Need[] needs = jdbcNeedDAO.findNeeds("IN");
+
+        // Analyze: case-insensitive, high urgency first
+        assertEquals(List.of(98, 100, 97), ids(needs));
+        assertEquals(0, jdbcNeedDAO.findNeeds("blankets").length);
+        assertEquals(4, jdbcNeedDAO.findNeeds(null).length);
+    }
+
+    @Test
+    public void testFindNeedsFuzzy() throws IOException {
+        // Setup
+        jdbcNeedDAO.createNeed(new Need(0,"Milk formulas",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.HIGH,"Powder","formula.png"));
+
+        // Invoke & Analyze: fewest typos first, then urgent first
+        assertEquals(List.of(97), ids(jdbcNeedDAO.findNeedsFuzzy("SYRNGES")));
+        assertEquals(List.of(99, 101), ids(jdbcNeedDAO.findNeedsFuzzy("milk fromula")));
+        assertEquals(List.of(101, 99), ids(jdbcNeedDAO.findNeedsFuzzy("mlik")));
+        assertEquals(List.of(100), ids(jdbcNeedDAO.findNeedsFuzzy("tutring")));
+        assertEquals(0, jdbcNeedDAO.findNeedsFuzzy("milk blankets").length);
+        assertEquals(0, jdbcNeedDAO.findNeedsFuzzy(null).length);
+    }
+
+    @Test
+    public void testFindNeedsFuzzyAfterWrites() throws IOException {
+        // Invoke: renamed, deleted and created after the typo index was seeded
+        jdbcNeedDAO.updateNeed(new Need(97,"surgical gloves",null,0,0,0,UrgencyTag.LOW,"some description",null));
+        jdbcNeedDAO.deleteNeed(100);
+        Need created = jdbcNeedDAO.createNeed(new Need(0,"Tutoring books",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.LOW,"Paper","books.png"));
+
+        // Analyze
+        assertEquals(0, jdbcNeedDAO.findNeedsFuzzy("syrnges").length);
+        assertEquals(List.of(97), ids(jdbcNeedDAO.findNeedsFuzzy("surgicle glovs")));
+        assertEquals(List.of(created.getId()), ids(jdbcNeedDAO.findNeedsFuzzy("tutring")));
+    }
+
+    @Test
+    public void testFindNeedsFuzzyAfterOtherNodeWrites() throws IOException {
+        // Setup: two nodes sharing one database
+        JdbcDatabase database = newDatabase();
+        String filename = dataFile("needs.json", testNeeds).getPath();
+        JdbcNeedDAO node = new JdbcNeedDAO(filename, new ObjectMapper(), database);
+        JdbcNeedDAO otherNode = new JdbcNeedDAO(filename, new ObjectMapper(), database);
+        assertEquals(List.of(97), ids(node.findNeedsFuzzy("syrnges")));
+
+        // Invoke: renamed, deleted and created by the other node
+        otherNode.updateNeed(new Need(97,"surgical gloves",null,0,0,0,UrgencyTag.LOW,"some description",null));
+        otherNode.deleteNeed(100);
+        Need created = otherNode.createNeed(new Need(0,"Tutoring books",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.LOW,"Paper","books.png"));
+
+        // Analyze
+        assertEquals(0, node.findNeedsFuzzy("syrnges").length);
+        assertEquals(List.of(97), ids(node.findNeedsFuzzy("surgicle glovs")));
+        assertEquals(List.of(created.getId()), ids(node.findNeedsFuzzy("tutring")));
+    }
+
+    @Test
+    public void testRankNeeds() throws IOException {
+        // Setup
+        jdbcNeedDAO.createNeed(new Need(0,"Milk bottles",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.HIGH,"Bottles for formula","bottles.png"));
+
+        // Invoke & Analyze: relevance raised for urgent needs
+        assertEquals(List.of(101, 99), ids(jdbcNeedDAO.rankNeeds("milk formula", 10)));
+        assertEquals(List.of(101), ids(jdbcNeedDAO.rankNeeds("milk formula", 1)));
+        assertEquals(List.of(98, 97, 99), ids(jdbcNeedDAO.rankNeeds("description", 10)));
+        assertEquals(0, jdbcNeedDAO.rankNeeds("blankets", 10).length);
+    }
+
+    @Test
+    public void testRankNeedsAfterWrites() throws IOException {
+        // Invoke: changed, deleted and created after the text index was seeded
+        jdbcNeedDAO.updateNeed(new Need(97,"syringes",null,0,0,0,UrgencyTag.LOW,"sterile needles",null));
+        jdbcNeedDAO.deleteNeed(99);
+        Need created = jdbcNeedDAO.createNeed(new Need(0,"Milk bottles",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.LOW,"Glass","bottles.png"));
+
+        // Analyze
+        assertEquals(List.of(97), ids(jdbcNeedDAO.rankNeeds("needles", 10)));
+        assertEquals(List.of(98), ids(jdbcNeedDAO.rankNeeds("description", 10)));
+        assertEquals(List.of(created.getId()), ids(jdbcNeedDAO.rankNeeds("milk formula", 10)));
+    }
+
+    @Test
+    public void testRankNeedsAfterOtherNodeWrites() throws IOException {
+        // Setup: two nodes sharing one database
+        JdbcDatabase database = newDatabase();
+        String filename = dataFile("needs.json", testNeeds).getPath();
+        JdbcNeedDAO node = new JdbcNeedDAO(filename, new ObjectMapper(), database);
+        JdbcNeedDAO otherNode = new JdbcNeedDAO(filename, new ObjectMapper(), database);
+        assertEquals(List.of(99), ids(node.rankNeeds("milk formula", 10)));
+
+        // Invoke: changed, deleted and created by the other node
+        otherNode.updateNeed(new Need(97,"syringes",null,0,0,0,UrgencyTag.LOW,"sterile needles",null));
+        otherNode.deleteNeed(99);
+        Need created = otherNode.createNeed(new Need(0,"Milk bottles",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.LOW,"Glass","bottles.png"));
+
+        // Analyze
+        assertEquals(List.of(97), ids(node.rankNeeds("needles", 10)));
+        assertEquals(List.of(98), ids(node.rankNeeds("description", 10)));
+        assertEquals(List.of(created.getId()), ids(node.rankNeeds("milk formula", 10)));
+    }
+
+    @Test
+    public void testQueryNeeds() throws IOException {
+        // Setup
+        Set<NeedType> anyType = EnumSet.noneOf(NeedType.class);
+        Set<UrgencyTag> anyUrgency = EnumSet.noneOf(UrgencyTag.class);
+
+        // Invoke & Analyze: in comparator order
+        assertEquals(List.of(100, 97), ids(jdbcNeedDAO.queryNeeds(anyType, anyUrgency, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true)));
+        assertEquals(List.of(98, 99), ids(jdbcNeedDAO.queryNeeds(anyType, anyUrgency, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false)));
+        assertEquals(List.of(98), ids(jdbcNeedDAO.queryNeeds(EnumSet.of(NeedType.EQUIPMENT), EnumSet.of(UrgencyTag.HIGH),
+                                                             Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, null)));
+        assertEquals(List.of(100, 97, 99), ids(jdbcNeedDAO.queryNeeds(EnumSet.of(NeedType.EQUIPMENT, NeedType.PROGRAM), anyUrgency, 3.0, 25.0, null)));
+        assertEquals(0, jdbcNeedDAO.queryNeeds(EnumSet.of(NeedType.DONATE), anyUrgency, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, null).length);
+    }
+
+    @Test
+    public void testSuggestNeeds() throws IOException {
+        // Setup
+        jdbcNeedDAO.createNeed(new Need(0,"Milk bottles",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.LOW,"Glass","bottles.png"));
+
+        // Invoke & Analyze: urgent first, then the most still needed, then by id
+        assertEquals(List.of(101, 99), ids(jdbcNeedDAO.suggestNeeds("MIL", 10)));
+        assertEquals(List.of(100, 98, 97), ids(jdbcNeedDAO.suggestNeeds("", 3)));
+        assertEquals(List.of(97), ids(jdbcNeedDAO.suggestNeeds("s", 10)));
+        assertEquals(0, jdbcNeedDAO.suggestNeeds("%", 10).length);
+    }
+
+    @Test
+    public void testCreateNeed() throws IOException {
+        // Invoke
+        Need need = jdbcNeedDAO.createNeed(new Need(0,"Blankets",NeedType.DONATE,5.0,50,0,UrgencyTag.HIGH,"Wool","blankets.png"));
+
+        // Analyze: ids continue after the imported ones
+        assertNotNull(need);
+        assertEquals(101, need.getId());
+        assertEquals("Blankets", jdbcNeedDAO.getNeed(101).getName());
+        assertTrue(jdbcNeedDAO.needExists("blankets"));
+    }
+
+    @Test
+    public void testCreateNeedInvalid() throws IOException {
+        // Invoke & Analyze
+        assertNull(jdbcNeedDAO.createNeed(new Need(0,"SYRINGES",NeedType.EQUIPMENT,5.0,1,0,UrgencyTag.LOW,null,"image")));
+        assertNull(jdbcNeedDAO.createNeed(new Need(0,"gloves",NeedType.EQUIPMENT,0,1,0,UrgencyTag.LOW,null,"image")));
+        assertNull(jdbcNeedDAO.createNeed(new Need(0,"gloves",NeedType.EQUIPMENT,5.0,1,0,UrgencyTag.LOW,null,null)));
+        assertEquals(4, jdbcNeedDAO.getNeeds().length);
+    }
+
+    @Test
+    public void testConcurrentCreatesOfOneName() throws Exception {
+        // Setup
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Need>> results = new ArrayList<>();
+
+        // Invoke
+        for (int i = 0; i < 16; ++i) {
+            String name = i % 2 == 0 ? "Gloves" : "gloves";
+            results.add(pool.submit(() -> jdbcNeedDAO.createNeed(new Need(0,name,NeedType.EQUIPMENT,5.0,1,0,UrgencyTag.LOW,null,"image"))));
+        }
+        int created = 0;
+        for (Future<Need> result : results) {
+            if (result.get() != null)
+                ++created;
+        }
+        pool.shutdown();
+
+        // Analyze
+        assertEquals(1, created);
+        assertEquals(5, jdbcNeedDAO.getNeeds().length);
+    }
+
+    @Test
+    public void testRenameMovesNameKey() throws IOException {
+        // Invoke: renamed onto a name in use, then away from it
+        jdbcNeedDAO.updateNeed(new Need(97,"Incubator",null,0,0,0,UrgencyTag.LOW,null,null));
+        Need taken = jdbcNeedDAO.createNeed(new Need(0,"incubator",NeedType.EQUIPMENT,5.0,1,0,UrgencyTag.LOW,null,"image"));
+        Need freed = jdbcNeedDAO.createNeed(new Need(0,"Syringes",NeedType.EQUIPMENT,5.0,1,0,UrgencyTag.LOW,null,"image"));
+
+        // Analyze
+        assertEquals("Incubator", jdbcNeedDAO.getNeed(97).getName());
+        assertNull(taken);
+        assertNotNull(freed);
+    }
+
+    @Test
+    public void testImportRepeatedName() throws IOException {
+        // Setup: written before names were unique
+        Need[] repeated = {testNeeds[0], new Need(7,"Syringes",NeedType.EQUIPMENT,1.0,1,0,UrgencyTag.LOW,null,"image")};
+
+        // Invoke
+        JdbcNeedDAO imported = new JdbcNeedDAO(dataFile("needs.json", repeated).getPath(), new ObjectMapper(), newDatabase());
+
+        // Analyze
+        assertEquals(2, imported.getNeeds().length);
+        assertTrue(imported.needExists("SYRINGES"));
+        assertNull(imported.createNeed(new Need(0,"syringes",NeedType.EQUIPMENT,5.0,1,0,UrgencyTag.LOW,null,"image")));
+    }
+
+    @Test
+    public void testFulfill() throws IOException {
+        // Invoke
+        int accepted = jdbcNeedDAO.fulfill(100, 4, true);
+        int capped = jdbcNeedDAO.fulfill(100, 20, true);
+        int uncapped = jdbcNeedDAO.fulfill(98, 2, false);
+
+        // Analyze
+        assertEquals(4, accepted);
+        assertEquals(6, capped);
+        assertEquals(10, jdbcNeedDAO.getNeed(100).getQuantityFulfilled());
+        assertEquals(0, jdbcNeedDAO.fulfill(100, 1, true));
+        assertEquals(2, uncapped);
+        assertEquals(3, jdbcNeedDAO.getNeed(98).getQuantityFulfilled());
+        assertEquals(-1, jdbcNeedDAO.fulfill(42, 1, true));
+    }
+
+    @Test
+    public void testUpdateNeedKeepsBlankFields() throws IOException {
+        // Invoke
+        Need result = jdbcNeedDAO.updateNeed(new Need(97,null,null,0,0,0,UrgencyTag.HIGH,"new description",null));
+
+        // Analyze
+        Need need = jdbcNeedDAO.getNeed(97);
+        assertEquals(result.getName(), need.getName());
+        assertEquals("syringes", need.getName());
+        assertEquals(NeedType.EQUIPMENT, need.getType());
+        assertEquals(20.0, need.getPrice());
+        assertEquals(50, need.getQuantityNeeded());
+        assertEquals(UrgencyTag.HIGH, need.getUrgency());
+        assertEquals("new description", need.getDescription());
+        assertNull(jdbcNeedDAO.updateNeed(new Need(5,"gloves",NeedType.EQUIPMENT,1,1,0,UrgencyTag.LOW,null,"image")));
+    }
+
+    @Test
+    public void testUpdateNeedVersion() throws IOException {
+        // Setup
+        jdbcNeedDAO.fulfill(97, 5, true);
+
+        // Invoke
+        Need result = jdbcNeedDAO.updateNeed(new Need(97,null,null,0,60,0,UrgencyTag.LOW,null,null), 0);
+
+        // Analyze
+        assertEquals(1, result.getVersion());
+        assertEquals(1, jdbcNeedDAO.getNeed(97).getVersion());
+        assertEquals(5, jdbcNeedDAO.getNeed(97).getQuantityFulfilled());
+        assertThrows(VersionConflictException.class,
+                     () -> jdbcNeedDAO.updateNeed(new Need(97,null,null,0,70,0,UrgencyTag.LOW,null,null), 0));
+        assertEquals(60, jdbcNeedDAO.getNeed(97).getQuantityNeeded());
+    }
+
+    @Test
+    public void testDeleteNeed() throws IOException {
+        // Invoke & Analyze
+        assertTrue(jdbcNeedDAO.deleteNeed(99));
+        assertFalse(jdbcNeedDAO.deleteNeed(99));
+        assertNull(jdbcNeedDAO.getNeed(99));
+    }
+
+    @Test
+    public void testTotals() {
+        // Analyze: fulfilled quantities are capped at the quantity needed
+        assertEquals(62, jdbcNeedDAO.getTotalNeeded());
+        assertEquals(2, jdbcNeedDAO.getTotalFulfilled());
+    }
+
+    @Test
+    public void testImportOnlyOnce() throws IOException {
+        // Setup
+        JdbcDatabase database = newDatabase();
+        File file = dataFile("needs.json", testNeeds);
+        new JdbcNeedDAO(file.getPath(), new ObjectMapper(), database).deleteNeed(97);
+
+        // Invoke
+        JdbcNeedDAO reopened = new JdbcNeedDAO(file.getPath(), new ObjectMapper(), database);
+
+        // Analyze
+        assertArrayEquals(new Object[] {98, 100, 99}, ids(reopened.getNeeds()).toArray());
+    }
+}
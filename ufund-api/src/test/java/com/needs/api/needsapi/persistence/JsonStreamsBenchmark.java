@@ -0,0 +1,137 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.AbstractList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares whole-array and streaming load and save of the needs file
+ * <p>
+ * Only runs when requested, for example
+ * {@code mvn test -Dtest=JsonStreamsBenchmark -Dbenchmark=true -Dbenchmark.records=10000,100000,1000000}
+ * (1M records needs a heap of about 2 GB). For each size it reports the latency,
+ * the bytes allocated by the operation and the peak heap above what was in use
+ * before it, as measured by the JVM's memory pools. The peak includes garbage not
+ * yet collected, so the allocation figure is the steadier of the two.
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class JsonStreamsBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void benchmarkLoadAndSave() throws IOException {
+        File directory = Files.createTempDirectory("streams-benchmark").toFile();
+        System.out.printf("%-8s %-9s | %8s %9s %8s | %8s %9s %8s%n", "records", "mode",
+                          "load ms", "alloc MB", "peak MB", "save ms", "alloc MB", "peak MB");
+
+        for (String size : System.getProperty("benchmark.records", "10000,100000,1000000").split(",")) {
+            int records = Integer.parseInt(size.trim());
+            File file = new File(directory, "needs-" + records + ".json");
+            writeNeeds(file, records);
+
+            for (JsonStreams streams : new JsonStreams[]{JsonStreams.arrays(), new JsonStreams(true)}) {
+                String mode = streams.isEnabled() ? "streaming" : "arrays";
+                Map<Integer,Need> needs = new TreeMap<>();
+
+                long baseline = settle();
+                long allocated = allocated();
+                long start = System.nanoTime();
+                streams.read(objectMapper, file, Need.class, need -> needs.put(need.getId(), need));
+                long loadNanos = System.nanoTime() - start;
+                long loadAllocated = allocated() - allocated;
+                long loadPeak = peak() - baseline;
+                assertEquals(records, needs.size());
+
+                // Save is measured on top of the loaded map, which both modes retain
+                baseline = settle();
+                allocated = allocated();
+                start = System.nanoTime();
+                streams.write(objectMapper, file, Need.class, needs.values());
+                long saveNanos = System.nanoTime() - start;
+                long saveAllocated = allocated() - allocated;
+                long savePeak = peak() - baseline;
+
+                System.out.printf("%-8d %-9s | %8d %9.1f %8.1f | %8d %9.1f %8.1f%n", records, mode,
+                                  loadNanos / 1_000_000, loadAllocated / 1048576.0, loadPeak / 1048576.0,
+                                  saveNanos / 1_000_000, saveAllocated / 1048576.0, savePeak / 1048576.0);
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes a needs file of the given size without holding all of it in memory
+     */
+    private void writeNeeds(File file, int records) throws IOException {
+        new JsonStreams(true).write(objectMapper, file, Need.class, new AbstractList<Need>() {
+            @Override
+            public Need get(int id) {
+                return new Need(id, "need " + id, NeedType.values()[id % NeedType.values().length], 1 + id % 100,
+                                10 + id % 90, id % 10, id % 3 == 0 ? UrgencyTag.HIGH : UrgencyTag.LOW,
+                                "description of need " + id, "assets/images/need" + (id % 20) + ".jpg");
+            }
+
+            @Override
+            public int size() {
+                return records;
+            }
+        });
+    }
+
+    /**
+     * Collects garbage and resets the peak usage of every heap pool
+     *
+     * @return The heap in use afterwards
+     */
+    private static long settle() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Retrieves the bytes allocated so far by the current thread
+     */
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Sums the peak usage of every heap pool since the last {@link #settle()}
+     */
+    private static long peak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+}
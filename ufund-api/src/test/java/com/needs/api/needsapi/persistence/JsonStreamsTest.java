@@ -0,0 +1,162 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.FundingBasket;
+import com.needs.api.needsapi.model.Login;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Json Streams class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class JsonStreamsTest {
+    File directory;
+    File file;
+    ObjectMapper objectMapper;
+    JsonStreams streams;
+    Map<Integer,Need> testNeeds;
+
+    /**
+     * Before each test, create three needs and a streaming Json Streams
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupJsonStreams() throws IOException {
+        directory = Files.createTempDirectory("streams").toFile();
+        file = new File(directory, "needs.json");
+        objectMapper = new ObjectMapper();
+        streams = new JsonStreams(true);
+        testNeeds = new TreeMap<>();
+        testNeeds.put(1, new Need(1, "Boots", NeedType.EQUIPMENT, 20.5, 4, 1, UrgencyTag.HIGH, "Warm boots", "boots.png"));
+        testNeeds.put(2, new Need(2, "Tutoring", NeedType.PROGRAM, 0, 10, 0, UrgencyTag.LOW, null, "tutor.png"));
+        testNeeds.put(3, new Need(3, "Blankets", NeedType.DONATE, 5, 50, 50, UrgencyTag.HIGH, "Wool", "blankets.png"));
+    }
+
+    private List<Need> read(JsonStreams streams) throws IOException {
+        List<Need> needs = new ArrayList<>();
+        streams.read(objectMapper, file, Need.class, needs::add);
+        return needs;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        // Invoke
+        streams.write(objectMapper, file, Need.class, testNeeds.values());
+        List<Need> needs = read(streams);
+
+        // Analyze
+        assertEquals(3, needs.size());
+        assertEquals(objectMapper.writeValueAsString(testNeeds.values()), objectMapper.writeValueAsString(needs));
+    }
+
+    @Test
+    public void testSameOutputAsArrays() throws IOException {
+        // Invoke
+        byte[] streamed = streams.writeBytes(objectMapper, Need.class, testNeeds.values());
+        byte[] array = JsonStreams.arrays().writeBytes(objectMapper, Need.class, testNeeds.values());
+        streams.write(objectMapper, file, Need.class, testNeeds.values());
+
+        // Analyze
+        assertArrayEquals(array, streamed);
+        assertArrayEquals(array, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testReadsWhatArraysWrote() throws IOException {
+        // Setup
+        JsonStreams.arrays().write(objectMapper, file, Need.class, testNeeds.values());
+
+        // Invoke
+        List<Need> streamed = read(streams);
+        List<Need> array = read(JsonStreams.arrays());
+
+        // Analyze
+        assertEquals(objectMapper.writeValueAsString(array), objectMapper.writeValueAsString(streamed));
+    }
+
+    @Test
+    public void testOtherRecordTypes() throws IOException {
+        // Setup
+        FundingBasket basket = new FundingBasket(4, "mark");
+        basket.addNeed(2, 3);
+        File baskets = new File(directory, "baskets.json");
+        File logins = new File(directory, "logins.json");
+
+        // Invoke
+        streams.write(objectMapper, baskets, FundingBasket.class, List.of(basket));
+        streams.write(objectMapper, logins, Login.class, List.of(new Login("mark", "pass", 4)));
+        List<FundingBasket> readBaskets = new ArrayList<>();
+        streams.read(objectMapper, baskets, FundingBasket.class, readBaskets::add);
+        List<Login> readLogins = new ArrayList<>();
+        streams.read(objectMapper, logins, Login.class, readLogins::add);
+
+        // Analyze
+        assertEquals(3, readBaskets.get(0).getNeeds().get(2));
+        assertEquals(4, readLogins.get(0).getBasketId());
+    }
+
+    @Test
+    public void testEmptyArray() throws IOException {
+        // Setup
+        Files.write(file.toPath(), "[]".getBytes());
+
+        // Invoke & Analyze
+        assertTrue(read(streams).isEmpty());
+    }
+
+    @Test
+    public void testRejectsMalformedFiles() throws IOException {
+        // Invoke & Analyze: not an array
+        Files.write(file.toPath(), "{\"id\":1}".getBytes());
+        assertThrows(IOException.class, () -> read(streams));
+
+        // Invoke & Analyze: truncated after the first record
+        streams.write(objectMapper, file, Need.class, testNeeds.values());
+        String json = new String(Files.readAllBytes(file.toPath()));
+        Files.write(file.toPath(), json.substring(0, json.indexOf("},{") + 1).getBytes());
+        assertThrows(IOException.class, () -> read(streams));
+    }
+
+    @Test
+    public void testNeedFileDAOStreams() throws IOException {
+        // Setup: work on a copy of data/needs.json
+        File data = new File("data/needs.json");
+        List<Need> expected = new ArrayList<>();
+        JsonStreams.arrays().read(objectMapper, data, Need.class, expected::add);
+        File copy = new File(directory, "needs-copy.json");
+        Files.copy(data.toPath(), copy.toPath());
+
+        // Invoke
+        NeedFileDAO needFileDAO = new NeedFileDAO(copy.getPath(), objectMapper, null, WriteBehindFlusher.synchronous(),
+                                                  BinarySnapshot.disabled(), streams);
+        Need created = needFileDAO.createNeed(new Need(0, "Gloves", NeedType.EQUIPMENT, 3, 2, 0, UrgencyTag.LOW, "Wool", "gloves.png"));
+        List<Need> written = new ArrayList<>();
+        streams.read(objectMapper, copy, Need.class, written::add);
+
+        // Analyze
+        assertEquals(expected.size(), needFileDAO.getNeeds().length - 1);
+        assertEquals(expected.size() + 1, written.size());
+        assertEquals(created.getId(), written.get(written.size() - 1).getId());
+    }
+}
@@ -5,7 +5,6 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import java.io.File;
 import java.io.IOException;
 //import java.util.Arrays;
 import java.util.HashMap;
@@ -13,12 +12,12 @@ import java.util.HashMap;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.needs.api.needsapi.model.Login;
 import com.needs.api.needsapi.model.Need;
 import com.needs.api.needsapi.model.NeedType;
 import com.needs.api.needsapi.model.Profile;
 import com.needs.api.needsapi.model.UrgencyTag;
+import com.needs.api.needsapi.persistence.MutationEvent.Change;
+import com.needs.api.needsapi.persistence.MutationEvent.Entity;
 
 /**
  * Test the Leaderboard File DAO class
@@ -31,18 +30,18 @@ public class LeaderboardFileDAOTest {
     String[][] testLeaderboard;
     Profile[] testProfiles;
     Need[] testNeeds;
-    ObjectMapper mockObjectMapper;
-    LoginDAO mockLoginDAO;
+    NeedDAO mockNeedDAO;
+    ProfileDAO mockProfileDAO;
 
     /**
-     * Before each test, we will create and inject a Mock Object Mapper to
-     * isolate the tests from the underlying file
+     * Before each test, we will create and inject mock need and profile DAOs
+     * to isolate the tests from the underlying storage
      * @throws IOException
      */
     @BeforeEach
     public void setupLeaderboardFileDAO() throws IOException {
-        mockObjectMapper = mock(ObjectMapper.class);
-        mockLoginDAO = mock(LoginDAO.class);
+        mockNeedDAO = mock(NeedDAO.class);
+        mockProfileDAO = mock(ProfileDAO.class);
         testLeaderboard = new String[2][1];
         testLeaderboard[0] = new String[]{"1", "RyanG", "Dulce Garvin", "20"};
         testLeaderboard[1] = new String[]{"2", "not null", "null null", "0"};
@@ -68,15 +67,11 @@ public class LeaderboardFileDAOTest {
         testProfiles[1] = profile;
 
 
-        // When the object mapper is supposed to read from a file
-        // the mock object mapper will return the one of the arrays above
-        when(mockObjectMapper
-            .readValue(new File("data/needs.json"),Need[].class))
-                .thenReturn(testNeeds);
-        when(mockObjectMapper
-            .readValue(new File("data/profiles.json"),Profile[].class))
-                .thenReturn(testProfiles);
-        leaderboardFileDAO = new LeaderboardFileDAO(mockObjectMapper, mockLoginDAO);
+        // When the DAOs are asked for every need and profile
+        // the mocks will return the one of the arrays above
+        when(mockNeedDAO.getNeeds()).thenReturn(testNeeds);
+        when(mockProfileDAO.getProfiles()).thenReturn(testProfiles);
+        leaderboardFileDAO = new LeaderboardFileDAO(mockNeedDAO, mockProfileDAO);
     }
 
     @Test
@@ -98,10 +93,8 @@ public class LeaderboardFileDAOTest {
         testProfiles[1].switchPrivacy();
 
         try {
-            when(mockObjectMapper
-                .readValue(new File("data/profiles.json"),Profile[].class))
-                    .thenReturn(testProfiles);
-            leaderboardFileDAO = new LeaderboardFileDAO(mockObjectMapper, mockLoginDAO);
+            when(mockProfileDAO.getProfiles()).thenReturn(testProfiles);
+            leaderboardFileDAO = new LeaderboardFileDAO(mockNeedDAO, mockProfileDAO);
             // Invoke
             String[][] leaderboard = leaderboardFileDAO.updateLeaderboard(testProfiles[0]);
 
@@ -113,4 +106,52 @@ public class LeaderboardFileDAOTest {
             assertTrue(false);
         }
     }
+
+    @Test
+    public void testFollowsMutationBus() throws IOException {
+        // Setup
+        MutationBus bus = new MutationBus(true, 16, 4, MutationBus.Backpressure.BLOCK);
+        bus.topic(Entity.PROFILE).attach();
+        bus.topic(Entity.NEED).attach();
+        leaderboardFileDAO = new LeaderboardFileDAO(mockNeedDAO, mockProfileDAO, bus);
+        MutationBus.Subscription profiles = bus.subscribe(Entity.PROFILE, "test", (event, endOfBatch) -> {});
+        MutationBus.Subscription needs = bus.subscribe(Entity.NEED, "test", (event, endOfBatch) -> {});
+        HashMap<Integer,Integer> contributions = new HashMap<>();
+        contributions.put(101, 5);
+        Profile donor = new Profile("Big", "Donor", "donor@example.com", "US", "BigDonor", contributions);
+
+        // Invoke: a new profile, a price change and a removed profile
+        bus.topic(Entity.PROFILE).publish(Change.PUT, "BigDonor", donor);
+        bus.topic(Entity.NEED).publish(Change.PUT, 101, new Need(101, "not null", NeedType.EQUIPMENT, (double)30, 10, 0, UrgencyTag.LOW, "null", "null"));
+        bus.topic(Entity.PROFILE).publish(Change.REMOVE, "null", testProfiles[0]);
+        bus.topic(Entity.PROFILE).publish(Change.PUT, "admin", new Profile("a", "b", "c", "d", "admin", null));
+        assertTrue(profiles.await(5000) && needs.await(5000));
+        String[][] leaderboard = leaderboardFileDAO.getLeaderboard();
+        bus.close();
+
+        // Analyze: the DAOs were not read again, which would bring back the removed profile
+        assertEquals(2, leaderboard.length);
+        assertEquals("BigDonor", leaderboard[0][1]);
+        assertEquals("150.00", leaderboard[0][3]);
+        assertEquals("RyanG", leaderboard[1][1]);
+    }
+
+    @Test
+    public void testReadsDAOsWithoutPublishers() throws IOException {
+        // Setup: the DAOs publish nothing, as under the jdbc profile
+        MutationBus bus = new MutationBus(true, 16, 4, MutationBus.Backpressure.BLOCK);
+        leaderboardFileDAO = new LeaderboardFileDAO(mockNeedDAO, mockProfileDAO, bus);
+        HashMap<Integer,Integer> contributions = new HashMap<>();
+        contributions.put(101, 5);
+        Profile donor = new Profile("Big", "Donor", "donor@example.com", "US", "BigDonor", contributions);
+        when(mockProfileDAO.getProfiles()).thenReturn(new Profile[] {testProfiles[1], donor});
+
+        // Invoke
+        String[][] leaderboard = leaderboardFileDAO.getLeaderboard();
+        bus.close();
+
+        // Analyze: the profile added since the leaderboard was created is ranked
+        assertEquals(2, leaderboard.length);
+        assertEquals("BigDonor", leaderboard[0][1]);
+    }
 }
@@ -0,0 +1,187 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.FundingBasket;
+import com.needs.api.needsapi.model.Login;
+import com.needs.api.needsapi.model.Profile;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares one lock for every key with striped per-key locks in the basket and
+ * profile DAOs, with every client working on its own basket and profile
+ * <p>
+ * Only runs when requested, for example
+ * {@code mvn test -Dtest=LockContentionBenchmark -Dbenchmark=true -Dbenchmark.clients=64,128 -Dbenchmark.operations=100}.
+ * A single stripe serializes every operation as the store-wide lock did. For
+ * each number of clients it reports the throughput of both, and checks that no
+ * change was lost.
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class LockContentionBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * A DAO set up for one run, and the work each client does on it
+     */
+    private interface Scenario {
+        void setStripes(LockStripes locks);
+        void run(int client, int operations) throws IOException;
+        void verify(int client, int operations) throws IOException;
+    }
+
+    @Test
+    public void benchmarkStripedLocks() throws Exception {
+        int operations = Integer.getInteger("benchmark.operations", 100);
+        System.out.printf("%-22s %7s | %10s %10s | %6s%n", "scenario", "clients", "1 lock/s", "striped/s", "gain");
+
+        for (String size : System.getProperty("benchmark.clients", "64,128").split(",")) {
+            int clients = Integer.parseInt(size.trim());
+            for (String name : new String[]{"baskets, records", "baskets, write-behind", "profiles, write-behind"}) {
+                double single = measure(name, clients, operations, 1);
+                double striped = measure(name, clients, operations, LockStripes.DEFAULT);
+                System.out.printf("%-22s %7d | %10.0f %10.0f | %5.2fx%n", name, clients, single, striped, striped / single);
+            }
+        }
+    }
+
+    /**
+     * Runs every client against a fresh DAO and verifies the result
+     *
+     * @return The operations per second
+     */
+    private double measure(String name, int clients, int operations, int stripes) throws Exception {
+        File directory = Files.createTempDirectory("contention-benchmark").toFile();
+        WriteBehindFlusher flusher = new WriteBehindFlusher(Durability.ASYNC, 200, 100, Integer.MAX_VALUE);
+        Scenario scenario = name.startsWith("baskets")
+            ? baskets(directory, clients, flusher, name.endsWith("records"))
+            : profiles(directory, clients, flusher);
+        scenario.setStripes(new LockStripes(name + " stripes", stripes));
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int client = 0; client < clients; ++client) {
+            final int id = client;
+            Callable<Void> work = () -> {
+                start.await();
+                scenario.run(id, operations);
+                return null;
+            };
+            results.add(pool.submit(work));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<Void> result : results)
+            result.get();
+        long nanos = System.nanoTime() - begin;
+        pool.shutdown();
+        flusher.close();
+
+        for (int client = 0; client < clients; ++client)
+            scenario.verify(client, operations);
+        return clients * (double)operations * 1e9 / nanos;
+    }
+
+    /**
+     * Each client adds, resizes and sometimes removes needs in its own basket
+     */
+    private Scenario baskets(File directory, int clients, WriteBehindFlusher flusher, boolean records) throws IOException {
+        File file = new File(directory, "baskets.json");
+        FundingBasket[] baskets = new FundingBasket[clients];
+        for (int client = 0; client < clients; ++client)
+            baskets[client] = new FundingBasket(client, "user" + client);
+        objectMapper.writeValue(file, baskets);
+
+        BasketRecordStore store = new BasketRecordStore(records ? new File(directory, "baskets").getPath() : "", 1000, objectMapper);
+        BasketFileDAO dao = new BasketFileDAO(file.getPath(), objectMapper, null, flusher, store);
+        return new Scenario() {
+            @Override
+            public void setStripes(LockStripes locks) {
+                dao.locks = locks;
+            }
+
+            @Override
+            public void run(int client, int operations) throws IOException {
+                for (int i = 0; i < operations; ++i) {
+                    dao.addNeed(client, i, 1);
+                    dao.setQuantity(client, i, 2);
+                    if (i % 4 == 3)
+                        dao.removeNeed(client, i);
+                }
+            }
+
+            @Override
+            public void verify(int client, int operations) throws IOException {
+                HashMap<Integer, Integer> needs = dao.getNeeds(client);
+                assertEquals(operations - operations / 4, needs.size());
+                for (int quantity : needs.values())
+                    assertEquals(2, quantity);
+            }
+        };
+    }
+
+    /**
+     * Each client renames itself and switches its privacy
+     */
+    private Scenario profiles(File directory, int clients, WriteBehindFlusher flusher) throws IOException {
+        File basketFile = new File(directory, "baskets.json");
+        File loginFile = new File(directory, "logins.json");
+        File profileFile = new File(directory, "profiles.json");
+        Login[] logins = new Login[clients];
+        Profile[] profiles = new Profile[clients];
+        for (int client = 0; client < clients; ++client) {
+            logins[client] = new Login("user" + client, "pass", client);
+            profiles[client] = new Profile("first", "last", "user" + client + "@example.com", "US", "user" + client, new HashMap<>());
+        }
+        objectMapper.writeValue(basketFile, new FundingBasket[0]);
+        objectMapper.writeValue(loginFile, logins);
+        objectMapper.writeValue(profileFile, profiles);
+
+        BasketFileDAO basketDAO = new BasketFileDAO(basketFile.getPath(), objectMapper, null, flusher, null);
+        LoginFileDAO loginDAO = new LoginFileDAO(loginFile.getPath(), objectMapper, basketDAO, flusher);
+        ProfileFileDAO dao = new ProfileFileDAO(profileFile.getPath(), objectMapper, loginDAO, flusher);
+        return new Scenario() {
+            @Override
+            public void setStripes(LockStripes locks) {
+                dao.locks = locks;
+            }
+
+            @Override
+            public void run(int client, int operations) throws IOException {
+                String userName = "user" + client;
+                for (int i = 0; i < operations; ++i) {
+                    dao.updateProfile(new Profile("first" + i, null, null, null, userName, new HashMap<>()));
+                    dao.switchPrivacy(dao.getProfile(userName));
+                }
+            }
+
+            @Override
+            public void verify(int client, int operations) throws IOException {
+                Profile profile = dao.getProfile("user" + client);
+                assertEquals("first" + (operations - 1), profile.getFirstName());
+                assertEquals(true, profile.getIsPrivate());  // each update makes it public again
+            }
+        };
+    }
+}
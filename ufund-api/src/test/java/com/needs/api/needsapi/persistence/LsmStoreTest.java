@@ -0,0 +1,142 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.Login;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the LSM Store class and the DAOs running on {@linkplain LsmStorage LSM storage}
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class LsmStoreTest {
+    File directory;
+    File needsFile;
+    ObjectMapper objectMapper;
+    LsmStorage lsm;
+
+    /**
+     * Before each test, write two needs to a temporary data file and configure
+     * LSM storage next to it with a cache of a single value
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupLsmStore() throws IOException {
+        directory = Files.createTempDirectory("lsm").toFile();
+        needsFile = new File(directory, "needs.json");
+        objectMapper = new ObjectMapper();
+        FileBackedStore.Codec.json(objectMapper, new JsonStreams(true), Need.class).write(needsFile, List.of(
+            new Need(1, "Boots", NeedType.EQUIPMENT, 20.5, 4, 1, UrgencyTag.HIGH, "Warm boots", "boots.png"),
+            new Need(2, "Tutoring", NeedType.PROGRAM, 3, 10, 0, UrgencyTag.LOW, null, "tutor.png")));
+        lsm = newStorage();
+    }
+
+    @AfterEach
+    public void closeLsmStore() {
+        lsm.close();
+    }
+
+    private LsmStorage newStorage() {
+        return new LsmStorage(new File(directory, "lsm").getPath(), 4096, 4, 2048, 2, 1 << 20, 1, objectMapper);
+    }
+
+    private NeedFileDAO newNeedDAO() throws IOException {
+        return new NeedFileDAO(needsFile.getPath(), objectMapper, null, WriteBehindFlusher.synchronous(),
+                               BinarySnapshot.disabled(), new JsonStreams(true), lsm);
+    }
+
+    @Test
+    public void testDisabled() {
+        assertFalse(LsmStorage.disabled().isEnabled());
+        assertTrue(lsm.isEnabled());
+    }
+
+    @Test
+    public void testIntegerKeysSortNumerically() {
+        // Setup
+        int[] ids = {Integer.MIN_VALUE, -5, -1, 0, 1, 255, 256, Integer.MAX_VALUE};
+
+        // Analyze
+        for (int i = 1; i < ids.length; ++i)
+            assertTrue(Arrays.compareUnsigned(LsmStore.INTEGERS.encode(ids[i - 1]), LsmStore.INTEGERS.encode(ids[i])) < 0);
+        for (int id : ids)
+            assertEquals(id, LsmStore.INTEGERS.decode(LsmStore.INTEGERS.encode(id)));
+    }
+
+    @Test
+    public void testStoreReadsThroughCache() throws IOException {
+        // Setup
+        File loginsFile = new File(directory, "logins.json");
+        Files.writeString(loginsFile.toPath(), "[]");
+        LsmStore<String,Login> logins = lsm.open("logins", LsmStore.STRINGS, Login.class);
+        FileBackedStore<String,Login> store = new FileBackedStore<>(loginsFile.getPath(), logins,
+            Login::getUserName, FileBackedStore.Codec.json(objectMapper, new JsonStreams(true), Login.class),
+            WriteBehindFlusher.synchronous());
+        store.load();
+
+        // Invoke
+        Login mark = new Login("mark", "pass", 4);
+        store.put(mark);
+        store.put(new Login("tom", "pass", 5));
+        store.remove("tom");
+
+        // Analyze: mark was pushed out of memory by tom and is read back
+        assertEquals(0, logins.resident());
+        assertEquals(1, store.size());
+        assertEquals(4, store.get("mark").getBasketId());
+        assertSame(store.get("mark"), store.get("mark"));
+        assertEquals(1, logins.resident());
+        assertNull(store.get("tom"));
+        List<String> names = new ArrayList<>();
+        for (Login login : store.values())
+            names.add(login.getUserName());
+        assertEquals(List.of("mark"), names);
+    }
+
+    @Test
+    public void testNeedDAOImportsOnce() throws IOException {
+        // Setup
+        long modified = needsFile.lastModified();
+        NeedFileDAO needFileDAO = newNeedDAO();
+        Need created = needFileDAO.createNeed(new Need(0, "Blankets", NeedType.DONATE, 5, 50, 0, UrgencyTag.HIGH, "Wool", "blankets.png"));
+        Need boots = needFileDAO.getNeed(1);
+        boots.setQuantityNeeded(8);
+        needFileDAO.updateNeed(boots);
+        needFileDAO.deleteNeed(2);
+        lsm.close();
+
+        // Invoke
+        lsm = newStorage();
+        NeedFileDAO reopened = newNeedDAO();
+
+        // Analyze: the data file was imported once and never written
+        assertEquals(modified, needsFile.lastModified());
+        assertEquals(2, reopened.getNeeds().length);
+        assertEquals(8, reopened.getNeed(1).getQuantityNeeded());
+        assertNull(reopened.getNeed(2));
+        assertNotNull(reopened.getNeed(created.getId()));
+        assertEquals(created.getId() + 1, reopened.createNeed(new Need(0, "Gloves", NeedType.EQUIPMENT, 3, 2, 0, UrgencyTag.LOW, "Wool", "gloves.png")).getId());
+    }
+}
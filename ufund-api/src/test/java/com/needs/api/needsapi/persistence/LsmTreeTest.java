@@ -0,0 +1,218 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the LSM Tree class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class LsmTreeTest {
+    File directory;
+    LsmTree tree;
+
+    /**
+     * Before each test, open an empty tree with a tiny memtable so that a few
+     * writes are enough to flush segments
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupLsmTree() throws IOException {
+        directory = new File(Files.createTempDirectory("lsm").toFile(), "tree");
+        tree = open();
+    }
+
+    @AfterEach
+    public void closeLsmTree() throws IOException {
+        tree.close();
+    }
+
+    private LsmTree open() throws IOException {
+        return open(4096);
+    }
+
+    private LsmTree open(long memtableLimit) throws IOException {
+        return new LsmTree(directory, memtableLimit, 4, 2048, 2, 1 << 20);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String key(int i) {
+        return String.format("key%04d", i);
+    }
+
+    private List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        Iterator<LsmSegment.Entry> entries = tree.scan();
+        while (entries.hasNext())
+            keys.add(new String(entries.next().key, StandardCharsets.UTF_8));
+        return keys;
+    }
+
+    @Test
+    public void testPutGetDelete() throws IOException {
+        // Invoke
+        boolean added = tree.put(bytes("a"), bytes("1"));
+        boolean replaced = tree.put(bytes("a"), bytes("2"));
+        tree.put(bytes("b"), bytes("3"));
+        boolean deleted = tree.delete(bytes("b"));
+        boolean missing = tree.delete(bytes("c"));
+
+        // Analyze
+        assertTrue(added);
+        assertFalse(replaced);
+        assertTrue(deleted);
+        assertFalse(missing);
+        assertArrayEquals(bytes("2"), tree.get(bytes("a")));
+        assertNull(tree.get(bytes("b")));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void testReplayWriteAheadLog() throws IOException {
+        // Setup: written to the log and memtable only
+        tree.put(bytes("a"), bytes("1"));
+        tree.put(bytes("b"), bytes("2"));
+        tree.delete(bytes("a"));
+        tree.close();
+
+        // Invoke
+        tree = open();
+
+        // Analyze
+        assertNull(tree.get(bytes("a")));
+        assertArrayEquals(bytes("2"), tree.get(bytes("b")));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void testTornLogTailIsIgnored() throws IOException {
+        // Setup
+        tree.put(bytes("a"), bytes("1"));
+        tree.put(bytes("b"), bytes("2"));
+        tree.close();
+        File wal = new File(directory, LsmTree.WAL);
+        try (RandomAccessFile file = new RandomAccessFile(wal, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        // Invoke
+        tree = open();
+
+        // Analyze: the record cut short is dropped, the one before it is kept
+        assertArrayEquals(bytes("1"), tree.get(bytes("a")));
+        assertNull(tree.get(bytes("b")));
+    }
+
+    @Test
+    public void testLookupsAcrossSegments() throws IOException {
+        // Setup
+        for (int i = 0; i < 500; ++i)
+            tree.put(bytes(key(i)), bytes("value" + i));
+        tree.flush();
+
+        // Analyze: every key is found through a Bloom filter and the sparse index
+        for (int i = 0; i < 500; ++i)
+            assertArrayEquals(bytes("value" + i), tree.get(bytes(key(i))));
+        assertNull(tree.get(bytes(key(500))));
+        assertNull(tree.get(bytes("")));
+        assertEquals(500, tree.size());
+    }
+
+    @Test
+    public void testCompactionDropsTombstones() throws IOException {
+        // Setup: only the explicit flushes write segments, the second one triggers a compaction
+        tree.close();
+        tree = open(1 << 20);
+        for (int i = 0; i < 300; ++i)
+            tree.put(bytes(key(i)), bytes("old" + i));
+        tree.flush();
+        for (int i = 0; i < 300; i += 2)
+            tree.delete(bytes(key(i)));
+        for (int i = 1; i < 300; i += 2)
+            tree.put(bytes(key(i)), bytes("new" + i));
+
+        // Invoke
+        tree.flush();
+        tree.awaitMaintenance();
+
+        // Analyze
+        assertEquals(0, tree.segments(0));
+        assertTrue(tree.segments(1) > 0);
+        assertEquals(150, tree.size());
+        for (int i = 0; i < 300; ++i) {
+            if (i % 2 == 0)
+                assertNull(tree.get(bytes(key(i))));
+            else
+                assertArrayEquals(bytes("new" + i), tree.get(bytes(key(i))));
+        }
+        long stored = 0;
+        for (File file : directory.listFiles((dir, name) -> name.endsWith(".sst"))) {
+            LsmSegment segment = LsmSegment.open(file, 0);
+            stored += segment.count;
+            segment.close();
+        }
+        assertEquals(150, stored);
+    }
+
+    @Test
+    public void testScanInKeyOrder() throws IOException {
+        // Setup: the same keys spread over segments and the memtable
+        for (int i = 299; i >= 0; --i)
+            tree.put(bytes(key(i)), bytes("v"));
+        tree.flush();
+        tree.delete(bytes(key(7)));
+        tree.put(bytes(key(300)), bytes("v"));
+
+        // Invoke
+        List<String> keys = keys();
+
+        // Analyze
+        assertEquals(300, keys.size());
+        assertEquals(key(0), keys.get(0));
+        assertFalse(keys.contains(key(7)));
+        assertEquals(key(300), keys.get(299));
+        for (int i = 1; i < keys.size(); ++i)
+            assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+    }
+
+    @Test
+    public void testReopenAfterCompaction() throws IOException {
+        // Setup
+        for (int i = 0; i < 600; ++i)
+            tree.put(bytes(key(i)), bytes("v" + i));
+        tree.markImported();
+        tree.flush();
+        tree.close();
+
+        // Invoke
+        tree = open();
+
+        // Analyze
+        assertTrue(tree.isImported());
+        assertEquals(600, tree.size());
+        assertArrayEquals(bytes("v599"), tree.get(bytes(key(599))));
+        assertEquals(600, keys().size());
+    }
+}
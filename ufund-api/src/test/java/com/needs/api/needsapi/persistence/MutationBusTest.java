@@ -0,0 +1,182 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+import com.needs.api.needsapi.persistence.MutationBus.Backpressure;
+import com.needs.api.needsapi.persistence.MutationEvent.Change;
+import com.needs.api.needsapi.persistence.MutationEvent.Entity;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Mutation Bus class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class MutationBusTest {
+    private MutationBus bus;
+
+    @AfterEach
+    public void closeMutationBus() {
+        if (bus != null)
+            bus.close();
+    }
+
+    /**
+     * Copies what it needs from each event, as handlers must, and waits for a
+     * latch before handling the first one
+     */
+    private static class Recorder implements MutationBus.Handler {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final AtomicLong batches = new AtomicLong();
+        final AtomicLong missed = new AtomicLong();
+        final CountDownLatch release;
+
+        Recorder(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onEvent(MutationEvent event, boolean endOfBatch) {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(event.getChange() + " " + event.getKey());
+            if (endOfBatch)
+                batches.incrementAndGet();
+        }
+
+        @Override
+        public void onOverrun(long count) {
+            missed.addAndGet(count);
+        }
+    }
+
+    @Test
+    public void testPublish() {
+        // Setup
+        bus = new MutationBus(true, 16, 4, Backpressure.BLOCK);
+        Recorder recorder = new Recorder(new CountDownLatch(0));
+        MutationBus.Subscription subscription = bus.subscribe(Entity.NEED, "test", recorder);
+        MutationBus.Topic topic = bus.topic(Entity.NEED);
+
+        // Invoke
+        for (int id = 0; id < 10; ++id)
+            topic.publish(id % 3 == 0 ? Change.REMOVE : Change.PUT, id, null);
+
+        // Analyze
+        assertTrue(subscription.await(5000));
+        assertEquals(10, recorder.events.size());
+        assertEquals("REMOVE 0", recorder.events.get(0));
+        assertEquals("PUT 1", recorder.events.get(1));
+        assertEquals("REMOVE 9", recorder.events.get(9));
+        assertTrue(recorder.batches.get() >= 3);  // at most 4 events per batch
+        assertEquals(9, subscription.getSequence());
+        assertEquals(9, topic.getCursor());
+        assertEquals(0, subscription.getMissed());
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        // Setup: the subscription cannot handle anything yet
+        bus = new MutationBus(true, 4, 1, Backpressure.BLOCK);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder recorder = new Recorder(release);
+        MutationBus.Subscription subscription = bus.subscribe(Entity.BASKET, "test", recorder);
+        MutationBus.Topic topic = bus.topic(Entity.BASKET);
+        CountDownLatch published = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            for (int id = 0; id < 20; ++id)
+                topic.publish(Change.PUT, id, null);
+            published.countDown();
+        });
+
+        // Invoke
+        writer.start();
+
+        // Analyze: the writer waits for the full ring, then every event arrives
+        assertFalse(published.await(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(published.await(5000, TimeUnit.MILLISECONDS));
+        assertTrue(subscription.await(5000));
+        assertEquals(20, recorder.events.size());
+        for (int id = 0; id < 20; ++id)
+            assertEquals("PUT " + id, recorder.events.get(id));
+        assertEquals(0, recorder.missed.get());
+    }
+
+    @Test
+    public void testDrop() throws InterruptedException {
+        // Setup: the subscription cannot handle anything yet
+        bus = new MutationBus(true, 4, 1, Backpressure.DROP);
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder recorder = new Recorder(release);
+        MutationBus.Subscription subscription = bus.subscribe(Entity.PROFILE, "test", recorder);
+        MutationBus.Topic topic = bus.topic(Entity.PROFILE);
+
+        // Invoke: the writer never waits
+        for (int id = 0; id < 20; ++id)
+            topic.publish(Change.PUT, "user" + id, null);
+        release.countDown();
+
+        // Analyze: the subscription is told what it missed and sees the latest events
+        assertTrue(subscription.await(5000));
+        assertTrue(recorder.missed.get() > 0);
+        assertEquals(recorder.missed.get(), subscription.getMissed());
+        assertEquals("PUT user19", recorder.events.get(recorder.events.size() - 1));
+        assertTrue(recorder.events.size() + recorder.missed.get() >= 20);
+    }
+
+    @Test
+    public void testDisabled() {
+        // Setup
+        MutationBus disabled = MutationBus.disabled();
+
+        // Invoke & Analyze
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.topic(Entity.NEED));
+        assertNull(disabled.subscribe(Entity.NEED, "test", new Recorder(new CountDownLatch(0))));
+    }
+
+    @Test
+    public void testStorePublishes() throws Exception {
+        // Setup
+        File file = new File(Files.createTempDirectory("events").toFile(), "needs.json");
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.writeValue(file, new Need[0]);
+        bus = new MutationBus(true, 16, 4, Backpressure.BLOCK);
+        Recorder recorder = new Recorder(new CountDownLatch(0));
+        MutationBus.Subscription subscription = bus.subscribe(Entity.NEED, "test", recorder);
+        NeedFileDAO dao = new NeedFileDAO(file.getPath(), objectMapper, null, WriteBehindFlusher.synchronous(),
+                                          BinarySnapshot.disabled(), JsonStreams.arrays(), LsmStorage.disabled(), bus);
+
+        // Invoke
+        Need need = dao.createNeed(new Need(0, "blankets", NeedType.EQUIPMENT, 5.0, 10, 0, UrgencyTag.LOW, "description", "image"));
+        dao.deleteNeed(need.getId());
+
+        // Analyze
+        assertTrue(subscription.await(5000));
+        assertEquals(List.of("PUT " + need.getId(), "REMOVE " + need.getId()), recorder.events);
+    }
+}
@@ -0,0 +1,124 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Name Gram Index class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class NameGramIndexTest {
+    NameGramIndex index;
+
+    @BeforeEach
+    public void setupNameGramIndex() {
+        index = new NameGramIndex(need -> need.getName() == null ? null : need.getName().toLowerCase());
+        index.add(1, need(1, "Syringes"));
+        index.add(2, need(2, "incubator"));
+        index.add(3, need(3, "milk formula"));
+        index.add(4, need(4, "Baby milk"));
+    }
+
+    private static Need need(int id, String name) {
+        return new Need(id, name, NeedType.EQUIPMENT, 1.0, 1, 0, UrgencyTag.LOW, "description", "image");
+    }
+
+    @Test
+    public void testCandidates() {
+        // Invoke & Analyze
+        assertArrayEquals(new int[] {3, 4}, index.candidates("milk"));
+        assertArrayEquals(new int[] {1}, index.candidates("syr"));
+        assertArrayEquals(new int[0], index.candidates("xyz"));
+        assertArrayEquals(new int[0], index.candidates("milk syringes"));
+        assertNull(index.candidates(""));
+    }
+
+    @Test
+    public void testShortCandidates() {
+        // Invoke & Analyze: shorter than a gram, so exactly the names containing them
+        assertArrayEquals(new int[] {3, 4}, index.candidates("mi"));
+        assertArrayEquals(new int[] {1, 4}, index.candidates("y"));
+        assertArrayEquals(new int[] {2}, index.candidates("cu"));
+        assertArrayEquals(new int[0], index.candidates("q"));
+
+        // Invoke & Analyze: removed along with the trigrams
+        index.remove(4, need(4, "Baby milk"));
+        assertArrayEquals(new int[] {1}, index.candidates("y"));
+        assertArrayEquals(new int[] {3}, index.candidates("mi"));
+    }
+
+    @Test
+    public void testCandidatesAreSuperset() {
+        // Invoke: every gram of "ormu" is in both, but only one contains it
+        index.add(5, need(5, "orm rmu"));
+
+        // Analyze
+        assertArrayEquals(new int[] {3, 5}, index.candidates("ormu"));
+    }
+
+    @Test
+    public void testRemove() {
+        // Invoke
+        index.remove(3, need(3, "milk formula"));
+
+        // Analyze
+        assertArrayEquals(new int[] {4}, index.candidates("milk"));
+        assertArrayEquals(new int[0], index.candidates("formula"));
+    }
+
+    @Test
+    public void testReplace() {
+        // Setup
+        Need renamed = need(2, "infant milk");
+
+        // Invoke: renamed, then changed in place without a rename
+        index.replace(2, need(2, "incubator"), renamed);
+        renamed.setQuantityFulfilled(1);
+        index.replace(2, renamed, renamed);
+
+        // Analyze
+        assertArrayEquals(new int[] {2, 3, 4}, index.candidates("milk"));
+        assertArrayEquals(new int[0], index.candidates("incubator"));
+    }
+
+    @Test
+    public void testOutOfOrderAdd() {
+        // Invoke: ids are usually added in ascending order
+        index.add(0, need(0, "milk bottle"));
+        index.add(10, need(10, "bottle warmer"));
+
+        // Analyze
+        assertArrayEquals(new int[] {0, 3, 4}, index.candidates("milk"));
+        assertArrayEquals(new int[] {0, 10}, index.candidates("bottle"));
+    }
+
+    @Test
+    public void testLongLists() {
+        // Setup
+        NameGramIndex many = new NameGramIndex(need -> need.getName());
+        for (int id = 0; id < 1000; ++id)
+            many.add(id, need(id, id % 7 == 0 ? "blanket " + id : "pillow " + id));
+
+        // Invoke
+        int[] candidates = many.candidates("blanket 7");
+
+        // Analyze
+        int found = 0;
+        for (int id = 0; id < 1000; ++id) {
+            if (id % 7 == 0 && ("blanket " + id).startsWith("blanket 7"))
+                assertEquals(id, candidates[found++]);
+        }
+        assertEquals(found, candidates.length);
+    }
+}
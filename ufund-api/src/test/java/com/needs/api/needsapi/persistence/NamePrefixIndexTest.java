@@ -0,0 +1,131 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Name Prefix Index class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class NamePrefixIndexTest {
+    NamePrefixIndex index;
+
+    @BeforeEach
+    public void setupNamePrefixIndex() {
+        index = new NamePrefixIndex(need -> need.getName() == null ? null : need.getName().toLowerCase(), 3);
+        index.add(1, need(1, "Baby formula", UrgencyTag.LOW, 10, 0));
+        index.add(2, need(2, "baby wipes", UrgencyTag.HIGH, 5, 0));
+        index.add(3, need(3, "Bandages", UrgencyTag.LOW, 50, 0));
+        index.add(4, need(4, "baby", UrgencyTag.LOW, 20, 0));
+        index.add(5, need(5, "blankets", UrgencyTag.LOW, 30, 25));
+    }
+
+    private static Need need(int id, String name, UrgencyTag urgency, int needed, int fulfilled) {
+        return new Need(id, name, NeedType.EQUIPMENT, 1.0, needed, fulfilled, urgency, "description", "image");
+    }
+
+    @Test
+    public void testSuggest() {
+        // Invoke & Analyze: urgent first, then the most still needed, at most the depth
+        assertArrayEquals(new int[] {2, 3, 4}, index.suggest("b", 10));
+        assertArrayEquals(new int[] {2, 4, 1}, index.suggest("baby", 10));
+        assertArrayEquals(new int[] {2, 3}, index.suggest("ba", 2));
+        assertArrayEquals(new int[] {1}, index.suggest("baby f", 10));
+        assertArrayEquals(new int[] {1}, index.suggest("baby formula", 10));
+        assertArrayEquals(new int[] {3}, index.suggest("ban", 10));
+        assertArrayEquals(new int[] {2, 3, 4}, index.suggest("", 10));
+        assertArrayEquals(new int[0], index.suggest("baby formulas", 10));
+        assertArrayEquals(new int[0], index.suggest("bx", 10));
+        assertArrayEquals(new int[0], index.suggest("c", 10));
+    }
+
+    @Test
+    public void testRemove() {
+        // Invoke
+        index.remove(2, need(2, "baby wipes", UrgencyTag.HIGH, 5, 0));
+        index.remove(4, need(4, "baby", UrgencyTag.LOW, 20, 0));
+
+        // Analyze: the next best take their places
+        assertArrayEquals(new int[] {3, 1, 5}, index.suggest("b", 10));
+        assertArrayEquals(new int[] {1}, index.suggest("baby", 10));
+        assertArrayEquals(new int[0], index.suggest("baby w", 10));
+    }
+
+    @Test
+    public void testReplace() {
+        // Setup
+        Need blankets = need(5, "blankets", UrgencyTag.LOW, 30, 25);
+        Need renamed = need(3, "gauze", UrgencyTag.LOW, 50, 0);
+
+        // Invoke: changed in place, then renamed
+        blankets.setUrgency(UrgencyTag.HIGH);
+        index.replace(5, blankets, blankets);
+        index.replace(3, need(3, "Bandages", UrgencyTag.LOW, 50, 0), renamed);
+
+        // Analyze
+        assertArrayEquals(new int[] {2, 5, 4}, index.suggest("b", 10));
+        assertArrayEquals(new int[] {2, 4, 1}, index.suggest("ba", 10));
+        assertArrayEquals(new int[] {3}, index.suggest("g", 10));
+    }
+
+    @Test
+    public void testMatchesScan() {
+        // Setup: names made of a few syllables, so edges are split and pruned often
+        String[] syllables = {"ba", "b", "by", "mi", "lk", " ", "a"};
+        Random random = new Random(261);
+        NamePrefixIndex deep = new NamePrefixIndex(Need::getName, 4);
+        Map<Integer,Need> needs = new HashMap<>();
+        for (int step = 0; step < 2000; ++step) {
+            int id = random.nextInt(100);
+            Need previous = needs.get(id);
+            if (previous != null && random.nextInt(3) == 0) {
+                deep.remove(id, previous);
+                needs.remove(id);
+                continue;
+            }
+            StringBuilder name = new StringBuilder();
+            for (int length = random.nextInt(4); length >= 0; --length)
+                name.append(syllables[random.nextInt(syllables.length)]);
+            Need need = need(id, name.toString(), random.nextBoolean() ? UrgencyTag.HIGH : UrgencyTag.LOW, random.nextInt(10), 0);
+            if (previous == null)
+                deep.add(id, need);
+            else
+                deep.replace(id, previous, need);
+            needs.put(id, need);
+        }
+
+        // Invoke & Analyze: every prefix of every name suggests what a scan would
+        Comparator<Need> rank = Comparator.comparing((Need need) -> need.getUrgency() != UrgencyTag.HIGH)
+                                          .thenComparing(Comparator.comparingInt(Need::getQuantityNeeded).reversed())
+                                          .thenComparingInt(Need::getId);
+        for (Need named : needs.values()) {
+            for (int length = 0; length <= named.getName().length(); ++length) {
+                String prefix = named.getName().substring(0, length);
+                List<Need> matches = new ArrayList<>();
+                for (Need need : needs.values()) {
+                    if (need.getName().startsWith(prefix))
+                        matches.add(need);
+                }
+                matches.sort(rank);
+                int[] expected = matches.stream().limit(4).mapToInt(Need::getId).toArray();
+                assertArrayEquals(expected, deep.suggest(prefix, 4), "prefix '" + prefix + "'");
+            }
+        }
+    }
+}
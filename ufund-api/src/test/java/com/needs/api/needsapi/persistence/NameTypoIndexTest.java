@@ -0,0 +1,149 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Name Typo Index class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class NameTypoIndexTest {
+    NameTypoIndex index;
+
+    @BeforeEach
+    public void setupNameTypoIndex() {
+        index = new NameTypoIndex(need -> need.getName() == null ? null : need.getName().toLowerCase());
+        index.add(1, need(1, "Vaccines"));
+        index.add(2, need(2, "Baby formula"));
+        index.add(3, need(3, "Reintroduction program"));
+        index.add(4, need(4, "baby wipes"));
+        index.add(5, need(5, null));
+    }
+
+    private static Need need(int id, String name) {
+        return new Need(id, name, NeedType.EQUIPMENT, 1.0, 1, 0, UrgencyTag.LOW, "description", "image");
+    }
+
+    @Test
+    public void testDistance() {
+        // Invoke & Analyze
+        assertEquals(0, NameTypoIndex.distance("milk", "milk", 2));
+        assertEquals(1, NameTypoIndex.distance("vacines", "vaccines", 2));
+        assertEquals(1, NameTypoIndex.distance("mlik", "milk", 2));
+        assertEquals(2, NameTypoIndex.distance("fromulas", "formula", 2));
+        assertEquals(3, NameTypoIndex.distance("milk", "formula", 2));
+        assertEquals(2, NameTypoIndex.distance("ab", "abcd", 1));
+    }
+
+    @Test
+    public void testDeletes() {
+        // Invoke & Analyze
+        assertEquals(Set.of("abc"), NameTypoIndex.deletes("abc", 0));
+        assertEquals(Set.of("abc", "bc", "ac", "ab"), NameTypoIndex.deletes("abc", 1));
+        assertEquals(Set.of("aab", "ab", "aa", "a", "b"), NameTypoIndex.deletes("aab", 2));
+    }
+
+    @Test
+    public void testFind() {
+        // Invoke & Analyze: each word within the typos its length allows
+        assertEquals(Map.of(1, 1), index.find("vacines"));
+        assertEquals(Map.of(3, 1), index.find("reintroducton"));
+        assertEquals(Map.of(3, 2), index.find("rientroducton"));
+        assertEquals(Map.of(2, 1, 4, 1), index.find("bby"));
+        assertEquals(Map.of(2, 2), index.find("bby formla"));
+        assertEquals(Map.of(), index.find("bby blankets"));
+        assertEquals(Map.of(), index.find("vaxxxnes"));
+        assertEquals(Map.of(), index.find("ba"));
+        assertEquals(Map.of(), index.find(" - "));
+    }
+
+    @Test
+    public void testScoreMatchesFind() {
+        // Setup
+        String[] names = {"vaccines", "baby formula", "reintroduction program", "baby wipes"};
+
+        // Invoke & Analyze: scanning scores the same needs as the dictionary finds
+        for (String text : List.of("vacines", "bby formla", "babby", "program", "wipe baby", "ba", "zzz")) {
+            Map<Integer,Integer> found = index.find(text);
+            for (int id = 1; id <= names.length; ++id) {
+                int score = NameTypoIndex.score(text, names[id - 1]);
+                assertEquals(score < 0 ? null : Integer.valueOf(score), found.get(id), text + " in " + names[id - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        // Invoke
+        index.remove(2, need(2, "Baby formula"));
+        index.remove(5, need(5, null));
+
+        // Analyze: words still used by another need stay
+        assertEquals(Map.of(4, 0), index.find("baby"));
+        assertEquals(Map.of(), index.find("formula"));
+    }
+
+    @Test
+    public void testReplace() {
+        // Invoke
+        index.replace(4, need(4, "baby wipes"), need(4, "Wet wipes"));
+        index.replace(1, need(1, "Vaccines"), need(1, "Vaccines"));
+
+        // Analyze
+        assertEquals(Map.of(2, 0), index.find("baby"));
+        assertEquals(Map.of(4, 1), index.find("wte wipes"));
+        assertEquals(Map.of(1, 0), index.find("vaccines"));
+    }
+
+    @Test
+    public void testMatchesScan() {
+        // Setup: names made of a few syllables, so words are near one another
+        String[] syllables = {"ba", "b", "by", "mi", "lk", " ", "a", "ki"};
+        Random random = new Random(261);
+        NameTypoIndex words = new NameTypoIndex(Need::getName);
+        String[] names = new String[50];
+        for (int step = 0; step < 500; ++step) {
+            int id = random.nextInt(names.length);
+            String previous = names[id];
+            if (previous != null && random.nextInt(3) == 0) {
+                words.remove(id, need(id, previous));
+                names[id] = null;
+                continue;
+            }
+            StringBuilder name = new StringBuilder();
+            for (int length = random.nextInt(5); length >= 0; --length)
+                name.append(syllables[random.nextInt(syllables.length)]);
+            if (previous == null)
+                words.add(id, need(id, name.toString()));
+            else
+                words.replace(id, need(id, previous), need(id, name.toString()));
+            names[id] = name.toString();
+        }
+
+        // Invoke & Analyze: the dictionary finds what scoring every name would
+        for (int query = 0; query < 200; ++query) {
+            StringBuilder text = new StringBuilder();
+            for (int length = random.nextInt(4); length >= 0; --length)
+                text.append(syllables[random.nextInt(syllables.length)]);
+            Map<Integer,Integer> found = words.find(text.toString());
+            for (int id = 0; id < names.length; ++id) {
+                int score = names[id] == null ? -1 : NameTypoIndex.score(text.toString(), names[id]);
+                assertEquals(score < 0 ? null : Integer.valueOf(score), found.get(id), "'" + text + "' in '" + names[id] + "'");
+            }
+        }
+    }
+}
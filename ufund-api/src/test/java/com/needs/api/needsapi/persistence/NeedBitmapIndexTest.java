@@ -0,0 +1,135 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Need Bitmap Index class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class NeedBitmapIndexTest {
+    private static final Set<NeedType> ANY_TYPE = EnumSet.noneOf(NeedType.class);
+    private static final Set<UrgencyTag> ANY_URGENCY = EnumSet.noneOf(UrgencyTag.class);
+    private static final double LOWEST = Double.NEGATIVE_INFINITY;
+    private static final double HIGHEST = Double.POSITIVE_INFINITY;
+
+    NeedBitmapIndex index;
+
+    @BeforeEach
+    public void setupNeedBitmapIndex() {
+        index = new NeedBitmapIndex();
+        index.add(1, need(1, NeedType.EQUIPMENT, 20.0, 50, 0, UrgencyTag.LOW));
+        index.add(2, need(2, NeedType.EQUIPMENT, 100.0, 1, 1, UrgencyTag.HIGH));
+        index.add(3, need(3, NeedType.DONATE, 25.0, 1, 3, UrgencyTag.LOW));
+        index.add(70, need(70, NeedType.PROGRAM, 3.0, 10, 0, UrgencyTag.HIGH));
+        index.add(200, need(200, NeedType.DONATE, 25.0, 5, 2, UrgencyTag.HIGH));
+    }
+
+    private static Need need(int id, NeedType type, double price, int needed, int fulfilled, UrgencyTag urgency) {
+        return new Need(id, "need " + id, type, price, needed, fulfilled, urgency, "description", "image");
+    }
+
+    @Test
+    public void testSelect() {
+        // Invoke & Analyze
+        assertArrayEquals(new int[] {1, 2, 3, 70, 200}, index.select(ANY_TYPE, ANY_URGENCY, LOWEST, HIGHEST, null));
+        assertArrayEquals(new int[] {3, 200}, index.select(EnumSet.of(NeedType.DONATE), ANY_URGENCY, LOWEST, HIGHEST, null));
+        assertArrayEquals(new int[] {2, 70, 200}, index.select(ANY_TYPE, EnumSet.of(UrgencyTag.HIGH), LOWEST, HIGHEST, null));
+        assertArrayEquals(new int[] {1, 70, 200}, index.select(ANY_TYPE, ANY_URGENCY, LOWEST, HIGHEST, true));
+        assertArrayEquals(new int[] {2, 3}, index.select(ANY_TYPE, ANY_URGENCY, LOWEST, HIGHEST, false));
+        assertArrayEquals(new int[] {1, 3, 200}, index.select(ANY_TYPE, ANY_URGENCY, 20.0, 25.0, null));
+        assertArrayEquals(new int[0], index.select(ANY_TYPE, ANY_URGENCY, 30.0, 20.0, null));
+
+        // Invoke & Analyze: OR within a criterion, AND across them
+        assertArrayEquals(new int[] {70, 200}, index.select(EnumSet.of(NeedType.DONATE, NeedType.PROGRAM),
+                                                            EnumSet.of(UrgencyTag.HIGH), LOWEST, 50.0, true));
+        assertArrayEquals(new int[0], index.select(EnumSet.of(NeedType.ADOPTPANDA), ANY_URGENCY, LOWEST, HIGHEST, null));
+    }
+
+    @Test
+    public void testRemoveAndReplace() {
+        // Setup
+        Need donation = need(200, NeedType.DONATE, 25.0, 5, 2, UrgencyTag.HIGH);
+        index.replace(200, need(200, NeedType.DONATE, 25.0, 5, 2, UrgencyTag.HIGH), donation);
+
+        // Invoke: fulfilled in place, then changed, then removed
+        donation.setQuantityFulfilled(5);
+        index.replace(200, donation, donation);
+        index.replace(1, need(1, NeedType.EQUIPMENT, 20.0, 50, 0, UrgencyTag.LOW), need(1, NeedType.PROGRAM, 150.0, 50, 0, UrgencyTag.HIGH));
+        index.remove(3, need(3, NeedType.DONATE, 25.0, 1, 3, UrgencyTag.LOW));
+
+        // Analyze
+        assertArrayEquals(new int[] {1, 70}, index.select(ANY_TYPE, ANY_URGENCY, LOWEST, HIGHEST, true));
+        assertArrayEquals(new int[] {200}, index.select(EnumSet.of(NeedType.DONATE), ANY_URGENCY, LOWEST, HIGHEST, null));
+        assertArrayEquals(new int[] {1, 2, 70, 200}, index.select(ANY_TYPE, EnumSet.of(UrgencyTag.HIGH), LOWEST, HIGHEST, null));
+        assertArrayEquals(new int[] {1, 2}, index.select(ANY_TYPE, ANY_URGENCY, 100.0, HIGHEST, null));
+        assertArrayEquals(new int[] {200}, index.select(ANY_TYPE, ANY_URGENCY, 20.0, 25.0, null));
+    }
+
+    @Test
+    public void testMatchesScanAndRebuild() {
+        // Setup: random needs changed in every way, ids spread over several words
+        Random random = new Random(261);
+        NeedType[] types = NeedType.values();
+        UrgencyTag[] urgencies = UrgencyTag.values();
+        NeedBitmapIndex incremental = new NeedBitmapIndex();
+        TreeMap<Integer,Need> needs = new TreeMap<>();
+        for (int step = 0; step < 3000; ++step) {
+            int id = random.nextInt(500);
+            Need previous = needs.get(id);
+            if (previous != null && random.nextInt(4) == 0) {
+                incremental.remove(id, previous);
+                needs.remove(id);
+                continue;
+            }
+            Need need = need(id, types[random.nextInt(types.length)], random.nextInt(20) * 5.0, 1 + random.nextInt(5),
+                             random.nextInt(6), urgencies[random.nextInt(urgencies.length)]);
+            if (previous == null)
+                incremental.add(id, need);
+            else
+                incremental.replace(id, previous, need);
+            needs.put(id, need);
+        }
+        NeedBitmapIndex rebuilt = new NeedBitmapIndex();
+        rebuilt.rebuild(needs);
+
+        // Invoke & Analyze: both select what checking every need would
+        for (int query = 0; query < 200; ++query) {
+            Set<NeedType> someTypes = EnumSet.noneOf(NeedType.class);
+            for (NeedType type : types) {
+                if (random.nextInt(3) == 0)
+                    someTypes.add(type);
+            }
+            Set<UrgencyTag> someUrgencies = random.nextBoolean() ? ANY_URGENCY : EnumSet.of(urgencies[random.nextInt(urgencies.length)]);
+            double min = random.nextBoolean() ? LOWEST : random.nextInt(20) * 5.0;
+            double max = random.nextBoolean() ? HIGHEST : random.nextInt(20) * 5.0;
+            Boolean open = random.nextInt(3) == 0 ? null : random.nextBoolean();
+
+            List<Integer> expected = new ArrayList<>();
+            for (Need need : needs.values()) {
+                if (NeedBitmapIndex.matches(need, someTypes, someUrgencies, min, max, open))
+                    expected.add(need.getId());
+            }
+            int[] ids = expected.stream().mapToInt(Integer::intValue).toArray();
+            String description = someTypes + " " + someUrgencies + " " + min + ".." + max + " open " + open;
+            assertArrayEquals(ids, incremental.select(someTypes, someUrgencies, min, max, open), description);
+            assertArrayEquals(ids, rebuilt.select(someTypes, someUrgencies, min, max, open), description);
+        }
+    }
+}
@@ -12,6 +12,15 @@ import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.needs.api.needsapi.model.Need;
@@ -77,6 +86,169 @@ public class NeedFileDAOTest {
         assertEquals(needs[1],testNeeds[1]);
     }
 
+    @Test
+    public void testGetNeedsPublishesSortedCatalog() throws IOException {
+        // Setup
+        Need urgent = new Need(98,"incubator",NeedType.EQUIPMENT,100.0,1,1, UrgencyTag.HIGH, "some description", "image");
+        Need[] before = needFileDAO.getNeeds();
+
+        // Invoke
+        needFileDAO.updateNeed(urgent);
+        Need[] after = needFileDAO.getNeeds();
+        after[0] = null;
+
+        // Analyze
+        assertEquals(before[0],testNeeds[0]);
+        assertEquals(urgent,needFileDAO.getNeeds()[0]);
+        assertEquals(testNeeds[0],needFileDAO.getNeeds()[1]);
+        assertEquals(urgent,needFileDAO.findNeeds("in")[0]);
+    }
+
+    @Test
+    public void testCatalogStaysSortedThroughChanges() throws IOException {
+        // Setup
+        Random random = new Random(261);
+
+        // Invoke
+        for (int step = 0; step < 200; ++step) {
+            int id = 90 + random.nextInt(20);
+            UrgencyTag urgency = random.nextBoolean() ? UrgencyTag.HIGH : UrgencyTag.LOW;
+            switch (random.nextInt(3)) {
+                case 0:
+                    needFileDAO.createNeed(new Need(0,"need " + step,NeedType.EQUIPMENT,1.0,5,0, urgency, "some description", "image"));
+                    break;
+                case 1:
+                    needFileDAO.updateNeed(new Need(id,null,null,0,0,0, urgency, "some description", null));
+                    break;
+                default:
+                    needFileDAO.deleteNeed(id);
+            }
+
+            // Analyze
+            Need[] catalog = needFileDAO.getNeeds();
+            List<Need> expected = new ArrayList<>(needFileDAO.needs.values());
+            expected.sort(new NeedComparator().thenComparingInt(Need::getId));
+            assertEquals(expected, List.of(catalog));
+        }
+    }
+
+    @Test
+    public void testFindNeedsMatchesScan() throws IOException {
+        // Setup: names made of a few syllables, so queries share many trigrams
+        String[] syllables = {"ba", "by", "mil", "k ", "for", "mu", "la", "Syr", "in"};
+        Random random = new Random(261);
+        List<Need> created = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            StringBuilder name = new StringBuilder();
+            for (int length = 1 + random.nextInt(5); length > 0; --length)
+                name.append(syllables[random.nextInt(syllables.length)]);
+            Need need = needFileDAO.createNeed(new Need(0,name.toString(),NeedType.EQUIPMENT,1.0,1,0,
+                                                        random.nextBoolean() ? UrgencyTag.HIGH : UrgencyTag.LOW,"description","image"));
+            if (need != null)
+                created.add(need);
+        }
+        for (int i = 0; i < created.size(); i += 3)
+            needFileDAO.deleteNeed(created.get(i).getId());
+        for (int i = 1; i < created.size(); i += 5) {
+            Need rename = new Need(created.get(i).getId(),"renamed " + i,null,0,0,0,UrgencyTag.HIGH,"description",null);
+            needFileDAO.updateNeed(rename);
+        }
+
+        // Invoke & Analyze: the same needs in the same order as a scan of the catalog
+        String[] queries = {"mil", "milk", "k f", "SYR", "byba", "formula", "lab", "renamed 1", "ed 4", "in", "zzz", ""};
+        for (String query : queries) {
+            List<Need> expected = new ArrayList<>();
+            for (Need need : needFileDAO.getNeeds()) {
+                if (need.getName().toLowerCase().contains(query.toLowerCase()))
+                    expected.add(need);
+            }
+            assertEquals(expected,List.of(needFileDAO.findNeeds(query)),"query " + query);
+        }
+    }
+
+    @Test
+    public void testFindNeedsFuzzy() throws IOException {
+        // Setup
+        Need formulas = needFileDAO.createNeed(new Need(0,"Milk formulas",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.HIGH,"some description","image"));
+
+        // Invoke & Analyze: fewest typos first, then urgent first
+        assertEquals(List.of(testNeeds[0]),List.of(needFileDAO.findNeedsFuzzy("SYRNGES")));
+        assertEquals(List.of(testNeeds[2],formulas),List.of(needFileDAO.findNeedsFuzzy("milk fromula")));
+        assertEquals(List.of(formulas,testNeeds[2]),List.of(needFileDAO.findNeedsFuzzy("mlik")));
+        assertEquals(0,needFileDAO.findNeedsFuzzy("milk blankets").length);
+        assertEquals(0,needFileDAO.findNeedsFuzzy(null).length);
+
+        // Invoke & Analyze: renamed and deleted needs are found by their current names only
+        needFileDAO.updateNeed(new Need(98,"vaccines",null,0,0,0,UrgencyTag.LOW,null,null));
+        needFileDAO.deleteNeed(formulas.getId());
+        assertEquals(List.of(needFileDAO.getNeed(98)),List.of(needFileDAO.findNeedsFuzzy("vacines")));
+        assertEquals(0,needFileDAO.findNeedsFuzzy("incubatr").length);
+        assertEquals(List.of(testNeeds[2]),List.of(needFileDAO.findNeedsFuzzy("milk formulas")));
+    }
+
+    @Test
+    public void testRankNeeds() throws IOException {
+        // Setup
+        Need bottles = needFileDAO.createNeed(new Need(0,"Milk bottles",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.HIGH,"Bottles for formula","image"));
+
+        // Invoke & Analyze: relevance raised for urgent needs
+        assertEquals(List.of(bottles,testNeeds[2]),List.of(needFileDAO.rankNeeds("milk formula",10)));
+        assertEquals(List.of(bottles),List.of(needFileDAO.rankNeeds("milk formula",1)));
+        assertEquals(List.of(testNeeds[0],testNeeds[1],testNeeds[2]),List.of(needFileDAO.rankNeeds("description",10)));
+        assertEquals(0,needFileDAO.rankNeeds("blankets",10).length);
+
+        // Invoke & Analyze: updated and deleted needs are ranked by their current text only
+        needFileDAO.updateNeed(new Need(97,null,null,0,0,0,UrgencyTag.LOW,"Syringes for vaccines",null));
+        needFileDAO.deleteNeed(bottles.getId());
+        assertEquals(List.of(needFileDAO.getNeed(97)),List.of(needFileDAO.rankNeeds("vaccine",10)));
+        assertEquals(List.of(testNeeds[1],testNeeds[2]),List.of(needFileDAO.rankNeeds("description",10)));
+        assertEquals(List.of(testNeeds[2]),List.of(needFileDAO.rankNeeds("milk formula",10)));
+    }
+
+    @Test
+    public void testQueryNeeds() throws IOException {
+        // Setup
+        Need tutoring = needFileDAO.createNeed(new Need(0,"Tutoring",NeedType.PROGRAM,3.0,10,0,UrgencyTag.HIGH,"some description","image"));
+        Set<NeedType> anyType = EnumSet.noneOf(NeedType.class);
+        Set<UrgencyTag> anyUrgency = EnumSet.noneOf(UrgencyTag.class);
+
+        // Invoke & Analyze: in catalog order
+        assertEquals(List.of(tutoring,testNeeds[0]),
+                     List.of(needFileDAO.queryNeeds(anyType,anyUrgency,Double.NEGATIVE_INFINITY,Double.POSITIVE_INFINITY,true)));
+        assertEquals(List.of(testNeeds[0],testNeeds[1],testNeeds[2]),
+                     List.of(needFileDAO.queryNeeds(EnumSet.of(NeedType.EQUIPMENT),EnumSet.of(UrgencyTag.LOW),Double.NEGATIVE_INFINITY,Double.POSITIVE_INFINITY,null)));
+        assertEquals(List.of(tutoring,testNeeds[0],testNeeds[2]),
+                     List.of(needFileDAO.queryNeeds(anyType,anyUrgency,0,25.0,null)));
+
+        // Invoke & Analyze: fulfilling and updating needs moves them between bitmaps
+        needFileDAO.fulfill(97,50,true);
+        needFileDAO.updateNeed(new Need(98,null,NeedType.DONATE,0,5,0,UrgencyTag.HIGH,null,null));
+        assertEquals(List.of(needFileDAO.getNeed(98),tutoring),
+                     List.of(needFileDAO.queryNeeds(anyType,EnumSet.of(UrgencyTag.HIGH),Double.NEGATIVE_INFINITY,Double.POSITIVE_INFINITY,true)));
+        assertEquals(List.of(testNeeds[0],testNeeds[2]),
+                     List.of(needFileDAO.queryNeeds(EnumSet.of(NeedType.EQUIPMENT),anyUrgency,Double.NEGATIVE_INFINITY,Double.POSITIVE_INFINITY,false)));
+    }
+
+    @Test
+    public void testSuggestNeeds() throws IOException {
+        // Setup
+        Need bottles = needFileDAO.createNeed(new Need(0,"Milk bottles",NeedType.EQUIPMENT,2.0,5,0,UrgencyTag.HIGH,"some description","image"));
+
+        // Invoke & Analyze: urgent first, then the most still needed
+        assertEquals(List.of(bottles,testNeeds[2]),List.of(needFileDAO.suggestNeeds("mIlK",10)));
+        assertEquals(List.of(bottles,testNeeds[0]),List.of(needFileDAO.suggestNeeds("",2)));
+        assertEquals(List.of(bottles),List.of(needFileDAO.suggestNeeds(null,1)));
+        assertEquals(0,needFileDAO.suggestNeeds("blankets",10).length);
+
+        // Invoke & Analyze: fulfilling the syringes ranks them with the incubator, by id
+        needFileDAO.fulfill(97,50,true);
+        assertEquals(List.of(bottles,testNeeds[0],testNeeds[1]),List.of(needFileDAO.suggestNeeds("",3)));
+
+        // Invoke & Analyze: a deleted need is no longer suggested
+        needFileDAO.deleteNeed(bottles.getId());
+        assertEquals(List.of(testNeeds[2]),List.of(needFileDAO.suggestNeeds("m",10)));
+    }
+
     @Test
     public void testGetNeed() {
         // Invoke
@@ -236,6 +408,119 @@ public class NeedFileDAOTest {
         assertNull(result);
     }
 
+    @Test
+    public void testUpdateNeedVersion() throws IOException {
+        // Setup
+        Need first = new Need(98,"incubator",NeedType.EQUIPMENT,100.0,2,0, UrgencyTag.LOW, "some description", "image");
+        Need stale = new Need(98,"incubator",NeedType.EQUIPMENT,100.0,3,0, UrgencyTag.LOW, "some description", "image");
+
+        // Invoke
+        Need result = needFileDAO.updateNeed(first, 0);
+        VersionConflictException conflict = assertThrows(VersionConflictException.class,
+                                                         () -> needFileDAO.updateNeed(stale, 0));
+
+        // Analyze
+        assertEquals(1, result.getVersion());
+        assertEquals(1, conflict.getActual());
+        assertEquals(first, needFileDAO.getNeed(98));
+        assertEquals(2, needFileDAO.getNeed(98).getQuantityNeeded());
+        assertEquals(2, needFileDAO.updateNeed(stale).getVersion());
+    }
+
+    @Test
+    public void testConcurrentConditionalUpdatesOneWins() throws Exception {
+        // Setup
+        int clients = 8;
+        AtomicInteger updated = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<?>> results = new ArrayList<>();
+
+        // Invoke: every client expects the version it started from
+        for (int client = 0; client < clients; ++client) {
+            final int quantity = client + 10;
+            results.add(pool.submit(() -> {
+                try {
+                    needFileDAO.updateNeed(new Need(97,null,null,0,quantity,0, UrgencyTag.LOW, "some description", null), 0);
+                    updated.incrementAndGet();
+                }
+                catch (VersionConflictException e) {
+                    // another client came first
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results)
+            result.get();
+        pool.shutdown();
+
+        // Analyze
+        assertEquals(1, updated.get());
+        assertEquals(1, needFileDAO.getNeed(97).getVersion());
+    }
+
+    @Test
+    public void testFulfill() throws IOException {
+        // Invoke
+        int accepted = needFileDAO.fulfill(97, 20, true);
+        int capped = needFileDAO.fulfill(97, 40, true);
+        int uncapped = needFileDAO.fulfill(98, 3, false);
+
+        // Analyze
+        assertEquals(20, accepted);
+        assertEquals(30, capped);
+        assertEquals(50, needFileDAO.getNeed(97).getQuantityFulfilled());
+        assertEquals(0, needFileDAO.fulfill(97, 1, true));
+        assertEquals(3, uncapped);
+        assertEquals(4, needFileDAO.getNeed(98).getQuantityFulfilled());
+        assertEquals(0, needFileDAO.fulfill(97, -5, false));
+    }
+
+    @Test
+    public void testFulfillNotFound() throws IOException {
+        // Invoke & Analyze
+        assertEquals(-1, needFileDAO.fulfill(42, 1, true));
+    }
+
+    @Test
+    public void testFulfillCarriesOverUpdate() throws IOException {
+        // Setup
+        needFileDAO.fulfill(97, 5, true);
+
+        // Invoke
+        needFileDAO.updateNeed(new Need(97,"syringes",NeedType.EQUIPMENT,20.0, 60,0, UrgencyTag.LOW, "some description", "image"));
+        int accepted = needFileDAO.fulfill(97, 100, true);
+
+        // Analyze
+        assertEquals(55, accepted);
+        assertEquals(60, needFileDAO.getNeed(97).getQuantityFulfilled());
+        assertEquals(60, needFileDAO.getNeeds()[0].getQuantityFulfilled());
+    }
+
+    @Test
+    public void testConcurrentFulfillNeverOvershoots() throws Exception {
+        // Setup
+        int clients = 16;
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<?>> results = new ArrayList<>();
+
+        // Invoke
+        for (int client = 0; client < clients; ++client) {
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < 10; ++i)
+                    accepted.addAndGet(needFileDAO.fulfill(97, 1, true));
+                return null;
+            }));
+        }
+        for (Future<?> result : results)
+            result.get();
+        pool.shutdown();
+
+        // Analyze
+        assertEquals(50, accepted.get());
+        assertEquals(50, needFileDAO.getNeed(97).getQuantityFulfilled());
+    }
+
     @Test
     public void testTotalNeeded(){
         // Invoke
@@ -0,0 +1,197 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Need Journal class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class NeedJournalTest {
+    File journalFile;
+    ObjectMapper objectMapper;
+    NeedJournal journal;
+
+    /**
+     * Before each test, create a journal in a fresh temporary directory
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupNeedJournal() throws IOException {
+        journalFile = new File(Files.createTempDirectory("needs").toFile(), "needs.journal");
+        objectMapper = new ObjectMapper();
+        journal = new NeedJournal(journalFile.getPath(), 1024, objectMapper);
+    }
+
+    @Test
+    public void testDisabled() {
+        // Invoke
+        NeedJournal disabled = new NeedJournal("", 1024, objectMapper);
+
+        // Analyze
+        assertFalse(disabled.isEnabled());
+        assertTrue(journal.isEnabled());
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        // Setup
+        Map<Integer,Need> needs = new TreeMap<>();
+        needs.put(1, new Need(1,"syringes",NeedType.EQUIPMENT,20.0,50,0, UrgencyTag.LOW, "some description", "image"));
+        journal.appendPut(new Need(2,"incubator",NeedType.EQUIPMENT,100.0,1,0, UrgencyTag.HIGH, "some description", "image"));
+        journal.appendPut(new Need(1,"syringes",NeedType.EQUIPMENT,20.0,50,7, UrgencyTag.LOW, "some description", "image"));
+        journal.appendDelete(2);
+        journal.appendPut(new Need(3,"milk formula",NeedType.EQUIPMENT,25.0,1,0, UrgencyTag.LOW, "some description", "image"));
+        journal.close();
+
+        // Invoke
+        int maxId = new NeedJournal(journalFile.getPath(), 1024, objectMapper).replay(needs);
+
+        // Analyze
+        assertEquals(3, maxId);
+        assertEquals(2, needs.size());
+        assertEquals(7, needs.get(1).getQuantityFulfilled());
+        assertNull(needs.get(2));
+        assertEquals("milk formula", needs.get(3).getName());
+    }
+
+    @Test
+    public void testReplaySkipsTornRecord() throws IOException {
+        // Setup
+        Map<Integer,Need> needs = new TreeMap<>();
+        journal.appendPut(new Need(4,"vaccines",NeedType.EQUIPMENT,40.0,50,0, UrgencyTag.HIGH, "some description", "image"));
+        journal.close();
+        Files.write(journalFile.toPath(), "{\"op\":\"PUT\",\"need\":{\"id\":5,".getBytes(), StandardOpenOption.APPEND);
+
+        // Invoke
+        int maxId = journal.replay(needs);
+
+        // Analyze
+        assertEquals(4, maxId);
+        assertEquals(1, needs.size());
+
+        // Invoke: appended after the torn record was cut off
+        journal.appendDelete(4);
+        journal.close();
+        needs.clear();
+        journal.replay(needs);
+
+        // Analyze
+        assertTrue(needs.isEmpty());
+    }
+
+    @Test
+    public void testReplayFailsOnCorruptionMidLog() throws IOException {
+        // Setup
+        Map<Integer,Need> needs = new TreeMap<>();
+        journal.appendPut(new Need(4,"vaccines",NeedType.EQUIPMENT,40.0,50,0, UrgencyTag.HIGH, "some description", "image"));
+        journal.close();
+        Files.write(journalFile.toPath(), "{\"op\":\"PUT\",\"need\":{\"id\":5,\n".getBytes(), StandardOpenOption.APPEND);
+        journal.appendDelete(4);
+        journal.close();
+
+        // Invoke & Analyze: the delete after the unreadable record must not be lost
+        assertThrows(IOException.class, () -> journal.replay(needs));
+    }
+
+    @Test
+    public void testSizeCountsEncodedBytes() throws IOException {
+        // Invoke
+        journal.appendPut(new Need(6,"cr\u00e8che cots",NeedType.EQUIPMENT,40.0,50,0, UrgencyTag.HIGH, "f\u00fcr Pandas", "image"));
+        journal.close();
+
+        // Analyze
+        assertEquals(journalFile.length(), journal.size());
+    }
+
+    @Test
+    public void testRotateAndDiscard() throws IOException {
+        // Setup
+        Map<Integer,Need> needs = new TreeMap<>();
+        journal.appendPut(new Need(1,"syringes",NeedType.EQUIPMENT,20.0,50,0, UrgencyTag.LOW, "some description", "image"));
+
+        // Invoke
+        journal.rotate();
+        journal.appendPut(new Need(2,"incubator",NeedType.EQUIPMENT,100.0,1,0, UrgencyTag.LOW, "some description", "image"));
+        journal.close();
+
+        // Analyze: both the rotated and the active log are replayed
+        journal.replay(needs);
+        assertEquals(2, needs.size());
+
+        // Invoke: once the snapshot is written, only the active log remains
+        journal.discardRotated();
+        needs.clear();
+        journal.replay(needs);
+
+        // Analyze
+        assertEquals(1, needs.size());
+        assertNotNull(needs.get(2));
+    }
+
+    @Test
+    public void testNeedsCompaction() throws IOException {
+        // Setup
+        NeedJournal small = new NeedJournal(journalFile.getPath(), 10, objectMapper);
+
+        // Invoke
+        boolean before = small.needsCompaction();
+        small.appendDelete(1);
+        small.appendDelete(2);
+
+        // Analyze
+        assertFalse(before);
+        assertTrue(small.needsCompaction());
+        small.rotate();
+        assertFalse(small.needsCompaction());
+    }
+
+    @Test
+    public void testNeedFileDAOReplaysJournal() throws IOException {
+        // Setup
+        ObjectMapper mockObjectMapper = mock(ObjectMapper.class);
+        Need[] snapshot = new Need[1];
+        snapshot[0] = new Need(97,"syringes",NeedType.EQUIPMENT,20.0,50,0, UrgencyTag.LOW, "some description", "image");
+        when(mockObjectMapper
+            .readValue(new File("data/needs.json"),Need[].class))
+                .thenReturn(snapshot);
+        NeedFileDAO needFileDAO = new NeedFileDAO("data/needs.json",mockObjectMapper,journal);
+
+        // Invoke
+        Need created = needFileDAO.createNeed(new Need(0,"vaccines",NeedType.EQUIPMENT,30.0,50,0, UrgencyTag.LOW, "some description", "image"));
+        needFileDAO.deleteNeed(97);
+        needFileDAO.close();
+        snapshot[0] = new Need(97,"syringes",NeedType.EQUIPMENT,20.0,50,0, UrgencyTag.LOW, "some description", "image");
+        NeedFileDAO reloaded = new NeedFileDAO("data/needs.json",mockObjectMapper,
+                                               new NeedJournal(journalFile.getPath(), 1024, objectMapper));
+
+        // Analyze
+        assertNull(reloaded.getNeed(97));
+        assertEquals("vaccines", reloaded.getNeed(created.getId()).getName());
+        reloaded.close();
+    }
+}
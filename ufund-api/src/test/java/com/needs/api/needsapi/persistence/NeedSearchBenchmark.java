@@ -0,0 +1,91 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Measures need search by name against catalogs of growing size
+ * <p>
+ * Only runs when requested, for example
+ * {@code mvn test -Dtest=NeedSearchBenchmark -Dbenchmark=true -Dbenchmark.records=10000,100000,1000000}
+ * (1M records needs a heap of about 6 GB). For each size and query it reports the
+ * number of matches and the median and 99th percentile latency of
+ * {@link NeedFileDAO#findNeeds(String)}. Queries of one and two characters are
+ * the first keystrokes of the search box; a query matching much of the catalog
+ * costs at least the copy of its matches, so the rare ones show the cost of the
+ * lookup itself.
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class NeedSearchBenchmark {
+    private static final String[] WORDS = {"baby", "milk", "formula", "syringes", "incubator", "blanket", "bamboo",
+                                           "tutoring", "vaccines", "bottle", "warmer", "zoo", "keeper", "quilt",
+                                           "panda", "enclosure", "fruit", "medicine", "toys", "heater"};
+    private static final String RARE = "jigsaw";    // Named one need in RARE_EVERY, the only word with a j
+    private static final int RARE_EVERY = 10000;
+    private static final String[] QUERIES = {"j", "ji", "jig", "jigsaw", "q", "b", "qu", "an", "milk", "warmer 7", "quilt 99"};
+    private static final int RUNS = 200;
+
+    @Test
+    public void benchmarkFindNeeds() throws IOException {
+        System.out.printf("%-8s %-10s | %8s %10s %10s%n", "records", "query", "matches", "median us", "p99 us");
+
+        for (String size : System.getProperty("benchmark.records", "10000,100000,1000000").split(",")) {
+            int records = Integer.parseInt(size.trim());
+            NeedFileDAO needFileDAO = load(records);
+
+            for (String query : QUERIES) {
+                long[] nanos = new long[RUNS];
+                int matches = 0;
+                for (int run = 0; run < RUNS; ++run) {
+                    long start = System.nanoTime();
+                    matches = needFileDAO.findNeeds(query).length;
+                    nanos[run] = System.nanoTime() - start;
+                }
+                Arrays.sort(nanos);
+                System.out.printf("%-8d %-10s | %8d %10.1f %10.1f%n", records, "\"" + query + "\"", matches,
+                                  nanos[RUNS / 2] / 1000.0, nanos[RUNS * 99 / 100] / 1000.0);
+            }
+        }
+    }
+
+    /**
+     * Loads a need file DAO with the given number of needs, named by two words
+     * and their id, the first word rare for a few of them
+     */
+    private static NeedFileDAO load(int records) throws IOException {
+        Random random = new Random(261);
+        Need[] needs = new Need[records];
+        for (int id = 0; id < records; ++id) {
+            String first = id % RARE_EVERY == 0 ? RARE : WORDS[random.nextInt(WORDS.length)];
+            String name = first + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+            needs[id] = new Need(id, name, NeedType.values()[id % NeedType.values().length], 1 + id % 100,
+                                 10 + id % 90, id % 10, id % 3 == 0 ? UrgencyTag.HIGH : UrgencyTag.LOW,
+                                 "description of need " + id, "image");
+        }
+        ObjectMapper mockObjectMapper = mock(ObjectMapper.class);
+        when(mockObjectMapper
+            .readValue(new File("data/needs.json"),Need[].class))
+                .thenReturn(needs);
+        NeedFileDAO needFileDAO = new NeedFileDAO("data/needs.json",mockObjectMapper);
+        assertEquals(records, needFileDAO.getNeeds().length);
+        return needFileDAO;
+    }
+}
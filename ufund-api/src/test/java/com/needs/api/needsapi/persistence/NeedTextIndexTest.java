@@ -0,0 +1,116 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.needs.api.needsapi.model.Need;
+import com.needs.api.needsapi.model.NeedType;
+import com.needs.api.needsapi.model.UrgencyTag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Need Text Index class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class NeedTextIndexTest {
+    NeedTextIndex index;
+
+    @BeforeEach
+    public void setupNeedTextIndex() {
+        index = new NeedTextIndex();
+        index.add(1, need(1, "Vaccines", "Vaccines for newborn babies", UrgencyTag.LOW));
+        index.add(2, need(2, "Baby formula", "Formula for newborns", UrgencyTag.LOW));
+        index.add(3, need(3, "Blankets", "Warm blankets for the shelter", UrgencyTag.LOW));
+        index.add(4, need(4, "Diapers", "Diapers for babies and toddlers", UrgencyTag.HIGH));
+    }
+
+    private static Need need(int id, String name, String description, UrgencyTag urgency) {
+        return new Need(id, name, NeedType.EQUIPMENT, 1.0, 1, 0, urgency, description, "image");
+    }
+
+    @Test
+    public void testTerms() {
+        // Invoke & Analyze
+        assertEquals(List.of("warm", "blanket", "shelter"), NeedTextIndex.terms("Warm BLANKETS, for the shelter!"));
+        assertEquals(List.of("baby", "vaccine", "glass", "bus"), NeedTextIndex.terms("babies vaccines glass bus"));
+        assertEquals(List.of(), NeedTextIndex.terms(null));
+    }
+
+    @Test
+    public void testSearch() {
+        // Invoke & Analyze: as relevant, urgent first then by id
+        assertArrayEquals(new int[] {1}, index.search("vaccine", 10));
+        assertArrayEquals(new int[] {4, 1, 2}, index.search("babies", 10));
+        assertArrayEquals(new int[] {4, 1}, index.search("BABY", 2));
+        assertArrayEquals(new int[] {2, 1}, index.search("formula for newborn", 10));
+        assertArrayEquals(new int[0], index.search("the and", 10));
+        assertArrayEquals(new int[0], index.search("tents", 10));
+        assertArrayEquals(new int[0], index.search(null, 10));
+    }
+
+    @Test
+    public void testRemoveAndReplace() {
+        // Invoke
+        index.replace(4, need(4, "Diapers", "Diapers for babies and toddlers", UrgencyTag.HIGH),
+                         need(4, "Diapers", "Diapers for babies and toddlers", UrgencyTag.LOW));
+        index.replace(3, need(3, "Blankets", "Warm blankets for the shelter", UrgencyTag.LOW),
+                         need(3, "Blankets", "Warm blankets for babies", UrgencyTag.LOW));
+        index.remove(1, need(1, "Vaccines", "Vaccines for newborn babies", UrgencyTag.LOW));
+
+        // Analyze
+        assertArrayEquals(new int[0], index.search("vaccines", 10));
+        assertArrayEquals(new int[] {2, 3, 4}, index.search("newborn babies", 10));
+        assertArrayEquals(new int[] {2, 3, 4}, index.search("babies", 10));
+        assertArrayEquals(new int[0], index.search("shelter", 10));
+    }
+
+    @Test
+    public void testTopMatchesExhaustiveAndRebuild() {
+        // Setup: texts made of a few words, some repeated, so scores differ a little
+        String[] words = {"baby", "milk", "warm", "blanket", "formula", "vaccine", "book", "the"};
+        Random random = new Random(261);
+        NeedTextIndex incremental = new NeedTextIndex();
+        Map<Integer,Need> needs = new HashMap<>();
+        for (int step = 0; step < 1500; ++step) {
+            int id = random.nextInt(300);
+            Need previous = needs.get(id);
+            if (previous != null && random.nextInt(4) == 0) {
+                incremental.remove(id, previous);
+                needs.remove(id);
+                continue;
+            }
+            StringBuilder description = new StringBuilder();
+            for (int length = random.nextInt(8); length >= 0; --length)
+                description.append(words[random.nextInt(words.length)]).append(' ');
+            Need need = need(id, words[random.nextInt(words.length)], description.toString(),
+                             random.nextInt(3) == 0 ? UrgencyTag.HIGH : UrgencyTag.LOW);
+            if (previous == null)
+                incremental.add(id, need);
+            else
+                incremental.replace(id, previous, need);
+            needs.put(id, need);
+        }
+        NeedTextIndex rebuilt = new NeedTextIndex();
+        rebuilt.rebuild(needs);
+
+        // Invoke & Analyze: skipping needs never changes the best k, and the
+        // index rebuilt in parallel ranks as the one kept up to date
+        for (String text : List.of("baby", "warm blanket", "milk formula baby", "vaccine book the", "milk milk")) {
+            int[] all = incremental.search(text, Integer.MAX_VALUE);
+            assertArrayEquals(all, rebuilt.search(text, Integer.MAX_VALUE), text);
+            for (int k : new int[] {1, 5, 20})
+                assertArrayEquals(Arrays.copyOf(all, Math.min(k, all.length)), incremental.search(text, k), text + " top " + k);
+        }
+    }
+}
@@ -2,12 +2,19 @@ package com.needs.api.needsapi.persistence;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
@@ -113,6 +120,23 @@ public class ProfileFileDAOTest {
         assertEquals(actual,profile);
     }
 
+    @Test
+    public void testUpdateProfileVersion() throws IOException {
+        // Setup
+        Profile first = new Profile("Bob",null,null,null, "RyanZ", new HashMap<>());
+        Profile stale = new Profile("Alice",null,null,null, "RyanZ", new HashMap<>());
+
+        // Invoke
+        Profile result = profileFileDAO.updateProfile(first, 0);
+
+        // Analyze
+        assertEquals(1, result.getVersion());
+        assertThrows(VersionConflictException.class, () -> profileFileDAO.updateProfile(stale, 0));
+        assertEquals("Bob", profileFileDAO.getProfile("RyanZ").getFirstName());
+        assertEquals(2, profileFileDAO.updateProfile(stale, 1).getVersion());
+        assertEquals("Alice", profileFileDAO.getProfile("RyanZ").getFirstName());
+    }
+
     @Test
     public void testPartiallyUpdateProfile() throws IOException {
         // Setup
@@ -201,6 +225,39 @@ public class ProfileFileDAOTest {
         assertEquals(actual.getIsPrivate(), true);
     }
 
+    @Test
+    public void testDeleteLoginRemovesProfile() throws IOException {
+        // Invoke
+        loginFileDAO.deleteLogin("RyanZ");
+
+        // Analyze
+        assertNull(profileFileDAO.getProfile("RyanZ"));
+        assertEquals(0, profileFileDAO.profiles.size());
+    }
+
+    @Test
+    public void testAddContribution() throws Exception {
+        // Setup
+        Profile before = profileFileDAO.getProfile("RyanZ");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Profile>> results = new ArrayList<>();
+
+        // Invoke
+        for (int i = 0; i < 100; ++i)
+            results.add(pool.submit(() -> profileFileDAO.addContribution("RyanZ", 7, 2)));
+        for (Future<Profile> result : results)
+            assertNotNull(result.get());
+        pool.shutdown();
+
+        // Analyze
+        Profile actual = profileFileDAO.getProfile("RyanZ");
+        assertEquals(200, actual.getContributions().get(7));
+        assertEquals(1, actual.getContributions().get(1));
+        assertEquals(before.getVersion() + 100, actual.getVersion());
+        assertNull(before.getContributions().get(7));
+        assertNull(profileFileDAO.addContribution("nobody", 7, 2));
+    }
+
         
     
 }
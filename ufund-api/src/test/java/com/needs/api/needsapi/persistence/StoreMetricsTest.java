@@ -0,0 +1,165 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Store Metrics class, with the Timed Lock and Request Phases that record into it
+ * <br>
+ * The metrics live as long as the process, so each test records under a name of its own
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class StoreMetricsTest {
+    private static final int LOCK_WAIT = RequestPhases.Phase.LOCK_WAIT.ordinal();
+    private static final int DISK_WRITE = RequestPhases.Phase.DISK_WRITE.ordinal();
+    private static final int FLUSH_WAIT = RequestPhases.Phase.FLUSH_WAIT.ordinal();
+
+    @Test
+    public void testOf() {
+        // Invoke & Analyze
+        assertSame(StoreMetrics.of("of.json"), StoreMetrics.of("of.json"));
+        assertTrue(StoreMetrics.all().containsKey("of.json"));
+    }
+
+    @Test
+    public void testUncontendedLock() {
+        // Setup
+        TimedLock lock = new TimedLock(StoreMetrics.of("uncontended.json"));
+
+        // Invoke: a reentrant acquisition is not counted again
+        lock.lock();
+        lock.lock();
+        lock.unlock();
+        lock.unlock();
+        assertTrue(lock.tryLock());
+        lock.unlock();
+
+        // Analyze
+        Map<String,Object> metrics = StoreMetrics.of("uncontended.json").metrics();
+        assertEquals(2L, metrics.get("locksAcquired"));
+        assertEquals(0L, metrics.get("locksContended"));
+        assertEquals(0.0, metrics.get("lockWaitMillis"));
+        assertFalse(lock.isLocked());
+    }
+
+    @Test
+    public void testContendedLock() throws InterruptedException {
+        // Setup: another thread holds the lock for a while
+        TimedLock lock = new TimedLock(StoreMetrics.of("contended.json"));
+        CountDownLatch held = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+                held.countDown();
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        held.await();
+
+        // Invoke
+        assertTrue(RequestPhases.begin());
+        lock.lock();
+        lock.unlock();
+        long[] phases = RequestPhases.end();
+        holder.join();
+
+        // Analyze
+        Map<String,Object> metrics = StoreMetrics.of("contended.json").metrics();
+        assertEquals(2L, metrics.get("locksAcquired"));
+        assertEquals(1L, metrics.get("locksContended"));
+        assertTrue((double)metrics.get("maxLockWaitMillis") >= 20);
+        assertTrue((double)metrics.get("maxLockHoldMillis") >= 20);
+        assertTrue(phases[LOCK_WAIT] >= 20000000, "lock wait of " + phases[LOCK_WAIT] + " ns");
+    }
+
+    @Test
+    public void testSyncWrite() throws IOException {
+        // Setup
+        File file = new File(Files.createTempDirectory("metrics").toFile(), "sync-metrics.json");
+        ReentrantLock lock = new ReentrantLock();
+        WriteBehindFlusher.Store store = WriteBehindFlusher.synchronous().register(lock, file.getPath(),
+            () -> Files.write(file.toPath(), "[]".getBytes()), () -> "[]".getBytes());
+
+        // Invoke
+        assertTrue(RequestPhases.begin());
+        lock.lock();
+        try {
+            store.changed();
+        }
+        finally {
+            lock.unlock();
+        }
+        store.await();
+        long[] phases = RequestPhases.end();
+
+        // Analyze: the values are streamed to the file, so there is no separate serialization
+        Map<String,Object> metrics = StoreMetrics.of("sync-metrics.json").metrics();
+        assertEquals(1L, metrics.get("writes"));
+        assertEquals(0.0, metrics.get("serializeMillis"));
+        assertTrue(phases[DISK_WRITE] > 0);
+        assertEquals(0, phases[FLUSH_WAIT]);
+    }
+
+    @Test
+    public void testGroupCommitWrite() throws IOException {
+        // Setup
+        File file = new File(Files.createTempDirectory("metrics").toFile(), "group-metrics.json");
+        ReentrantLock lock = new ReentrantLock();
+        WriteBehindFlusher flusher = new WriteBehindFlusher(Durability.GROUP_COMMIT, 1000, 100, 1000);
+        WriteBehindFlusher.Store store = flusher.register(lock, file.getPath(), () -> {}, () -> "[]".getBytes());
+
+        // Invoke
+        assertTrue(RequestPhases.begin());
+        lock.lock();
+        try {
+            store.changed();
+        }
+        finally {
+            lock.unlock();
+        }
+        store.await();
+        long[] phases = RequestPhases.end();
+        flusher.close();
+
+        // Analyze: the flusher thread writes the file while the request waits for it
+        Map<String,Object> metrics = StoreMetrics.of("group-metrics.json").metrics();
+        assertEquals(1L, metrics.get("writes"));
+        assertTrue(phases[FLUSH_WAIT] > 0);
+        assertEquals(0, phases[DISK_WRITE]);
+    }
+
+    @Test
+    public void testOutsideRequest() {
+        // Invoke: nothing is recorded on a thread that is not serving a request
+        StoreMetrics.of("outside.json").locked(1000);
+        long[] phases = RequestPhases.end();
+
+        // Analyze
+        assertArrayEquals(new long[RequestPhases.Phase.values().length], phases);
+        assertTrue(RequestPhases.begin());
+        assertFalse(RequestPhases.begin());
+        RequestPhases.end();
+    }
+}
@@ -0,0 +1,103 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.needs.api.needsapi.model.FundingBasket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Unique Index class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class UniqueIndexTest {
+    UniqueIndex<Integer,FundingBasket,String> index;
+
+    @BeforeEach
+    public void setupUniqueIndex() {
+        index = new UniqueIndex<>(basket -> basket.getUsername() == null ? null : basket.getUsername().toLowerCase());
+    }
+
+    @Test
+    public void testAdd() {
+        // Setup
+        index.add(1, new FundingBasket(1, "Tom"));
+        index.add(2, new FundingBasket(2, null));
+
+        // Invoke & Analyze
+        assertEquals(Integer.valueOf(1), index.get("tom"));
+        assertTrue(index.contains("tom"));
+        assertFalse(index.contains("Tom"));
+        assertFalse(index.contains(null));
+        assertNull(index.get(null));
+        assertNull(index.get("mark"));
+    }
+
+    @Test
+    public void testRemove() {
+        // Setup
+        FundingBasket basket = new FundingBasket(1, "tom");
+        index.add(1, basket);
+
+        // Invoke
+        index.remove(1, basket);
+
+        // Analyze
+        assertFalse(index.contains("tom"));
+    }
+
+    @Test
+    public void testChangedInPlace() {
+        // Setup
+        FundingBasket basket = new FundingBasket(1, "tom");
+        index.add(1, basket);
+
+        // Invoke: the store removes and adds again a value changed in place
+        basket.setUsername("thomas");
+        index.remove(1, basket);
+        index.add(1, basket);
+
+        // Analyze
+        assertFalse(index.contains("tom"));
+        assertEquals(Integer.valueOf(1), index.get("thomas"));
+    }
+
+    @Test
+    public void testSharedTerm() {
+        // Setup: a file written before terms were unique
+        FundingBasket first = new FundingBasket(1, "tom");
+        FundingBasket second = new FundingBasket(2, "Tom");
+        FundingBasket third = new FundingBasket(3, "TOM");
+        index.add(1, first);
+        index.add(2, second);
+        index.add(3, third);
+
+        // Invoke & Analyze: the term stays filed until every value is removed
+        assertEquals(Integer.valueOf(1), index.get("tom"));
+        index.remove(2, second);
+        assertEquals(Integer.valueOf(1), index.get("tom"));
+        index.remove(1, first);
+        assertEquals(Integer.valueOf(3), index.get("tom"));
+        index.remove(3, third);
+        assertFalse(index.contains("tom"));
+    }
+
+    @Test
+    public void testClear() {
+        // Setup
+        index.add(1, new FundingBasket(1, "tom"));
+
+        // Invoke
+        index.clear();
+
+        // Analyze
+        assertFalse(index.contains("tom"));
+    }
+}
@@ -0,0 +1,121 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.needs.api.needsapi.VirtualThreads;
+import com.needs.api.needsapi.model.FundingBasket;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares serving requests on a fixed pool of platform threads, as Tomcat does
+ * by default, with serving each on a virtual thread of its own, against a slow disk
+ * <p>
+ * Only runs when requested, for example
+ * {@code mvn test -Dtest=VirtualThreadBenchmark -Dbenchmark=true -Dbenchmark.requests=20000 -Dbenchmark.pool=200 -Dbenchmark.disk.millis=5}.
+ * Every request arrives at once; one in five adds a need to the client's basket
+ * and waits for group commit to write it, the others read the basket. Each also
+ * blocks for {@code benchmark.disk.millis} outside any lock, standing in for a
+ * read that misses the page cache of a slow disk. For each mode it reports the
+ * throughput and the median and 99th percentile latency from arrival to
+ * response, and checks that no write was lost. The virtual thread mode is only
+ * measured on a JVM that has virtual threads.
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class VirtualThreadBenchmark {
+    private static final int CLIENTS = 100;     // Baskets the requests are spread over
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void benchmarkRequestThreads() throws Exception {
+        int requests = Integer.getInteger("benchmark.requests", 20000);
+        int pool = Integer.getInteger("benchmark.pool", 200);
+        long diskMillis = Long.getLong("benchmark.disk.millis", 5);
+        System.out.printf("%-16s %8s | %10s %8s %8s%n", "mode", "requests", "requests/s", "p50 ms", "p99 ms");
+
+        measure("platform (" + pool + ")", Executors.newFixedThreadPool(pool), requests, diskMillis);
+        ExecutorService virtual = VirtualThreads.newPerTaskExecutor();
+        if (virtual == null)
+            System.out.println("virtual threads are not supported by this JVM");
+        else
+            measure("virtual", virtual, requests, diskMillis);
+    }
+
+    /**
+     * Submits every request to the executor at once and reports how they were served
+     */
+    private void measure(String mode, ExecutorService executor, int requests, long diskMillis) throws Exception {
+        File directory = Files.createTempDirectory("virtual-thread-benchmark").toFile();
+        File file = new File(directory, "baskets.json");
+        FundingBasket[] baskets = new FundingBasket[CLIENTS];
+        for (int client = 0; client < CLIENTS; ++client)
+            baskets[client] = new FundingBasket(client, "user" + client);
+        objectMapper.writeValue(file, baskets);
+
+        WriteBehindFlusher flusher = new WriteBehindFlusher(Durability.GROUP_COMMIT, 200, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        BasketFileDAO dao = new BasketFileDAO(file.getPath(), objectMapper, null, flusher, null);
+
+        long[] latencies = new long[requests];
+        List<Future<?>> results = new ArrayList<>(requests);
+        long begin = System.nanoTime();
+        for (int request = 0; request < requests; ++request) {
+            final int id = request;
+            final long arrived = System.nanoTime();
+            results.add(executor.submit(() -> {
+                serve(dao, id, diskMillis);
+                latencies[id] = System.nanoTime() - arrived;
+                return null;
+            }));
+        }
+        for (Future<?> result : results)
+            result.get();
+        long nanos = System.nanoTime() - begin;
+        executor.shutdown();
+        flusher.close();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-16s %8d | %10.0f %8.1f %8.1f%n", mode, requests, requests * 1e9 / nanos,
+                          latencies[requests / 2] / 1e6, latencies[(int)(requests * 0.99)] / 1e6);
+
+        for (int client = 0; client < CLIENTS; ++client) {
+            HashMap<Integer, Integer> needs = dao.getNeeds(client);
+            int writes = 0;
+            for (int request = client; request < requests; request += CLIENTS) {
+                if (request % 5 == 0)
+                    ++writes;
+            }
+            assertEquals(writes, needs.size());
+        }
+    }
+
+    /**
+     * One request: a slow read from disk, then a write of a need the client's
+     * basket does not hold yet or a read of the basket
+     */
+    private void serve(BasketFileDAO dao, int request, long diskMillis) throws IOException, InterruptedException {
+        Thread.sleep(diskMillis);
+        int client = request % CLIENTS;
+        if (request % 5 == 0)
+            dao.addNeed(client, request, 1);
+        else
+            dao.getNeeds(client);
+    }
+}
@@ -0,0 +1,192 @@
+package com.needs.api.needsapi.persistence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the Write Behind Flusher class
+ *
+ * @author Team Swiss Pandas
+ */
+@Tag("Persistence-tier")
+public class WriteBehindFlusherTest {
+    File file;
+    ReentrantLock lock;
+    AtomicInteger value;        // Stands in for the DAO's map
+    AtomicInteger saves;        // Number of direct saves
+    AtomicInteger snapshots;    // Number of write-behind flushes
+
+    /**
+     * Before each test, create a fresh file in a temporary directory
+     * @throws IOException
+     */
+    @BeforeEach
+    public void setupWriteBehindFlusher() throws IOException {
+        file = new File(Files.createTempDirectory("flusher").toFile(), "store.json");
+        lock = new ReentrantLock();
+        value = new AtomicInteger();
+        saves = new AtomicInteger();
+        snapshots = new AtomicInteger();
+    }
+
+    private WriteBehindFlusher.Store register(WriteBehindFlusher flusher) {
+        return flusher.register(lock, file.getPath(), () -> saves.incrementAndGet(), () -> {
+            snapshots.incrementAndGet();
+            return String.valueOf(value.get()).getBytes();
+        });
+    }
+
+    private void change(WriteBehindFlusher.Store store) throws IOException {
+        lock.lock();
+        try {
+            value.incrementAndGet();
+            store.changed();
+        }
+        finally {
+            lock.unlock();
+        }
+        store.await();
+    }
+
+    private String contents() throws IOException {
+        return new String(Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testSync() throws IOException {
+        // Setup
+        WriteBehindFlusher flusher = WriteBehindFlusher.synchronous();
+        WriteBehindFlusher.Store store = register(flusher);
+
+        // Invoke
+        change(store);
+        change(store);
+
+        // Analyze
+        assertEquals(Durability.SYNC, flusher.getDurability());
+        assertEquals(2, saves.get());
+        assertEquals(0, snapshots.get());
+        assertEquals(0, flusher.getBacklog());
+    }
+
+    @Test
+    public void testAsyncCoalescesAndDrainsOnClose() throws IOException {
+        // Setup: an interval long enough that only close() flushes
+        WriteBehindFlusher flusher = new WriteBehindFlusher(Durability.ASYNC, 60000, 1000, 1000);
+        WriteBehindFlusher.Store store = register(flusher);
+
+        // Invoke
+        for (int i = 0; i < 50; i++)
+            change(store);
+
+        // Analyze
+        assertEquals(50, flusher.getBacklog());
+        assertFalse(file.exists());
+
+        flusher.close();
+        assertEquals(0, flusher.getBacklog());
+        assertEquals(1, snapshots.get());
+        assertEquals(0, saves.get());
+        assertEquals("50", contents());
+    }
+
+    @Test
+    public void testGroupCommitWaitsForFlush() throws IOException {
+        // Setup
+        WriteBehindFlusher flusher = new WriteBehindFlusher(Durability.GROUP_COMMIT, 60000, 1000, 1000);
+        WriteBehindFlusher.Store store = register(flusher);
+
+        // Invoke
+        change(store);
+
+        // Analyze: the change is on disk as soon as the writer returns
+        assertEquals("1", contents());
+        assertEquals(0, flusher.getBacklog());
+        flusher.close();
+    }
+
+    @Test
+    public void testBacklogBackpressure() throws IOException {
+        // Setup: the third unflushed change has to wait for the flusher
+        WriteBehindFlusher flusher = new WriteBehindFlusher(Durability.ASYNC, 60000, 1000, 3);
+        WriteBehindFlusher.Store store = register(flusher);
+
+        // Invoke
+        change(store);
+        change(store);
+        boolean writtenEarly = file.exists();
+        change(store);
+
+        // Analyze
+        assertFalse(writtenEarly);
+        assertEquals("3", contents());
+        flusher.close();
+    }
+
+    @Test
+    public void testBatchSizeTriggersFlush() throws Exception {
+        // Setup
+        WriteBehindFlusher flusher = new WriteBehindFlusher(Durability.ASYNC, 60000, 5, 1000);
+        WriteBehindFlusher.Store store = register(flusher);
+
+        // Invoke
+        for (int i = 0; i < 5; i++)
+            change(store);
+        for (int i = 0; i < 100 && flusher.getBacklog() > 0; i++)
+            Thread.sleep(10);
+
+        // Analyze
+        assertEquals(0, flusher.getBacklog());
+        assertEquals("5", contents());
+        flusher.close();
+    }
+
+    @Test
+    public void testNestedLockDefersWait() throws IOException {
+        // Setup
+        WriteBehindFlusher flusher = new WriteBehindFlusher(Durability.GROUP_COMMIT, 60000, 1000, 1000);
+        WriteBehindFlusher.Store store = register(flusher);
+        ReentrantLock outer = new ReentrantLock();
+        WriteBehindFlusher.Store outerStore = flusher.register(outer, file.getPath() + ".outer", () -> {}, () -> new byte[0]);
+
+        // Invoke: a change made while another registered lock is held must not wait there
+        outer.lock();
+        try {
+            change(store);
+            assertEquals(1, flusher.getBacklog());
+        }
+        finally {
+            outer.unlock();
+        }
+        outerStore.await();
+
+        // Analyze
+        assertEquals("1", contents());
+        flusher.close();
+    }
+
+    @Test
+    public void testFailedFlushReachesWaiter() throws IOException {
+        // Setup
+        WriteBehindFlusher flusher = new WriteBehindFlusher(Durability.GROUP_COMMIT, 60000, 1000, 1000);
+        WriteBehindFlusher.Store store = flusher.register(lock, file.getPath(), () -> {}, () -> {
+            throw new IOException("disk full");
+        });
+
+        // Invoke & Analyze
+        assertThrows(IOException.class, () -> change(store));
+        assertTrue(flusher.getBacklog() > 0);
+    }
+}
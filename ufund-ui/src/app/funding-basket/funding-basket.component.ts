@@ -68,8 +68,11 @@ export class FundingBasketComponent implements OnInit{
   checkout():void{
     this.needMap.forEach(
       (quantity: number, need: Need)=>
-      {this.needService.fulfillNeedQuantity(need.id, quantity).subscribe();
-      this.profileService.addContribution(this.userName, need.id, quantity).subscribe();
+      {this.needService.fulfillNeedQuantity(need.id, quantity).subscribe(accepted => {
+        // only credit what the need still needed, not the whole basket quantity
+        if (accepted > 0)
+          this.profileService.addContribution(this.userName, need.id, accepted).subscribe();
+      });
       });
     this.fundingBasketService.clearBasket(this.basketId).subscribe(()=>{
       this.needMap = new Map<Need, number>();
@@ -2,7 +2,7 @@ import { Component, OnInit } from '@angular/core';
 import { Observable, Subject } from 'rxjs';
 
 import {
-   debounceTime, distinctUntilChanged, switchMap
+   debounceTime, distinctUntilChanged, share, switchMap
  } from 'rxjs/operators';
 
 import { Need } from '../need';
@@ -16,6 +16,7 @@ import { NeedService } from '../need.service';
 
 export class NeedSearchComponent implements OnInit {
   needs$!: Observable<Need[]>;
+  suggestions$!: Observable<Need[]>;
   private searchTerms = new Subject<string>();
 
   constructor(private needService: NeedService) {}
@@ -26,15 +27,25 @@ export class NeedSearchComponent implements OnInit {
   }
 
   ngOnInit(): void {
-    this.needs$ = this.searchTerms.pipe(
+    const terms$ = this.searchTerms.pipe(
       // wait 300ms after each keystroke before considering the term
       debounceTime(300),
 
       // ignore new term if same as previous term
       distinctUntilChanged(),
 
-      // switch to new search observable each time the term changes
+      // one term stream for both the results and the suggestions
+      share(),
+    );
+
+    // switch to new search observable each time the term changes
+    this.needs$ = terms$.pipe(
       switchMap((term: string) => this.needService.searchNeeds(term)),
     );
+
+    // names starting with the term, offered as the user types
+    this.suggestions$ = terms$.pipe(
+      switchMap((term: string) => this.needService.suggestNeeds(term)),
+    );
   }
 }
\ No newline at end of file
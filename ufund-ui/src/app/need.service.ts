@@ -30,11 +30,13 @@ export class NeedService {
       );
   }
 
-  fulfillNeedQuantity(id: number, quantity: number): Observable<Need>{
+  /** PUT: fulfill up to quantity of a need. Returns the quantity the server accepted, 0 if none */
+  fulfillNeedQuantity(id: number, quantity: number): Observable<number>{
     const url = `${this.needsUrl}/${id}/fulfill?quantity=${quantity}`;
-    return this.http.put<Need>(url, quantity).pipe(
-      tap(_ => console.log(`changed quantityFulfilled of need id=${id}`)),
-      catchError(this.handleError<Need>(`filfillQuantity id=${id} quantity=${quantity}`))
+    return this.http.put<Need>(url, quantity, { observe: 'response' }).pipe(
+      map(response => Number(response.headers.get('Quantity-Accepted') ?? 0)),
+      tap(accepted => console.log(`fulfilled ${accepted} of need id=${id}`)),
+      catchError(this.handleError<number>(`filfillQuantity id=${id} quantity=${quantity}`, 0))
     );
   }
 
@@ -85,6 +87,20 @@ export class NeedService {
     );
   }
 
+  /* GET the best k needs whose name starts with the typed prefix */
+  suggestNeeds(prefix: string, k: number = 5): Observable<Need[]> {
+    if (!prefix.trim()) {
+      // if not search term, return empty need array.
+      return of([]);
+    }
+    return this.http.get<Need[]>(`${this.needsUrl}/suggest?prefix=${encodeURIComponent(prefix)}&k=${k}`).pipe(
+      tap(x => x.length ?
+         console.log(`suggested needs starting with "${prefix}"`) :
+         console.log(`no needs starting with "${prefix}"`)),
+      catchError(this.handleError<Need[]>('suggestNeeds', []))
+    );
+  }
+
   //////// Save methods //////////
 
   /** POST: add a new need to the server */